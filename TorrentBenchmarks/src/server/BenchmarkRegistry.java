@@ -0,0 +1,57 @@
+package server;
+
+import loadgen.TrafficMix;
+
+import java.util.SplittableRandom;
+
+/**
+ * Samples drawn from the registry that {@link RegistryMemoryBenchmark} generates: mostly
+ * per-user music libraries plus a pool of popular files that many users share.
+ */
+final class BenchmarkRegistry {
+    // Power of two, so a cursor can wrap around with a mask
+    static final int SAMPLES = 4096;
+
+    private BenchmarkRegistry() {
+    }
+
+    /**
+     * Returns {@link #SAMPLES} registered file names, drawn uniformly over users and their files.
+     */
+    static String[] sampleFiles(int users, int filesPerUser, long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        String[] samples = new String[SAMPLES];
+        for (int i = 0; i < SAMPLES; i++) {
+            samples[i] = RegistryMemoryBenchmark.fileOf(random.nextInt(users), random.nextInt(filesPerUser));
+        }
+        return samples;
+    }
+
+    /**
+     * Builds {@link #SAMPLES} text commands from a {@link TrafficMix} such as
+     * {@code download=90;list-addresses=10}. Commands that change the registry act on
+     * {@code benchUser}'s own files, so the registry keeps its size however long the
+     * benchmark runs.
+     */
+    static String[] commands(String mix, int users, int filesPerUser, String benchUser, long seed) {
+        TrafficMix trafficMix = TrafficMix.parse(mix);
+        SplittableRandom random = new SplittableRandom(seed);
+        String[] commands = new String[SAMPLES];
+        for (int i = 0; i < SAMPLES; i++) {
+            TrafficMix.Verb verb = trafficMix.next(random);
+            int user = random.nextInt(users);
+            String file = RegistryMemoryBenchmark.fileOf(user, random.nextInt(filesPerUser));
+            commands[i] = switch (verb) {
+                case DOWNLOAD -> "download " + file;
+                case LIST_FILES -> "list-files";
+                case LIST_ADDRESSES -> "list-addresses";
+                case SEARCH -> "search /home/user" + user + "/* 20";
+                case CONNECT -> "connect " + RegistryMemoryBenchmark.usernameOf(user);
+                case REGISTER -> "register 7000 " + benchUser + " /bench/file" + random.nextInt(256);
+                case UNREGISTER -> "unregister " + benchUser + " /bench/file" + random.nextInt(256);
+                case HEARTBEAT -> "heartbeat " + benchUser;
+            };
+        }
+        return commands;
+    }
+}
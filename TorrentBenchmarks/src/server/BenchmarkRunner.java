@@ -0,0 +1,47 @@
+package server;
+
+import org.openjdk.jmh.Main;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.ProfilerConfig;
+
+/**
+ * Entry point of {@code benchmarks.jar}. Takes JMH's usual options and always adds the GC
+ * profiler, so every result comes with the bytes allocated per operation
+ * ({@code gc.alloc.rate.norm}) next to its time. For example:
+ * <pre>
+ * mvn -B package
+ * java -jar target/benchmarks.jar ServerDataBenchmark.getAddressOfFile -p users=100000
+ * java -jar target/benchmarks.jar CommandExecutorBenchmark -p 'mix=download=90;search=10' -rf json
+ * </pre>
+ */
+public final class BenchmarkRunner {
+    private BenchmarkRunner() {
+    }
+
+    private static boolean profilesAllocation(Options options) {
+        for (ProfilerConfig profiler : options.getProfilers()) {
+            if (profiler.getKlass().equals("gc") || profiler.getKlass().equals(GCProfiler.class.getName())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public static void main(String[] args) throws Exception {
+        CommandLineOptions options = new CommandLineOptions(args);
+        if (options.shouldHelp() || options.shouldList() || options.shouldListWithParams()
+                || options.shouldListProfilers() || options.shouldListResultFormats()) {
+            Main.main(args);
+            return;
+        }
+
+        Options run = profilesAllocation(options)
+                ? options
+                : new OptionsBuilder().parent(options).addProfiler(GCProfiler.class).build();
+        new Runner(run).run();
+    }
+}
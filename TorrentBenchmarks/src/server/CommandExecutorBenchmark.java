@@ -0,0 +1,114 @@
+package server;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Whole text commands through {@link CommandExecutor}, from parsing to the reply, over a
+ * weighted mix of commands. Mixes use the load generator's notation with semicolons between
+ * the entries, since JMH splits {@code -p mix=...} on commas; register, unregister and
+ * heartbeat act on the benchmark's own user, so the registry stays the size the parameters
+ * ask for.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class CommandExecutorBenchmark {
+    private static final String BENCH_USER = "bench";
+
+    @Param({"1000", "20000"})
+    public int users;
+
+    @Param({"20"})
+    public int filesPerUser;
+
+    @Param({
+            "download=100",
+            "search=100",
+            "register=50;unregister=50",
+            "connect=5;register=5;list-files=2;list-addresses=8;download=70;heartbeat=10"
+    })
+    public String mix;
+
+    private CommandExecutor executor;
+    private SocketChannel channel;
+    private InetAddress ip;
+    private String[] commands;
+    private byte[][] commandBytes;
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        final CommandLine line = new CommandLine();
+        int next;
+
+        int nextIndex() {
+            return next++ & (BenchmarkRegistry.SAMPLES - 1);
+        }
+    }
+
+    @Setup
+    public void setUp() throws IOException {
+        // Built after the registry is filled, so the search index starts from all of it
+        executor = new CommandExecutor(RegistryMemoryBenchmark.populate(users, filesPerUser));
+        // Only ever used as the session's key, so it never needs to connect
+        channel = SocketChannel.open();
+        ip = InetAddress.getLoopbackAddress();
+        executor.execute(channel, "register 7000 " + BENCH_USER + " /bench/always-there", ip);
+
+        commands = BenchmarkRegistry.commands(mix, users, filesPerUser, BENCH_USER, 42);
+        commandBytes = new byte[commands.length][];
+        for (int i = 0; i < commands.length; i++) {
+            commandBytes[i] = commands[i].getBytes(StandardCharsets.UTF_8);
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * The reply as a String, the way the blocking handler and the tests see it.
+     */
+    @Benchmark
+    public String execute(Cursor cursor) {
+        return executor.execute(channel, commands[cursor.nextIndex()], ip);
+    }
+
+    /**
+     * The reply as the reactor writes it, with listings served from the per-version cache.
+     */
+    @Benchmark
+    public byte[] executeEncoded(Cursor cursor) {
+        return executor.executeEncoded(channel, commands[cursor.nextIndex()], ip);
+    }
+
+    /**
+     * Tokenizing alone, into a reused line as the reactor does; should not allocate at all.
+     */
+    @Benchmark
+    public int parse(Cursor cursor) {
+        byte[] bytes = commandBytes[cursor.nextIndex()];
+        cursor.line.parse(bytes, 0, bytes.length);
+        return cursor.line.tokenCount();
+    }
+}
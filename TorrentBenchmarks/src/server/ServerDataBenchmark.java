@@ -0,0 +1,93 @@
+package server;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import server.exceptions.InvalidUserException;
+import server.exceptions.UserNotFoundException;
+
+import java.io.FileNotFoundException;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lookups, listings and registry updates straight against {@link ServerData}, without
+ * command parsing or reply encoding.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class ServerDataBenchmark {
+    @Param({"1000", "20000"})
+    public int users;
+
+    @Param({"10", "50"})
+    public int filesPerUser;
+
+    private ServerData serverData;
+    private String[] files;
+
+    /**
+     * Each benchmark thread walks the samples on its own.
+     */
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next;
+
+        int nextIndex() {
+            return next++ & (BenchmarkRegistry.SAMPLES - 1);
+        }
+    }
+
+    @Setup
+    public void setUp() {
+        serverData = RegistryMemoryBenchmark.populate(users, filesPerUser);
+        files = BenchmarkRegistry.sampleFiles(users, filesPerUser, 42);
+    }
+
+    @Benchmark
+    public String getAddressOfFile(Cursor cursor) throws FileNotFoundException {
+        return serverData.getAddressOfFile(files[cursor.nextIndex()]);
+    }
+
+    @Benchmark
+    public List<String> getAddressesOfFile(Cursor cursor) throws FileNotFoundException {
+        return serverData.getAddressesOfFile(files[cursor.nextIndex()]);
+    }
+
+    @Benchmark
+    public Set<String> listFiles() {
+        return serverData.listFiles();
+    }
+
+    @Benchmark
+    public Set<String> listAddresses() {
+        return serverData.listAddresses();
+    }
+
+    /**
+     * Adds one new file to a registered user and takes it away again, which is one
+     * copy-on-write update of the peer and of the file's owners each way.
+     */
+    @Benchmark
+    public void registerAndUnregister(Cursor cursor) throws InvalidUserException, UserNotFoundException {
+        int index = cursor.nextIndex();
+        int user = index % users;
+        Set<String> file = Set.of("/bench/new/file" + index);
+        serverData.register(RegistryMemoryBenchmark.usernameOf(user),
+                new UserData(RegistryMemoryBenchmark.addressOf(user), file));
+        serverData.unregister(RegistryMemoryBenchmark.usernameOf(user), file);
+    }
+}
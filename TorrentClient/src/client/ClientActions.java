@@ -1,5 +1,6 @@
 package client;
 
+import client.connection.BulkRegistration;
 import client.connection.ConnectionException;
 import client.download.DownloadException;
 import client.lib.CommandExtractor;
@@ -10,7 +11,6 @@ import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import java.util.Arrays;
 import java.util.List;
 import java.util.stream.Collectors;
 
@@ -39,6 +39,7 @@ public class ClientActions {
             return "Connection to the server failed!";
         }
         properties.addressUpdaterThread().start();
+        properties.heartbeatThread().start();
         return "Connected to the server!";
     }
 
@@ -55,7 +56,8 @@ public class ClientActions {
     }
 
     public String download(String command) {
-        String response = serverCommand(command);
+        // Every peer sharing the file, so the download can fetch pieces from all of them
+        String response = serverCommand("download-all" + command.trim().substring("download".length()));
         String responseCommand = CommandExtractor.extractCommandPrefix(response);
         if(!responseCommand.equals("download")) {
             return response;
@@ -71,8 +73,7 @@ public class ClientActions {
     }
 
     public String register(String command) {
-        String[] words = command.split(" ");
-        List<String> files = Arrays.asList(words).subList(1, words.length);
+        List<String> files = CommandExtractor.extractArguments(command);
 
         List<String> existingFiles = files.stream()
                 .peek(fileName -> {
@@ -83,13 +84,27 @@ public class ClientActions {
                 .filter(fileName -> Files.exists(Paths.get(fileName)))
                 .collect(Collectors.toList());
 
-        String newCommand = String.format("register %d %s ", userPort, properties.username()) + String.join(" ", existingFiles);
-
-        return serverCommand(newCommand);
+        try {
+            String reply = BulkRegistration.register(properties.serverConnection(), userPort, properties.username(),
+                    existingFiles);
+            properties.sharedFiles().add(existingFiles);
+            return reply;
+        } catch (ConnectionException e) {
+            LOGGER.log(Level.SEVERE, "Registration failed: " + e.getMessage(), e);
+            return e.getMessage();
+        }
     }
 
     public String unregister(String command) {
-        return serverCommand(command.replaceFirst(" ", String.format(" %s ", properties.username())));
+        List<String> files = CommandExtractor.extractArguments(command);
+        try {
+            String reply = BulkRegistration.unregister(properties.serverConnection(), properties.username(), files);
+            properties.sharedFiles().remove(files);
+            return reply;
+        } catch (ConnectionException e) {
+            LOGGER.log(Level.SEVERE, "Unregistration failed: " + e.getMessage(), e);
+            return e.getMessage();
+        }
     }
 
     public String serverCommand(String command) {
@@ -3,7 +3,9 @@ package client;
 import client.file.FileData;
 import client.address.AddressHandler;
 import client.address.AddressUpdaterThread;
-import client.connection.ServerConnection;
+import client.connection.HeartbeatThread;
+import client.connection.SharedFiles;
+import client.connection.TrackerConnection;
 import client.download.DownloadService;
 import client.miniserver.MiniServer;
 
@@ -15,12 +17,10 @@ import java.nio.file.Paths;
 public record ClientProperties(DownloadService downloadService,
                                MiniServer miniServer,
                                AddressUpdaterThread addressUpdaterThread,
-                               ServerConnection serverConnection,
-                               String username) {
-
-    private static String getRegisterCommandPrefix(int userPort, String username) {
-        return "register " + userPort + " " + username + " ";
-    }
+                               HeartbeatThread heartbeatThread,
+                               TrackerConnection serverConnection,
+                               String username,
+                               SharedFiles sharedFiles) {
 
     public static Path createAddressFile(String username) {
         String addressDirectory = "address";
@@ -49,18 +49,22 @@ public record ClientProperties(DownloadService downloadService,
         }
     }
 
-    public static ClientProperties setUpDependencies(ServerConnection serverConnection, String username,
+    public static ClientProperties setUpDependencies(TrackerConnection serverConnection, String username,
                                                      MiniServer miniServer, int port) {
 
         Path addressPath = createAddressFile(username);
 
         AddressHandler addressHandler = new AddressHandler(new FileData(addressPath), serverConnection);
-        AddressUpdaterThread addressUpdaterThread = new AddressUpdaterThread(addressHandler);
+        AddressUpdaterThread addressUpdaterThread = new AddressUpdaterThread(addressHandler, serverConnection::sibling);
         addressUpdaterThread.setDaemon(true);
+        SharedFiles sharedFiles = new SharedFiles();
+        HeartbeatThread heartbeatThread = new HeartbeatThread(serverConnection, username, port, sharedFiles);
+        heartbeatThread.setDaemon(true);
 
         DownloadService downloadService =
-                new DownloadService(addressHandler, serverConnection, getRegisterCommandPrefix(port, username));
+                new DownloadService(addressHandler, serverConnection, port, username, sharedFiles);
 
-        return new ClientProperties(downloadService, miniServer, addressUpdaterThread, serverConnection, username);
+        return new ClientProperties(downloadService, miniServer, addressUpdaterThread, heartbeatThread,
+                serverConnection, username, sharedFiles);
     }
 }
@@ -1,7 +1,9 @@
 package client;
 
+import client.connection.ClusterConnection;
 import client.connection.ConnectionException;
 import client.connection.ServerConnection;
+import client.connection.TrackerConnection;
 import client.lib.CommandExtractor;
 import client.lib.Tuple;
 import client.miniserver.MiniServer;
@@ -15,6 +17,7 @@ import java.util.Scanner;
 public class CommandUI {
     public static final String SERVER_IP = "localhost";
     public static final int SERVER_PORT = 5555;
+    public static final boolean BINARY_PROTOCOL = Boolean.getBoolean("tracker.binary");
     private final InputStream in;
     private final PrintStream out;
 
@@ -23,7 +26,7 @@ public class CommandUI {
         this.out = out;
     }
 
-    public String connectToServer(ServerConnection connection) {
+    public String connectToServer(TrackerConnection connection) {
         try {
             connection.connect();
         } catch (ConnectionException e) {
@@ -31,6 +34,14 @@ public class CommandUI {
             System.exit(-1);
         }
 
+        if (BINARY_PROTOCOL) {
+            try {
+                connection.enableBinaryMode();
+            } catch (ConnectionException e) {
+                out.println("The server does not support the binary protocol. Falling back to text.");
+            }
+        }
+
         String username;
         do {
             Scanner scanner = new Scanner(in);
@@ -88,7 +99,7 @@ public class CommandUI {
         } while(true);
     }
 
-    public ClientActions setUpClient(ServerConnection serverConnection, String username,
+    public ClientActions setUpClient(TrackerConnection serverConnection, String username,
                                      MiniServer miniServer, int port) {
 
         ClientProperties clientProperties =
@@ -101,11 +112,14 @@ public class CommandUI {
         System.out.println("\nAvailable Commands:");
         System.out.println("1. 'register <file1, file2, file3, ..., fileN>' - announce files for download.");
         System.out.println("2. 'unregister <file1, file2, file3, ..., fileN>' - declare files that can't be downloaded.");
+        System.out.println("   Put a file name in double quotes if it contains spaces, e.g. 'register \"my song.mp3\"'.");
         System.out.println("3. 'list-files' - view available files and the users from which they can be downloaded.");
-        System.out.println("4. 'download <path to file> [<dir to save>]' - download " +
-                "<path to file> in <dir to save>. If <dir to save> is omitted, " +
+        System.out.println("4. 'search <pattern> [<limit>]' - find files whose names contain <pattern>, " +
+                "or start with it if it ends in '*', and the users sharing them.");
+        System.out.println("5. 'download <path to file> [<dir to save>]' - download " +
+                "<path to file> from every peer sharing it, in <dir to save>. If <dir to save> is omitted, " +
                 "store it in the 'downloads' directory.");
-        System.out.println("5. 'disconnect' - disconnect from the server.");
+        System.out.println("6. 'disconnect' - disconnect from the server.");
     }
 
     private boolean consoleReader(Scanner scanner, ClientActions clientActions) {
@@ -150,7 +164,10 @@ public class CommandUI {
     public static void main(String[] args) {
         System.out.println("Welcome to the Kol-Yo Torrent Application!");
 
-        ServerConnection serverConnection = new ServerConnection(SERVER_IP, SERVER_PORT);
+        String cluster = System.getProperty("tracker.cluster");
+        TrackerConnection serverConnection = cluster == null
+                ? new ServerConnection(SERVER_IP, SERVER_PORT)
+                : ClusterConnection.parse(cluster);
         CommandUI commandUI = new CommandUI(System.in, System.out);
         String username = commandUI.connectToServer(serverConnection);
         Tuple<MiniServer, Integer> miniServerInfo = commandUI.initializeMiniServerWithPort();
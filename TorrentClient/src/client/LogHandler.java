@@ -1,26 +1,54 @@
 package client;
 
+import common.logging.AsyncHandler;
+
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.logging.FileHandler;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Handler;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+/**
+ * Attaches loggers to their log files. Every file gets a single {@link AsyncHandler}, shared by
+ * all the loggers that write to it, so registering a logger again or pointing two classes at the
+ * same file never opens it twice. The handler comes from TorrentCommon, which the tracker
+ * uses too.
+ */
 public class LogHandler {
+    private static final int LOG_BUFFER_RECORDS = 4096;
+    private static final Map<Path, AsyncHandler> HANDLERS = new ConcurrentHashMap<>();
+
+    private static AsyncHandler handlerFor(Path path) {
+        return HANDLERS.computeIfAbsent(path, key -> {
+            try {
+                Files.createDirectories(key.getParent());
+                AsyncHandler handler = new AsyncHandler(key, LOG_BUFFER_RECORDS);
+                handler.setLevel(Level.ALL);
+                return handler;
+            } catch (IOException exception) {
+                throw new IllegalStateException(exception);
+            }
+        });
+    }
+
     public static void registerLogger(Logger logger, String logPath) {
+        Path path = Paths.get(logPath).toAbsolutePath().normalize();
         try {
-            Path path = Paths.get(logPath);
-            Files.createDirectories(path.getParent());
-
-            FileHandler handler = new FileHandler(logPath);
-            handler.setLevel(Level.ALL);
-            logger.addHandler(handler);
+            Handler handler = handlerFor(path);
+            synchronized (logger) {
+                if (!Arrays.asList(logger.getHandlers()).contains(handler)) {
+                    logger.addHandler(handler);
+                }
+            }
             logger.setUseParentHandlers(false);
-        } catch (IOException exception) {
+        } catch (IllegalStateException exception) {
             logger.log(Level.SEVERE, "Creating log handler failed: "
-                    + exception.getMessage(), exception);
+                    + exception.getCause().getMessage(), exception.getCause());
         }
     }
 }
@@ -2,58 +2,145 @@ package client.address;
 
 import client.LogHandler;
 import client.connection.ConnectionException;
-import client.connection.ServerConnection;
+import client.connection.TrackerConnection;
 import client.file.FileData;
 
-import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 public class AddressHandler {
     private static final Logger LOGGER = Logger.getLogger(AddressHandler.class.getName());
+    private static final String ENTRY_SEPARATOR = " - ";
 
     private final FileData fileData;
-    private final ServerConnection serverConnection;
+    private final TrackerConnection serverConnection;
+    private final Map<String, String> addresses;
+    private long version;
 
-    public AddressHandler(FileData fileData, ServerConnection serverConnection) {
+    public AddressHandler(FileData fileData, TrackerConnection serverConnection) {
         this.fileData = fileData;
         this.serverConnection = serverConnection;
+        addresses = new LinkedHashMap<>();
+        version = -1;
         LogHandler.registerLogger(LOGGER, "logs/addresses.log");
     }
 
     public String addressOf(String user) throws AddressException {
         synchronized (fileData) {
-            try {
-                BufferedReader fileReader = new BufferedReader(fileData.newReader());
-                String address = fileReader
-                        .lines()
-                        .filter(s -> s.startsWith(user + ' '))
-                        .findFirst().orElseThrow(() -> new AddressException("User not found!"))
-                        .substring(user.length() + 3);
-                fileReader.close();
-                return address;
-            } catch (IOException exception) {
-                LOGGER.log(Level.SEVERE, "Address file reading failed: " + exception.getMessage(), exception);
-                throw new AddressException(exception.getMessage(), exception);
+            String address = addresses.get(user);
+            if (address == null) {
+                throw new AddressException("User not found!");
             }
+            return address;
         }
     }
 
-    public void update() throws IOException, AddressException {
-        String addresses;
+    private String request(String command) throws AddressException {
         try {
-            addresses = serverConnection.sendMessage("list-addresses");
+            return serverConnection.sendMessage(command);
         } catch (ConnectionException e) {
             LOGGER.log(Level.SEVERE, "Getting addresses from server failed: " + e.getMessage(), e);
             throw new AddressException(e.getMessage(), e);
         }
+    }
+
+    private static void putEntry(Map<String, String> addresses, String line) {
+        int separator = line.indexOf(ENTRY_SEPARATOR);
+        if (separator > 0) {
+            addresses.put(line.substring(0, separator), line.substring(separator + ENTRY_SEPARATOR.length()));
+        }
+    }
+
+    /*
+     * Applies a list-addresses-since reply: a "version <n> full|delta" line followed by either
+     * every entry or the entries that changed, "+user - address" for users that joined and
+     * "-user" for users that left. Returns whether the addresses changed.
+     */
+    private boolean apply(String[] lines) {
+        String[] header = lines[0].split(" ");
+        boolean full = header[2].equals("full");
+        boolean changed = full && !addresses.isEmpty();
+        if (full) {
+            addresses.clear();
+        }
+
+        for (int i = 1; i < lines.length; i++) {
+            String line = lines[i];
+            if (full) {
+                putEntry(addresses, line);
+            } else if (line.startsWith("+")) {
+                putEntry(addresses, line.substring(1));
+            } else if (line.startsWith("-")) {
+                addresses.remove(line.substring(1));
+            }
+            changed = true;
+        }
+        version = Long.parseLong(header[1]);
+        return changed;
+    }
+
+    private void writeAddressFile() throws IOException {
+        BufferedWriter fileWriter = new BufferedWriter(fileData.newWriter());
+        for (Map.Entry<String, String> entry : addresses.entrySet()) {
+            fileWriter.write(entry.getKey() + ENTRY_SEPARATOR + entry.getValue());
+            fileWriter.newLine();
+        }
+        fileWriter.flush();
+        fileWriter.close();
+    }
+
+    /**
+     * Subscribes through {@code subscription}, a connection of its own, and applies the
+     * updates the tracker pushes until the connection fails. Returns false right away if the
+     * tracker does not support subscriptions.
+     */
+    public boolean follow(TrackerConnection subscription) throws IOException, AddressException {
+        String reply;
+        try {
+            reply = subscription.sendMessage("subscribe " + version);
+            while (true) {
+                String[] lines = reply.split("\\R");
+                if (!lines[0].startsWith("version ")) {
+                    return false;
+                }
+                synchronized (fileData) {
+                    if (apply(lines)) {
+                        writeAddressFile();
+                    }
+                }
+                LOGGER.info("Addresses updated to version " + version + ".");
+                reply = subscription.receiveMessage();
+            }
+        } catch (ConnectionException e) {
+            LOGGER.log(Level.SEVERE, "Address subscription failed: " + e.getMessage(), e);
+            throw new AddressException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Catches up with the tracker's address list. Only the users that joined or left since the
+     * last update are transferred, and the address file is rewritten only if something changed.
+     */
+    public void update() throws IOException, AddressException {
+        String reply = request("list-addresses-since " + version);
+        String[] lines = reply.split("\\R");
         synchronized (fileData) {
-            BufferedWriter fileWriter = new BufferedWriter(fileData.newWriter());
-            fileWriter.write(addresses);
-            fileWriter.flush();
-            fileWriter.close();
+            if (lines[0].startsWith("version ")) {
+                if (!apply(lines)) {
+                    return;
+                }
+            } else {
+                // A tracker without delta support; fall back to the full listing
+                addresses.clear();
+                for (String line : request("list-addresses").split("\\R")) {
+                    putEntry(addresses, line);
+                }
+            }
+            writeAddressFile();
         }
         LOGGER.info("Address file updated.");
     }
@@ -1,31 +1,68 @@
 package client.address;
 
 import client.LogHandler;
+import client.connection.ConnectionException;
+import client.connection.TrackerConnection;
 
 import java.io.IOException;
+import java.util.function.Supplier;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 public class AddressUpdaterThread extends Thread {
     private static final Logger LOGGER = Logger.getLogger(AddressUpdaterThread.class.getName());
+    private static final long RECONNECT_DELAY_MILLIS = 5_000;
+    private static final long POLL_INTERVAL_MILLIS = 30_000;
+
     private final AddressHandler addressHandler;
+    private final Supplier<TrackerConnection> subscriptionConnections;
 
-    public AddressUpdaterThread(AddressHandler addressHandler) {
+    public AddressUpdaterThread(AddressHandler addressHandler, Supplier<TrackerConnection> subscriptionConnections) {
         this.addressHandler = addressHandler;
+        this.subscriptionConnections = subscriptionConnections;
         LogHandler.registerLogger(LOGGER, "logs/addresses.log");
     }
 
+    // Only returns if the tracker has no subscriptions; otherwise the updates keep coming
+    private boolean follow() throws IOException, AddressException {
+        TrackerConnection subscription = subscriptionConnections.get();
+        try {
+            subscription.connect();
+            return addressHandler.follow(subscription);
+        } catch (ConnectionException e) {
+            throw new AddressException(e.getMessage(), e);
+        } finally {
+            try {
+                subscription.close();
+            } catch (ConnectionException | RuntimeException e) {
+                LOGGER.log(Level.WARNING, "Closing the subscription failed: " + e.getMessage(), e);
+            }
+        }
+    }
+
+    private void poll() throws IOException, AddressException, InterruptedException {
+        while (!isInterrupted()) {
+            addressHandler.update();
+            Thread.sleep(POLL_INTERVAL_MILLIS);
+        }
+    }
+
     @Override
     public void run() {
         try {
             while (!isInterrupted()) {
-                addressHandler.update();
-                Thread.sleep(30_000);
+                try {
+                    if (!follow()) {
+                        LOGGER.info("The tracker does not support subscriptions; polling instead.");
+                        poll();
+                    }
+                } catch (IOException e) {
+                    LOGGER.log(Level.SEVERE, "Writing to the address file failed: " + e.getMessage(), e);
+                } catch (AddressException e) {
+                    LOGGER.log(Level.SEVERE, "Connecting to the server failed: " + e.getMessage(), e);
+                }
+                Thread.sleep(RECONNECT_DELAY_MILLIS);
             }
-        } catch (IOException e) {
-            LOGGER.log(Level.SEVERE, "Writing to the address file failed: " + e.getMessage(), e);
-        } catch (AddressException e) {
-            LOGGER.log(Level.SEVERE, "Connecting to the server failed: " + e.getMessage(), e);
         } catch (InterruptedException e) {
             LOGGER.log(Level.SEVERE, "Sleeping interrupted: " + e.getMessage(), e);
             interrupt();
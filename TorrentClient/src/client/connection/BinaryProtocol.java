@@ -0,0 +1,311 @@
+package client.connection;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Client side of the tracker's binary protocol. Text commands are translated into binary
+ * frames and the compact replies are rendered back into the text the tracker would have sent,
+ * so callers of {@link ServerConnection#sendMessage(String)} do not notice the switch.
+ */
+final class BinaryProtocol {
+    static final byte OP_TEXT = 1;
+    static final byte OP_LIST_ADDRESSES = 2;
+    static final byte OP_LIST_FILES = 3;
+    static final byte OP_DOWNLOAD = 4;
+    static final byte OP_REGISTER = 5;
+    static final byte OP_UNREGISTER = 6;
+    static final byte OP_CONNECT = 7;
+    static final byte OP_HEARTBEAT = 8;
+    static final byte OP_LIST_ADDRESSES_SINCE = 9;
+
+    static final byte STATUS_OK = 0;
+
+    private static final int MAX_VARINT_BYTES = 5;
+
+    record Request(int requestId, byte opcode, byte[] frame) {
+    }
+
+    record Reply(int requestId, byte status, ByteBuffer body) {
+    }
+
+    private BinaryProtocol() {
+    }
+
+    private static void writeVarInt(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    private static void writeString(ByteArrayOutputStream out, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarInt(out, bytes.length);
+        out.writeBytes(bytes);
+    }
+
+    private static void writeStrings(ByteArrayOutputStream out, String[] words, int from) {
+        writeVarInt(out, Math.max(words.length - from, 0));
+        for (int i = from; i < words.length; i++) {
+            writeString(out, words[i]);
+        }
+    }
+
+    private static int readVarInt(ByteBuffer buffer) throws IOException {
+        int value = 0;
+        for (int i = 0; i < MAX_VARINT_BYTES; i++) {
+            byte b = buffer.get();
+            value |= (b & 0x7F) << (7 * i);
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint in server reply.");
+    }
+
+    private static int readVarInt(DataInputStream in) throws IOException {
+        int value = 0;
+        for (int i = 0; i < MAX_VARINT_BYTES; i++) {
+            byte b = in.readByte();
+            value |= (b & 0x7F) << (7 * i);
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint in server reply.");
+    }
+
+    private static String readString(ByteBuffer buffer) throws IOException {
+        int length = readVarInt(buffer);
+        String value = new String(buffer.array(), buffer.position(), length, StandardCharsets.UTF_8);
+        buffer.position(buffer.position() + length);
+        return value;
+    }
+
+    private static String readAddress(ByteBuffer buffer) throws IOException {
+        byte[] ip = new byte[buffer.get() == 4 ? 4 : 16];
+        buffer.get(ip);
+        int port = buffer.getShort() & 0xFFFF;
+        return InetAddress.getByAddress(ip).getHostAddress() + ":" + port;
+    }
+
+    private static String[] wordsOf(String command) {
+        return command.trim().split("\\s+");
+    }
+
+    static String verbOf(String command) {
+        return wordsOf(command)[0];
+    }
+
+    private static Request frame(int requestId, byte opcode, ByteArrayOutputStream body) {
+        ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        writeVarInt(payload, requestId);
+        payload.write(opcode);
+        payload.writeBytes(body.toByteArray());
+
+        ByteArrayOutputStream frame = new ByteArrayOutputStream(payload.size() + MAX_VARINT_BYTES);
+        writeVarInt(frame, payload.size());
+        frame.writeBytes(payload.toByteArray());
+        return new Request(requestId, opcode, frame.toByteArray());
+    }
+
+    /**
+     * Encodes a text command as a binary request frame.
+     */
+    static Request request(int requestId, String command) {
+        String[] words = wordsOf(command);
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+
+        switch (words[0]) {
+            case "list-addresses" -> {
+                return frame(requestId, OP_LIST_ADDRESSES, body);
+            }
+            case "list-addresses-since" -> {
+                if (words.length > 1 && words[1].matches("\\d{1,18}")) {
+                    long since = Long.parseLong(words[1]);
+                    for (int shift = 56; shift >= 0; shift -= 8) {
+                        body.write((int) (since >>> shift));
+                    }
+                    return frame(requestId, OP_LIST_ADDRESSES_SINCE, body);
+                }
+            }
+            case "list-files" -> {
+                return frame(requestId, OP_LIST_FILES, body);
+            }
+            case "download", "download-all" -> {
+                if (words.length > 1) {
+                    writeString(body, words[1]);
+                    return frame(requestId, OP_DOWNLOAD, body);
+                }
+            }
+            case "register" -> {
+                if (words.length > 2 && words[1].matches("\\d{1,5}")) {
+                    int port = Integer.parseInt(words[1]);
+                    body.write(port >>> 8);
+                    body.write(port);
+                    writeString(body, words[2]);
+                    writeStrings(body, words, 3);
+                    return frame(requestId, OP_REGISTER, body);
+                }
+            }
+            case "unregister" -> {
+                if (words.length > 1) {
+                    writeString(body, words[1]);
+                    writeStrings(body, words, 2);
+                    return frame(requestId, OP_UNREGISTER, body);
+                }
+            }
+            case "register-bulk", "unregister-bulk" -> {
+                // One file name per line after the header, which the frame carries as strings; names
+                // keep their spaces and blank lines are skipped, as the text protocol does
+                String[] lines = command.split("\\R");
+                String[] header = wordsOf(lines[0]);
+                String[] names = Arrays.stream(lines, 1, lines.length)
+                        .filter(line -> !line.isBlank())
+                        .toArray(String[]::new);
+                boolean register = words[0].equals("register-bulk");
+                if (register && header.length == 4 && header[1].matches("\\d{1,5}")) {
+                    int port = Integer.parseInt(header[1]);
+                    body.write(port >>> 8);
+                    body.write(port);
+                    writeString(body, header[2]);
+                    writeStrings(body, names, 0);
+                    return frame(requestId, OP_REGISTER, body);
+                }
+                if (!register && header.length == 3) {
+                    writeString(body, header[1]);
+                    writeStrings(body, names, 0);
+                    return frame(requestId, OP_UNREGISTER, body);
+                }
+            }
+            case "connect" -> {
+                if (words.length > 1) {
+                    writeString(body, words[1]);
+                    return frame(requestId, OP_CONNECT, body);
+                }
+            }
+            case "heartbeat" -> {
+                if (words.length > 1) {
+                    writeString(body, words[1]);
+                    return frame(requestId, OP_HEARTBEAT, body);
+                }
+            }
+            default -> {
+            }
+        }
+
+        // Anything without a dedicated opcode travels as text and gets the text reply back
+        writeString(body, command);
+        return frame(requestId, OP_TEXT, body);
+    }
+
+    static Reply readReply(DataInputStream in) throws IOException {
+        byte[] payload = new byte[readVarInt(in)];
+        in.readFully(payload);
+
+        ByteBuffer buffer = ByteBuffer.wrap(payload);
+        int requestId = readVarInt(buffer);
+        byte status = buffer.get();
+        return new Reply(requestId, status, buffer);
+    }
+
+    private static String lines(List<String> lines, String messageIfEmpty) {
+        return lines.isEmpty() ? messageIfEmpty : String.join(System.lineSeparator(), lines);
+    }
+
+    private static String renderAddresses(ByteBuffer body) throws IOException {
+        int count = readVarInt(body);
+        List<String> lines = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String username = readString(body);
+            lines.add(username + " - " + readAddress(body));
+        }
+        return lines(lines, "There are no addresses available!");
+    }
+
+    private static String renderAddressesSince(ByteBuffer body) throws IOException {
+        long version = body.getLong();
+        boolean full = body.get() == 1;
+        int count = readVarInt(body);
+
+        List<String> lines = new ArrayList<>(count + 1);
+        lines.add("version " + version + (full ? " full" : " delta"));
+        for (int i = 0; i < count; i++) {
+            String username = readString(body);
+            if (full) {
+                lines.add(username + " - " + readAddress(body));
+            } else if (body.get() == 1) {
+                lines.add("+" + username + " - " + readAddress(body));
+            } else {
+                lines.add("-" + username);
+            }
+        }
+        return String.join(System.lineSeparator(), lines);
+    }
+
+    private static String renderFiles(ByteBuffer body) throws IOException {
+        int fileCount = readVarInt(body);
+        List<String> lines = new ArrayList<>(fileCount);
+        for (int i = 0; i < fileCount; i++) {
+            String fileName = readString(body);
+            int ownerCount = readVarInt(body);
+            for (int j = 0; j < ownerCount; j++) {
+                lines.add(readString(body) + " : " + fileName);
+            }
+        }
+        return lines(lines, "There are no files registered!");
+    }
+
+    private static String renderDownload(String command, ByteBuffer body) throws IOException {
+        String verb = verbOf(command);
+        String arguments = command.trim().substring(verb.length()).trim();
+
+        int count = readVarInt(body);
+        List<String> lines = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            lines.add("download " + readAddress(body) + " " + arguments);
+        }
+        if (lines.isEmpty()) {
+            return "The specified file is not registered!";
+        }
+        return verb.equals("download") ? lines.get(0) : String.join(System.lineSeparator(), lines);
+    }
+
+    private static String renderLines(ByteBuffer body) throws IOException {
+        int count = readVarInt(body);
+        List<String> lines = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            lines.add(readString(body));
+        }
+        return String.join(System.lineSeparator(), lines);
+    }
+
+    /**
+     * Renders a binary reply as the text reply the tracker sends for the same command.
+     */
+    static String render(String command, Request request, Reply reply) throws IOException {
+        ByteBuffer body = reply.body();
+        if (reply.status() != STATUS_OK) {
+            return readString(body);
+        }
+
+        return switch (request.opcode()) {
+            case OP_LIST_ADDRESSES -> renderAddresses(body);
+            case OP_LIST_ADDRESSES_SINCE -> renderAddressesSince(body);
+            case OP_LIST_FILES -> renderFiles(body);
+            case OP_DOWNLOAD -> renderDownload(command, body);
+            case OP_REGISTER, OP_UNREGISTER, OP_HEARTBEAT -> readString(body);
+            case OP_CONNECT -> body.get() == 1 ? "Successful" : "Unsuccessful";
+            default -> renderLines(body);
+        };
+    }
+}
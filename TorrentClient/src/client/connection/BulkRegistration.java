@@ -0,0 +1,70 @@
+package client.connection;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Registers and unregisters files through the tracker's {@code register-bulk} and
+ * {@code unregister-bulk} commands, which put every file name on a line of its own. Names may
+ * contain spaces, and a whole library goes out in as few round trips as the tracker's message
+ * size allows.
+ */
+public final class BulkRegistration {
+    // Keeps every command well inside the tracker's 1 MiB limit on a binary frame
+    private static final int MAX_COMMAND_BYTES = 512 * 1024;
+    private static final int MAX_COMMAND_FILES = 65_536;
+
+    private BulkRegistration() {
+    }
+
+    public static String register(TrackerConnection connection, int port, String username,
+                                  Collection<String> files) throws ConnectionException {
+        return send(connection, "register-bulk " + port + " " + username, files);
+    }
+
+    public static String unregister(TrackerConnection connection, String username,
+                                    Collection<String> files) throws ConnectionException {
+        return send(connection, "unregister-bulk " + username, files);
+    }
+
+    static List<String> commands(String header, Collection<String> files) {
+        List<String> commands = new ArrayList<>();
+        List<String> chunk = new ArrayList<>();
+        int chunkBytes = 0;
+        for (String file : files) {
+            int fileBytes = file.getBytes(StandardCharsets.UTF_8).length + 1;
+            if (!chunk.isEmpty() && (chunkBytes + fileBytes > MAX_COMMAND_BYTES || chunk.size() == MAX_COMMAND_FILES)) {
+                commands.add(command(header, chunk));
+                chunk.clear();
+                chunkBytes = 0;
+            }
+            chunk.add(file);
+            chunkBytes += fileBytes;
+        }
+        if (!chunk.isEmpty() || commands.isEmpty()) {
+            commands.add(command(header, chunk));
+        }
+        return commands;
+    }
+
+    private static String command(String header, List<String> files) {
+        StringBuilder command = new StringBuilder(header).append(' ').append(files.size());
+        for (String file : files) {
+            command.append('\n').append(file);
+        }
+        return command.toString();
+    }
+
+    private static String send(TrackerConnection connection, String header, Collection<String> files)
+            throws ConnectionException {
+        Set<String> replies = new LinkedHashSet<>();
+        for (String command : commands(header, files)) {
+            replies.add(connection.sendMessage(command).trim());
+        }
+        return String.join(System.lineSeparator(), replies);
+    }
+}
@@ -0,0 +1,298 @@
+package client.connection;
+
+import client.LogHandler;
+import common.cluster.Shard;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Connection to a cluster of trackers that split the files between them. The tracker at
+ * position {@code i} of the list owns shard {@code i}, as set by its {@code tracker.shard}
+ * property. Commands about files go to the trackers that own them, and listings are asked of
+ * every tracker at once and merged, so callers see a single tracker.
+ *
+ * <p>Address deltas and subscriptions are versioned per tracker and have no cluster-wide
+ * form; the cluster declines them and clients fall back to merged full listings.
+ */
+public class ClusterConnection implements TrackerConnection {
+    private static final Logger LOGGER = Logger.getLogger(ClusterConnection.class.getName());
+    private static final int DEFAULT_SEARCH_LIMIT = 100;
+    private static final String NOT_AVAILABLE = "Not available across a cluster of trackers.";
+
+    private final List<ServerConnection> nodes;
+    private ExecutorService fanOut;
+
+    public ClusterConnection(List<ServerConnection> nodes) {
+        if (nodes.isEmpty()) {
+            throw new IllegalArgumentException("A cluster needs at least one tracker.");
+        }
+        this.nodes = List.copyOf(nodes);
+        LogHandler.registerLogger(LOGGER, "logs/connection.log");
+    }
+
+    /**
+     * Parses a cluster written as {@code host:port,host:port,...}, in shard order.
+     */
+    public static ClusterConnection parse(String trackers) {
+        List<ServerConnection> nodes = new ArrayList<>();
+        for (String tracker : trackers.split(",")) {
+            int separator = tracker.lastIndexOf(':');
+            if (separator < 0) {
+                throw new IllegalArgumentException("A tracker is written as host:port, not " + tracker + ".");
+            }
+            nodes.add(new ServerConnection(tracker.substring(0, separator).trim(),
+                    Integer.parseInt(tracker.substring(separator + 1).trim())));
+        }
+        return new ClusterConnection(nodes);
+    }
+
+    @Override
+    public ClusterConnection sibling() {
+        return new ClusterConnection(nodes.stream().map(ServerConnection::sibling).toList());
+    }
+
+    @Override
+    public boolean isConnected() {
+        return nodes.stream().allMatch(ServerConnection::isConnected);
+    }
+
+    @Override
+    public synchronized void connect() throws ConnectionException {
+        for (int i = 0; i < nodes.size(); i++) {
+            try {
+                nodes.get(i).connect();
+            } catch (ConnectionException e) {
+                for (int connected = 0; connected < i; connected++) {
+                    try {
+                        nodes.get(connected).close();
+                    } catch (ConnectionException closing) {
+                        LOGGER.log(Level.WARNING, "Closing tracker " + connected + " failed: "
+                                + closing.getMessage(), closing);
+                    }
+                }
+                throw e;
+            }
+        }
+        fanOut = Executors.newFixedThreadPool(nodes.size(), task -> {
+            Thread thread = new Thread(task, "cluster-fan-out");
+            thread.setDaemon(true);
+            return thread;
+        });
+        LOGGER.info("Connected to a cluster of " + nodes.size() + " trackers.");
+    }
+
+    // The same routing function the trackers use to decide which files they own
+    private int shardOf(String fileName) {
+        return Shard.ownerOf(fileName, nodes.size());
+    }
+
+    // Sends every message to its tracker at once and returns the replies in the same order
+    private List<String> exchange(Map<Integer, String> messages) throws ConnectionException {
+        if (messages.size() == 1) {
+            Map.Entry<Integer, String> only = messages.entrySet().iterator().next();
+            return List.of(nodes.get(only.getKey()).sendMessage(only.getValue()));
+        }
+
+        List<Future<String>> pending = new ArrayList<>();
+        for (Map.Entry<Integer, String> message : messages.entrySet()) {
+            ServerConnection node = nodes.get(message.getKey());
+            pending.add(fanOut.submit(() -> node.sendMessage(message.getValue())));
+        }
+
+        List<String> replies = new ArrayList<>();
+        try {
+            for (Future<String> reply : pending) {
+                replies.add(reply.get());
+            }
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof ConnectionException connectionException) {
+                throw connectionException;
+            }
+            throw new ConnectionException(e.getCause().getMessage(), e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ConnectionException("Interrupted while waiting for the trackers.", e);
+        }
+        return replies;
+    }
+
+    private List<String> everyNode(String message) throws ConnectionException {
+        Map<Integer, String> messages = new TreeMap<>();
+        for (int i = 0; i < nodes.size(); i++) {
+            messages.put(i, message);
+        }
+        return exchange(messages);
+    }
+
+    // Splits the files of a register or unregister command between their shards
+    private String split(String[] words, int firstFile, int usernameIndex) throws ConnectionException {
+        String prefix = String.join(" ", Arrays.copyOfRange(words, 0, firstFile));
+        Map<Integer, StringBuilder> commands = new TreeMap<>();
+        for (int i = firstFile; i < words.length; i++) {
+            commands.computeIfAbsent(shardOf(words[i]), shard -> new StringBuilder(prefix)).append(' ').append(words[i]);
+        }
+        if (commands.isEmpty()) {
+            // Without files the user still registers, on the shard its name hashes to
+            commands.put(shardOf(words[usernameIndex]), new StringBuilder(prefix));
+        }
+
+        Map<Integer, String> messages = new TreeMap<>();
+        commands.forEach((shard, command) -> messages.put(shard, command.toString()));
+        return String.join(System.lineSeparator(), new LinkedHashSet<>(exchange(messages)));
+    }
+
+    // Splits the file lines of a bulk command between their shards, each with its own count
+    private String splitBulk(String message) throws ConnectionException {
+        // File names are whole lines, outer spaces included, as the trackers hash them
+        String[] lines = message.split("\\R");
+        String[] header = lines[0].trim().split("\\s+");
+        if (header.length < 3) {
+            return nodes.get(0).sendMessage(message);
+        }
+        String prefix = String.join(" ", Arrays.copyOf(header, header.length - 1));
+        Map<Integer, List<String>> files = new TreeMap<>();
+        for (int i = 1; i < lines.length; i++) {
+            if (!lines[i].isBlank()) {
+                files.computeIfAbsent(shardOf(lines[i]), shard -> new ArrayList<>()).add(lines[i]);
+            }
+        }
+        if (files.isEmpty()) {
+            files.put(shardOf(header[header.length - 2]), List.of());
+        }
+
+        Map<Integer, String> messages = new TreeMap<>();
+        files.forEach((shard, shardFiles) -> {
+            List<String> command = new ArrayList<>();
+            command.add(prefix + " " + shardFiles.size());
+            command.addAll(shardFiles);
+            messages.put(shard, String.join("\n", command));
+        });
+        return String.join(System.lineSeparator(), new LinkedHashSet<>(exchange(messages)));
+    }
+
+    private static String mergeEntries(List<String> replies, String separator, int limit) {
+        Set<String> entries = new LinkedHashSet<>();
+        for (String reply : replies) {
+            for (String line : reply.split("\\R")) {
+                if (line.contains(separator) && entries.size() < limit) {
+                    entries.add(line);
+                }
+            }
+        }
+        return entries.isEmpty() ? replies.get(0) : String.join(System.lineSeparator(), entries);
+    }
+
+    private static int searchLimit(String[] words) {
+        try {
+            return words.length > 2 ? Integer.parseInt(words[2]) : DEFAULT_SEARCH_LIMIT;
+        } catch (NumberFormatException e) {
+            return DEFAULT_SEARCH_LIMIT;
+        }
+    }
+
+    @Override
+    public String sendMessage(String message) throws ConnectionException {
+        if (!isConnected()) {
+            throw new ConnectionException("Not yet connected!");
+        }
+
+        String[] words = message.trim().split("\\s+");
+        switch (words[0]) {
+            case "register" -> {
+                if (words.length > 2) {
+                    return split(words, 3, 2);
+                }
+            }
+            case "unregister" -> {
+                if (words.length > 1) {
+                    return split(words, 2, 1);
+                }
+            }
+            case "register-bulk", "unregister-bulk" -> {
+                return splitBulk(message);
+            }
+            case "download", "download-all" -> {
+                if (words.length > 1) {
+                    return nodes.get(shardOf(words[1])).sendMessage(message);
+                }
+            }
+            case "list-files" -> {
+                return mergeEntries(everyNode(message), " : ", Integer.MAX_VALUE);
+            }
+            case "list-addresses" -> {
+                return mergeEntries(everyNode(message), " - ", Integer.MAX_VALUE);
+            }
+            case "search" -> {
+                return mergeEntries(everyNode(message), " : ", searchLimit(words));
+            }
+            case "connect" -> {
+                boolean available = everyNode(message).stream().allMatch(reply -> reply.trim().equals("Successful"));
+                return available ? "Successful" : "Unsuccessful";
+            }
+            case "heartbeat" -> {
+                List<String> replies = everyNode(message);
+                return replies.stream().anyMatch(reply -> reply.trim().equals("Alive")) ? "Alive" : replies.get(0);
+            }
+            case "stats" -> {
+                List<String> replies = everyNode(message);
+                List<String> lines = new ArrayList<>();
+                for (int i = 0; i < replies.size(); i++) {
+                    lines.add("shard " + i + "/" + replies.size());
+                    lines.add(replies.get(i));
+                }
+                return String.join(System.lineSeparator(), lines);
+            }
+            case "list-addresses-since", "subscribe" -> {
+                return NOT_AVAILABLE;
+            }
+            default -> {
+            }
+        }
+        return nodes.get(0).sendMessage(message);
+    }
+
+    @Override
+    public String receiveMessage() throws ConnectionException {
+        throw new ConnectionException(NOT_AVAILABLE);
+    }
+
+    @Override
+    public void enableBinaryMode() throws ConnectionException {
+        for (ServerConnection node : nodes) {
+            node.enableBinaryMode();
+        }
+    }
+
+    @Override
+    public synchronized void close() throws ConnectionException {
+        ConnectionException failure = null;
+        for (ServerConnection node : nodes) {
+            try {
+                if (node.isConnected()) {
+                    node.close();
+                }
+            } catch (ConnectionException e) {
+                failure = e;
+            }
+        }
+        if (fanOut != null) {
+            fanOut.shutdownNow();
+            fanOut = null;
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package client.connection;
+
+import client.LogHandler;
+
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Tells the tracker every so often that this client is still alive, so its registrations are
+ * not dropped while the connection is otherwise quiet. If the tracker dropped them anyway,
+ * because heartbeats stopped arriving for a while, the shared files are registered again.
+ */
+public class HeartbeatThread extends Thread {
+    private static final Logger LOGGER = Logger.getLogger(HeartbeatThread.class.getName());
+    private static final long INTERVAL_MILLIS = 30_000;
+
+    private static final String NOT_REGISTERED = "Not registered";
+
+    private final TrackerConnection serverConnection;
+    private final String username;
+    private final int port;
+    private final SharedFiles sharedFiles;
+
+    public HeartbeatThread(TrackerConnection serverConnection, String username, int port, SharedFiles sharedFiles) {
+        this.serverConnection = serverConnection;
+        this.username = username;
+        this.port = port;
+        this.sharedFiles = sharedFiles;
+        LogHandler.registerLogger(LOGGER, "logs/connection.log");
+    }
+
+    private void registerAgain() throws ConnectionException {
+        List<String> files = sharedFiles.list();
+        if (files.isEmpty()) {
+            return;
+        }
+        String reply = BulkRegistration.register(serverConnection, port, username, files);
+        String message = "The tracker had forgotten this client; registered " + files.size()
+                + " shared file(s) again: " + reply;
+        LOGGER.warning(message);
+        System.out.println(message);
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (!isInterrupted()) {
+                Thread.sleep(INTERVAL_MILLIS);
+                try {
+                    String reply = serverConnection.sendMessage("heartbeat " + username).trim();
+                    if (reply.equals(NOT_REGISTERED)) {
+                        registerAgain();
+                    } else if (!reply.equals("Alive")) {
+                        LOGGER.info("Heartbeat reply: " + reply);
+                    }
+                } catch (ConnectionException e) {
+                    LOGGER.log(Level.WARNING, "Sending heartbeat failed: " + e.getMessage(), e);
+                }
+            }
+        } catch (InterruptedException e) {
+            interrupt();
+        }
+    }
+}
@@ -2,8 +2,11 @@ package client.connection;
 
 import client.LogHandler;
 
+import java.io.BufferedInputStream;
 import java.io.BufferedReader;
+import java.io.DataInputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.PrintWriter;
 import java.net.InetSocketAddress;
 import java.nio.channels.Channels;
@@ -12,7 +15,7 @@ import java.nio.charset.StandardCharsets;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
-public class ServerConnection {
+public class ServerConnection implements TrackerConnection {
     private static final Logger LOGGER = Logger.getLogger(ServerConnection.class.getName());
 
     private final String address;
@@ -22,16 +25,31 @@ public class ServerConnection {
     private BufferedReader reader;
     private PrintWriter writer;
 
+    private boolean binaryMode;
+    private DataInputStream binaryInput;
+    private OutputStream binaryOutput;
+    private int nextRequestId;
+
     public ServerConnection(String address, int port) {
         this.address = address;
         this.port = port;
         LogHandler.registerLogger(LOGGER, "logs/connection.log");
     }
 
+    /**
+     * Returns a new, not yet connected connection to the same tracker.
+     */
+    @Override
+    public ServerConnection sibling() {
+        return new ServerConnection(address, port);
+    }
+
+    @Override
     public boolean isConnected() {
         return socketChannel != null && socketChannel.isConnected();
     }
 
+    @Override
     public void connect() throws ConnectionException {
         try {
             socketChannel = SocketChannel.open();
@@ -70,15 +88,71 @@ public class ServerConnection {
         return stringBuilder.toString();
     }
 
+    private String binaryExchange(String message) throws ConnectionException {
+        BinaryProtocol.Request request = BinaryProtocol.request(nextRequestId++, message);
+        try {
+            binaryOutput.write(request.frame());
+            binaryOutput.flush();
+
+            BinaryProtocol.Reply reply = BinaryProtocol.readReply(binaryInput);
+            if (reply.requestId() != request.requestId()) {
+                throw new IOException("Reply to request " + reply.requestId()
+                        + " received while waiting for " + request.requestId());
+            }
+            return BinaryProtocol.render(message, request, reply);
+        } catch (IOException | RuntimeException exception) {
+            LOGGER.log(Level.SEVERE, "Binary exchange failed: " + exception.getMessage(), exception);
+            throw new ConnectionException(exception.getMessage(), exception);
+        }
+    }
+
+    @Override
     public synchronized String sendMessage(String message) throws ConnectionException {
         if (isConnected()) {
+            if (binaryMode) {
+                return binaryExchange(message);
+            }
             writer.println(message);
             return serverReply();
         }
         throw new ConnectionException("Not yet connected!");
     }
 
+    /**
+     * Waits for the next message the tracker pushes on a text connection, such as the
+     * updates of a subscription.
+     */
+    @Override
+    public String receiveMessage() throws ConnectionException {
+        if (!isConnected() || binaryMode) {
+            throw new ConnectionException("Not connected in text mode!");
+        }
+        return serverReply();
+    }
+
+    /**
+     * Switches this connection to the tracker's compact binary protocol. Replies keep
+     * their text form for callers of {@link #sendMessage(String)}.
+     */
+    @Override
+    public synchronized void enableBinaryMode() throws ConnectionException {
+        if (binaryMode) {
+            return;
+        }
+        String reply = sendMessage("binary").trim();
+        if (!reply.equals("binary")) {
+            throw new ConnectionException("The server does not support the binary protocol: " + reply);
+        }
+
+        binaryInput = new DataInputStream(new BufferedInputStream(Channels.newInputStream(socketChannel)));
+        binaryOutput = Channels.newOutputStream(socketChannel);
+        binaryMode = true;
+        LOGGER.info("Switched to the binary protocol.");
+    }
+
+    @Override
     public void close() throws ConnectionException {
+        binaryMode = false;
         writer.close();
         try {
             reader.close();
@@ -0,0 +1,27 @@
+package client.connection;
+
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The files this client has registered with the tracker, kept so that they can be registered
+ * again if the tracker forgets the client, for instance after its heartbeats stopped arriving
+ * for a while.
+ */
+public final class SharedFiles {
+    private final Set<String> files = new LinkedHashSet<>();
+
+    public synchronized void add(Collection<String> registered) {
+        files.addAll(registered);
+    }
+
+    public synchronized void remove(Collection<String> unregistered) {
+        files.removeAll(unregistered);
+    }
+
+    public synchronized List<String> list() {
+        return List.copyOf(files);
+    }
+}
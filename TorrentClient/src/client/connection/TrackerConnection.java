@@ -0,0 +1,30 @@
+package client.connection;
+
+/**
+ * A client's link to the tracker, either a single tracker or a cluster of them. Commands go
+ * out in their text form and replies come back as text, whatever the link does underneath.
+ */
+public interface TrackerConnection {
+    /**
+     * Returns a new, not yet connected connection to the same tracker.
+     */
+    TrackerConnection sibling();
+
+    boolean isConnected();
+
+    void connect() throws ConnectionException;
+
+    String sendMessage(String message) throws ConnectionException;
+
+    /**
+     * Waits for the next message the tracker pushes, such as the updates of a subscription.
+     */
+    String receiveMessage() throws ConnectionException;
+
+    /**
+     * Switches to the tracker's compact binary protocol where it is supported.
+     */
+    void enableBinaryMode() throws ConnectionException;
+
+    void close() throws ConnectionException;
+}
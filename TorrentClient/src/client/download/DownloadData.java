@@ -12,10 +12,15 @@ import java.nio.file.InvalidPathException;
 import java.nio.file.NotDirectoryException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Scanner;
 
 
-public record DownloadData(String ip, int port, String serverPath, String clientPath) {
+/**
+ * A file to download and the peers sharing it, most preferred first.
+ */
+public record DownloadData(List<AddressPair> sources, String serverPath, String clientPath) {
     private static AddressPair parseAddress(String address) throws DownloadException {
         String[] addressSplit = address.split(":");
 
@@ -49,6 +54,12 @@ public record DownloadData(String ip, int port, String serverPath, String client
         String filePathString = String.format("%s\\%s", directory, fileName);
         Path filePath = Paths.get(filePathString);
 
+        if (DownloadProgress.exists(filePath)) {
+            // Left behind by a download that did not finish; it continues where it stopped
+            System.out.println("Resuming the unfinished download of " + fileName + ".");
+            return filePathString;
+        }
+
         if(Files.exists(filePath)) {
             System.out.println("A file with the same name already exists in the specified directory!\n" +
                     "Do you want to replace it? (yes/no)");
@@ -68,15 +79,27 @@ public record DownloadData(String ip, int port, String serverPath, String client
         return filePathString;
     }
 
+    /**
+     * Parses the tracker's answer to {@code download} or {@code download-all}: one
+     * {@code download <address> <path> [<dir>]} line per peer that shares the file.
+     */
     public static DownloadData parseDownloadCommand(String command)
             throws DownloadException, IOException {
-        String[] words = command.split("\\s+");
+        String[] lines = command.trim().split("\\R");
+        String[] words = lines[0].split("\\s+");
 
         if (words.length > 4 || words.length < 3) {
             throw new DownloadException("Incorrect format of 'download' command!");
         }
 
-        AddressPair addressPair = parseAddress(words[1]);
+        List<AddressPair> sources = new ArrayList<>(lines.length);
+        for (String line : lines) {
+            String[] lineWords = line.trim().split("\\s+");
+            if (lineWords.length < 3 || !lineWords[0].equals("download")) {
+                throw new DownloadException("Incorrect format of 'download' command!");
+            }
+            sources.add(parseAddress(lineWords[1]));
+        }
 
         if(!Files.exists(Paths.get(words[2]))) {
             throw new FileNotFoundException("The file is currently unavailable!");
@@ -89,6 +112,6 @@ public record DownloadData(String ip, int port, String serverPath, String client
         String downloadFilePath = getDownloadDirectoryPath(Paths.get(words[2]).getFileName().toString(),
                 downloadPathDirectory);
 
-        return new DownloadData(addressPair.ip(), addressPair.port(), words[2], downloadFilePath);
+        return new DownloadData(List.copyOf(sources), words[2], downloadFilePath);
     }
 }
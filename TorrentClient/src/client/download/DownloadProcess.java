@@ -1,7 +1,5 @@
 package client.download;
 
-import client.connection.ConnectionException;
-import client.connection.ServerConnection;
 import client.file.FileData;
 
 import java.io.DataInputStream;
@@ -18,22 +16,16 @@ public class DownloadProcess implements Runnable {
     private static final int CHUNK_SIZE = 1024;
 
     private final DownloadData downloadData;
-    private final ServerConnection serverConnection;
-    private final String registerCommandPrefix;
+    private final RegistrationBatcher registrationBatcher;
 
-    public DownloadProcess(DownloadData downloadData, ServerConnection serverConnection, String registerCommandPrefix) {
-        this.serverConnection = serverConnection;
-        this.registerCommandPrefix = registerCommandPrefix;
+    public DownloadProcess(DownloadData downloadData, RegistrationBatcher registrationBatcher) {
+        this.registrationBatcher = registrationBatcher;
         this.downloadData = downloadData;
     }
 
     private void registerFileOnServer(String file) {
-        try {
-            serverConnection.sendMessage(registerCommandPrefix + file);
-        } catch (ConnectionException e) {
-            LOGGER.log(Level.SEVERE, "Registration of the file on the server failed: " + e.getMessage(), e);
-        }
-        String result = "File " + file + " successfully downloaded and registered.";
+        registrationBatcher.add(file);
+        String result = "File " + file + " successfully downloaded and queued for registration.";
         LOGGER.info(result);
         System.out.println(result);
     }
@@ -50,8 +42,9 @@ public class DownloadProcess implements Runnable {
         }
     }
 
-    private void download() {
-        try (Socket socket = new Socket(downloadData.ip(), downloadData.port());
+    // The whole file from one peer, for peers that do not serve pieces
+    private void downloadWhole(AddressPair source) throws IOException {
+        try (Socket socket = new Socket(source.ip(), source.port());
                 PrintWriter writer = new PrintWriter(socket.getOutputStream(), true);
                 DataInputStream socketInput = new DataInputStream(socket.getInputStream())) {
             writer.println(downloadData.serverPath());
@@ -61,10 +54,23 @@ public class DownloadProcess implements Runnable {
 
             receiveFile(socketInput, fileOutput);
             fileOutput.close();
+        }
+    }
+
+    private void download() {
+        try {
+            SwarmDownload swarm = new SwarmDownload(downloadData.sources(), downloadData.serverPath(),
+                    Paths.get(downloadData.clientPath()));
+            if (!swarm.run()) {
+                downloadWhole(downloadData.sources().get(0));
+            }
 
             registerFileOnServer(Paths.get(downloadData.clientPath()).getFileName().toString());
-        } catch (IOException e) {
+        } catch (DownloadException | IOException e) {
             LOGGER.log(Level.SEVERE, "Download failed: " + e.getMessage(), e);
+        } catch (InterruptedException e) {
+            LOGGER.warning("Download of " + downloadData.serverPath() + " interrupted.");
+            Thread.currentThread().interrupt();
         }
     }
 
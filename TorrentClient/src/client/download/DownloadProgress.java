@@ -0,0 +1,115 @@
+package client.download;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.BitSet;
+
+/**
+ * Which pieces of an unfinished download are already written, kept next to the destination
+ * as {@code <file>.progress} so that a download interrupted by a failure, a shutdown or a
+ * crash picks up where it stopped. The file starts with the size, piece size and fingerprint
+ * of the download it belongs to, followed by one bit per piece; each bit is written right after
+ * its piece. Neither write is forced to disk, so after a crash a set bit only means the piece
+ * is worth checking.
+ */
+final class DownloadProgress implements AutoCloseable {
+    static final String SUFFIX = ".progress";
+    static final int FINGERPRINT_LENGTH = 32;
+    private static final int MAGIC = 0x50524f31;
+    private static final int HEADER_LENGTH = Integer.BYTES + Long.BYTES + Integer.BYTES + FINGERPRINT_LENGTH;
+
+    private final Path path;
+    private final FileChannel channel;
+    private final byte[] bitmap;
+
+    private DownloadProgress(Path path, FileChannel channel, byte[] bitmap) {
+        this.path = path;
+        this.channel = channel;
+        this.bitmap = bitmap;
+    }
+
+    static Path fileOf(Path destination) {
+        return destination.resolveSibling(destination.getFileName() + SUFFIX);
+    }
+
+    static boolean exists(Path destination) {
+        return Files.exists(fileOf(destination));
+    }
+
+    private static ByteBuffer header(long fileSize, int pieceSize, byte[] fingerprint) {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+        header.putInt(MAGIC).putLong(fileSize).putInt(pieceSize).put(fingerprint, 0, FINGERPRINT_LENGTH);
+        return header.flip();
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("The progress file ends early.");
+            }
+        }
+    }
+
+    /**
+     * Opens the progress of the download into {@code destination}. The pieces recorded earlier
+     * are kept only if they were recorded for the same size, piece size and fingerprint;
+     * otherwise the download starts over.
+     */
+    static DownloadProgress open(Path destination, long fileSize, int pieceSize, int pieceCount,
+                                 byte[] fingerprint) throws IOException {
+        Path path = fileOf(destination);
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        try {
+            byte[] bitmap = new byte[(pieceCount + 7) / 8];
+            ByteBuffer expected = header(fileSize, pieceSize, fingerprint);
+            if (channel.size() == HEADER_LENGTH + bitmap.length) {
+                ByteBuffer recorded = ByteBuffer.allocate(HEADER_LENGTH);
+                readFully(channel, recorded, 0);
+                if (recorded.flip().equals(expected)) {
+                    readFully(channel, ByteBuffer.wrap(bitmap), HEADER_LENGTH);
+                    return new DownloadProgress(path, channel, bitmap);
+                }
+            }
+
+            channel.truncate(0);
+            channel.write(expected, 0);
+            channel.write(ByteBuffer.wrap(bitmap), HEADER_LENGTH);
+            return new DownloadProgress(path, channel, bitmap);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    synchronized BitSet done() {
+        return BitSet.valueOf(bitmap);
+    }
+
+    synchronized void markDone(int piece) throws IOException {
+        bitmap[piece / 8] |= (byte) (1 << piece % 8);
+        channel.write(ByteBuffer.wrap(bitmap, piece / 8, 1), HEADER_LENGTH + piece / 8);
+    }
+
+    synchronized void markMissing(int piece) throws IOException {
+        bitmap[piece / 8] &= (byte) ~(1 << piece % 8);
+        channel.write(ByteBuffer.wrap(bitmap, piece / 8, 1), HEADER_LENGTH + piece / 8);
+    }
+
+    /**
+     * Forgets the progress of a finished download.
+     */
+    void delete() throws IOException {
+        close();
+        Files.deleteIfExists(path);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
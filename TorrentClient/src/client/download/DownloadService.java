@@ -2,7 +2,8 @@ package client.download;
 
 import client.LogHandler;
 import client.address.AddressHandler;
-import client.connection.ServerConnection;
+import client.connection.SharedFiles;
+import client.connection.TrackerConnection;
 
 import java.io.FileNotFoundException;
 import java.io.IOException;
@@ -19,12 +20,11 @@ public class DownloadService {
     private final AddressHandler addressHandler;
     private final ExecutorService executorService;
 
-    private final ServerConnection serverConnection;
-    private final String registerCommandPrefix;
+    private final RegistrationBatcher registrationBatcher;
 
-    public DownloadService(AddressHandler addressHandler, ServerConnection serverConnection, String registerCommandPrefix) {
-        this.serverConnection = serverConnection;
-        this.registerCommandPrefix = registerCommandPrefix;
+    public DownloadService(AddressHandler addressHandler, TrackerConnection serverConnection, int port, String username,
+                           SharedFiles sharedFiles) {
+        this.registrationBatcher = new RegistrationBatcher(serverConnection, port, username, sharedFiles);
         this.addressHandler = addressHandler;
         executorService = Executors.newFixedThreadPool(5);
         LogHandler.registerLogger(LOGGER, "logs/downloads.log");
@@ -41,7 +41,7 @@ public class DownloadService {
         }
 
         DownloadProcess downloadProcess =
-                new DownloadProcess(downloadData, serverConnection, registerCommandPrefix);
+                new DownloadProcess(downloadData, registrationBatcher);
         executorService.submit(downloadProcess);
         LOGGER.info("Download command executed.");
     }
@@ -56,6 +56,7 @@ public class DownloadService {
             executorService.shutdownNow();
             Thread.currentThread().interrupt();
         }
+        registrationBatcher.close();
         LOGGER.info("Download service shut down.");
     }
 
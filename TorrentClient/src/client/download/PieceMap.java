@@ -0,0 +1,143 @@
+package client.download;
+
+import java.util.ArrayDeque;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Deque;
+
+/**
+ * Which pieces of a file are still to fetch, which are on their way and which have arrived.
+ * Shared by the connections of one swarm download. Once no piece is left to hand out, a
+ * connection that runs dry may ask again for a piece another peer is already sending, so one
+ * slow peer cannot hold up the end of the download.
+ */
+final class PieceMap {
+    // How many peers may be asked for the same piece at the end of a download
+    private static final int MAX_REQUESTS_PER_PIECE = 2;
+
+    private final long fileSize;
+    private final int pieceSize;
+    private final int pieceCount;
+    private final Deque<Integer> pending;
+    private final int[] requests;
+    private final BitSet done;
+    private int completed;
+
+    PieceMap(long fileSize, int pieceSize) {
+        this(fileSize, pieceSize, new BitSet());
+    }
+
+    /**
+     * Lays out a download of which the pieces in {@code alreadyDone} are written already.
+     */
+    PieceMap(long fileSize, int pieceSize, BitSet alreadyDone) {
+        this.fileSize = fileSize;
+        this.pieceSize = pieceSize;
+        long count = (fileSize + pieceSize - 1) / pieceSize;
+        if (count > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("A file of " + fileSize + " bytes has too many pieces.");
+        }
+        pieceCount = (int) count;
+        done = alreadyDone.get(0, pieceCount);
+        completed = done.cardinality();
+        pending = new ArrayDeque<>(pieceCount - completed);
+        for (int piece = done.nextClearBit(0); piece < pieceCount; piece = done.nextClearBit(piece + 1)) {
+            pending.add(piece);
+        }
+        requests = new int[pieceCount];
+    }
+
+    long fileSize() {
+        return fileSize;
+    }
+
+    int pieceSize() {
+        return pieceSize;
+    }
+
+    int pieceCount() {
+        return pieceCount;
+    }
+
+    long offsetOf(int piece) {
+        return (long) piece * pieceSize;
+    }
+
+    int lengthOf(int piece) {
+        return (int) Math.min(pieceSize, fileSize - offsetOf(piece));
+    }
+
+    /**
+     * Hands out the next piece to request, other than those the caller is already waiting for,
+     * or returns -1 if there is none for now.
+     */
+    synchronized int next(Collection<Integer> inFlight) {
+        Integer piece = pending.poll();
+        if (piece != null) {
+            requests[piece]++;
+            return piece;
+        }
+        for (int p = done.nextClearBit(0); p < pieceCount; p = done.nextClearBit(p + 1)) {
+            if (requests[p] < MAX_REQUESTS_PER_PIECE && !inFlight.contains(p)) {
+                requests[p]++;
+                return p;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Records that {@code piece} is written; returns false if another peer got there first.
+     */
+    synchronized boolean complete(int piece) {
+        requests[piece]--;
+        if (done.get(piece)) {
+            return false;
+        }
+        done.set(piece);
+        if (++completed == pieceCount) {
+            notifyAll();
+        }
+        return true;
+    }
+
+    /**
+     * Puts back a piece a failed connection will not deliver.
+     */
+    synchronized void release(int piece) {
+        requests[piece]--;
+        if (!done.get(piece) && requests[piece] == 0) {
+            pending.addFirst(piece);
+            notifyAll();
+        }
+    }
+
+    /**
+     * Puts back a piece that arrived corrupt, behind the others, so that another peer is
+     * likely to be asked for it next.
+     */
+    synchronized void reject(int piece) {
+        requests[piece]--;
+        if (!done.get(piece) && requests[piece] == 0) {
+            pending.addLast(piece);
+            notifyAll();
+        }
+    }
+
+    synchronized int completed() {
+        return completed;
+    }
+
+    synchronized boolean isComplete() {
+        return completed == pieceCount;
+    }
+
+    /**
+     * Waits until a piece is put back or the download completes, for at most {@code millis}.
+     */
+    synchronized void awaitWork(long millis) throws InterruptedException {
+        if (pending.isEmpty() && !isComplete()) {
+            wait(millis);
+        }
+    }
+}
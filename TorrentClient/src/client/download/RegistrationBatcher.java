@@ -0,0 +1,85 @@
+package client.download;
+
+import client.LogHandler;
+import client.connection.BulkRegistration;
+import client.connection.ConnectionException;
+import client.connection.SharedFiles;
+import client.connection.TrackerConnection;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Collects the files finished downloads want to seed and registers them with the tracker
+ * together, a short while after the first one arrives, instead of one round trip per file.
+ */
+public class RegistrationBatcher {
+    private static final Logger LOGGER = Logger.getLogger(RegistrationBatcher.class.getName());
+    private static final long LINGER_MILLIS = 200;
+
+    private final TrackerConnection serverConnection;
+    private final int port;
+    private final String username;
+    private final SharedFiles sharedFiles;
+    private final ScheduledExecutorService scheduler;
+    private List<String> pending;
+
+    public RegistrationBatcher(TrackerConnection serverConnection, int port, String username,
+                               SharedFiles sharedFiles) {
+        this.serverConnection = serverConnection;
+        this.port = port;
+        this.username = username;
+        this.sharedFiles = sharedFiles;
+        pending = new ArrayList<>();
+        scheduler = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "registration-batcher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        LogHandler.registerLogger(LOGGER, "logs/downloads.log");
+    }
+
+    /**
+     * Queues {@code file} for registration with the next batch.
+     */
+    public synchronized void add(String file) {
+        pending.add(file);
+        if (pending.size() == 1) {
+            scheduler.schedule(this::flush, LINGER_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private synchronized List<String> takePending() {
+        List<String> files = pending;
+        pending = new ArrayList<>();
+        return files;
+    }
+
+    public void flush() {
+        List<String> files = takePending();
+        if (files.isEmpty()) {
+            return;
+        }
+        try {
+            String reply = BulkRegistration.register(serverConnection, port, username, files);
+            sharedFiles.add(files);
+            LOGGER.info("Registered " + files.size() + " downloaded file(s): " + reply);
+        } catch (ConnectionException e) {
+            LOGGER.log(Level.SEVERE, "Registration of " + files.size() + " downloaded file(s) failed: "
+                    + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Registers whatever is still queued and stops the batcher.
+     */
+    public void close() {
+        scheduler.shutdownNow();
+        flush();
+    }
+}
@@ -0,0 +1,349 @@
+package client.download;
+
+import client.file.FileData;
+import client.file.PieceManifest;
+import client.miniserver.PeerProtocol;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Downloads one file from every peer that shares it at once. The file is cut into the pieces
+ * of its {@link PieceManifest}; each peer gets a connection of its own that keeps up to
+ * {@link #PIPELINE_DEPTH} piece requests outstanding, and every piece is checked against its
+ * hash and written at its offset in the destination as soon as it arrives. Faster peers simply
+ * come back for more pieces, so the download runs at the sum of the peers' upload speeds rather
+ * than at the speed of one. A corrupt piece is asked for again, preferably from another peer,
+ * and a peer that keeps sending corrupt pieces is dropped.
+ *
+ * <p>Every written piece is recorded in the download's {@link DownloadProgress}. A download that
+ * stops early, because its peers failed or the client shut down, leaves the partial file and its
+ * progress behind, and downloading the same file into the same place again only fetches the
+ * pieces that are still missing. Writes are not forced to disk, so after a crash a recorded
+ * piece may not have made it there: resuming reads every recorded piece back and checks it
+ * against the manifest, and a download without a manifest starts over.
+ */
+final class SwarmDownload {
+    private static final Logger LOGGER = Logger.getLogger(DownloadService.class.getName());
+    private static final int PIPELINE_DEPTH = 4;
+    private static final int MAX_CORRUPT_PIECES = 3;
+    private static final int MAX_PEERS = 16;
+    private static final int CONNECT_TIMEOUT_MILLIS = 5_000;
+    private static final int READ_TIMEOUT_MILLIS = 30_000;
+    private static final long IDLE_WAIT_MILLIS = 100;
+
+    private final List<AddressPair> sources;
+    private final String serverPath;
+    private final Path destination;
+    private final AtomicLong bytesReceived;
+    private final AtomicLong corruptPieces;
+    private PieceManifest manifest;
+    private final Set<Socket> sockets;
+    private PieceMap pieces;
+    private FileChannel output;
+    private DownloadProgress progress;
+
+    SwarmDownload(List<AddressPair> sources, String serverPath, Path destination) {
+        this.sources = sources.size() > MAX_PEERS ? sources.subList(0, MAX_PEERS) : sources;
+        this.serverPath = serverPath;
+        this.destination = destination;
+        bytesReceived = new AtomicLong();
+        corruptPieces = new AtomicLong();
+        sockets = ConcurrentHashMap.newKeySet();
+    }
+
+    private static String addressOf(AddressPair source) {
+        return source.ip() + ":" + source.port();
+    }
+
+    private Socket connect(AddressPair source, String request) throws IOException {
+        Socket socket = new Socket();
+        try {
+            socket.connect(new InetSocketAddress(source.ip(), source.port()), CONNECT_TIMEOUT_MILLIS);
+            socket.setSoTimeout(READ_TIMEOUT_MILLIS);
+            OutputStream out = socket.getOutputStream();
+            out.write((request + serverPath + "\n").getBytes(StandardCharsets.UTF_8));
+            out.flush();
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+        return socket;
+    }
+
+    /*
+     * Asks the peers, most preferred first, for the file's manifest. Returns null if none has
+     * one, in which case pieces cannot be checked.
+     */
+    private PieceManifest fetchManifest() {
+        for (AddressPair source : sources) {
+            try (Socket socket = connect(source, PeerProtocol.MANIFEST_PREFIX);
+                    DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()))) {
+                in.mark(Long.BYTES);
+                if (in.readLong() == PeerProtocol.NO_SUCH_FILE) {
+                    continue;
+                }
+                in.reset();
+                return PieceManifest.readFrom(in, PeerProtocol.MIN_PIECE_LENGTH, PeerProtocol.MAX_PIECE_LENGTH);
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Fetching the manifest of " + serverPath + " from " + addressOf(source)
+                        + " failed: " + e.getMessage(), e);
+            }
+        }
+        return null;
+    }
+
+    /*
+     * Called by each connection once its peer has told the file's size. The first answer lays
+     * out the pieces and sizes the destination; a peer that disagrees has another file under the
+     * same name and is not used.
+     */
+    private synchronized PieceMap join(AddressPair source, long fileSize) throws IOException {
+        long expected = manifest != null ? manifest.fileSize() : pieces != null ? pieces.fileSize() : fileSize;
+        if (fileSize != expected) {
+            LOGGER.warning(addressOf(source) + " shares a " + fileSize + " byte " + serverPath
+                    + " where other peers have " + expected + " bytes; not using it.");
+            return null;
+        }
+        if (pieces == null) {
+            int pieceSize = manifest != null ? manifest.pieceSize() : PeerProtocol.PIECE_SIZE;
+            PieceMap layout = new PieceMap(fileSize, pieceSize);
+            output = new FileData(destination).newWriteChannel(fileSize);
+            progress = DownloadProgress.open(destination, fileSize, pieceSize, layout.pieceCount(),
+                    manifest != null ? manifest.fingerprint() : new byte[DownloadProgress.FINGERPRINT_LENGTH]);
+            BitSet done = progress.done();
+            recheck(layout, done);
+            if (!done.isEmpty()) {
+                LOGGER.info("Resuming " + serverPath + " with " + done.cardinality() + " of "
+                        + layout.pieceCount() + " pieces already downloaded.");
+            }
+            pieces = new PieceMap(fileSize, pieceSize, done);
+        }
+        return pieces;
+    }
+
+    /*
+     * Reads back the pieces an earlier attempt recorded and forgets those that no longer match
+     * the manifest, for instance because the machine went down before they reached the disk.
+     * Neither the pieces nor their bits are forced to disk, so without a manifest to check them
+     * against none of them can be trusted and the download starts over.
+     */
+    private void recheck(PieceMap layout, BitSet done) throws IOException {
+        if (manifest == null) {
+            for (int p = done.nextSetBit(0); p >= 0; p = done.nextSetBit(p + 1)) {
+                progress.markMissing(p);
+            }
+            done.clear();
+            return;
+        }
+        byte[] piece = new byte[layout.pieceSize()];
+        for (int p = done.nextSetBit(0); p >= 0; p = done.nextSetBit(p + 1)) {
+            int length = layout.lengthOf(p);
+            ByteBuffer buffer = ByteBuffer.wrap(piece, 0, length);
+            while (buffer.hasRemaining() && output.read(buffer, layout.offsetOf(p) + buffer.position()) >= 0) {
+                // Reads until the piece is complete or the file ends
+            }
+            if (buffer.hasRemaining() || !manifest.verify(p, piece, length)) {
+                done.clear(p);
+                progress.markMissing(p);
+            }
+        }
+    }
+
+    private synchronized PieceMap pieces() {
+        return pieces;
+    }
+
+    private void write(byte[] piece, int length, long offset) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(piece, 0, length);
+        while (buffer.hasRemaining()) {
+            output.write(buffer, offset + buffer.position());
+        }
+    }
+
+    /*
+     * Fetches pieces from one peer until the download is complete or the peer fails. Pieces
+     * still outstanding when it fails go back to the others. Returns the pieces it delivered.
+     */
+    private int fetchFrom(AddressPair source) {
+        String peer = addressOf(source);
+        ArrayDeque<Integer> inFlight = new ArrayDeque<>(PIPELINE_DEPTH);
+        PieceMap map = null;
+        int delivered = 0;
+        int corrupt = 0;
+        try (Socket socket = connect(source, PeerProtocol.SWARM_PREFIX)) {
+            sockets.add(socket);
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+
+            long fileSize = in.readLong();
+            if (fileSize == PeerProtocol.NO_SUCH_FILE) {
+                LOGGER.warning(peer + " no longer shares " + serverPath + ".");
+                return 0;
+            }
+            map = join(source, fileSize);
+            if (map == null) {
+                return 0;
+            }
+
+            byte[] piece = new byte[map.pieceSize()];
+            while (!map.isComplete() && !Thread.currentThread().isInterrupted()) {
+                int next;
+                while (inFlight.size() < PIPELINE_DEPTH && (next = map.next(inFlight)) >= 0) {
+                    PeerProtocol.writeRequest(out, map.offsetOf(next), map.lengthOf(next));
+                    inFlight.add(next);
+                }
+                if (inFlight.isEmpty()) {
+                    map.awaitWork(IDLE_WAIT_MILLIS);
+                    continue;
+                }
+                out.flush();
+
+                int arrived = inFlight.peek();
+                int length = map.lengthOf(arrived);
+                PeerProtocol.readPiece(in, map.offsetOf(arrived), length, piece);
+                inFlight.poll();
+                if (manifest != null && !manifest.verify(arrived, piece, length)) {
+                    map.reject(arrived);
+                    corruptPieces.incrementAndGet();
+                    LOGGER.warning(peer + " sent a corrupt piece " + arrived + " of " + serverPath + ".");
+                    if (++corrupt == MAX_CORRUPT_PIECES) {
+                        throw new IOException("Sent " + corrupt + " corrupt pieces; not asking it again.");
+                    }
+                    continue;
+                }
+                write(piece, length, map.offsetOf(arrived));
+                if (map.complete(arrived)) {
+                    progress.markDone(arrived);
+                    delivered++;
+                    bytesReceived.addAndGet(length);
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Fetching pieces of " + serverPath + " from " + peer + " failed: "
+                    + e.getMessage(), e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            if (map != null) {
+                for (int piece : inFlight) {
+                    map.release(piece);
+                }
+            }
+            sockets.removeIf(Socket::isClosed);
+        }
+        return delivered;
+    }
+
+    private void closeOutput() {
+        try {
+            if (output != null) {
+                output.close();
+            }
+            if (progress != null) {
+                progress.close();
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Closing " + destination + " failed: " + e.getMessage(), e);
+        }
+    }
+
+    // Unblocks connections still waiting on their peers, so that a stopped download stops at once
+    private void closeConnections() {
+        for (Socket socket : sockets) {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // Closing anyway
+            }
+        }
+    }
+
+    /**
+     * Runs the download. Returns false without touching the destination if no peer would
+     * serve the file in pieces, so the caller can fall back to a whole-file transfer. If the
+     * download cannot be completed, the pieces written so far are kept for the next attempt.
+     */
+    boolean run() throws DownloadException, InterruptedException {
+        long start = System.nanoTime();
+        manifest = fetchManifest();
+        if (manifest == null) {
+            LOGGER.warning("No peer has a manifest of " + serverPath + "; its pieces cannot be checked.");
+        }
+        ExecutorService connections = Executors.newFixedThreadPool(sources.size(), task -> {
+            Thread thread = new Thread(task, "swarm-download");
+            thread.setDaemon(true);
+            return thread;
+        });
+        List<Future<Integer>> deliveries = new ArrayList<>(sources.size());
+        try {
+            for (AddressPair source : sources) {
+                deliveries.add(connections.submit(() -> fetchFrom(source)));
+            }
+            List<String> contributions = new ArrayList<>(sources.size());
+            for (int i = 0; i < sources.size(); i++) {
+                AddressPair source = sources.get(i);
+                contributions.add(addressOf(source) + "=" + deliveries.get(i).get());
+            }
+
+            PieceMap map = pieces();
+            if (map == null) {
+                return false;
+            }
+            if (!map.isComplete()) {
+                throw new DownloadException("Every peer failed before " + serverPath + " was complete; "
+                        + map.completed() + " of " + map.pieceCount() + " pieces are kept, and downloading it "
+                        + "again resumes from there.");
+            }
+
+            closeOutput();
+            progress.delete();
+            if (manifest != null) {
+                // Saves this peer from hashing the file again when it seeds it
+                try {
+                    manifest.save(destination);
+                } catch (IOException e) {
+                    LOGGER.log(Level.WARNING, "Caching the manifest of " + destination + " failed: " + e.getMessage(), e);
+                }
+            }
+
+            double seconds = Math.max((System.nanoTime() - start) / 1e9, 1e-9);
+            LOGGER.info(String.format("Downloaded %d bytes of %s in %.2f s (%.1f MiB/s), %d corrupt pieces "
+                            + "fetched again; pieces per peer: %s",
+                    map.fileSize(), serverPath, seconds, bytesReceived.get() / seconds / (1024 * 1024),
+                    corruptPieces.get(), String.join(", ", contributions)));
+            return true;
+        } catch (ExecutionException e) {
+            throw new DownloadException("Swarm download of " + serverPath + " failed.", e);
+        } catch (IOException e) {
+            throw new DownloadException(e);
+        } finally {
+            connections.shutdownNow();
+            closeConnections();
+            closeOutput();
+        }
+    }
+}
@@ -5,9 +5,12 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.Reader;
 import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 
 public class FileData {
     private final Path addressPath;
@@ -39,4 +42,28 @@ public class FileData {
     public OutputStream newOutputStream() throws IOException {
         return Files.newOutputStream(addressPath);
     }
+
+    public FileChannel newReadChannel() throws IOException {
+        return FileChannel.open(addressPath, StandardOpenOption.READ);
+    }
+
+    /**
+     * Opens the file for reads and writes at arbitrary offsets, creating it if needed and
+     * truncating or extending it to {@code size} bytes. Bytes already within that size are kept.
+     */
+    public FileChannel newWriteChannel(long size) throws IOException {
+        FileChannel channel = FileChannel.open(addressPath, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        try {
+            if (channel.size() > size) {
+                channel.truncate(size);
+            } else if (channel.size() < size) {
+                channel.write(ByteBuffer.allocate(1), size - 1);
+            }
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        return channel;
+    }
 }
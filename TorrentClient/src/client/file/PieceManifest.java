@@ -0,0 +1,206 @@
+package client.file;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+/**
+ * SHA-256 hashes of the fixed-size pieces of one file, against which a downloader checks
+ * every piece as it arrives. A seeder computes the manifest once and caches it next to the
+ * file as {@code <file>.pieces}; the cache is used for as long as the file keeps the size and
+ * modification time it had when the manifest was made.
+ */
+public final class PieceManifest {
+    public static final String CACHE_SUFFIX = ".pieces";
+    public static final int HASH_LENGTH = 32;
+    private static final int CACHE_MAGIC = 0x504d4631;
+    // Hashes are read in steps of at most this many bytes, so a stream that claims more than it carries fails early
+    private static final int READ_STEP = 1024 * 1024;
+
+    private final long fileSize;
+    private final int pieceSize;
+    private final byte[] hashes;
+
+    private PieceManifest(long fileSize, int pieceSize, byte[] hashes) {
+        this.fileSize = fileSize;
+        this.pieceSize = pieceSize;
+        this.hashes = hashes;
+    }
+
+    public long fileSize() {
+        return fileSize;
+    }
+
+    public int pieceSize() {
+        return pieceSize;
+    }
+
+    public int pieceCount() {
+        return hashes.length / HASH_LENGTH;
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("Every Java runtime provides SHA-256.", e);
+        }
+    }
+
+    private static int pieceCountOf(long fileSize, int pieceSize) throws IOException {
+        long count = (fileSize + pieceSize - 1) / pieceSize;
+        if (fileSize < 0 || pieceSize <= 0 || count > Integer.MAX_VALUE / HASH_LENGTH) {
+            throw new IOException("No manifest fits " + fileSize + " bytes in pieces of " + pieceSize + ".");
+        }
+        return (int) count;
+    }
+
+    public static PieceManifest compute(Path file, int pieceSize) throws IOException {
+        try (FileChannel channel = new FileData(file).newReadChannel()) {
+            long fileSize = channel.size();
+            int count = pieceCountOf(fileSize, pieceSize);
+            byte[] hashes = new byte[count * HASH_LENGTH];
+            MessageDigest digest = sha256();
+            ByteBuffer buffer = ByteBuffer.allocate(pieceSize);
+            for (int piece = 0; piece < count; piece++) {
+                long offset = (long) piece * pieceSize;
+                buffer.clear().limit((int) Math.min(pieceSize, fileSize - offset));
+                while (buffer.hasRemaining()) {
+                    if (channel.read(buffer, offset + buffer.position()) < 0) {
+                        throw new IOException(file + " shrank while its manifest was being made.");
+                    }
+                }
+                buffer.flip();
+                digest.update(buffer);
+                System.arraycopy(digest.digest(), 0, hashes, piece * HASH_LENGTH, HASH_LENGTH);
+            }
+            return new PieceManifest(fileSize, pieceSize, hashes);
+        }
+    }
+
+    public static Path cacheOf(Path file) {
+        return file.resolveSibling(file.getFileName() + CACHE_SUFFIX);
+    }
+
+    /**
+     * Returns the cached manifest of {@code file}, or null if there is none that is still valid
+     * for the file as it is now and uses pieces of {@code pieceSize}.
+     */
+    public static PieceManifest cached(Path file, int pieceSize) throws IOException {
+        Path cache = cacheOf(file);
+        long fileSize = Files.size(file);
+        long modified = Files.getLastModifiedTime(file).toMillis();
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(cache)))) {
+            if (input.readInt() != CACHE_MAGIC || input.readLong() != modified) {
+                return null;
+            }
+            PieceManifest manifest = readFrom(input, pieceSize, pieceSize);
+            return manifest.fileSize == fileSize ? manifest : null;
+        } catch (IOException e) {
+            // A missing or damaged cache is just made again
+            return null;
+        }
+    }
+
+    /**
+     * Writes the manifest next to {@code file}, stamped with the file's current modification
+     * time, through a temporary file so that a half-written cache is never read.
+     */
+    public void save(Path file) throws IOException {
+        Path cache = cacheOf(file);
+        Path temporary = cache.resolveSibling(cache.getFileName() + ".tmp");
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+            output.writeInt(CACHE_MAGIC);
+            output.writeLong(Files.getLastModifiedTime(file).toMillis());
+            writeTo(output);
+        }
+        Files.move(temporary, cache, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Returns the manifest of {@code file} from its cache, or computes and caches it. A cache
+     * that cannot be written, for instance in a read-only directory, is not an error.
+     */
+    public static PieceManifest of(Path file, int pieceSize) throws IOException {
+        PieceManifest manifest = cached(file, pieceSize);
+        if (manifest != null) {
+            return manifest;
+        }
+        manifest = compute(file, pieceSize);
+        try {
+            manifest.save(file);
+        } catch (IOException e) {
+            // Served from memory this time and computed again next time
+        }
+        return manifest;
+    }
+
+    public void writeTo(DataOutputStream output) throws IOException {
+        output.writeLong(fileSize);
+        output.writeInt(pieceSize);
+        output.writeInt(pieceCount());
+        output.write(hashes);
+    }
+
+    /**
+     * Reads a manifest written by {@link #writeTo}. One whose pieces are not between
+     * {@code minPieceSize} and {@code maxPieceSize} bytes is rejected before any of its hashes
+     * are read, and the hashes are only given room as they actually arrive.
+     */
+    public static PieceManifest readFrom(DataInputStream input, int minPieceSize, int maxPieceSize)
+            throws IOException {
+        long fileSize = input.readLong();
+        int pieceSize = input.readInt();
+        if (pieceSize < minPieceSize || pieceSize > maxPieceSize) {
+            throw new IOException("A manifest with pieces of " + pieceSize + " bytes is outside the accepted "
+                    + minPieceSize + " to " + maxPieceSize + " bytes.");
+        }
+        int count = input.readInt();
+        if (count != pieceCountOf(fileSize, pieceSize)) {
+            throw new IOException("A manifest of " + count + " pieces cannot describe " + fileSize
+                    + " bytes in pieces of " + pieceSize + ".");
+        }
+
+        int length = count * HASH_LENGTH;
+        byte[] hashes = new byte[Math.min(length, READ_STEP)];
+        int read = 0;
+        while (read < length) {
+            if (read == hashes.length) {
+                hashes = Arrays.copyOf(hashes, (int) Math.min(length, 2L * hashes.length));
+            }
+            input.readFully(hashes, read, hashes.length - read);
+            read = hashes.length;
+        }
+        return new PieceManifest(fileSize, pieceSize, hashes);
+    }
+
+    /**
+     * Returns a SHA-256 hash of the whole manifest, which tells versions of a file apart.
+     */
+    public byte[] fingerprint() {
+        MessageDigest digest = sha256();
+        digest.update(ByteBuffer.allocate(Long.BYTES + Integer.BYTES).putLong(fileSize).putInt(pieceSize).flip());
+        digest.update(hashes);
+        return digest.digest();
+    }
+
+    /**
+     * Returns whether the first {@code length} bytes of {@code bytes} are exactly {@code piece}.
+     */
+    public boolean verify(int piece, byte[] bytes, int length) {
+        MessageDigest digest = sha256();
+        digest.update(bytes, 0, length);
+        int from = piece * HASH_LENGTH;
+        return Arrays.equals(digest.digest(), 0, HASH_LENGTH, hashes, from, from + HASH_LENGTH);
+    }
+}
@@ -1,5 +1,8 @@
 package client.lib;
 
+import java.util.ArrayList;
+import java.util.List;
+
 public class CommandExtractor {
 
     public static String extractCommandPrefix(String command) {
@@ -7,4 +10,34 @@ public class CommandExtractor {
         return (spaceIndex != -1) ? command.substring(0, spaceIndex) : command;
     }
 
+    /**
+     * Returns the words after the command prefix. Words are separated by any run of whitespace,
+     * and a word in double quotes may contain spaces, e.g. {@code register "my song.mp3" b.txt}.
+     */
+    public static List<String> extractArguments(String command) {
+        List<String> arguments = new ArrayList<>();
+        StringBuilder word = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < command.length(); i++) {
+            char c = command.charAt(i);
+            if (c == '"') {
+                quoted = !quoted;
+            } else if (Character.isWhitespace(c) && !quoted) {
+                addWord(arguments, word);
+            } else {
+                word.append(c);
+            }
+        }
+        addWord(arguments, word);
+        return arguments.isEmpty() ? arguments : arguments.subList(1, arguments.size());
+    }
+
+    // Empty words, such as a pair of quotes with nothing in them, name nothing and are dropped
+    private static void addWord(List<String> words, StringBuilder word) {
+        if (word.length() > 0) {
+            words.add(word.toString());
+            word.setLength(0);
+        }
+    }
+
 }
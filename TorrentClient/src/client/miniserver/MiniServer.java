@@ -2,32 +2,57 @@ package client.miniserver;
 
 import client.LogHandler;
 import client.file.FileData;
+import client.file.PieceManifest;
 
-import java.io.BufferedReader;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
 import java.io.DataOutputStream;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.io.PrintWriter;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 public class MiniServer extends Thread {
     private static final Logger LOGGER = Logger.getLogger(MiniServer.class.getName());
     private static final int CHUNK_SIZE = 1024;
+    // Downloaders beyond this are turned away and fetch their pieces from other peers
+    private static final int MAX_UPLOADS = 16;
+
+    private record CachedManifest(long size, long modified, PieceManifest manifest) {
+    }
 
     public Boolean hasStarted = true;
     private final ServerSocket serverSocket;
+    private final ThreadPoolExecutor uploads;
+    private final Map<Path, CachedManifest> manifests;
 
     private final int port;
 
     public MiniServer(ServerSocket serverSocket, int port) {
         this.serverSocket = serverSocket;
         this.port = port;
+        uploads = new ThreadPoolExecutor(0, MAX_UPLOADS, 60, TimeUnit.SECONDS, new SynchronousQueue<>(), task -> {
+            Thread thread = new Thread(task, "mini-server-upload");
+            thread.setDaemon(true);
+            return thread;
+        });
+        manifests = new ConcurrentHashMap<>();
         LogHandler.registerLogger(LOGGER, "logs/miniServer.log");
         LOGGER.log(Level.INFO, "Mini-server created.");
     }
@@ -41,19 +66,91 @@ public class MiniServer extends Thread {
         byte[] buffer = new byte[CHUNK_SIZE];
         while ((bytesCount = inputStream.read(buffer)) != -1) {
             socketOutput.write(buffer, 0, bytesCount);
-            socketOutput.flush();
         }
+        socketOutput.flush();
         inputStream.close();
     }
 
+    private void sendPieces(Path pathToFile, DataInputStream socketInput, DataOutputStream socketOutput)
+            throws IOException {
+        if (!Files.isRegularFile(pathToFile)) {
+            socketOutput.writeLong(PeerProtocol.NO_SUCH_FILE);
+            socketOutput.flush();
+            return;
+        }
+
+        try (FileChannel channel = new FileData(pathToFile).newReadChannel()) {
+            long size = channel.size();
+            socketOutput.writeLong(size);
+            socketOutput.flush();
+
+            byte[] piece = new byte[0];
+            while (true) {
+                long offset;
+                try {
+                    offset = socketInput.readLong();
+                } catch (EOFException e) {
+                    return;
+                }
+                int length = socketInput.readInt();
+                if (!PeerProtocol.isValidRequest(offset, length, size)) {
+                    throw new IOException("Invalid request for " + length + " bytes at " + offset
+                            + " of " + pathToFile + ".");
+                }
+
+                if (piece.length < length) {
+                    piece = new byte[length];
+                }
+                ByteBuffer buffer = ByteBuffer.wrap(piece, 0, length);
+                while (buffer.hasRemaining()) {
+                    if (channel.read(buffer, offset + buffer.position()) < 0) {
+                        throw new EOFException(pathToFile + " shrank while it was being sent.");
+                    }
+                }
+                PeerProtocol.writePiece(socketOutput, offset, piece, length);
+                // Answers to pipelined requests go out together
+                if (socketInput.available() == 0) {
+                    socketOutput.flush();
+                }
+            }
+        }
+    }
+
+    private void sendManifest(Path pathToFile, DataOutputStream socketOutput) throws IOException {
+        if (!Files.isRegularFile(pathToFile)) {
+            socketOutput.writeLong(PeerProtocol.NO_SUCH_FILE);
+            socketOutput.flush();
+            return;
+        }
+
+        Path key = pathToFile.toAbsolutePath().normalize();
+        long size = Files.size(pathToFile);
+        long modified = Files.getLastModifiedTime(pathToFile).toMillis();
+        CachedManifest cached = manifests.get(key);
+        if (cached == null || cached.size() != size || cached.modified() != modified) {
+            cached = new CachedManifest(size, modified, PieceManifest.of(pathToFile, PeerProtocol.PIECE_SIZE));
+            manifests.put(key, cached);
+        }
+        cached.manifest().writeTo(socketOutput);
+        socketOutput.flush();
+    }
+
     private void serviceClient(Socket clientSocket) {
-        try (BufferedReader br = new BufferedReader(new InputStreamReader(clientSocket.getInputStream()));
-                DataOutputStream socketOutput = new DataOutputStream(clientSocket.getOutputStream())) {
-            String pathToFile = br.readLine();
-            if (pathToFile.isBlank()) {
+        try (clientSocket;
+                DataInputStream socketInput = new DataInputStream(new BufferedInputStream(clientSocket.getInputStream()));
+                DataOutputStream socketOutput =
+                        new DataOutputStream(new BufferedOutputStream(clientSocket.getOutputStream()))) {
+            String request = PeerProtocol.readLine(socketInput);
+            if (request == null || request.isBlank()) {
                 return;
             }
-            sendFile(Paths.get(pathToFile), socketOutput);
+            if (request.startsWith(PeerProtocol.SWARM_PREFIX)) {
+                sendPieces(Paths.get(request.substring(PeerProtocol.SWARM_PREFIX.length())), socketInput, socketOutput);
+            } else if (request.startsWith(PeerProtocol.MANIFEST_PREFIX)) {
+                sendManifest(Paths.get(request.substring(PeerProtocol.MANIFEST_PREFIX.length())), socketOutput);
+            } else {
+                sendFile(Paths.get(request), socketOutput);
+            }
         } catch (IOException exception) {
             LOGGER.log(Level.SEVERE, "Sending file failed: "
                     + exception.getMessage(), exception);
@@ -64,12 +161,19 @@ public class MiniServer extends Thread {
             try {
                 while (!isInterrupted()) {
                     Socket clientSocket = serverSocket.accept();
-                    serviceClient(clientSocket);
-                    clientSocket.close();
+                    try {
+                        uploads.execute(() -> serviceClient(clientSocket));
+                    } catch (RejectedExecutionException e) {
+                        LOGGER.warning("Turned away " + clientSocket.getRemoteSocketAddress()
+                                + ": already serving " + MAX_UPLOADS + " downloads.");
+                        clientSocket.close();
+                    }
                 }
             }catch (IOException exception) {
                 LOGGER.log(Level.SEVERE, "Mini-server failed: "
                         + exception.getMessage(), exception);
+            } finally {
+                uploads.shutdown();
             }
     }
 
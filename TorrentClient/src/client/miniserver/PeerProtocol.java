@@ -0,0 +1,81 @@
+package client.miniserver;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * What peers say to each other. A connection opens with one text line naming the file. A bare
+ * path asks for the whole file, answered with its size and then every byte. A line of the form
+ * {@code swarm <path>} asks for pieces instead: the seeder answers with the file's size, or
+ * {@link #NO_SUCH_FILE}, and then serves {@code (offset, length)} requests in the order they
+ * arrive, each answered with the same two numbers followed by the bytes. Downloaders may send
+ * several requests before reading the first answer, and close the connection when they are done.
+ * A line of the form {@code manifest <path>} asks for the file's {@link client.file.PieceManifest},
+ * answered with {@link #NO_SUCH_FILE} or the manifest, after which the seeder closes the connection.
+ */
+public final class PeerProtocol {
+    public static final String SWARM_PREFIX = "swarm ";
+    public static final String MANIFEST_PREFIX = "manifest ";
+    public static final long NO_SUCH_FILE = -1;
+    public static final int PIECE_SIZE = 256 * 1024;
+    public static final int MAX_PIECE_LENGTH = 1024 * 1024;
+    // Manifests with smaller pieces are refused, which keeps a manifest within 1/512 of its file
+    public static final int MIN_PIECE_LENGTH = 16 * 1024;
+    private static final int MAX_LINE_LENGTH = 64 * 1024;
+
+    private PeerProtocol() {
+    }
+
+    /**
+     * Reads the opening line byte by byte, so that nothing after it is consumed. Returns null
+     * if the connection closed first.
+     */
+    public static String readLine(InputStream input) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int b;
+        while ((b = input.read()) != '\n') {
+            if (b == -1) {
+                return line.size() == 0 ? null : line.toString(StandardCharsets.UTF_8);
+            }
+            if (line.size() == MAX_LINE_LENGTH) {
+                throw new IOException("The request line is longer than " + MAX_LINE_LENGTH + " bytes.");
+            }
+            line.write(b);
+        }
+        String text = line.toString(StandardCharsets.UTF_8);
+        return text.endsWith("\r") ? text.substring(0, text.length() - 1) : text;
+    }
+
+    public static boolean isValidRequest(long offset, int length, long fileSize) {
+        return offset >= 0 && length > 0 && length <= MAX_PIECE_LENGTH && offset <= fileSize - length;
+    }
+
+    public static void writeRequest(DataOutputStream output, long offset, int length) throws IOException {
+        output.writeLong(offset);
+        output.writeInt(length);
+    }
+
+    public static void writePiece(DataOutputStream output, long offset, byte[] bytes, int length) throws IOException {
+        output.writeLong(offset);
+        output.writeInt(length);
+        output.write(bytes, 0, length);
+    }
+
+    /**
+     * Reads the answer to a {@code (offset, length)} request into {@code into}, failing if the
+     * seeder answered anything else.
+     */
+    public static void readPiece(DataInputStream input, long offset, int length, byte[] into) throws IOException {
+        long answeredOffset = input.readLong();
+        int answeredLength = input.readInt();
+        if (answeredOffset != offset || answeredLength != length) {
+            throw new IOException("Asked for " + length + " bytes at " + offset + " but received "
+                    + answeredLength + " bytes at " + answeredOffset + ".");
+        }
+        input.readFully(into, 0, length);
+    }
+}
@@ -0,0 +1,139 @@
+package client.download;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class DownloadProgressTest {
+    private static final long FILE_SIZE = 20 * 100 + 30;
+    private static final int PIECE_SIZE = 100;
+    private static final int PIECE_COUNT = 21;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static byte[] fingerprint(int seed) {
+        byte[] fingerprint = new byte[DownloadProgress.FINGERPRINT_LENGTH];
+        Arrays.fill(fingerprint, (byte) seed);
+        return fingerprint;
+    }
+
+    private Path destination() {
+        return folder.getRoot().toPath().resolve("movie.mkv");
+    }
+
+    private static BitSet bits(int... pieces) {
+        BitSet bits = new BitSet();
+        for (int piece : pieces) {
+            bits.set(piece);
+        }
+        return bits;
+    }
+
+    private void record(int... pieces) throws Exception {
+        try (DownloadProgress progress = DownloadProgress.open(destination(), FILE_SIZE, PIECE_SIZE, PIECE_COUNT,
+                fingerprint(1))) {
+            for (int piece : pieces) {
+                progress.markDone(piece);
+            }
+        }
+    }
+
+    @Test
+    public void testNewProgressHasNothingDone() throws Exception {
+        assertFalse(DownloadProgress.exists(destination()));
+        try (DownloadProgress progress = DownloadProgress.open(destination(), FILE_SIZE, PIECE_SIZE, PIECE_COUNT,
+                fingerprint(1))) {
+            assertTrue(progress.done().isEmpty());
+        }
+        assertTrue(DownloadProgress.exists(destination()));
+    }
+
+    @Test
+    public void testResumesWithThePiecesRecorded() throws Exception {
+        record(0, 7, 8, 20);
+
+        try (DownloadProgress progress = DownloadProgress.open(destination(), FILE_SIZE, PIECE_SIZE, PIECE_COUNT,
+                fingerprint(1))) {
+            assertEquals(bits(0, 7, 8, 20), progress.done());
+            progress.markMissing(7);
+        }
+        try (DownloadProgress progress = DownloadProgress.open(destination(), FILE_SIZE, PIECE_SIZE, PIECE_COUNT,
+                fingerprint(1))) {
+            assertEquals(bits(0, 8, 20), progress.done());
+        }
+    }
+
+    @Test
+    public void testOtherFingerprintStartsOver() throws Exception {
+        record(1, 2, 3);
+
+        try (DownloadProgress progress = DownloadProgress.open(destination(), FILE_SIZE, PIECE_SIZE, PIECE_COUNT,
+                fingerprint(2))) {
+            assertTrue(progress.done().isEmpty());
+        }
+        // The old pieces are gone for good, not kept for the first fingerprint
+        try (DownloadProgress progress = DownloadProgress.open(destination(), FILE_SIZE, PIECE_SIZE, PIECE_COUNT,
+                fingerprint(1))) {
+            assertTrue(progress.done().isEmpty());
+        }
+    }
+
+    @Test
+    public void testOtherSizeOrPieceSizeStartsOver() throws Exception {
+        record(1, 2, 3);
+        try (DownloadProgress progress = DownloadProgress.open(destination(), FILE_SIZE + 1, PIECE_SIZE, PIECE_COUNT,
+                fingerprint(1))) {
+            assertTrue(progress.done().isEmpty());
+        }
+
+        record(1, 2, 3);
+        try (DownloadProgress progress = DownloadProgress.open(destination(), FILE_SIZE, 2 * PIECE_SIZE, 11,
+                fingerprint(1))) {
+            assertTrue(progress.done().isEmpty());
+        }
+    }
+
+    @Test
+    public void testDamagedProgressStartsOver() throws Exception {
+        record(1, 2, 3);
+        Path path = DownloadProgress.fileOf(destination());
+        byte[] bytes = Files.readAllBytes(path);
+        Files.write(path, Arrays.copyOf(bytes, bytes.length - 1));
+
+        try (DownloadProgress progress = DownloadProgress.open(destination(), FILE_SIZE, PIECE_SIZE, PIECE_COUNT,
+                fingerprint(1))) {
+            assertTrue(progress.done().isEmpty());
+        }
+    }
+
+    @Test
+    public void testDeleteForgetsTheProgress() throws Exception {
+        DownloadProgress progress = DownloadProgress.open(destination(), FILE_SIZE, PIECE_SIZE, PIECE_COUNT,
+                fingerprint(1));
+        progress.markDone(4);
+        progress.delete();
+
+        assertFalse(DownloadProgress.exists(destination()));
+    }
+
+    @Test
+    public void testPieceMapSkipsPiecesAlreadyDone() {
+        PieceMap pieces = new PieceMap(FILE_SIZE, PIECE_SIZE, bits(0, 1, 3, 20));
+
+        assertEquals(4, pieces.completed());
+        assertEquals(2, pieces.next(Set.of()));
+        assertEquals(4, pieces.next(Set.of()));
+        assertFalse(pieces.isComplete());
+    }
+}
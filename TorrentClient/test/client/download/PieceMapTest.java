@@ -0,0 +1,141 @@
+package client.download;
+
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PieceMapTest {
+    @Test
+    public void testLastPieceIsShort() {
+        PieceMap pieces = new PieceMap(350, 100);
+
+        assertEquals(4, pieces.pieceCount());
+        assertEquals(300, pieces.offsetOf(3));
+        assertEquals(100, pieces.lengthOf(2));
+        assertEquals(50, pieces.lengthOf(3));
+    }
+
+    @Test
+    public void testEndGameAsksASecondPeerOnly() {
+        PieceMap pieces = new PieceMap(300, 100);
+        for (int piece = 0; piece < 3; piece++) {
+            assertEquals(piece, pieces.next(Set.of()));
+        }
+
+        // Nothing is pending any more, so pieces still on their way are handed out again
+        assertEquals(1, pieces.next(Set.of(0)));
+        assertEquals(0, pieces.next(Set.of(1)));
+        assertEquals(2, pieces.next(Set.of()));
+        // Every piece is asked of two peers now
+        assertEquals(-1, pieces.next(Set.of()));
+    }
+
+    @Test
+    public void testEndGameSkipsPiecesTheCallerAwaits() {
+        PieceMap pieces = new PieceMap(200, 100);
+        assertEquals(0, pieces.next(Set.of()));
+        assertEquals(1, pieces.next(Set.of()));
+
+        assertEquals(-1, pieces.next(List.of(0, 1)));
+        assertEquals(1, pieces.next(List.of(0)));
+    }
+
+    @Test
+    public void testDuplicateDeliveryCountsOnce() {
+        PieceMap pieces = new PieceMap(200, 100);
+        pieces.next(Set.of());
+        pieces.next(Set.of());
+        assertEquals(0, pieces.next(Set.of(1)));
+
+        assertTrue(pieces.complete(0));
+        assertFalse(pieces.complete(0));
+        assertEquals(1, pieces.completed());
+        assertFalse(pieces.isComplete());
+
+        // The piece is done, so the end game does not hand it out again
+        assertEquals(1, pieces.next(Set.of()));
+        assertTrue(pieces.complete(1));
+        assertTrue(pieces.isComplete());
+        assertEquals(-1, pieces.next(Set.of()));
+    }
+
+    @Test
+    public void testReleasedPieceIsHandedOutFirst() {
+        PieceMap pieces = new PieceMap(400, 100);
+        assertEquals(0, pieces.next(Set.of()));
+        assertEquals(1, pieces.next(Set.of()));
+
+        pieces.release(1);
+        assertEquals(1, pieces.next(Set.of()));
+        assertEquals(2, pieces.next(Set.of()));
+    }
+
+    @Test
+    public void testReleaseKeepsAPieceAnotherPeerIsSending() {
+        PieceMap pieces = new PieceMap(100, 100);
+        assertEquals(0, pieces.next(Set.of()));
+        assertEquals(0, pieces.next(Set.of()));
+
+        // The first peer fails, the second is still sending the piece
+        pieces.release(0);
+        assertEquals(0, pieces.next(Set.of()));
+        assertEquals(-1, pieces.next(Set.of()));
+
+        pieces.release(0);
+        pieces.release(0);
+        assertEquals(0, pieces.next(Set.of()));
+    }
+
+    @Test
+    public void testReleaseOfADeliveredPieceKeepsItDone() {
+        PieceMap pieces = new PieceMap(100, 100);
+        pieces.next(Set.of());
+        pieces.next(Set.of());
+
+        assertTrue(pieces.complete(0));
+        pieces.release(0);
+        assertTrue(pieces.isComplete());
+        assertEquals(-1, pieces.next(Set.of()));
+    }
+
+    @Test
+    public void testRejectedPieceGoesToTheBack() {
+        PieceMap pieces = new PieceMap(300, 100);
+        assertEquals(0, pieces.next(Set.of()));
+
+        pieces.reject(0);
+        assertEquals(1, pieces.next(Set.of()));
+        assertEquals(2, pieces.next(Set.of()));
+        assertEquals(0, pieces.next(Set.of()));
+        assertEquals(0, pieces.completed());
+    }
+
+    @Test
+    public void testRejectKeepsAPieceAnotherPeerIsSending() {
+        PieceMap pieces = new PieceMap(100, 100);
+        pieces.next(Set.of());
+        pieces.next(Set.of());
+
+        pieces.reject(0);
+        assertEquals(0, pieces.next(Set.of()));
+        assertEquals(-1, pieces.next(Set.of()));
+        assertTrue(pieces.complete(0));
+        assertTrue(pieces.isComplete());
+    }
+
+    @Test
+    public void testAwaitWorkReturnsOnceComplete() throws Exception {
+        PieceMap pieces = new PieceMap(100, 100);
+        pieces.next(Set.of());
+        pieces.complete(0);
+
+        long start = System.nanoTime();
+        pieces.awaitWork(10_000);
+        assertTrue(System.nanoTime() - start < 1_000_000_000L);
+    }
+}
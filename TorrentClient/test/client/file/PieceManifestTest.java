@@ -0,0 +1,171 @@
+package client.file;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class PieceManifestTest {
+    private static final int PIECE_SIZE = 1024;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path file(int size) throws IOException {
+        byte[] bytes = new byte[size];
+        for (int i = 0; i < size; i++) {
+            bytes[i] = (byte) (i * 31 + i / 7);
+        }
+        Path file = folder.getRoot().toPath().resolve("shared.bin");
+        Files.write(file, bytes);
+        return file;
+    }
+
+    private static byte[] bytesOf(PieceManifest manifest) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream output = new DataOutputStream(bytes)) {
+            manifest.writeTo(output);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static DataInputStream inputOf(byte[] bytes) {
+        return new DataInputStream(new ByteArrayInputStream(bytes));
+    }
+
+    private static byte[] header(long fileSize, int pieceSize, int count) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream output = new DataOutputStream(bytes)) {
+            output.writeLong(fileSize);
+            output.writeInt(pieceSize);
+            output.writeInt(count);
+        }
+        return bytes.toByteArray();
+    }
+
+    @Test
+    public void testVerifiesEachPiece() throws Exception {
+        Path file = file(2 * PIECE_SIZE + 100);
+        byte[] bytes = Files.readAllBytes(file);
+        PieceManifest manifest = PieceManifest.compute(file, PIECE_SIZE);
+
+        assertEquals(3, manifest.pieceCount());
+        byte[] last = Arrays.copyOfRange(bytes, 2 * PIECE_SIZE, bytes.length);
+        assertTrue(manifest.verify(2, last, last.length));
+        assertTrue(manifest.verify(0, bytes, PIECE_SIZE));
+        assertFalse(manifest.verify(1, bytes, PIECE_SIZE));
+
+        bytes[10] ^= 1;
+        assertFalse(manifest.verify(0, bytes, PIECE_SIZE));
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        PieceManifest manifest = PieceManifest.compute(file(5 * PIECE_SIZE), PIECE_SIZE);
+
+        PieceManifest read = PieceManifest.readFrom(inputOf(bytesOf(manifest)), PIECE_SIZE, PIECE_SIZE);
+        assertEquals(manifest.fileSize(), read.fileSize());
+        assertEquals(manifest.pieceSize(), read.pieceSize());
+        assertEquals(5, read.pieceCount());
+        assertArrayEquals(manifest.fingerprint(), read.fingerprint());
+    }
+
+    @Test
+    public void testEmptyFileHasNoPieces() throws Exception {
+        PieceManifest manifest = PieceManifest.compute(file(0), PIECE_SIZE);
+
+        assertEquals(0, manifest.pieceCount());
+        assertEquals(0, PieceManifest.readFrom(inputOf(bytesOf(manifest)), PIECE_SIZE, PIECE_SIZE).pieceCount());
+    }
+
+    @Test
+    public void testPieceSizeOutsideRangeIsRejectedBeforeTheHashes() throws Exception {
+        // A terabyte in pieces of one byte: the header alone, without a single hash behind it
+        byte[] header = header(1L << 40, 1, Integer.MAX_VALUE / PieceManifest.HASH_LENGTH);
+        try {
+            PieceManifest.readFrom(inputOf(header), PIECE_SIZE, 4 * PIECE_SIZE);
+            fail();
+        } catch (IOException e) {
+            assertEquals("A manifest with pieces of 1 bytes is outside the accepted 1024 to 4096 bytes.",
+                    e.getMessage());
+        }
+    }
+
+    @Test
+    public void testPieceCountMustFitTheFile() throws Exception {
+        try {
+            PieceManifest.readFrom(inputOf(header(10 * PIECE_SIZE, PIECE_SIZE, 9)), PIECE_SIZE, PIECE_SIZE);
+            fail();
+        } catch (IOException e) {
+            assertEquals("A manifest of 9 pieces cannot describe 10240 bytes in pieces of 1024.", e.getMessage());
+        }
+    }
+
+    @Test(expected = EOFException.class)
+    public void testTruncatedHashesFail() throws Exception {
+        byte[] bytes = bytesOf(PieceManifest.compute(file(3 * PIECE_SIZE), PIECE_SIZE));
+        PieceManifest.readFrom(inputOf(Arrays.copyOf(bytes, bytes.length - 1)), PIECE_SIZE, PIECE_SIZE);
+    }
+
+    @Test
+    public void testCacheIsUsedUntilTheFileChanges() throws Exception {
+        Path file = file(3 * PIECE_SIZE);
+        PieceManifest manifest = PieceManifest.of(file, PIECE_SIZE);
+        assertTrue(Files.exists(PieceManifest.cacheOf(file)));
+
+        PieceManifest cached = PieceManifest.cached(file, PIECE_SIZE);
+        assertNotNull(cached);
+        assertArrayEquals(manifest.fingerprint(), cached.fingerprint());
+        assertNull(PieceManifest.cached(file, 2 * PIECE_SIZE));
+
+        Files.setLastModifiedTime(file, FileTime.fromMillis(Files.getLastModifiedTime(file).toMillis() + 2_000));
+        assertNull(PieceManifest.cached(file, PIECE_SIZE));
+
+        // Made again for the file as it is now
+        PieceManifest remade = PieceManifest.of(file, PIECE_SIZE);
+        assertArrayEquals(manifest.fingerprint(), remade.fingerprint());
+        assertNotNull(PieceManifest.cached(file, PIECE_SIZE));
+    }
+
+    @Test
+    public void testCacheOfAResizedFileIsNotUsed() throws Exception {
+        Path file = file(3 * PIECE_SIZE);
+        FileTime modified = Files.getLastModifiedTime(file);
+        PieceManifest.of(file, PIECE_SIZE);
+
+        Files.write(file, new byte[4 * PIECE_SIZE]);
+        Files.setLastModifiedTime(file, modified);
+        assertNull(PieceManifest.cached(file, PIECE_SIZE));
+        assertEquals(4, PieceManifest.of(file, PIECE_SIZE).pieceCount());
+    }
+
+    @Test
+    public void testDamagedCacheIsMadeAgain() throws Exception {
+        Path file = file(3 * PIECE_SIZE);
+        PieceManifest manifest = PieceManifest.of(file, PIECE_SIZE);
+        Path cache = PieceManifest.cacheOf(file);
+        byte[] bytes = Files.readAllBytes(cache);
+        Files.write(cache, Arrays.copyOf(bytes, bytes.length / 2));
+
+        assertNull(PieceManifest.cached(file, PIECE_SIZE));
+        assertArrayEquals(manifest.fingerprint(), PieceManifest.of(file, PIECE_SIZE).fingerprint());
+    }
+}
@@ -0,0 +1,54 @@
+package common.cluster;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The part of the registry one tracker of a cluster owns. File names are hashed to 32 bits and
+ * the hash space is cut into {@code count} equal ranges; shard {@code index} holds the files
+ * whose hash falls into its range. Clients route with the same function, so it must never
+ * change without every tracker and client changing with it.
+ */
+public record Shard(int index, int count) {
+    public static final Shard WHOLE = new Shard(0, 1);
+
+    public Shard {
+        if (count < 1 || index < 0 || index >= count) {
+            throw new IllegalArgumentException("Invalid shard " + index + "/" + count + ".");
+        }
+    }
+
+    /**
+     * Parses a shard written as {@code index/count}, such as {@code 0/3}.
+     */
+    public static Shard parse(String text) {
+        int separator = text.indexOf('/');
+        if (separator < 0) {
+            throw new IllegalArgumentException("A shard is written as index/count, not " + text + ".");
+        }
+        return new Shard(Integer.parseInt(text.substring(0, separator).trim()),
+                Integer.parseInt(text.substring(separator + 1).trim()));
+    }
+
+    // FNV-1a over the UTF-8 bytes of the name
+    static int hash(String fileName) {
+        int hash = 0x811C9DC5;
+        for (byte b : fileName.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xFF;
+            hash *= 0x01000193;
+        }
+        return hash;
+    }
+
+    public static int ownerOf(String fileName, int count) {
+        return (int) (((hash(fileName) & 0xFFFFFFFFL) * count) >>> 32);
+    }
+
+    public boolean owns(String fileName) {
+        return count == 1 || ownerOf(fileName, count) == index;
+    }
+
+    @Override
+    public String toString() {
+        return index + "/" + count;
+    }
+}
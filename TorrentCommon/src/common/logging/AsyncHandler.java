@@ -0,0 +1,209 @@
+package common.logging;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.ErrorManager;
+import java.util.logging.Formatter;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+
+/**
+ * {@link Handler} that never makes the logging thread wait for the disk. Records go into a
+ * bounded ring buffer and a single writer thread drains whatever has accumulated, formats it
+ * and writes it with one flush per batch.
+ *
+ * <p>Under overload the buffer protects the more important records: once it is half full only
+ * every {@value #SAMPLE_RATE}th record below {@code WARNING} is kept, and once it is three
+ * quarters full those records are dropped, leaving the rest of the room to warnings and
+ * errors. Records that find no room at all are dropped too. The writer logs how many records
+ * it lost this way, so gaps in the log never go unnoticed.
+ */
+public final class AsyncHandler extends Handler {
+    private static final int SAMPLE_RATE = 16;
+    private static final int MAX_BATCH = 1024;
+    private static final long CLOSE_TIMEOUT_MILLIS = 2_000;
+
+    private final BlockingQueue<LogRecord> queue;
+    private final AtomicInteger pending;
+    private final int sampleThreshold;
+    private final int reserveThreshold;
+    private final AtomicLong sampleCounter;
+    private final AtomicLong sampledOut;
+    private final AtomicLong dropped;
+
+    private final OutputStream out;
+    private final Thread writer;
+    private volatile boolean closing;
+
+    public AsyncHandler(Path file, int capacity) throws IOException {
+        if (capacity < 4) {
+            throw new IllegalArgumentException("The log buffer needs room for at least four records.");
+        }
+        queue = new ArrayBlockingQueue<>(capacity);
+        pending = new AtomicInteger();
+        sampleThreshold = capacity / 2;
+        reserveThreshold = capacity * 3 / 4;
+        sampleCounter = new AtomicLong();
+        sampledOut = new AtomicLong();
+        dropped = new AtomicLong();
+
+        out = new BufferedOutputStream(Files.newOutputStream(file), 64 * 1024);
+        setFormatter(new LineFormatter());
+        writer = new Thread(this::drain, "async-log-" + file.getFileName());
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    @Override
+    public void publish(LogRecord record) {
+        if (closing || !isLoggable(record)) {
+            return;
+        }
+
+        if (record.getLevel().intValue() < Level.WARNING.intValue()) {
+            int depth = pending.get();
+            if (depth >= reserveThreshold) {
+                dropped.incrementAndGet();
+                return;
+            }
+            if (depth >= sampleThreshold && sampleCounter.getAndIncrement() % SAMPLE_RATE != 0) {
+                sampledOut.incrementAndGet();
+                return;
+            }
+        }
+
+        if (queue.offer(record)) {
+            pending.incrementAndGet();
+        } else {
+            dropped.incrementAndGet();
+        }
+    }
+
+    private String format(LogRecord record) {
+        try {
+            return getFormatter().format(record);
+        } catch (RuntimeException e) {
+            reportError("Formatting a log record failed.", e, ErrorManager.FORMAT_FAILURE);
+            return "";
+        }
+    }
+
+    private String lossReport() {
+        long lostToSampling = sampledOut.getAndSet(0);
+        long lostToDrops = dropped.getAndSet(0);
+        if (lostToSampling == 0 && lostToDrops == 0) {
+            return null;
+        }
+        LogRecord report = new LogRecord(Level.WARNING, "Logging fell behind: dropped " + lostToDrops
+                + " records and sampled out " + lostToSampling + " more.");
+        report.setLoggerName(AsyncHandler.class.getName());
+        return format(report);
+    }
+
+    private void writeBatch(List<LogRecord> batch) {
+        StringBuilder text = new StringBuilder();
+        for (LogRecord record : batch) {
+            text.append(format(record));
+        }
+        String losses = lossReport();
+        if (losses != null) {
+            text.append(losses);
+        }
+
+        try {
+            out.write(text.toString().getBytes(StandardCharsets.UTF_8));
+            out.flush();
+        } catch (IOException e) {
+            reportError("Writing log records failed.", e, ErrorManager.WRITE_FAILURE);
+        }
+    }
+
+    private void drain() {
+        List<LogRecord> batch = new ArrayList<>(MAX_BATCH);
+        while (!closing || !queue.isEmpty()) {
+            try {
+                LogRecord first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+            } catch (InterruptedException e) {
+                // Only close interrupts, and the loop drains what is left before it stops
+                continue;
+            }
+            queue.drainTo(batch, MAX_BATCH - 1);
+            pending.addAndGet(-batch.size());
+            writeBatch(batch);
+            batch.clear();
+        }
+    }
+
+    /**
+     * Records are flushed by the writer after every batch, so there is nothing to do here.
+     */
+    @Override
+    public void flush() {
+    }
+
+    /**
+     * Writes the records still buffered and closes the file, waiting a bounded time for the writer.
+     */
+    @Override
+    public void close() {
+        closing = true;
+        try {
+            writer.join(CLOSE_TIMEOUT_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            out.close();
+        } catch (IOException e) {
+            reportError("Closing the log file failed.", e, ErrorManager.CLOSE_FAILURE);
+        }
+    }
+
+    /**
+     * One line per record: local time, level, thread id, logger and message, followed by the
+     * stack trace if there is one. It never asks for the caller's class and method, which would
+     * walk the stack of whatever thread formats the record.
+     */
+    public static final class LineFormatter extends Formatter {
+        private static final DateTimeFormatter TIME = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSS");
+
+        @Override
+        public String format(LogRecord record) {
+            StringBuilder line = new StringBuilder(128);
+            line.append(TIME.format(LocalDateTime.ofInstant(record.getInstant(), ZoneId.systemDefault())))
+                    .append(' ').append(record.getLevel().getName())
+                    .append(" [").append(record.getLongThreadID()).append("] ")
+                    .append(record.getLoggerName())
+                    .append(": ").append(formatMessage(record))
+                    .append(System.lineSeparator());
+
+            if (record.getThrown() != null) {
+                StringWriter trace = new StringWriter();
+                record.getThrown().printStackTrace(new PrintWriter(trace));
+                line.append(trace);
+            }
+            return line.toString();
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package common.cluster;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ShardTest {
+    @Test
+    public void testParse() {
+        assertEquals(new Shard(2, 3), Shard.parse("2/3"));
+        assertEquals("0/1", Shard.WHOLE.toString());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testParseRejectsIndexOutOfRange() {
+        Shard.parse("3/3");
+    }
+
+    @Test
+    public void testHashIsFnv1a() {
+        // Clients and trackers of other versions route with it, so its values are pinned here
+        assertEquals(0x811C9DC5, Shard.hash(""));
+        assertEquals(0xE40C292C, Shard.hash("a"));
+        assertEquals(0xBF9CF968, Shard.hash("foobar"));
+    }
+
+    @Test
+    public void testEveryFileHasExactlyOneOwner() {
+        Shard[] shards = {new Shard(0, 3), new Shard(1, 3), new Shard(2, 3)};
+        int[] owned = new int[shards.length];
+        for (int file = 0; file < 30_000; file++) {
+            String name = "/home/user/file" + file + ".bin";
+            int owners = 0;
+            for (Shard shard : shards) {
+                if (shard.owns(name)) {
+                    owners++;
+                    owned[shard.index()]++;
+                }
+            }
+            assertEquals(1, owners);
+        }
+        for (int count : owned) {
+            assertTrue("Uneven split: " + count, Math.abs(count - 10_000) < 500);
+        }
+    }
+
+    @Test
+    public void testWholeOwnsEverything() {
+        assertTrue(Shard.WHOLE.owns("anything"));
+        assertFalse(new Shard(1, 2).owns(findOwnedBy(0, 2)));
+    }
+
+    private static String findOwnedBy(int index, int count) {
+        for (int i = 0; ; i++) {
+            if (Shard.ownerOf("file" + i, count) == index) {
+                return "file" + i;
+            }
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package common.logging;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Formatter;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class AsyncHandlerTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static LogRecord record(Level level, String message) {
+        LogRecord record = new LogRecord(level, message);
+        record.setLoggerName("test");
+        return record;
+    }
+
+    private static List<String> messages(Path file) throws Exception {
+        return Files.readAllLines(file, StandardCharsets.UTF_8).stream()
+                .map(line -> line.substring(line.indexOf(": ") + 2))
+                .toList();
+    }
+
+    @Test
+    public void testWritesRecordsInOrderOnClose() throws Exception {
+        Path file = folder.getRoot().toPath().resolve("tracker.log");
+        AsyncHandler handler = new AsyncHandler(file, 1024);
+        for (int i = 0; i < 500; i++) {
+            handler.publish(record(Level.INFO, "record " + i));
+        }
+        handler.close();
+
+        List<String> messages = messages(file);
+        assertEquals(500, messages.size());
+        for (int i = 0; i < 500; i++) {
+            assertEquals("record " + i, messages.get(i));
+        }
+    }
+
+    @Test
+    public void testOverloadKeepsWarningsAndReportsLosses() throws Exception {
+        Path file = folder.getRoot().toPath().resolve("tracker.log");
+        AsyncHandler handler = new AsyncHandler(file, 8);
+        CountDownLatch writerBusy = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AsyncHandler.LineFormatter lines = new AsyncHandler.LineFormatter();
+        handler.setFormatter(new Formatter() {
+            @Override
+            public String format(LogRecord record) {
+                if (record.getMessage().equals("stall")) {
+                    writerBusy.countDown();
+                    try {
+                        release.await(10, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                return lines.format(record);
+            }
+        });
+
+        handler.publish(record(Level.INFO, "stall"));
+        assertTrue(writerBusy.await(10, TimeUnit.SECONDS));
+        for (int i = 0; i < 100; i++) {
+            handler.publish(record(Level.FINE, "fine " + i));
+        }
+        for (int i = 0; i < 5; i++) {
+            handler.publish(record(Level.WARNING, "warning " + i));
+        }
+        release.countDown();
+        handler.close();
+
+        // Four records fill half the buffer, sampling keeps one in sixteen up to three quarters,
+        // and only warnings may take the last quarter. The losses are reported with the batch
+        // the writer was busy with.
+        List<String> messages = messages(file);
+        assertEquals(10, messages.size());
+        assertEquals("stall", messages.get(0));
+        assertTrue(messages.get(1), messages.get(1).endsWith("dropped 82 records and sampled out 15 more."));
+        assertEquals(List.of("fine 0", "fine 1", "fine 2", "fine 3", "fine 4", "fine 20", "warning 0", "warning 1"),
+                messages.subList(2, 10));
+    }
+}
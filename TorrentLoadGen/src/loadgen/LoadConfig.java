@@ -0,0 +1,53 @@
+package loadgen;
+
+/**
+ * Settings of one load run, read from {@code loadgen.*} system properties.
+ *
+ * @param rate total requests per second across all connections, or 0 to send each
+ *             connection's next request as soon as the previous reply arrives
+ */
+record LoadConfig(String host,
+                  int port,
+                  int connections,
+                  int workers,
+                  long warmupSeconds,
+                  long durationSeconds,
+                  double rate,
+                  int filesPerUser,
+                  TrafficMix mix,
+                  long seed,
+                  String reportFile) {
+
+    static final String DEFAULT_MIX = "connect=5,register=5,list-files=2,list-addresses=8,download=70,heartbeat=10";
+
+    LoadConfig {
+        if (connections < 1 || workers < 1) {
+            throw new IllegalArgumentException("A load run needs at least one connection and one worker.");
+        }
+        if (rate < 0 || filesPerUser < 0 || warmupSeconds < 0 || durationSeconds < 1) {
+            throw new IllegalArgumentException("Rates, file counts and durations cannot be negative.");
+        }
+    }
+
+    static LoadConfig fromProperties() {
+        return new LoadConfig(
+                System.getProperty("loadgen.host", "localhost"),
+                Integer.getInteger("loadgen.port", 5555),
+                Integer.getInteger("loadgen.connections", 1000),
+                Integer.getInteger("loadgen.workers", Math.max(1, Runtime.getRuntime().availableProcessors() / 2)),
+                Long.getLong("loadgen.warmupSeconds", 5),
+                Long.getLong("loadgen.durationSeconds", 30),
+                Double.parseDouble(System.getProperty("loadgen.rate", "0")),
+                Integer.getInteger("loadgen.filesPerUser", 10),
+                TrafficMix.parse(System.getProperty("loadgen.mix", DEFAULT_MIX)),
+                Long.getLong("loadgen.seed", 42),
+                System.getProperty("loadgen.report"));
+    }
+
+    /**
+     * Returns the nanoseconds between two requests of one connection in an open-loop run.
+     */
+    long requestInterval() {
+        return rate == 0 ? 0 : Math.max(1, Math.round(connections * 1_000_000_000L / rate));
+    }
+}
@@ -0,0 +1,133 @@
+package loadgen;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Load generator for the tracker. Opens {@code loadgen.connections} non-blocking connections,
+ * registers a peer with {@code loadgen.filesPerUser} files on each, then replays the
+ * {@code loadgen.mix} of commands for {@code loadgen.warmupSeconds} unmeasured and
+ * {@code loadgen.durationSeconds} measured seconds, and reports throughput and latency
+ * percentiles per command.
+ *
+ * <p>With {@code loadgen.rate} left at 0 every connection sends its next command as soon as
+ * the previous reply arrives, which finds the tracker's peak throughput. A positive rate
+ * spreads that many requests per second over the connections on a fixed schedule and times
+ * each one from its slot rather than from when it was sent, so a stalled tracker shows up in
+ * the percentiles instead of silently slowing the generator down.
+ *
+ * <p>Runs are reproducible for a given {@code loadgen.seed}. Example, against a tracker on
+ * the same host:
+ * <pre>
+ * java -Dloadgen.connections=10000 -Dloadgen.rate=50000 -cp tracker:loadgen loadgen.LoadGenerator
+ * </pre>
+ */
+public final class LoadGenerator {
+    private static final long SETUP_TIMEOUT_SECONDS = 300;
+
+    private LoadGenerator() {
+    }
+
+    private static List<LoadWorker> startWorkers(LoadConfig config, AtomicInteger ready, LoadStats setupStats) {
+        List<List<VirtualClient>> shares = new ArrayList<>();
+        for (int i = 0; i < config.workers(); i++) {
+            shares.add(new ArrayList<>());
+        }
+        for (int id = 0; id < config.connections(); id++) {
+            shares.get(id % config.workers()).add(new VirtualClient(id, config));
+        }
+
+        List<LoadWorker> workers = new ArrayList<>();
+        for (int i = 0; i < config.workers(); i++) {
+            LoadWorker worker = new LoadWorker("loadgen-worker-" + i, config, shares.get(i), ready, setupStats);
+            worker.start();
+            workers.add(worker);
+        }
+        return workers;
+    }
+
+    private static void awaitSetup(LoadConfig config, AtomicInteger ready, LoadStats setupStats)
+            throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(SETUP_TIMEOUT_SECONDS);
+        long settled;
+        while ((settled = ready.get() + setupStats.failures()) < config.connections()) {
+            if (System.nanoTime() - deadline > 0) {
+                System.out.println("Gave up waiting after " + settled + " of " + config.connections() + " connections.");
+                return;
+            }
+            Thread.sleep(1000);
+            System.out.println("Connected and registered " + ready.get() + " of " + config.connections() + " peers.");
+        }
+    }
+
+    private static void recordInto(List<LoadWorker> workers, LoadStats stats) {
+        for (LoadWorker worker : workers) {
+            worker.recordInto(stats);
+        }
+    }
+
+    private static LoadStats measure(LoadConfig config, List<LoadWorker> workers) throws InterruptedException {
+        LoadStats stats = new LoadStats();
+        recordInto(workers, stats);
+        long previous = 0;
+        for (long second = 1; second <= config.durationSeconds(); second++) {
+            Thread.sleep(1000);
+            long completed = stats.completed();
+            System.out.println("second " + second + ": " + (completed - previous) + " replies");
+            previous = completed;
+        }
+        recordInto(workers, null);
+        return stats;
+    }
+
+    static List<String> run(LoadConfig config) throws InterruptedException {
+        AtomicInteger ready = new AtomicInteger();
+        LoadStats setupStats = new LoadStats();
+        List<LoadWorker> workers = startWorkers(config, ready, setupStats);
+        try {
+            awaitSetup(config, ready, setupStats);
+            String setup = setupStats.totals("setup");
+
+            Thread.sleep(TimeUnit.SECONDS.toMillis(config.warmupSeconds()));
+            LoadStats stats = measure(config, workers);
+
+            List<String> report = new ArrayList<>();
+            report.add("connections " + config.connections() + " workers " + config.workers()
+                    + " rate " + (config.rate() == 0 ? "closed-loop" : config.rate() + "/s")
+                    + " files_per_user " + config.filesPerUser() + " seed " + config.seed());
+            report.add("mix " + config.mix());
+            report.add(setup);
+            report.add("setup_failures " + setupStats.failures());
+            report.addAll(stats.report());
+            return report;
+        } finally {
+            for (LoadWorker worker : workers) {
+                worker.interrupt();
+            }
+            for (LoadWorker worker : workers) {
+                worker.join();
+            }
+        }
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        LoadConfig config = LoadConfig.fromProperties();
+        List<String> report = run(config);
+        report.forEach(System.out::println);
+
+        if (config.reportFile() != null) {
+            try {
+                Files.write(Path.of(config.reportFile()),
+                        (String.join(System.lineSeparator(), report) + System.lineSeparator()).getBytes(StandardCharsets.UTF_8));
+            } catch (IOException e) {
+                System.err.println("Writing the report to " + config.reportFile() + " failed: " + e.getMessage());
+            }
+        }
+    }
+}
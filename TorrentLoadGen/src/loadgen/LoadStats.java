@@ -0,0 +1,90 @@
+package loadgen;
+
+import server.metrics.LatencyHistogram;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latencies and failures of one phase of a load run, per command. Safe to record from any
+ * worker thread.
+ */
+final class LoadStats {
+    private final LatencyHistogram[] latencies;
+    private final LatencyHistogram all;
+    private final LongAdder failures;
+    private final long startNanos;
+
+    LoadStats() {
+        latencies = new LatencyHistogram[TrafficMix.Verb.values().length];
+        for (int i = 0; i < latencies.length; i++) {
+            latencies[i] = new LatencyHistogram();
+        }
+        all = new LatencyHistogram();
+        failures = new LongAdder();
+        startNanos = System.nanoTime();
+    }
+
+    void record(TrafficMix.Verb verb, long nanos) {
+        latencies[verb.ordinal()].record(nanos);
+        all.record(nanos);
+    }
+
+    void fail() {
+        failures.increment();
+    }
+
+    long failures() {
+        return failures.sum();
+    }
+
+    long completed() {
+        return all.count();
+    }
+
+    private static String micros(long nanos) {
+        return String.format(Locale.ROOT, "%.1f", nanos / 1000.0);
+    }
+
+    private static String line(String name, LatencyHistogram histogram, double seconds) {
+        LatencyHistogram.Summary summary = histogram.summary();
+        return name + " count=" + summary.count()
+                + " per_second=" + String.format(Locale.ROOT, "%.1f", summary.count() / seconds)
+                + " mean_us=" + micros(Math.round(summary.mean()))
+                + " p50_us=" + micros(summary.p50())
+                + " p90_us=" + micros(summary.p90())
+                + " p99_us=" + micros(summary.p99())
+                + " p999_us=" + micros(summary.p999())
+                + " max_us=" + micros(summary.max());
+    }
+
+    private double seconds() {
+        return Math.max((System.nanoTime() - startNanos) / 1e9, 1e-9);
+    }
+
+    /**
+     * Returns the line of the report that covers every command of the phase, under {@code name}.
+     */
+    String totals(String name) {
+        return line(name, all, seconds());
+    }
+
+    /**
+     * Renders the phase in the format of the tracker's {@code stats} report, plus throughput.
+     */
+    List<String> report() {
+        double seconds = seconds();
+        List<String> lines = new ArrayList<>();
+        lines.add("seconds " + String.format(Locale.ROOT, "%.1f", seconds));
+        lines.add("failures " + failures.sum());
+        lines.add(line("all", all, seconds));
+        for (TrafficMix.Verb verb : TrafficMix.Verb.values()) {
+            if (latencies[verb.ordinal()].count() > 0) {
+                lines.add(line(verb.label(), latencies[verb.ordinal()], seconds));
+            }
+        }
+        return lines;
+    }
+}
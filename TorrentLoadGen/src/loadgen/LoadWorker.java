@@ -0,0 +1,224 @@
+package loadgen;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Drives a share of the virtual clients from one selector thread: opens their connections a
+ * few at a time, registers them, then sends each one's requests as its schedule comes due.
+ */
+final class LoadWorker extends Thread {
+    // Connections opened at once, so the tracker's accept backlog does not overflow
+    private static final int MAX_PENDING_CONNECTS = 64;
+    private static final long IDLE_SELECT_MILLIS = 100;
+
+    private final LoadConfig config;
+    private final Queue<VirtualClient> unopened;
+    private final PriorityQueue<VirtualClient> scheduled;
+    private final InetSocketAddress tracker;
+    private final SplittableRandom random;
+    private final AtomicInteger ready;
+    private final LoadStats setupStats;
+    private volatile LoadStats stats;
+    private Selector selector;
+    private int pendingConnects;
+
+    LoadWorker(String name, LoadConfig config, List<VirtualClient> clients, AtomicInteger ready,
+               LoadStats setupStats) {
+        super(name);
+        this.config = config;
+        this.ready = ready;
+        this.setupStats = setupStats;
+        unopened = new ArrayDeque<>(clients);
+        scheduled = new PriorityQueue<>(Comparator.comparingLong(VirtualClient::nextSendAt));
+        tracker = new InetSocketAddress(config.host(), config.port());
+        random = new SplittableRandom(config.seed() ^ name.hashCode());
+        setDaemon(true);
+    }
+
+    /**
+     * Sends the latencies measured from now on to {@code stats}, or nowhere if it is null.
+     */
+    void recordInto(LoadStats stats) {
+        this.stats = stats;
+    }
+
+    private void openConnections() {
+        while (pendingConnects < MAX_PENDING_CONNECTS && !unopened.isEmpty()) {
+            VirtualClient client = unopened.poll();
+            try {
+                SocketChannel channel = SocketChannel.open();
+                channel.configureBlocking(false);
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                client.attach(channel);
+                if (channel.connect(tracker)) {
+                    startRegistration(channel.register(selector, 0, client), client);
+                } else {
+                    channel.register(selector, SelectionKey.OP_CONNECT, client);
+                    pendingConnects++;
+                }
+            } catch (IOException e) {
+                setupStats.fail();
+                System.err.println("Connecting " + client.username() + " failed: " + e.getMessage());
+            }
+        }
+    }
+
+    private void startRegistration(SelectionKey key, VirtualClient client) throws IOException {
+        client.send(null, client.registration(), System.nanoTime());
+        flush(key, client);
+    }
+
+    private void flush(SelectionKey key, VirtualClient client) throws IOException {
+        key.interestOps(client.flush() ? SelectionKey.OP_READ : SelectionKey.OP_WRITE);
+    }
+
+    private void sendNext(SelectionKey key, VirtualClient client, long now) throws IOException {
+        TrafficMix.Verb verb = client.pickVerb();
+        // Open-loop requests are timed from their slot, closed-loop ones from when they go out
+        long intended = config.rate() == 0 ? now : client.nextSendAt();
+        client.send(verb, client.command(verb), intended);
+        flush(key, client);
+    }
+
+    private void schedule(SelectionKey key, VirtualClient client, long now) throws IOException {
+        long interval = config.requestInterval();
+        if (interval == 0) {
+            sendNext(key, client, now);
+            return;
+        }
+        // The first request of each client falls at a random point of its interval, to spread the load
+        long next = client.nextSendAt() == 0 ? now + random.nextLong(interval) : client.nextSendAt() + interval;
+        client.scheduleAt(next);
+        if (next - now <= 0) {
+            sendNext(key, client, now);
+        } else {
+            key.interestOps(0);
+            scheduled.add(client);
+        }
+    }
+
+    private void replyReceived(SelectionKey key, VirtualClient client) throws IOException {
+        long now = System.nanoTime();
+        boolean registration = !client.isRegistered();
+        TrafficMix.Verb verb = client.complete();
+        if (registration) {
+            setupStats.record(TrafficMix.Verb.REGISTER, now - client.intendedStart());
+            ready.incrementAndGet();
+        } else {
+            LoadStats current = stats;
+            if (current != null) {
+                current.record(verb, now - client.intendedStart());
+            }
+        }
+        schedule(key, client, now);
+    }
+
+    private void handle(SelectionKey key) {
+        VirtualClient client = (VirtualClient) key.attachment();
+        try {
+            if (key.isConnectable()) {
+                pendingConnects--;
+                client.channel().finishConnect();
+                startRegistration(key, client);
+                return;
+            }
+            if (key.isWritable()) {
+                flush(key, client);
+            }
+            if (key.isValid() && key.isReadable() && client.read()) {
+                replyReceived(key, client);
+            }
+        } catch (IOException e) {
+            (client.isRegistered() ? currentStatsOrSetup() : setupStats).fail();
+            System.err.println(e.getMessage());
+            key.cancel();
+            try {
+                client.channel().close();
+            } catch (IOException closing) {
+                // Already failed; nothing more to report
+            }
+        }
+    }
+
+    private LoadStats currentStatsOrSetup() {
+        LoadStats current = stats;
+        return current != null ? current : setupStats;
+    }
+
+    private void sendDue(long now) {
+        VirtualClient client;
+        while ((client = scheduled.peek()) != null && client.nextSendAt() - now <= 0) {
+            scheduled.poll();
+            SelectionKey key = client.channel().keyFor(selector);
+            try {
+                sendNext(key, client, now);
+            } catch (IOException e) {
+                currentStatsOrSetup().fail();
+                key.cancel();
+            }
+        }
+    }
+
+    private long selectTimeoutMillis(long now) {
+        VirtualClient next = scheduled.peek();
+        if (next == null) {
+            return IDLE_SELECT_MILLIS;
+        }
+        return Math.max(1, Math.min(IDLE_SELECT_MILLIS, TimeUnit.NANOSECONDS.toMillis(next.nextSendAt() - now)));
+    }
+
+    private void closeAll() {
+        for (SelectionKey key : selector.keys()) {
+            try {
+                key.channel().close();
+            } catch (IOException e) {
+                // Shutting down anyway
+            }
+        }
+        try {
+            selector.close();
+        } catch (IOException e) {
+            // Shutting down anyway
+        }
+    }
+
+    @Override
+    public void run() {
+        try {
+            selector = Selector.open();
+            while (!isInterrupted()) {
+                openConnections();
+                selector.select(selectTimeoutMillis(System.nanoTime()));
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (key.isValid()) {
+                        handle(key);
+                    }
+                }
+                sendDue(System.nanoTime());
+            }
+        } catch (IOException e) {
+            System.err.println(getName() + " failed: " + e.getMessage());
+        } finally {
+            if (selector != null) {
+                closeAll();
+            }
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package loadgen;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Weighted mix of tracker commands, written as {@code verb=weight,verb=weight,...}, for
+ * example {@code connect=5,register=5,list-files=40,download=50}. Weights are relative.
+ * Entries may also be separated by semicolons, which survive tools that split their own
+ * arguments on commas, such as JMH's {@code -p}.
+ */
+public final class TrafficMix {
+    /**
+     * The commands the generator knows how to build.
+     */
+    public enum Verb {
+        CONNECT("connect"),
+        REGISTER("register"),
+        UNREGISTER("unregister"),
+        LIST_FILES("list-files"),
+        LIST_ADDRESSES("list-addresses"),
+        DOWNLOAD("download"),
+        SEARCH("search"),
+        HEARTBEAT("heartbeat");
+
+        private final String label;
+
+        Verb(String label) {
+            this.label = label;
+        }
+
+        public String label() {
+            return label;
+        }
+
+        static Verb of(String label) {
+            for (Verb verb : values()) {
+                if (verb.label.equals(label)) {
+                    return verb;
+                }
+            }
+            throw new IllegalArgumentException("Unknown command " + label + " in the traffic mix.");
+        }
+    }
+
+    private final Verb[] verbs;
+    private final int[] cumulativeWeights;
+
+    private TrafficMix(Verb[] verbs, int[] cumulativeWeights) {
+        this.verbs = verbs;
+        this.cumulativeWeights = cumulativeWeights;
+    }
+
+    public static TrafficMix parse(String mix) {
+        List<Verb> verbs = new ArrayList<>();
+        List<Integer> weights = new ArrayList<>();
+        for (String entry : mix.split("[,;]")) {
+            String[] parts = entry.trim().split("=");
+            if (parts.length != 2) {
+                throw new IllegalArgumentException("A traffic mix entry is written as verb=weight, not " + entry + ".");
+            }
+            int weight = Integer.parseInt(parts[1].trim());
+            if (weight < 0) {
+                throw new IllegalArgumentException("Negative weight for " + parts[0] + ".");
+            }
+            if (weight > 0) {
+                verbs.add(Verb.of(parts[0].trim()));
+                weights.add(weight);
+            }
+        }
+        if (verbs.isEmpty()) {
+            throw new IllegalArgumentException("The traffic mix has no command with a positive weight.");
+        }
+
+        int[] cumulative = new int[weights.size()];
+        int total = 0;
+        for (int i = 0; i < cumulative.length; i++) {
+            total = Math.addExact(total, weights.get(i));
+            cumulative[i] = total;
+        }
+        return new TrafficMix(verbs.toArray(new Verb[0]), cumulative);
+    }
+
+    public Verb next(SplittableRandom random) {
+        int pick = random.nextInt(cumulativeWeights[cumulativeWeights.length - 1]);
+        for (int i = 0; i < cumulativeWeights.length; i++) {
+            if (pick < cumulativeWeights[i]) {
+                return verbs[i];
+            }
+        }
+        throw new AssertionError();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder();
+        int previous = 0;
+        for (int i = 0; i < verbs.length; i++) {
+            if (i > 0) {
+                text.append(',');
+            }
+            text.append(verbs[i].label()).append('=').append(cumulativeWeights[i] - previous);
+            previous = cumulativeWeights[i];
+        }
+        return text.toString();
+    }
+}
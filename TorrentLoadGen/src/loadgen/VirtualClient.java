@@ -0,0 +1,190 @@
+package loadgen;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.SplittableRandom;
+
+/**
+ * One simulated peer: a connection that registers its files once and then sends commands
+ * from the traffic mix, one at a time. Replies are only framed, never parsed: the tracker's
+ * text replies are a line count followed by that many lines, so counting line feeds is
+ * enough to know where each ends.
+ */
+final class VirtualClient {
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+    private final int id;
+    private final String username;
+    private final LoadConfig config;
+    private final SplittableRandom random;
+    private final ByteBuffer readBuffer;
+    private ByteBuffer writeBuffer;
+
+    private SocketChannel channel;
+    // Lines of the current reply still to come, or -1 while its line count is being read
+    private int linesLeft;
+    private int lineCount;
+    private TrafficMix.Verb inFlight;
+    private boolean registered;
+    private long intendedStart;
+    private long nextSendAt;
+
+    VirtualClient(int id, LoadConfig config) {
+        this.id = id;
+        this.config = config;
+        username = usernameOf(id);
+        random = new SplittableRandom(config.seed() * 31 + id);
+        readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+        linesLeft = -1;
+    }
+
+    static String usernameOf(int id) {
+        return "load-" + id;
+    }
+
+    static String fileOf(int id, int file) {
+        return "/load/" + usernameOf(id) + "/file-" + file;
+    }
+
+    String username() {
+        return username;
+    }
+
+    int peerPort() {
+        return 10_000 + id % 50_000;
+    }
+
+    SocketChannel channel() {
+        return channel;
+    }
+
+    void attach(SocketChannel channel) {
+        this.channel = channel;
+    }
+
+    boolean isRegistered() {
+        return registered;
+    }
+
+    long nextSendAt() {
+        return nextSendAt;
+    }
+
+    void scheduleAt(long nanos) {
+        nextSendAt = nanos;
+    }
+
+    /**
+     * Returns the setup command, which registers this peer and its files in one request.
+     */
+    String registration() {
+        StringBuilder command = new StringBuilder("register-bulk ")
+                .append(peerPort()).append(' ').append(username).append(' ').append(config.filesPerUser());
+        for (int file = 0; file < config.filesPerUser(); file++) {
+            command.append('\n').append(fileOf(id, file));
+        }
+        return command.toString();
+    }
+
+    String command(TrafficMix.Verb verb) {
+        int files = Math.max(config.filesPerUser(), 1);
+        return switch (verb) {
+            case CONNECT -> "connect probe-" + random.nextInt(config.connections() * 2);
+            case REGISTER -> "register " + peerPort() + " " + username + " /load/" + username + "/extra-" + random.nextInt(files);
+            case UNREGISTER -> "unregister " + username + " /load/" + username + "/extra-" + random.nextInt(files);
+            case LIST_FILES -> "list-files";
+            case LIST_ADDRESSES -> "list-addresses";
+            case DOWNLOAD -> "download " + fileOf(random.nextInt(config.connections()), random.nextInt(files));
+            case SEARCH -> "search " + usernameOf(random.nextInt(config.connections())) + "/ 20";
+            case HEARTBEAT -> "heartbeat " + username;
+        };
+    }
+
+    TrafficMix.Verb pickVerb() {
+        return config.mix().next(random);
+    }
+
+    /**
+     * Starts a request. {@code intendedStart} is when it should have been sent, so that time
+     * spent waiting behind a slow reply counts towards its latency.
+     */
+    void send(TrafficMix.Verb verb, String command, long intendedStart) {
+        inFlight = verb;
+        this.intendedStart = intendedStart;
+        writeBuffer = ByteBuffer.wrap((command + "\n").getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Writes what the channel accepts of the current request; returns true once all of it is written.
+     */
+    boolean flush() throws IOException {
+        if (writeBuffer == null) {
+            return true;
+        }
+        channel.write(writeBuffer);
+        if (writeBuffer.hasRemaining()) {
+            return false;
+        }
+        writeBuffer = null;
+        return true;
+    }
+
+    /**
+     * Reads what has arrived and returns true once the reply to the current request is complete.
+     */
+    boolean read() throws IOException {
+        readBuffer.clear();
+        int read = channel.read(readBuffer);
+        if (read < 0) {
+            throw new IOException("The tracker closed the connection of " + username + ".");
+        }
+        readBuffer.flip();
+        if (consume(readBuffer)) {
+            if (readBuffer.hasRemaining()) {
+                throw new IOException("The tracker sent more than one reply to " + username + ".");
+            }
+            return true;
+        }
+        return false;
+    }
+
+    // Frames reply bytes; returns true when the reply is complete, leaving any further bytes unread
+    boolean consume(ByteBuffer bytes) throws IOException {
+        while (bytes.hasRemaining()) {
+            byte b = bytes.get();
+            if (linesLeft < 0) {
+                if (b >= '0' && b <= '9') {
+                    lineCount = lineCount * 10 + (b - '0');
+                } else if (b == '\n') {
+                    linesLeft = lineCount;
+                    lineCount = 0;
+                } else if (b != '\r') {
+                    throw new IOException("Malformed reply line count for " + username + ".");
+                }
+            } else if (b == '\n') {
+                linesLeft--;
+            }
+            if (linesLeft == 0) {
+                linesLeft = -1;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Finishes the current request and returns its command, or null if it was the registration.
+     */
+    TrafficMix.Verb complete() {
+        TrafficMix.Verb verb = inFlight;
+        inFlight = null;
+        registered = true;
+        return verb;
+    }
+
+    long intendedStart() {
+        return intendedStart;
+    }
+}
@@ -0,0 +1,54 @@
+package loadgen;
+
+import org.junit.Test;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TrafficMixTest {
+    @Test
+    public void testWeightsAreRelative() {
+        TrafficMix mix = TrafficMix.parse("download=3, list-files=1, connect=0");
+        assertEquals("download=3,list-files=1", mix.toString());
+
+        Map<TrafficMix.Verb, Integer> picks = new EnumMap<>(TrafficMix.Verb.class);
+        SplittableRandom random = new SplittableRandom(1);
+        for (int i = 0; i < 40_000; i++) {
+            picks.merge(mix.next(random), 1, Integer::sum);
+        }
+        assertFalse(picks.containsKey(TrafficMix.Verb.CONNECT));
+        int downloads = picks.get(TrafficMix.Verb.DOWNLOAD);
+        assertTrue(downloads > 29_000 && downloads < 31_000);
+    }
+
+    @Test
+    public void testSameSeedSameTraffic() {
+        TrafficMix mix = TrafficMix.parse(LoadConfig.DEFAULT_MIX);
+        SplittableRandom first = new SplittableRandom(42);
+        SplittableRandom second = new SplittableRandom(42);
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(mix.next(first), mix.next(second));
+        }
+    }
+
+    @Test
+    public void testSemicolonsSeparateEntriesToo() {
+        assertEquals("download=90,search=10", TrafficMix.parse("download=90;search=10").toString());
+        assertEquals("connect=1,download=2,search=3", TrafficMix.parse("connect=1; download=2,search=3").toString());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownVerb() {
+        TrafficMix.parse("download=1,upload=1");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNothingToSend() {
+        TrafficMix.parse("download=0");
+    }
+}
@@ -0,0 +1,46 @@
+package loadgen;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class VirtualClientTest {
+    private static final LoadConfig CONFIG = new LoadConfig("localhost", 5555, 10, 1, 0, 1, 0, 2,
+            TrafficMix.parse("download=1"), 42, null);
+
+    private static ByteBuffer bytes(String text) {
+        return ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testRepliesSplitAcrossReads() throws IOException {
+        VirtualClient client = new VirtualClient(3, CONFIG);
+        assertFalse(client.consume(bytes("1")));
+        assertFalse(client.consume(bytes("2\r\nline 1\r\n")));
+        assertFalse(client.consume(bytes("line 2\nline 3\nline 4\nline 5\nline 6\nline 7\nline 8\nline 9\nline 10\nline 11\nli")));
+        assertTrue(client.consume(bytes("ne 12\n")));
+
+        ByteBuffer two = bytes("1\nfirst\n0\n");
+        assertTrue(client.consume(two));
+        assertTrue(client.consume(two));
+        assertFalse(two.hasRemaining());
+    }
+
+    @Test(expected = IOException.class)
+    public void testMalformedLineCount() throws IOException {
+        new VirtualClient(0, CONFIG).consume(bytes("Unknown command!\n"));
+    }
+
+    @Test
+    public void testRegistrationIsOneBulkCommand() {
+        VirtualClient client = new VirtualClient(3, CONFIG);
+        assertEquals("register-bulk 10003 load-3 2\n/load/load-3/file-0\n/load/load-3/file-1", client.registration());
+        assertTrue(client.command(TrafficMix.Verb.DOWNLOAD).matches("download /load/load-\\d/file-[01]"));
+    }
+}
@@ -0,0 +1,116 @@
+package server;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded log of the users that joined or left the registry, so that clients can catch up
+ * on the address list with only what changed since the version they last saw. Once the log
+ * is full the oldest changes are dropped, and clients that are further behind get the full
+ * list again.
+ */
+final class AddressLog implements RegistryListener {
+    private final long[] versions;
+    private final String[] usernames;
+    // Null for users that left
+    private final String[] addresses;
+    private int head;
+    private int size;
+
+    // Every change after floor is in the log; -1 until the first change arrives
+    private long floor;
+    private long latest;
+
+    /**
+     * Changes after {@code version}, with null addresses for users that left. Each user appears
+     * once, with its latest state.
+     */
+    record Delta(long version, Map<String, String> changes) {
+    }
+
+    AddressLog(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("The address log needs room for at least one change.");
+        }
+        versions = new long[capacity];
+        usernames = new String[capacity];
+        addresses = new String[capacity];
+        floor = -1;
+        latest = -1;
+    }
+
+    private int index(int position) {
+        return (head + position) % versions.length;
+    }
+
+    private void append(long version, String username, String address) {
+        if (size == versions.length) {
+            floor = versions[head];
+            usernames[head] = null;
+            addresses[head] = null;
+            head = index(1);
+            size--;
+        }
+        int i = index(size++);
+        versions[i] = version;
+        usernames[i] = username;
+        addresses[i] = address;
+    }
+
+    @Override
+    public synchronized void onChange(RegistryChange change) {
+        // A restore or a missed change leaves a gap, and nothing before it can be answered
+        if (latest < 0 || change.version() != latest + 1) {
+            head = 0;
+            size = 0;
+            floor = change.version() - 1;
+        }
+        latest = change.version();
+
+        switch (change.kind()) {
+            case REGISTER -> {
+                if (change.joined()) {
+                    append(change.version(), change.username(), change.address());
+                }
+            }
+            case DISCONNECT -> append(change.version(), change.username(), null);
+            case UNREGISTER -> {
+                // Unregistering files leaves the user and its address in place
+            }
+        }
+    }
+
+    private int firstAfter(long version) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (versions[index(middle)] <= version) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Returns the changes after {@code since}, or null if the log no longer reaches back that
+     * far. The caller must not ask for versions newer than the registry it has seen.
+     */
+    synchronized Delta since(long since) {
+        if (floor < 0 || since < floor) {
+            return null;
+        }
+        if (since >= latest) {
+            return new Delta(since, Map.of());
+        }
+
+        Map<String, String> changes = new LinkedHashMap<>();
+        for (int position = firstAfter(since); position < size; position++) {
+            int i = index(position);
+            changes.put(usernames[i], addresses[i]);
+        }
+        return new Delta(latest, changes);
+    }
+}
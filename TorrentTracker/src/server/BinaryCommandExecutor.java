@@ -0,0 +1,234 @@
+package server;
+
+import server.exceptions.ProtocolException;
+import server.metrics.LatencyHistogram;
+import server.protocol.BinaryCodec;
+import server.protocol.FrameWriter;
+
+import java.io.FileNotFoundException;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+class BinaryCommandExecutor {
+    private static final Logger LOGGER = Logger.getLogger(Server.class.getName());
+
+    private final CommandExecutor commandExecutor;
+    private final ServerData serverData;
+    private final LatencyHistogram[] opcodeLatency;
+
+    private final AtomicReference<CachedBody> listFilesBody;
+    private final AtomicReference<CachedBody> listAddressesBody;
+
+    private record CachedBody(long version, byte[] bytes) {
+        CachedBody newer(CachedBody other) {
+            return other.version() > version ? other : this;
+        }
+    }
+
+    BinaryCommandExecutor(CommandExecutor commandExecutor, ServerData serverData) {
+        this.commandExecutor = commandExecutor;
+        this.serverData = serverData;
+        String[] opcodes = {"unknown", "text", "list-addresses", "list-files", "download", "register",
+                "unregister", "connect", "heartbeat", "list-addresses-since"};
+        opcodeLatency = new LatencyHistogram[opcodes.length];
+        for (int i = 0; i < opcodes.length; i++) {
+            opcodeLatency[i] = commandExecutor.metrics().histogram("binary_" + opcodes[i]);
+        }
+        listFilesBody = new AtomicReference<>(new CachedBody(-1, new byte[0]));
+        listAddressesBody = new AtomicReference<>(new CachedBody(-1, new byte[0]));
+    }
+
+    private static void reply(ClientSession session, int requestId, byte status, byte[] body) {
+        session.enqueue(FrameWriter.replyHeader(requestId, status, body.length));
+        session.enqueue(body);
+    }
+
+    private static byte[] message(String text) {
+        return new FrameWriter().writeString(text).toByteArray();
+    }
+
+    private static Set<String> readStrings(ByteBuffer frame) throws ProtocolException {
+        int count = BinaryCodec.readVarInt(frame);
+        Set<String> strings = new HashSet<>();
+        for (int i = 0; i < count; i++) {
+            String string = BinaryCodec.readString(frame);
+            // A blank name is no file, just as a blank line in a text bulk body is skipped
+            if (!string.isBlank()) {
+                strings.add(string);
+            }
+        }
+        return strings;
+    }
+
+    private static void writeAddress(FrameWriter writer, String address) {
+        try {
+            writer.writeAddress(address);
+        } catch (UnknownHostException e) {
+            // Cannot happen for the IP literals the registry stores; keep the frame well-formed anyway
+            LOGGER.log(Level.WARNING, "Encoding address " + address + " failed: " + e.getMessage(), e);
+            writer.writeByte(4).writeBytes(new byte[4]).writePort(0);
+        }
+    }
+
+    private static byte[] encodeAddresses(RegistrySnapshot snapshot) {
+        FrameWriter writer = new FrameWriter();
+        writer.writeVarInt(snapshot.userCount());
+        snapshot.peers().forEach((username, peer) -> {
+            writer.writeString(username);
+            if (peer.isPacked()) {
+                long packed = peer.packedAddress();
+                writer.writeIpv4Address((int) (packed >>> 16), (int) (packed & 0xFFFF));
+            } else {
+                writeAddress(writer, peer.address());
+            }
+        });
+        return writer.toByteArray();
+    }
+
+    private static byte[] encodeFiles(RegistrySnapshot snapshot) {
+        FrameWriter writer = new FrameWriter();
+        writer.writeVarInt(snapshot.fileCount());
+        snapshot.owners().forEach((file, owners) -> {
+            byte[] path = snapshot.paths().bytes(file);
+            writer.writeVarInt(path.length).writeBytes(path);
+            writer.writeVarInt(owners.length);
+            for (String owner : owners) {
+                writer.writeString(owner);
+            }
+        });
+        return writer.toByteArray();
+    }
+
+    private CachedBody cachedListing(AtomicReference<CachedBody> cache, Function<RegistrySnapshot, byte[]> encoder) {
+        RegistrySnapshot snapshot = serverData.snapshot();
+        CachedBody cached = cache.get();
+        if (cached.version() == snapshot.version()) {
+            return cached;
+        }
+
+        CachedBody body = new CachedBody(snapshot.version(), encoder.apply(snapshot));
+        cache.accumulateAndGet(body, CachedBody::newer);
+        return body;
+    }
+
+    /*
+     * The reply starts with the version the client is now at and whether the rest is the full
+     * list, which is the list-addresses body, or a delta of users, each followed by 1 and its
+     * address if it joined or by 0 if it left.
+     */
+    private void listAddressesSince(ClientSession session, int requestId, ByteBuffer frame)
+            throws ProtocolException {
+        AddressLog.Delta delta = commandExecutor.addressesSince(BinaryCodec.readLong(frame));
+        if (delta == null) {
+            CachedBody full = cachedListing(listAddressesBody, BinaryCommandExecutor::encodeAddresses);
+            byte[] prefix = new FrameWriter(9).writeLong(full.version()).writeByte(1).toByteArray();
+            session.enqueue(FrameWriter.replyHeader(requestId, BinaryCodec.STATUS_OK,
+                    prefix.length + full.bytes().length));
+            session.enqueue(prefix);
+            session.enqueue(full.bytes());
+            return;
+        }
+
+        FrameWriter writer = new FrameWriter();
+        writer.writeLong(delta.version()).writeByte(0).writeVarInt(delta.changes().size());
+        delta.changes().forEach((username, address) -> {
+            writer.writeString(username);
+            if (address == null) {
+                writer.writeByte(0);
+            } else {
+                writeAddress(writer.writeByte(1), address);
+            }
+        });
+        reply(session, requestId, BinaryCodec.STATUS_OK, writer.toByteArray());
+    }
+
+    private void download(ClientSession session, int requestId, ByteBuffer frame) throws ProtocolException {
+        List<String> addresses;
+        try {
+            addresses = commandExecutor.rankedAddressesOf(BinaryCodec.readString(frame));
+        } catch (FileNotFoundException e) {
+            reply(session, requestId, BinaryCodec.STATUS_ERROR, message(e.getMessage()));
+            return;
+        }
+
+        FrameWriter writer = new FrameWriter();
+        writer.writeVarInt(addresses.size());
+        for (String address : addresses) {
+            writeAddress(writer, address);
+        }
+        reply(session, requestId, BinaryCodec.STATUS_OK, writer.toByteArray());
+    }
+
+    private void text(SocketChannel channel, ClientSession session, int requestId,
+                      ByteBuffer frame, InetAddress ip) throws ProtocolException {
+        String command = BinaryCodec.readString(frame);
+        if (CommandVerb.of(CommandLine.of(command)) == CommandVerb.SUBSCRIBE) {
+            reply(session, requestId, BinaryCodec.STATUS_ERROR, message("Subscriptions are not available on binary connections."));
+            return;
+        }
+        String reply = commandExecutor.execute(channel, command, ip).trim();
+        String[] lines = reply.split("\\R");
+
+        // The first text line is the line count, which the frame carries as a varint instead
+        FrameWriter writer = new FrameWriter();
+        writer.writeVarInt(lines.length - 1);
+        for (int i = 1; i < lines.length; i++) {
+            writer.writeString(lines[i]);
+        }
+        reply(session, requestId, BinaryCodec.STATUS_OK, writer.toByteArray());
+    }
+
+    /**
+     * Executes one binary request frame and queues its reply frame on the session.
+     */
+    void execute(SocketChannel channel, ByteBuffer frame, InetAddress ip, ClientSession session)
+            throws ProtocolException {
+        long start = System.nanoTime();
+        int requestId = BinaryCodec.readVarInt(frame);
+        if (!frame.hasRemaining()) {
+            throw new ProtocolException("Frame without an opcode.");
+        }
+        commandExecutor.noteActivity(channel);
+
+        byte opcode = frame.get();
+        switch (opcode) {
+            case BinaryCodec.OP_TEXT -> text(channel, session, requestId, frame, ip);
+            case BinaryCodec.OP_LIST_ADDRESSES -> reply(session, requestId, BinaryCodec.STATUS_OK,
+                    cachedListing(listAddressesBody, BinaryCommandExecutor::encodeAddresses).bytes());
+            case BinaryCodec.OP_LIST_FILES -> reply(session, requestId, BinaryCodec.STATUS_OK,
+                    cachedListing(listFilesBody, BinaryCommandExecutor::encodeFiles).bytes());
+            case BinaryCodec.OP_LIST_ADDRESSES_SINCE -> listAddressesSince(session, requestId, frame);
+            case BinaryCodec.OP_DOWNLOAD -> download(session, requestId, frame);
+            case BinaryCodec.OP_REGISTER -> {
+                int port = BinaryCodec.readPort(frame);
+                String username = BinaryCodec.readString(frame);
+                String result = commandExecutor.register(channel, username, port, readStrings(frame), ip);
+                reply(session, requestId, BinaryCodec.STATUS_OK, message(result));
+            }
+            case BinaryCodec.OP_UNREGISTER -> {
+                String username = BinaryCodec.readString(frame);
+                String result = commandExecutor.unregister(channel, username, readStrings(frame));
+                reply(session, requestId, BinaryCodec.STATUS_OK, message(result));
+            }
+            case BinaryCodec.OP_HEARTBEAT -> {
+                String result = commandExecutor.heartbeat(channel, BinaryCodec.readString(frame));
+                reply(session, requestId, BinaryCodec.STATUS_OK, message(result));
+            }
+            case BinaryCodec.OP_CONNECT -> {
+                boolean available = commandExecutor.isUsernameAvailable(BinaryCodec.readString(frame), ip);
+                reply(session, requestId, BinaryCodec.STATUS_OK, new byte[] {(byte) (available ? 1 : 0)});
+            }
+            default -> reply(session, requestId, BinaryCodec.STATUS_ERROR, message("Unknown command!"));
+        }
+        opcodeLatency[opcode > 0 && opcode < opcodeLatency.length ? opcode : 0].record(System.nanoTime() - start);
+    }
+}
@@ -0,0 +1,36 @@
+package server;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+class BufferPool {
+    private final int bufferSize;
+    private final int maxPooledBuffers;
+    private final Deque<ByteBuffer> freeBuffers;
+
+    BufferPool(int bufferSize, int maxPooledBuffers) {
+        this.bufferSize = bufferSize;
+        this.maxPooledBuffers = maxPooledBuffers;
+        freeBuffers = new ArrayDeque<>();
+    }
+
+    int bufferSize() {
+        return bufferSize;
+    }
+
+    ByteBuffer acquire() {
+        ByteBuffer buffer = freeBuffers.pollFirst();
+        if (buffer == null) {
+            return ByteBuffer.allocateDirect(bufferSize);
+        }
+        buffer.clear();
+        return buffer;
+    }
+
+    void release(ByteBuffer buffer) {
+        if (freeBuffers.size() < maxPooledBuffers) {
+            freeBuffers.addFirst(buffer);
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package server;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * A {@code register-bulk <port> <username> <count>} or {@code unregister-bulk <username> <count>}
+ * command, whose {@code count} file names follow on lines of their own. A name is the whole
+ * line byte for byte, so it may contain and even start or end with spaces; blank lines name
+ * no file. A single command can carry tens of thousands of files in one registry change
+ * instead of one round trip and one new registry version per file.
+ */
+final class BulkCommand {
+    static final int MAX_FILES = 1 << 18;
+    // Bytes of file names one command may hold; the client sends at most 512 KiB per command
+    static final int MAX_BODY_BYTES = 4 << 20;
+    // File lines cost the rate limiter one command per this many of them
+    static final int LINES_PER_CHARGE = 1024;
+
+    private final CommandVerb verb;
+    private final String username;
+    private final int port;
+    private final Set<String> files;
+    private int remaining;
+    private int received;
+    private long bodyBytes;
+    private String error;
+
+    private BulkCommand(CommandVerb verb, String username, int port, int count) {
+        this.verb = verb;
+        this.username = username;
+        this.port = port;
+        files = new HashSet<>();
+        remaining = count;
+    }
+
+    static boolean isBulk(CommandVerb verb) {
+        return verb == CommandVerb.REGISTER_BULK || verb == CommandVerb.UNREGISTER_BULK;
+    }
+
+    /**
+     * Parses the header line of a bulk command. Returns null if it has no file count, in which
+     * case no body is expected and the lines that follow are commands of their own. A header
+     * that is already known to fail, such as one announcing more than {@link #MAX_FILES} files,
+     * yields a command that is complete at once: its error is the reply, and the lines that
+     * follow are commands of their own too.
+     */
+    static BulkCommand parse(CommandLine header) {
+        CommandVerb verb = CommandVerb.of(header);
+        int expectedTokens = verb == CommandVerb.REGISTER_BULK ? 4 : 3;
+        if (header.tokenCount() != expectedTokens) {
+            return null;
+        }
+
+        int count;
+        try {
+            count = header.intToken(expectedTokens - 1);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+
+        int port = -1;
+        String error = null;
+        if (verb == CommandVerb.REGISTER_BULK) {
+            try {
+                port = header.intToken(1);
+            } catch (NumberFormatException e) {
+                error = "Could not retrieve port.";
+            }
+        }
+        if (count > MAX_FILES) {
+            error = "A bulk command carries at most " + MAX_FILES + " files.";
+        }
+        BulkCommand command = new BulkCommand(verb, header.token(expectedTokens - 2), port, error == null ? count : 0);
+        command.error = error;
+        return command;
+    }
+
+    /**
+     * Adds the next body line and returns true once the last one has arrived. Once the lines
+     * add up to more than {@link #MAX_BODY_BYTES}, the command fails and the rest of its lines
+     * are only counted.
+     */
+    boolean add(CommandLine line) {
+        if (remaining == 0) {
+            return true;
+        }
+        bodyBytes += line.length();
+        if (error == null && bodyBytes > MAX_BODY_BYTES) {
+            error = "A bulk command carries at most " + MAX_BODY_BYTES + " bytes of file names.";
+            files.clear();
+        }
+        if (error == null && line.tokenCount() > 0) {
+            files.add(line.rawText());
+        }
+        received++;
+        return --remaining == 0;
+    }
+
+    /**
+     * Returns whether the next body line is one the rate limiter charges for, like a command.
+     */
+    boolean chargesNextLine() {
+        return (received + 1) % LINES_PER_CHARGE == 0;
+    }
+
+    boolean isComplete() {
+        return remaining == 0;
+    }
+
+    CommandVerb verb() {
+        return verb;
+    }
+
+    String username() {
+        return username;
+    }
+
+    int port() {
+        return port;
+    }
+
+    Set<String> files() {
+        return files;
+    }
+
+    /**
+     * Returns why the command cannot be carried out, or null if it can.
+     */
+    String error() {
+        return error;
+    }
+}
@@ -0,0 +1,282 @@
+package server;
+
+import server.exceptions.ProtocolException;
+import server.limits.TokenBucket;
+import server.protocol.BinaryCodec;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+class ClientSession {
+    private static final int INITIAL_BUFFER_SIZE = 512;
+    private static final int MAX_MESSAGE_LENGTH = 1 << 20;
+    private static final byte LINE_FEED = '\n';
+
+    private final BufferPool bufferPool;
+    private final TokenBucket bucket;
+    private final Deque<ByteBuffer> writeQueue;
+    private long pendingWriteBytes;
+    private boolean throttled;
+    private long throttledUntil;
+    private boolean waitingForWrites;
+    private BulkCommand bulkCommand;
+
+    private ByteBuffer readBuffer;
+    private int lineStart;
+    private int scanPosition;
+    private boolean binary;
+
+    ClientSession(BufferPool bufferPool) {
+        this(bufferPool, null);
+    }
+
+    ClientSession(BufferPool bufferPool, TokenBucket bucket) {
+        this.bufferPool = bufferPool;
+        this.bucket = bucket;
+        writeQueue = new ArrayDeque<>();
+        readBuffer = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+    }
+
+    // Drops the lines already handed out so the unfinished one starts at the beginning of the buffer
+    private void compact() {
+        if (lineStart == 0) {
+            return;
+        }
+        int pending = readBuffer.position() - lineStart;
+        System.arraycopy(readBuffer.array(), lineStart, readBuffer.array(), 0, pending);
+        readBuffer.position(pending);
+        scanPosition -= lineStart;
+        lineStart = 0;
+    }
+
+    // Returns false if the buffer is full of commands that have not been run yet
+    private boolean ensureSpace() throws IOException {
+        compact();
+        if (readBuffer.hasRemaining()) {
+            return true;
+        }
+        if (readBuffer.capacity() >= MAX_MESSAGE_LENGTH) {
+            try {
+                if (hasCompleteMessage()) {
+                    return false;
+                }
+            } catch (ProtocolException exception) {
+                throw new IOException(exception.getMessage(), exception);
+            }
+            throw new IOException("Command exceeds " + MAX_MESSAGE_LENGTH + " bytes.");
+        }
+        ByteBuffer grown = ByteBuffer.allocate(Math.min(readBuffer.capacity() * 2, MAX_MESSAGE_LENGTH));
+        readBuffer.flip();
+        grown.put(readBuffer);
+        readBuffer = grown;
+        return true;
+    }
+
+    /**
+     * Reads the bytes the channel has available into this session's buffer. Reads nothing while
+     * the buffer is full of complete commands that have not been handed out yet.
+     */
+    int readFrom(ReadableByteChannel channel) throws IOException {
+        if (!ensureSpace()) {
+            return 0;
+        }
+        return channel.read(readBuffer);
+    }
+
+    /**
+     * Points the given view at the next complete line received on this connection and returns
+     * true, or returns false if the buffered bytes do not end a line yet. The view stays valid
+     * until the next read.
+     */
+    boolean nextLine(CommandLine line) {
+        byte[] bytes = readBuffer.array();
+        int limit = readBuffer.position();
+
+        for (int i = scanPosition; i < limit; i++) {
+            if (bytes[i] == LINE_FEED) {
+                line.parse(bytes, lineStart, i);
+                lineStart = i + 1;
+                scanPosition = lineStart;
+                return true;
+            }
+        }
+        scanPosition = limit;
+        return false;
+    }
+
+    boolean isBinary() {
+        return binary;
+    }
+
+    /**
+     * Switches the connection to binary frames. Bytes already buffered after the current line
+     * are interpreted as frames.
+     */
+    void switchToBinary() {
+        binary = true;
+    }
+
+    // Returns the length of the frame at the front of pending if it has fully arrived, or NO_FRAME
+    private static int completeFrameLength(ByteBuffer pending) throws ProtocolException {
+        int length = BinaryCodec.readFrameLength(pending);
+        if (length == BinaryCodec.NO_FRAME) {
+            return BinaryCodec.NO_FRAME;
+        }
+        if (length > MAX_MESSAGE_LENGTH) {
+            throw new ProtocolException("Frame of " + length + " bytes exceeds " + MAX_MESSAGE_LENGTH + " bytes.");
+        }
+        return pending.remaining() < length ? BinaryCodec.NO_FRAME : length;
+    }
+
+    private ByteBuffer pendingBytes() {
+        return ByteBuffer.wrap(readBuffer.array(), lineStart, readBuffer.position() - lineStart);
+    }
+
+    /**
+     * Returns the payload of the next complete binary frame, or null if it has not fully arrived.
+     * The returned buffer shares the read buffer and stays valid until the next read.
+     */
+    ByteBuffer nextFrame() throws ProtocolException {
+        ByteBuffer pending = pendingBytes();
+        int length = completeFrameLength(pending);
+        if (length == BinaryCodec.NO_FRAME) {
+            return null;
+        }
+
+        ByteBuffer frame = pending.slice();
+        frame.limit(length);
+        lineStart = pending.position() + length;
+        scanPosition = lineStart;
+        return frame;
+    }
+
+    /**
+     * Returns whether a whole line, or frame in binary mode, is buffered, without handing it out.
+     */
+    boolean hasCompleteMessage() throws ProtocolException {
+        if (binary) {
+            return completeFrameLength(pendingBytes()) != BinaryCodec.NO_FRAME;
+        }
+        byte[] bytes = readBuffer.array();
+        int limit = readBuffer.position();
+        for (int i = scanPosition; i < limit; i++) {
+            if (bytes[i] == LINE_FEED) {
+                scanPosition = i;
+                return true;
+            }
+        }
+        scanPosition = limit;
+        return false;
+    }
+
+    /**
+     * Queues a reply behind the ones not yet written, copying it into pooled buffers.
+     */
+    void enqueue(byte[] data) {
+        int offset = 0;
+        ByteBuffer tail = writeQueue.peekLast();
+        while (offset < data.length) {
+            if (tail == null || !tail.hasRemaining()) {
+                tail = bufferPool.acquire();
+                writeQueue.addLast(tail);
+            }
+            int length = Math.min(tail.remaining(), data.length - offset);
+            tail.put(data, offset, length);
+            offset += length;
+        }
+        pendingWriteBytes += data.length;
+    }
+
+    /**
+     * Writes queued replies until the queue is empty or the channel stops accepting bytes.
+     * Returns true when everything queued has been written.
+     */
+    boolean flushTo(WritableByteChannel channel) throws IOException {
+        ByteBuffer head;
+        while ((head = writeQueue.peekFirst()) != null) {
+            head.flip();
+            int written = channel.write(head);
+            pendingWriteBytes -= written;
+
+            if (head.hasRemaining()) {
+                // Back to fill mode, keeping the unwritten bytes, so later replies can still be appended
+                head.compact();
+                return false;
+            }
+            writeQueue.pollFirst();
+            bufferPool.release(head);
+        }
+        return true;
+    }
+
+    boolean hasPendingWrites() {
+        return !writeQueue.isEmpty();
+    }
+
+    long pendingWriteBytes() {
+        return pendingWriteBytes;
+    }
+
+    /**
+     * Returns the bulk command whose file lines are still arriving, or null if there is none.
+     */
+    BulkCommand bulkCommand() {
+        return bulkCommand;
+    }
+
+    void collectBulk(BulkCommand command) {
+        bulkCommand = command;
+    }
+
+    TokenBucket bucket() {
+        return bucket;
+    }
+
+    /**
+     * Stops reading from this connection until {@link #releaseThrottle()}, which the reactor
+     * calls once {@code until} has passed.
+     */
+    void throttleUntil(long until) {
+        throttled = true;
+        throttledUntil = until;
+    }
+
+    long throttledUntil() {
+        return throttledUntil;
+    }
+
+    void releaseThrottle() {
+        throttled = false;
+    }
+
+    /**
+     * Stops reading from this connection until its queued replies have been written.
+     */
+    void waitForWrites(boolean waiting) {
+        waitingForWrites = waiting;
+    }
+
+    boolean isWaitingForWrites() {
+        return waitingForWrites;
+    }
+
+    /**
+     * Returns whether the connection is over its rate limit or behind on writes, so the reactor
+     * should neither read from it nor run its commands.
+     */
+    boolean isReadSuspended() {
+        return throttled || waitingForWrites;
+    }
+
+    void releaseBuffers() {
+        ByteBuffer buffer;
+        while ((buffer = writeQueue.pollFirst()) != null) {
+            bufferPool.release(buffer);
+        }
+        pendingWriteBytes = 0;
+    }
+}
@@ -1,16 +1,27 @@
 package server;
 
+import common.cluster.Shard;
 import server.exceptions.InvalidUserException;
 import server.exceptions.UserNotFoundException;
+import server.liveness.PeerLiveness;
+import server.metrics.LatencyHistogram;
+import server.metrics.TrackerMetrics;
+import server.selection.LeastHandedOutPolicy;
+import server.selection.PeerSelectionPolicy;
 
 import java.io.FileNotFoundException;
 import java.net.InetAddress;
 import java.nio.channels.SocketChannel;
-import java.util.Arrays;
-import java.util.HashMap;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -18,52 +29,128 @@ public class CommandExecutor {
     private static final int REGISTER_FILE_OFFSET = 3;
     private static final int UNREGISTER_FILE_OFFSET = 2;
     private static final String SINGLE_LINE_PREFIX = "1" + System.lineSeparator();
+    private static final String BULK_USAGE =
+            "A bulk command ends with the number of file lines that follow it.";
+    private static final int ADDRESS_LOG_CAPACITY = 1 << 14;
+    private static final int DEFAULT_SEARCH_LIMIT = 100;
+    private static final int MAX_SEARCH_LIMIT = 1000;
 
     private static final Logger LOGGER = Logger.getLogger(Server.class.getName());
 
     private final Map<SocketChannel, String> channelUserMap;
     private final ServerData serverData;
+    private final PeerSelectionPolicy peerSelectionPolicy;
+    private final AddressLog addressLog;
+    private final FileSearchIndex searchIndex;
+    private final TrackerMetrics metrics;
+    private final LatencyHistogram[] commandLatency;
+
+    private volatile PeerLiveness liveness;
+    private volatile Shard shard;
+    // Users restored from disk whose clients may still come back and claim them
+    private volatile Set<String> restoredUsers = Set.of();
+
+    private final AtomicReference<EncodedReply> listFilesReply;
+    private final AtomicReference<EncodedReply> listAddressesReply;
+
+    /**
+     * A list-addresses-since reply and the version it brings the client to. Empty replies
+     * are deltas without changes.
+     */
+    record AddressReply(long version, boolean empty, String text) {
+    }
+
+    private record EncodedReply(long version, byte[] bytes) {
+        EncodedReply newer(EncodedReply other) {
+            return other.version() > version ? other : this;
+        }
+    }
 
     CommandExecutor(ServerData serverData) {
-        this.serverData = serverData;
-        channelUserMap = new HashMap<>();
+        this(serverData, new LeastHandedOutPolicy());
     }
 
-    private Set<String> getFilesFromCommand(int offset, String[] words) {
-        return new HashSet<>(Arrays.asList(words).subList(offset, words.length));
+    CommandExecutor(ServerData serverData, PeerSelectionPolicy peerSelectionPolicy) {
+        this(serverData, peerSelectionPolicy, new TrackerMetrics());
     }
 
-    private boolean checkInvalidUser(SocketChannel channel, String username) {
-        if (channelUserMap.containsKey(channel)) {
-            return !channelUserMap.get(channel).equals(username);
+    CommandExecutor(ServerData serverData, PeerSelectionPolicy peerSelectionPolicy, TrackerMetrics metrics) {
+        this.serverData = serverData;
+        this.peerSelectionPolicy = peerSelectionPolicy;
+        this.metrics = metrics;
+        CommandVerb[] verbs = CommandVerb.values();
+        commandLatency = new LatencyHistogram[verbs.length];
+        for (CommandVerb verb : verbs) {
+            commandLatency[verb.ordinal()] = metrics.histogram("command_" + verb.label());
         }
-        channelUserMap.put(channel, username);
-        return false;
+        shard = Shard.WHOLE;
+        channelUserMap = new ConcurrentHashMap<>();
+        addressLog = new AddressLog(ADDRESS_LOG_CAPACITY);
+        serverData.addListener(addressLog);
+        searchIndex = new FileSearchIndex(serverData::snapshot);
+        serverData.addListener(searchIndex);
+        listFilesReply = new AtomicReference<>(new EncodedReply(-1, new byte[0]));
+        listAddressesReply = new AtomicReference<>(new EncodedReply(-1, new byte[0]));
+    }
+
+    TrackerMetrics metrics() {
+        return metrics;
     }
 
-    private boolean isValid(String command) {
-        String[] words = command.split(" ");
-        return words.length > 1;
+    /**
+     * Expires users through {@code liveness}: registering starts watching a user, and any later
+     * command on one of its connections counts as a sign of life.
+     */
+    void trackLiveness(PeerLiveness liveness) {
+        this.liveness = liveness;
     }
 
-    private String register(SocketChannel channel, String command, InetAddress ip) {
-        String[] words = command.split(" ");
-        String username = words[2];
+    /**
+     * Makes this tracker one node of a cluster, accepting registrations only for the files of {@code shard}.
+     */
+    void ownShard(Shard shard) {
+        this.shard = shard;
+    }
 
-        int port;
-        try {
-            port = Integer.parseInt(words[1]);
-        } catch (NumberFormatException e) {
-            LOGGER.log(Level.SEVERE, "Parsing of the port failed: " + e.getMessage(), e);
-            return "Could not retrieve port.";
+    Shard shard() {
+        return shard;
+    }
+
+    /**
+     * Returns the user registered through {@code channel}, or null if there is none yet.
+     */
+    String userOf(SocketChannel channel) {
+        return channelUserMap.get(channel);
+    }
+
+    void noteActivity(SocketChannel channel) {
+        PeerLiveness current = liveness;
+        if (current != null) {
+            String username = channelUserMap.get(channel);
+            if (username != null) {
+                current.touch(username);
+            }
         }
+    }
+
+    private boolean checkInvalidUser(SocketChannel channel, String username) {
+        String sessionUser = channelUserMap.putIfAbsent(channel, username);
+        return sessionUser != null && !sessionUser.equals(username);
+    }
 
+    String register(SocketChannel channel, String username, int port, Set<String> files, InetAddress ip) {
         if (checkInvalidUser(channel, username)) {
             return "This session is associated with another user.";
         }
+        Shard ownShard = shard;
+        for (String file : files) {
+            if (!ownShard.owns(file)) {
+                return file + " belongs to shard " + Shard.ownerOf(file, ownShard.count()) + "/" + ownShard.count()
+                        + ", not to this tracker's shard " + ownShard + ".";
+            }
+        }
 
-        UserData userData = new UserData(ip.getHostAddress() + ":" + port,
-                getFilesFromCommand(REGISTER_FILE_OFFSET, words));
+        UserData userData = new UserData(ip.getHostAddress() + ":" + port, files);
         try {
             serverData.register(username, userData);
         } catch (InvalidUserException e) {
@@ -71,19 +158,32 @@ public class CommandExecutor {
             return e.getMessage();
         }
 
+        PeerLiveness current = liveness;
+        if (current != null) {
+            current.track(username);
+        }
         return "File(s) successfully registered!";
     }
 
-    private String unregister(SocketChannel channel, String command) {
-        String[] words = command.split(" ");
-        String username = words[1];
+    private String register(SocketChannel channel, CommandLine command, InetAddress ip) {
+        int port;
+        try {
+            port = command.intToken(1);
+        } catch (NumberFormatException e) {
+            LOGGER.log(Level.SEVERE, "Parsing of the port failed: " + e.getMessage(), e);
+            return "Could not retrieve port.";
+        }
+
+        return register(channel, command.token(2), port, command.tokensFrom(REGISTER_FILE_OFFSET), ip);
+    }
 
+    String unregister(SocketChannel channel, String username, Set<String> files) {
         if (checkInvalidUser(channel, username)) {
             return "This session is associated with another user.";
         }
 
         try {
-            serverData.unregister(username, getFilesFromCommand(UNREGISTER_FILE_OFFSET, words));
+            serverData.unregister(username, files);
         } catch (UserNotFoundException e) {
             LOGGER.log(Level.SEVERE, "Unregister failed: " + e.getMessage(), e);
             return e.getMessage();
@@ -92,20 +192,97 @@ public class CommandExecutor {
         return "File(s) successfully unregistered!";
     }
 
-    private String download(String command) {
-        String[] words = command.split("\\s+");
+    private String unregister(SocketChannel channel, CommandLine command) {
+        return unregister(channel, command.token(1), command.tokensFrom(UNREGISTER_FILE_OFFSET));
+    }
+
+    String executeBulk(SocketChannel channel, BulkCommand command, InetAddress ip) {
+        if (command.error() != null) {
+            return command.error();
+        }
+        return command.verb() == CommandVerb.REGISTER_BULK
+                ? register(channel, command.username(), command.port(), command.files(), ip)
+                : unregister(channel, command.username(), command.files());
+    }
+
+    // A bulk command handed over whole, header and file lines in one string
+    private String executeBulk(SocketChannel channel, String command, InetAddress ip) {
+        String[] lines = command.split("\\R");
+        BulkCommand bulk = BulkCommand.parse(CommandLine.of(lines[0]));
+        if (bulk == null) {
+            return SINGLE_LINE_PREFIX + BULK_USAGE;
+        }
+        for (int i = 1; i < lines.length && !bulk.isComplete(); i++) {
+            bulk.add(CommandLine.of(lines[i]));
+        }
+        if (!bulk.isComplete()) {
+            return SINGLE_LINE_PREFIX + "Fewer file lines than the bulk command announced.";
+        }
+        noteActivity(channel);
+        return SINGLE_LINE_PREFIX + executeBulk(channel, bulk, ip);
+    }
+
+    /**
+     * Carries out a bulk command once all of its file lines have arrived and returns the reply
+     * as it goes on the wire.
+     */
+    byte[] executeBulkEncoded(SocketChannel channel, BulkCommand command, InetAddress ip) {
+        long start = System.nanoTime();
+        noteActivity(channel);
+        byte[] reply = encode(SINGLE_LINE_PREFIX + executeBulk(channel, command, ip));
+        commandLatency[command.verb().ordinal()].record(System.nanoTime() - start);
+        return reply;
+    }
 
+    // Only a user that registered on this very connection can be kept alive through it
+    String heartbeat(SocketChannel channel, String username) {
+        String sessionUser = channelUserMap.get(channel);
+        if (sessionUser != null && !sessionUser.equals(username)) {
+            return "This session is associated with another user.";
+        }
+        if (sessionUser == null || !serverData.checkIfUsernameExists(username)) {
+            return "Not registered";
+        }
+
+        PeerLiveness current = liveness;
+        if (current != null) {
+            current.track(username);
+        }
+        return "Alive";
+    }
+
+    List<String> rankedAddressesOf(String fileName) throws FileNotFoundException {
+        return peerSelectionPolicy.rank(fileName, serverData.getAddressesOfFile(fileName));
+    }
+
+    private String download(CommandLine command) {
         String address;
         try {
-            address = serverData.getAddressOfFile(words[1]);
+            address = rankedAddressesOf(command.token(1)).get(0);
         } catch (FileNotFoundException e) {
             return e.getMessage();
         }
 
-        return command.replaceFirst("\\s+", String.format(" %s ", address));
+        return "download " + address + " " + command.textFrom(1);
     }
 
-    private String buildStringFrom(Set<String> lines) {
+    private String downloadAll(CommandLine command) {
+        List<String> addresses;
+        try {
+            addresses = rankedAddressesOf(command.token(1));
+        } catch (FileNotFoundException e) {
+            return SINGLE_LINE_PREFIX + e.getMessage();
+        }
+
+        String arguments = command.textFrom(1);
+        List<String> lines = new ArrayList<>(addresses.size());
+        for (String address : addresses) {
+            lines.add("download " + address + " " + arguments);
+        }
+        return buildStringFrom(lines);
+    }
+
+    private String buildStringFrom(Collection<String> lines) {
         StringBuilder builder = new StringBuilder();
         builder.append(lines.size()).append(System.lineSeparator());
 
@@ -122,59 +299,271 @@ public class CommandExecutor {
         return buildStringFrom(lines);
     }
 
+    /**
+     * Returns the users that joined or left after {@code since}, or null if the client has to
+     * start over from the full address list.
+     */
+    AddressLog.Delta addressesSince(long since) {
+        return since <= serverData.snapshot().version() ? addressLog.since(since) : null;
+    }
 
-    public String connect(String command) {
-        String[] words = command.split(" ");
-        String username = words[1];
-        return !serverData.checkIfUsernameExists(username) ? "Successful" : "Unsuccessful";
+    AddressReply addressReplySince(long since) {
+        List<String> lines = new ArrayList<>();
+        AddressLog.Delta delta = addressesSince(since);
+        long version;
+        if (delta == null) {
+            RegistrySnapshot snapshot = serverData.snapshot();
+            version = snapshot.version();
+            lines.add("version " + version + " full");
+            snapshot.peers().forEach((username, peer) -> lines.add(username + " - " + peer.address()));
+        } else {
+            version = delta.version();
+            lines.add("version " + version + " delta");
+            delta.changes().forEach((username, address) ->
+                    lines.add(address == null ? "-" + username : "+" + username + " - " + address));
+        }
+        return new AddressReply(version, delta != null && delta.changes().isEmpty(), buildStringFrom(lines));
     }
 
-    private String extractCommandPrefix(String command) {
-        int spaceIndex = command.indexOf(' ');
-        return (spaceIndex != -1) ? command.substring(0, spaceIndex) : command;
+    private String listAddressesSince(CommandLine command) {
+        try {
+            return addressReplySince(Long.parseLong(command.token(1))).text();
+        } catch (NumberFormatException e) {
+            return SINGLE_LINE_PREFIX + "Could not retrieve version.";
+        }
     }
 
-    public String execute(SocketChannel channel, String command, InetAddress ip) {
+    /**
+     * Finds shared files by name, ignoring case: {@code search <pattern> [<limit>]} matches names
+     * that contain the pattern, or that start with it if it ends in '*'. Each match comes back
+     * as a line with the file and the users sharing it.
+     */
+    private String search(CommandLine command) {
+        String pattern = command.token(1);
+        int limit = DEFAULT_SEARCH_LIMIT;
+        if (command.tokenCount() > 2) {
+            try {
+                limit = Math.min(Math.max(command.intToken(2), 1), MAX_SEARCH_LIMIT);
+            } catch (NumberFormatException e) {
+                return SINGLE_LINE_PREFIX + "Could not retrieve the result limit.";
+            }
+        }
+
+        List<String> files;
+        if (pattern.endsWith("*")) {
+            files = searchIndex.withPrefix(pattern.substring(0, pattern.length() - 1), limit);
+        } else if (pattern.length() < FileSearchIndex.GRAM_LENGTH) {
+            return SINGLE_LINE_PREFIX + "Search for at least " + FileSearchIndex.GRAM_LENGTH
+                    + " characters, or for a prefix such as " + pattern + "*.";
+        } else {
+            files = searchIndex.withSubstring(pattern, limit);
+        }
+
+        RegistrySnapshot snapshot = serverData.snapshot();
+        List<String> lines = new ArrayList<>(files.size());
+        for (String file : files) {
+            List<String> owners = new ArrayList<>(snapshot.ownersOf(file));
+            if (!owners.isEmpty()) {
+                Collections.sort(owners);
+                lines.add(file + " : " + String.join(", ", owners));
+            }
+        }
+        return lines.isEmpty() ? SINGLE_LINE_PREFIX + "No files match " + pattern + "." : buildStringFrom(lines);
+    }
+
+    // Only for the tracker's own host, since the report shows the load of the whole tracker
+    private String stats(InetAddress ip) {
+        if (ip == null || !ip.isLoopbackAddress()) {
+            return SINGLE_LINE_PREFIX + "Stats are only available on the tracker's host.";
+        }
+        return buildStringFrom(metrics.report());
+    }
+
+    /**
+     * Returns whether a client at {@code ip} may take {@code username}: it is free, or it was
+     * restored from disk, registered from the same host and no connection has claimed it yet.
+     */
+    boolean isUsernameAvailable(String username, InetAddress ip) {
+        return !serverData.checkIfUsernameExists(username) || isReturningUser(username, ip);
+    }
+
+    private boolean isReturningUser(String username, InetAddress ip) {
+        if (!restoredUsers.contains(username) || channelUserMap.containsValue(username)) {
+            return false;
+        }
+        String address = serverData.snapshot().addressOf(username);
+        return address != null && address.substring(0, address.lastIndexOf(':')).equals(ip.getHostAddress());
+    }
+
+    private String connect(CommandLine command, InetAddress ip) {
+        return isUsernameAvailable(command.token(1), ip) ? "Successful" : "Unsuccessful";
+    }
+
+    private String execute(SocketChannel channel, CommandVerb verb, CommandLine command, InetAddress ip) {
         String response = null;
+        int arguments = command.tokenCount() - 1;
+        noteActivity(channel);
 
-        switch (extractCommandPrefix(command)) {
-                case "register" -> {
-                    if(isValid(command))
+        switch (verb) {
+                case REGISTER -> {
+                    if(arguments >= 2)
                         response = SINGLE_LINE_PREFIX + register(channel, command, ip);
                 }
-                case "unregister" -> {
-                    if(isValid(command))
+                case UNREGISTER -> {
+                    if(arguments >= 1)
                         response = SINGLE_LINE_PREFIX + unregister(channel, command);
                 }
-                case "list-files" -> response =
+                case REGISTER_BULK, UNREGISTER_BULK -> response = SINGLE_LINE_PREFIX + BULK_USAGE;
+                case LIST_FILES -> response =
                         parseLines(String.format("%sThere are no files registered!", SINGLE_LINE_PREFIX),
                                 serverData.listFiles());
-                case "list-addresses" -> response =
+                case LIST_ADDRESSES -> response =
                         parseLines(String.format("%sThere are no addresses available!", SINGLE_LINE_PREFIX),
                                 serverData.listAddresses());
-                case "connect" -> {
-                    if(isValid(command))
-                        response = SINGLE_LINE_PREFIX + connect(command);
+                case LIST_ADDRESSES_SINCE -> {
+                    if(arguments >= 1)
+                        response = listAddressesSince(command);
+                }
+                case CONNECT -> {
+                    if(arguments >= 1)
+                        response = SINGLE_LINE_PREFIX + connect(command, ip);
                 }
-                case "download" -> {
-                    if(isValid(command))
+                case DOWNLOAD -> {
+                    if(arguments >= 1)
                         response = SINGLE_LINE_PREFIX + download(command);
                 }
+                case DOWNLOAD_ALL -> {
+                    if(arguments >= 1)
+                        response = downloadAll(command);
+                }
+                case BINARY -> response = SINGLE_LINE_PREFIX + "binary";
+                // A text connection's reactor answers subscribe itself, so only callers without one get here
+                case SUBSCRIBE -> response = SINGLE_LINE_PREFIX
+                        + "Subscriptions need a text connection that the tracker keeps open for updates.";
+                case STATS -> response = stats(ip);
+                case SEARCH -> {
+                    if(arguments >= 1)
+                        response = search(command);
+                }
+                case HEARTBEAT -> {
+                    if(arguments >= 1)
+                        response = SINGLE_LINE_PREFIX + heartbeat(channel, command.token(1));
+                }
                 default -> response = SINGLE_LINE_PREFIX + "Unknown command!";
             }
 
         return response == null ? SINGLE_LINE_PREFIX + "Unknown command!" : response;
     }
 
+    public String execute(SocketChannel channel, String command, InetAddress ip) {
+        CommandLine line = CommandLine.of(command);
+        CommandVerb verb = CommandVerb.of(line);
+        if (BulkCommand.isBulk(verb)) {
+            return executeBulk(channel, command, ip);
+        }
+        return execute(channel, verb, line, ip);
+    }
+
+    static byte[] encode(String reply) {
+        return (reply.trim() + System.lineSeparator()).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private byte[] cachedListing(AtomicReference<EncodedReply> cache, SocketChannel channel,
+                                 CommandVerb verb, CommandLine command, InetAddress ip) {
+        // The listing is built after the version is read, so it is never older than the key it is cached under
+        long version = serverData.snapshot().version();
+        EncodedReply cached = cache.get();
+        if (cached.version() == version) {
+            return cached.bytes();
+        }
+
+        EncodedReply reply = new EncodedReply(version, encode(execute(channel, verb, command, ip)));
+        cache.accumulateAndGet(reply, EncodedReply::newer);
+        return reply.bytes();
+    }
+
+    /**
+     * Executes a parsed command and returns the reply as it goes on the wire. Listings are
+     * serialized once per registry version and then served from the cache until the registry changes.
+     */
+    byte[] executeEncoded(SocketChannel channel, CommandLine command, InetAddress ip) {
+        long start = System.nanoTime();
+        CommandVerb verb = CommandVerb.of(command);
+        byte[] reply = switch (verb) {
+            case LIST_FILES -> cachedListing(listFilesReply, channel, verb, command, ip);
+            case LIST_ADDRESSES -> cachedListing(listAddressesReply, channel, verb, command, ip);
+            default -> encode(execute(channel, verb, command, ip));
+        };
+        commandLatency[verb.ordinal()].record(System.nanoTime() - start);
+        return reply;
+    }
+
+    public byte[] executeEncoded(SocketChannel channel, String command, InetAddress ip) {
+        return executeEncoded(channel, CommandLine.of(command), ip);
+    }
+
+    /**
+     * Lets the clients of users restored from disk connect under their old names again until
+     * {@link #releaseUnclaimed} runs.
+     */
+    void awaitReturningUsers(Collection<String> usernames) {
+        restoredUsers = Set.copyOf(usernames);
+    }
+
+    /**
+     * Drops the given users unless a connection has claimed them by registering again.
+     * Used for users restored from disk whose clients never came back.
+     */
+    int releaseUnclaimed(Collection<String> usernames) {
+        restoredUsers = Set.of();
+        Set<String> claimed = new HashSet<>(channelUserMap.values());
+        int released = 0;
+        for (String username : usernames) {
+            if (claimed.contains(username)) {
+                continue;
+            }
+            try {
+                serverData.disconnect(username);
+                released++;
+            } catch (UserNotFoundException e) {
+                // Already gone through an explicit unregister of all its files and a disconnect
+            }
+        }
+        return released;
+    }
+
+    /**
+     * Drops a user whose client stopped sending heartbeats. Its connection stays open, so a
+     * client that was only slow can register again on it. The connection no longer speaks for
+     * the user, so its closing cannot drop a registration the user makes elsewhere later.
+     */
+    void expire(String username) {
+        channelUserMap.values().removeIf(username::equals);
+        try {
+            serverData.disconnect(username);
+            LOGGER.info("User " + username + " stopped sending heartbeats and was dropped.");
+        } catch (UserNotFoundException e) {
+            // Disconnected in the meantime
+        }
+    }
+
     public void disconnect(SocketChannel channel) {
-        if (channelUserMap.containsKey(channel)) {
+        String username = channelUserMap.remove(channel);
+        if (username != null) {
+            PeerLiveness current = liveness;
+            if (current != null) {
+                current.forget(username);
+                if (!serverData.checkIfUsernameExists(username)) {
+                    // Already expired
+                    return;
+                }
+            }
             try {
-                serverData.disconnect(channelUserMap.get(channel));
+                serverData.disconnect(username);
             } catch (UserNotFoundException e) {
                 LOGGER.log(Level.SEVERE, "Disconnect failed: " + e.getMessage()
                         + "SocketChannel hashcode: " + channel.hashCode(), e);
             }
-            channelUserMap.remove(channel);
         }
     }
 }
@@ -0,0 +1,135 @@
+package server;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Reusable tokenized view over one command line held in a byte array. Tokens are kept as
+ * offsets into the array, so parsing allocates nothing; Strings are only created for the
+ * tokens a command actually needs. The view is valid until the underlying bytes change.
+ */
+final class CommandLine {
+    private static final int INITIAL_TOKEN_CAPACITY = 16;
+
+    private byte[] bytes;
+    private int start;
+    private int end;
+    private int[] tokenStarts;
+    private int[] tokenEnds;
+    private int tokenCount;
+
+    CommandLine() {
+        tokenStarts = new int[INITIAL_TOKEN_CAPACITY];
+        tokenEnds = new int[INITIAL_TOKEN_CAPACITY];
+    }
+
+    static CommandLine of(String command) {
+        byte[] bytes = command.getBytes(StandardCharsets.UTF_8);
+        CommandLine line = new CommandLine();
+        line.parse(bytes, 0, bytes.length);
+        return line;
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\t' || b == '\r' || b == '\n';
+    }
+
+    private void addToken(int tokenStart, int tokenEnd) {
+        if (tokenCount == tokenStarts.length) {
+            tokenStarts = Arrays.copyOf(tokenStarts, tokenCount * 2);
+            tokenEnds = Arrays.copyOf(tokenEnds, tokenCount * 2);
+        }
+        tokenStarts[tokenCount] = tokenStart;
+        tokenEnds[tokenCount] = tokenEnd;
+        tokenCount++;
+    }
+
+    void parse(byte[] bytes, int start, int end) {
+        this.bytes = bytes;
+        this.start = start;
+        this.end = end;
+        tokenCount = 0;
+
+        int i = start;
+        while (i < end) {
+            while (i < end && isWhitespace(bytes[i])) {
+                i++;
+            }
+            int tokenStart = i;
+            while (i < end && !isWhitespace(bytes[i])) {
+                i++;
+            }
+            if (i > tokenStart) {
+                addToken(tokenStart, i);
+            }
+        }
+    }
+
+    int tokenCount() {
+        return tokenCount;
+    }
+
+    boolean tokenEquals(int index, byte[] expected) {
+        return index < tokenCount
+                && Arrays.equals(bytes, tokenStarts[index], tokenEnds[index], expected, 0, expected.length);
+    }
+
+    String token(int index) {
+        return new String(bytes, tokenStarts[index], tokenEnds[index] - tokenStarts[index], StandardCharsets.UTF_8);
+    }
+
+    int intToken(int index) {
+        int from = tokenStarts[index];
+        int to = tokenEnds[index];
+        if (to - from > 9) {
+            throw new NumberFormatException("For input string: \"" + token(index) + "\"");
+        }
+
+        int value = 0;
+        for (int i = from; i < to; i++) {
+            int digit = bytes[i] - '0';
+            if (digit < 0 || digit > 9) {
+                throw new NumberFormatException("For input string: \"" + token(index) + "\"");
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    Set<String> tokensFrom(int index) {
+        Set<String> tokens = new HashSet<>();
+        for (int i = index; i < tokenCount; i++) {
+            tokens.add(token(i));
+        }
+        return tokens;
+    }
+
+    /**
+     * Returns the raw text from the given token to the end of the line, original spacing included.
+     */
+    String textFrom(int index) {
+        int from = tokenStarts[index];
+        int to = tokenEnds[tokenCount - 1];
+        return new String(bytes, from, to - from, StandardCharsets.UTF_8);
+    }
+
+    int length() {
+        return end - start;
+    }
+
+    /**
+     * Returns the whole line as it was sent, leading and trailing spaces included; only a
+     * carriage return before the line feed is dropped.
+     */
+    String rawText() {
+        int to = end > start && bytes[end - 1] == '\r' ? end - 1 : end;
+        return new String(bytes, start, to - start, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public String toString() {
+        return tokenCount == 0 ? "" : textFrom(0);
+    }
+}
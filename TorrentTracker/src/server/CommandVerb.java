@@ -0,0 +1,45 @@
+package server;
+
+import java.nio.charset.StandardCharsets;
+
+enum CommandVerb {
+    REGISTER("register"),
+    UNREGISTER("unregister"),
+    REGISTER_BULK("register-bulk"),
+    UNREGISTER_BULK("unregister-bulk"),
+    LIST_FILES("list-files"),
+    LIST_ADDRESSES("list-addresses"),
+    LIST_ADDRESSES_SINCE("list-addresses-since"),
+    CONNECT("connect"),
+    DOWNLOAD("download"),
+    DOWNLOAD_ALL("download-all"),
+    BINARY("binary"),
+    HEARTBEAT("heartbeat"),
+    SUBSCRIBE("subscribe"),
+    STATS("stats"),
+    SEARCH("search"),
+    UNKNOWN("");
+
+    private static final CommandVerb[] KNOWN_VERBS = {
+        REGISTER, UNREGISTER, REGISTER_BULK, UNREGISTER_BULK, LIST_FILES, LIST_ADDRESSES, LIST_ADDRESSES_SINCE, CONNECT, DOWNLOAD, DOWNLOAD_ALL, BINARY, HEARTBEAT, SUBSCRIBE, STATS, SEARCH
+    };
+
+    private final byte[] name;
+
+    CommandVerb(String name) {
+        this.name = name.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    String label() {
+        return this == UNKNOWN ? "unknown" : new String(name, StandardCharsets.US_ASCII);
+    }
+
+    static CommandVerb of(CommandLine line) {
+        for (CommandVerb verb : KNOWN_VERBS) {
+            if (line.tokenEquals(0, verb.name)) {
+                return verb;
+            }
+        }
+        return UNKNOWN;
+    }
+}
@@ -0,0 +1,302 @@
+package server;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+
+/**
+ * Search index over the names of the registered files, kept up to date from registry changes.
+ * Every distinct name gets an id; a {@link PrefixTrie} answers prefix searches and a trigram
+ * index, mapping each run of three characters to the sorted ids of the names that contain it,
+ * answers substring searches. Both ignore case.
+ *
+ * <p>Names stay in the index while any user shares them, counted through the changes. A name
+ * nobody shares any more keeps its id and postings and is skipped by searches, so sharing it
+ * again costs nothing; once such names outnumber the live ones the index is rebuilt from the
+ * current snapshot. The same happens when the changes have a gap, as after a restore.
+ */
+final class FileSearchIndex implements RegistryListener {
+    static final int GRAM_LENGTH = 3;
+    private static final int MIN_REBUILD_SIZE = 1 << 16;
+
+    private final Supplier<RegistrySnapshot> snapshots;
+    private final ReadWriteLock lock;
+
+    // Guarded by lock; volatile so that searches can check whether the index was built yet
+    private volatile long version;
+    private Map<String, Integer> ids;
+    private String[] names;
+    private int[] ownerCounts;
+    private int size;
+    private int liveCount;
+    // Open addressing from trigram to postings; zero keys mark empty slots
+    private long[] gramKeys;
+    private Postings[] gramPostings;
+    private int gramCount;
+    private PrefixTrie trie;
+
+    private static final class Postings {
+        private int[] ids = new int[4];
+        private int size;
+
+        // Ids arrive in increasing order, and all trigrams of one name arrive together
+        private void add(int id) {
+            if (size > 0 && ids[size - 1] == id) {
+                return;
+            }
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            ids[size++] = id;
+        }
+    }
+
+    FileSearchIndex(Supplier<RegistrySnapshot> snapshots) {
+        this.snapshots = snapshots;
+        lock = new ReentrantReadWriteLock();
+        clear(-1);
+    }
+
+    private void clear(long newVersion) {
+        version = newVersion;
+        ids = new HashMap<>();
+        names = new String[64];
+        ownerCounts = new int[64];
+        size = 0;
+        liveCount = 0;
+        gramKeys = new long[1024];
+        gramPostings = new Postings[1024];
+        gramCount = 0;
+        trie = new PrefixTrie(id -> names[id]);
+    }
+
+    // Three folded characters, with a marker bit above them so that no trigram is zero
+    private static long gram(String name, int position) {
+        return 1L << 48
+                | (long) PrefixTrie.fold(name.charAt(position)) << 32
+                | (long) PrefixTrie.fold(name.charAt(position + 1)) << 16
+                | PrefixTrie.fold(name.charAt(position + 2));
+    }
+
+    private static int slotOf(long[] keys, long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        int mask = keys.length - 1;
+        for (int i = (int) (h ^ (h >>> 32)) & mask; ; i = (i + 1) & mask) {
+            if (keys[i] == key || keys[i] == 0) {
+                return i;
+            }
+        }
+    }
+
+    private Postings postings(long key) {
+        int slot = slotOf(gramKeys, key);
+        return gramKeys[slot] == key ? gramPostings[slot] : null;
+    }
+
+    private Postings addGram(long key) {
+        int slot = slotOf(gramKeys, key);
+        if (gramKeys[slot] == key) {
+            return gramPostings[slot];
+        }
+
+        Postings postings = new Postings();
+        gramKeys[slot] = key;
+        gramPostings[slot] = postings;
+        if (++gramCount * 4 > gramKeys.length * 3) {
+            long[] keys = new long[gramKeys.length * 2];
+            Postings[] values = new Postings[keys.length];
+            for (int i = 0; i < gramKeys.length; i++) {
+                if (gramKeys[i] != 0) {
+                    int newSlot = slotOf(keys, gramKeys[i]);
+                    keys[newSlot] = gramKeys[i];
+                    values[newSlot] = gramPostings[i];
+                }
+            }
+            gramKeys = keys;
+            gramPostings = values;
+        }
+        return postings;
+    }
+
+    private int newId(String name) {
+        if (size == names.length) {
+            names = Arrays.copyOf(names, size * 2);
+            ownerCounts = Arrays.copyOf(ownerCounts, size * 2);
+        }
+        int id = size++;
+        names[id] = name;
+        ids.put(name, id);
+        trie.add(id, name);
+        for (int i = 0; i + GRAM_LENGTH <= name.length(); i++) {
+            addGram(gram(name, i)).add(id);
+        }
+        return id;
+    }
+
+    private void addOwners(String name, int owners) {
+        Integer existing = ids.get(name);
+        int id = existing == null ? newId(name) : existing;
+        if (ownerCounts[id] == 0) {
+            liveCount++;
+        }
+        ownerCounts[id] += owners;
+    }
+
+    private void removeOwner(String name) {
+        Integer id = ids.get(name);
+        if (id != null && ownerCounts[id] > 0 && --ownerCounts[id] == 0) {
+            liveCount--;
+        }
+    }
+
+    private void rebuild(RegistrySnapshot snapshot) {
+        clear(snapshot.version());
+        PathTable.View paths = snapshot.paths();
+        snapshot.owners().forEach((file, owners) -> addOwners(paths.path(file), owners.length));
+    }
+
+    @Override
+    public void onChange(RegistryChange change) {
+        lock.writeLock().lock();
+        try {
+            if (change.version() <= version) {
+                return;
+            }
+            if (version < 0 || change.version() != version + 1) {
+                rebuild(snapshots.get());
+                return;
+            }
+
+            version = change.version();
+            if (change.kind() == RegistryChange.Kind.REGISTER) {
+                for (String file : change.files()) {
+                    addOwners(file, 1);
+                }
+            } else {
+                for (String file : change.files()) {
+                    removeOwner(file);
+                }
+            }
+            if (size > MIN_REBUILD_SIZE && size - liveCount > liveCount) {
+                rebuild(snapshots.get());
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void ensureBuilt() {
+        lock.writeLock().lock();
+        try {
+            if (version < 0) {
+                rebuild(snapshots.get());
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private boolean isLive(int id) {
+        return ownerCounts[id] > 0;
+    }
+
+    private static boolean containsFolded(String name, String pattern) {
+        int last = name.length() - pattern.length();
+        for (int start = 0; start <= last; start++) {
+            int i = 0;
+            while (i < pattern.length()
+                    && PrefixTrie.fold(name.charAt(start + i)) == PrefixTrie.fold(pattern.charAt(i))) {
+                i++;
+            }
+            if (i == pattern.length()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private List<String> containing(String pattern, int limit) {
+        Map<Long, Postings> distinct = new HashMap<>();
+        for (int i = 0; i + GRAM_LENGTH <= pattern.length(); i++) {
+            long key = gram(pattern, i);
+            Postings postings = postings(key);
+            if (postings == null) {
+                return List.of();
+            }
+            distinct.put(key, postings);
+        }
+
+        // Walk the shortest list and look the ids up in the others, whose ids are sorted too
+        Postings[] lists = distinct.values().toArray(new Postings[0]);
+        Arrays.sort(lists, (a, b) -> Integer.compare(a.size, b.size));
+        int[] from = new int[lists.length];
+        List<String> found = new ArrayList<>();
+        Postings shortest = lists[0];
+        candidates:
+        for (int c = 0; c < shortest.size && found.size() < limit; c++) {
+            int id = shortest.ids[c];
+            if (!isLive(id)) {
+                continue;
+            }
+            for (int l = 1; l < lists.length; l++) {
+                int index = Arrays.binarySearch(lists[l].ids, from[l], lists[l].size, id);
+                if (index < 0) {
+                    from[l] = -index - 1;
+                    continue candidates;
+                }
+                from[l] = index + 1;
+            }
+            if (containsFolded(names[id], pattern)) {
+                found.add(names[id]);
+            }
+        }
+        return found;
+    }
+
+    private List<String> startingWith(String prefix, int limit) {
+        List<String> found = new ArrayList<>();
+        for (int id : trie.collect(prefix, this::isLive, limit)) {
+            found.add(names[id]);
+        }
+        return found;
+    }
+
+    /**
+     * Returns up to {@code limit} shared file names that start with {@code prefix}, in order.
+     */
+    List<String> withPrefix(String prefix, int limit) {
+        if (version < 0) {
+            ensureBuilt();
+        }
+        lock.readLock().lock();
+        try {
+            return startingWith(prefix, limit);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns up to {@code limit} shared file names that contain {@code pattern}, which must be
+     * at least {@value #GRAM_LENGTH} characters long, in the order they were first shared.
+     */
+    List<String> withSubstring(String pattern, int limit) {
+        if (pattern.length() < GRAM_LENGTH) {
+            throw new IllegalArgumentException("Substring searches need at least " + GRAM_LENGTH + " characters.");
+        }
+        if (version < 0) {
+            ensureBuilt();
+        }
+        lock.readLock().lock();
+        try {
+            return containing(pattern, limit);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package server;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Append-only dictionary that maps strings to dense int ids. Names are kept as UTF-8 in a
+ * single byte arena, so an entry costs its bytes plus a few ints instead of a String object.
+ *
+ * <p>Only the registry writer calls {@link #intern}. Readers use a {@link View}, which is
+ * taken when a snapshot is published and only looks at ids below its own size. Entries below
+ * that size are never changed and arrays are replaced rather than resized in place, so a
+ * view stays valid while the writer keeps appending.
+ */
+final class NameTable {
+    private static final int INITIAL_CAPACITY = 64;
+
+    private byte[] bytes;
+    private int used;
+    private int[] offsets;
+    private int[] slots;
+    private int size;
+
+    NameTable() {
+        bytes = new byte[INITIAL_CAPACITY * 16];
+        offsets = new int[INITIAL_CAPACITY + 1];
+        slots = new int[INITIAL_CAPACITY * 2];
+    }
+
+    private static int hash(byte[] key, int from, int to) {
+        int h = 1;
+        for (int i = from; i < to; i++) {
+            h = 31 * h + key[i];
+        }
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        return h ^ (h >>> 13);
+    }
+
+    private static boolean matches(byte[] bytes, int[] offsets, int id, byte[] key) {
+        int start = offsets[id];
+        return Arrays.equals(bytes, start, offsets[id + 1], key, 0, key.length);
+    }
+
+    /**
+     * Returns the slot that holds {@code key}, or the empty slot where it belongs. Slots hold
+     * id + 1 so that zero means empty; ids at or above {@code size} belong to entries added
+     * after the caller's view was taken and are skipped.
+     */
+    private static int probe(byte[] bytes, int[] offsets, int[] slots, int size, byte[] key, int hash) {
+        int mask = slots.length - 1;
+        for (int i = hash & mask; ; i = (i + 1) & mask) {
+            int id = slots[i] - 1;
+            if (id < 0 || (id < size && matches(bytes, offsets, id, key))) {
+                return i;
+            }
+        }
+    }
+
+    int intern(String name) {
+        byte[] key = name.getBytes(StandardCharsets.UTF_8);
+        int slot = probe(bytes, offsets, slots, size, key, hash(key, 0, key.length));
+        if (slots[slot] != 0) {
+            return slots[slot] - 1;
+        }
+
+        if (used + key.length > bytes.length) {
+            long capacity = Math.max(bytes.length * 2L, (long) used + key.length);
+            if (capacity > Integer.MAX_VALUE - 8) {
+                throw new IllegalStateException("The name table is full.");
+            }
+            bytes = Arrays.copyOf(bytes, (int) capacity);
+        }
+        if (size + 2 > offsets.length) {
+            offsets = Arrays.copyOf(offsets, offsets.length * 2);
+        }
+        System.arraycopy(key, 0, bytes, used, key.length);
+        used += key.length;
+        offsets[size + 1] = used;
+
+        int id = size++;
+        slots[slot] = id + 1;
+        if (size * 4 > slots.length * 3) {
+            rehash();
+        }
+        return id;
+    }
+
+    private void rehash() {
+        int[] newSlots = new int[slots.length * 2];
+        int mask = newSlots.length - 1;
+        for (int id = 0; id < size; id++) {
+            int i = hash(bytes, offsets[id], offsets[id + 1]) & mask;
+            while (newSlots[i] != 0) {
+                i = (i + 1) & mask;
+            }
+            newSlots[i] = id + 1;
+        }
+        slots = newSlots;
+    }
+
+    int size() {
+        return size;
+    }
+
+    View view() {
+        return new View(bytes, offsets, slots, size);
+    }
+
+    static final class View {
+        private final byte[] bytes;
+        private final int[] offsets;
+        private final int[] slots;
+        private final int size;
+
+        private View(byte[] bytes, int[] offsets, int[] slots, int size) {
+            this.bytes = bytes;
+            this.offsets = offsets;
+            this.slots = slots;
+            this.size = size;
+        }
+
+        int find(String name) {
+            byte[] key = name.getBytes(StandardCharsets.UTF_8);
+            int id = slots[probe(bytes, offsets, slots, size, key, hash(key, 0, key.length))] - 1;
+            return id < size ? id : -1;
+        }
+
+        int length(int id) {
+            return offsets[id + 1] - offsets[id];
+        }
+
+        int copyBytes(int id, byte[] destination, int position) {
+            int length = length(id);
+            System.arraycopy(bytes, offsets[id], destination, position, length);
+            return position + length;
+        }
+
+        String name(int id) {
+            return new String(bytes, offsets[id], length(id), StandardCharsets.UTF_8);
+        }
+
+        int size() {
+            return size;
+        }
+    }
+}
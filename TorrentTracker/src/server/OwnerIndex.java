@@ -0,0 +1,156 @@
+package server;
+
+import java.util.Arrays;
+import java.util.Set;
+
+/**
+ * Immutable map from file node ids to the users that share the file, stored as an array
+ * split into chunks. An edit copies only the chunks it touches, and since new paths get
+ * consecutive ids, one registration usually touches a single chunk. A file shared by one
+ * user, by far the common case, holds the username itself instead of a collection.
+ */
+final class OwnerIndex {
+    private static final int CHUNK_BITS = 10;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final Object[][] NO_CHUNKS = new Object[0][];
+
+    static final OwnerIndex EMPTY = new OwnerIndex(NO_CHUNKS, 0);
+
+    private final Object[][] chunks;
+    private final int fileCount;
+
+    private OwnerIndex(Object[][] chunks, int fileCount) {
+        this.chunks = chunks;
+        this.fileCount = fileCount;
+    }
+
+    interface FileVisitor {
+        void visit(int file, String[] owners);
+    }
+
+    private static Object slot(Object[][] chunks, int file) {
+        int chunk = file >>> CHUNK_BITS;
+        return chunk < chunks.length && chunks[chunk] != null ? chunks[chunk][file & (CHUNK_SIZE - 1)] : null;
+    }
+
+    private static String[] asArray(Object owners) {
+        return owners instanceof String owner ? new String[] {owner} : (String[]) owners;
+    }
+
+    int fileCount() {
+        return fileCount;
+    }
+
+    Set<String> ownersOf(int file) {
+        Object owners = file < 0 ? null : slot(chunks, file);
+        if (owners == null) {
+            return Set.of();
+        }
+        return owners instanceof String owner ? Set.of(owner) : Set.of((String[]) owners);
+    }
+
+    void forEach(FileVisitor visitor) {
+        for (int chunk = 0; chunk < chunks.length; chunk++) {
+            if (chunks[chunk] == null) {
+                continue;
+            }
+            for (int i = 0; i < CHUNK_SIZE; i++) {
+                Object owners = chunks[chunk][i];
+                if (owners != null) {
+                    visitor.visit((chunk << CHUNK_BITS) | i, asArray(owners));
+                }
+            }
+        }
+    }
+
+    Editor edit() {
+        return new Editor(this);
+    }
+
+    static final class Editor {
+        private Object[][] chunks;
+        private boolean[] copied;
+        private int fileCount;
+
+        private Editor(OwnerIndex base) {
+            chunks = base.chunks.clone();
+            copied = new boolean[chunks.length];
+            fileCount = base.fileCount;
+        }
+
+        private Object[] writableChunk(int file) {
+            int chunk = file >>> CHUNK_BITS;
+            if (chunk >= chunks.length) {
+                int length = Math.max(chunk + 1, chunks.length * 2);
+                chunks = Arrays.copyOf(chunks, length);
+                copied = Arrays.copyOf(copied, length);
+            }
+            if (!copied[chunk]) {
+                chunks[chunk] = chunks[chunk] == null ? new Object[CHUNK_SIZE] : chunks[chunk].clone();
+                copied[chunk] = true;
+            }
+            return chunks[chunk];
+        }
+
+        void addOwner(int file, String username) {
+            Object owners = slot(chunks, file);
+            Object updated;
+            if (owners == null) {
+                fileCount++;
+                updated = username;
+            } else {
+                String[] current = asArray(owners);
+                for (String owner : current) {
+                    if (owner.equals(username)) {
+                        return;
+                    }
+                }
+                String[] grown = Arrays.copyOf(current, current.length + 1);
+                grown[current.length] = username;
+                updated = grown;
+            }
+            writableChunk(file)[file & (CHUNK_SIZE - 1)] = updated;
+        }
+
+        void removeOwner(int file, String username) {
+            Object owners = slot(chunks, file);
+            if (owners == null) {
+                return;
+            }
+
+            String[] current = asArray(owners);
+            int index = -1;
+            for (int i = 0; i < current.length; i++) {
+                if (current[i].equals(username)) {
+                    index = i;
+                    break;
+                }
+            }
+            if (index < 0) {
+                return;
+            }
+
+            Object updated;
+            if (current.length == 1) {
+                fileCount--;
+                updated = null;
+            } else if (current.length == 2) {
+                updated = current[1 - index];
+            } else {
+                String[] shrunk = new String[current.length - 1];
+                System.arraycopy(current, 0, shrunk, 0, index);
+                System.arraycopy(current, index + 1, shrunk, index, shrunk.length - index);
+                updated = shrunk;
+            }
+            writableChunk(file)[file & (CHUNK_SIZE - 1)] = updated;
+        }
+
+        /**
+         * Returns the edited index. The editor must not be used afterwards, since the
+         * published index shares its chunks.
+         */
+        OwnerIndex publish() {
+            return new OwnerIndex(chunks, fileCount);
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package server;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Interns file paths as nodes of a trie. A path is split after every '/' or '\' and each
+ * node stores only its parent node and the id of its segment in a {@link NameTable}, so the
+ * directories that many files share are stored once and a path costs two ints per node.
+ * Splitting keeps the separators inside the segments, so any path decodes to exactly the
+ * string that was interned.
+ *
+ * <p>Like {@link NameTable}, the table is append-only: the registry writer interns and
+ * readers resolve through a {@link View} taken when a snapshot is published.
+ */
+final class PathTable {
+    private static final int INITIAL_CAPACITY = 64;
+    private static final int ROOT = -1;
+
+    private final NameTable segments;
+    private int[] parents;
+    private int[] segmentIds;
+    private int[] slots;
+    private int size;
+
+    PathTable() {
+        segments = new NameTable();
+        parents = new int[INITIAL_CAPACITY];
+        segmentIds = new int[INITIAL_CAPACITY];
+        slots = new int[INITIAL_CAPACITY * 2];
+    }
+
+    private static int hash(int parent, int segment) {
+        int h = parent * 0x9E3779B9 + segment;
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        return h ^ (h >>> 13);
+    }
+
+    private static int segmentEnd(String path, int start) {
+        for (int i = start; i < path.length(); i++) {
+            char c = path.charAt(i);
+            if (c == '/' || c == '\\') {
+                return i + 1;
+            }
+        }
+        return path.length();
+    }
+
+    private static int probe(int[] parents, int[] segmentIds, int[] slots, int size, int parent, int segment) {
+        int mask = slots.length - 1;
+        for (int i = hash(parent, segment) & mask; ; i = (i + 1) & mask) {
+            int id = slots[i] - 1;
+            if (id < 0 || (id < size && parents[id] == parent && segmentIds[id] == segment)) {
+                return i;
+            }
+        }
+    }
+
+    private int internNode(int parent, int segment) {
+        int slot = probe(parents, segmentIds, slots, size, parent, segment);
+        if (slots[slot] != 0) {
+            return slots[slot] - 1;
+        }
+
+        if (size == parents.length) {
+            parents = Arrays.copyOf(parents, size * 2);
+            segmentIds = Arrays.copyOf(segmentIds, size * 2);
+        }
+        parents[size] = parent;
+        segmentIds[size] = segment;
+
+        int id = size++;
+        slots[slot] = id + 1;
+        if (size * 4 > slots.length * 3) {
+            rehash();
+        }
+        return id;
+    }
+
+    private void rehash() {
+        int[] newSlots = new int[slots.length * 2];
+        int mask = newSlots.length - 1;
+        for (int id = 0; id < size; id++) {
+            int i = hash(parents[id], segmentIds[id]) & mask;
+            while (newSlots[i] != 0) {
+                i = (i + 1) & mask;
+            }
+            newSlots[i] = id + 1;
+        }
+        slots = newSlots;
+    }
+
+    int intern(String path) {
+        int node = ROOT;
+        int start = 0;
+        do {
+            int end = segmentEnd(path, start);
+            node = internNode(node, segments.intern(path.substring(start, end)));
+            start = end;
+        } while (start < path.length());
+        return node;
+    }
+
+    int size() {
+        return size;
+    }
+
+    View view() {
+        return new View(segments.view(), parents, segmentIds, slots, size);
+    }
+
+    static final class View {
+        private final NameTable.View segments;
+        private final int[] parents;
+        private final int[] segmentIds;
+        private final int[] slots;
+        private final int size;
+
+        private View(NameTable.View segments, int[] parents, int[] segmentIds, int[] slots, int size) {
+            this.segments = segments;
+            this.parents = parents;
+            this.segmentIds = segmentIds;
+            this.slots = slots;
+            this.size = size;
+        }
+
+        /**
+         * Returns the node of {@code path}, or -1 if it was never interned.
+         */
+        int find(String path) {
+            int node = ROOT;
+            int start = 0;
+            do {
+                int end = segmentEnd(path, start);
+                int segment = segments.find(path.substring(start, end));
+                if (segment < 0) {
+                    return -1;
+                }
+                int id = slots[probe(parents, segmentIds, slots, size, node, segment)] - 1;
+                if (id < 0 || id >= size) {
+                    return -1;
+                }
+                node = id;
+                start = end;
+            } while (start < path.length());
+            return node;
+        }
+
+        byte[] bytes(int node) {
+            int[] path = new int[16];
+            int depth = 0;
+            int length = 0;
+            for (int id = node; id != ROOT; id = parents[id]) {
+                if (depth == path.length) {
+                    path = Arrays.copyOf(path, depth * 2);
+                }
+                path[depth++] = segmentIds[id];
+                length += segments.length(segmentIds[id]);
+            }
+
+            byte[] bytes = new byte[length];
+            int position = 0;
+            for (int i = depth - 1; i >= 0; i--) {
+                position = segments.copyBytes(path[i], bytes, position);
+            }
+            return bytes;
+        }
+
+        String path(int node) {
+            return new String(bytes(node), StandardCharsets.UTF_8);
+        }
+
+        int size() {
+            return size;
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package server;
+
+import java.util.Arrays;
+
+/**
+ * Compact registry entry of one user: the address packed into a long when it is an IPv4
+ * "ip:port" literal, and the shared files as a sorted array of {@link PathTable} node ids.
+ * Instances are immutable; edits return new ones.
+ */
+final class Peer {
+    private static final long NOT_PACKED = -1;
+    private static final int[] NO_FILES = new int[0];
+
+    private final long packedAddress;
+    private final String address;
+    private final int[] files;
+
+    private Peer(long packedAddress, String address, int[] files) {
+        this.packedAddress = packedAddress;
+        this.address = address;
+        this.files = files;
+    }
+
+    static Peer of(String address) {
+        long packed = pack(address);
+        return new Peer(packed, packed == NOT_PACKED ? address : null, NO_FILES);
+    }
+
+    /**
+     * Packs "a.b.c.d:port" as the IPv4 address in bits 16-47 and the port in bits 0-15, or
+     * returns -1 for anything else, such as IPv6 addresses.
+     */
+    static long pack(String address) {
+        int separator = address.lastIndexOf(':');
+        if (separator < 0 || address.indexOf(':') != separator) {
+            return NOT_PACKED;
+        }
+
+        long ip = 0;
+        int octets = 0;
+        int value = -1;
+        for (int i = 0; i < separator; i++) {
+            char c = address.charAt(i);
+            if (c >= '0' && c <= '9' && value < 256) {
+                value = (value < 0 ? 0 : value * 10) + (c - '0');
+            } else if (c == '.' && value >= 0 && value < 256 && octets < 3) {
+                ip = (ip << 8) | value;
+                octets++;
+                value = -1;
+            } else {
+                return NOT_PACKED;
+            }
+        }
+        if (octets != 3 || value < 0 || value > 255) {
+            return NOT_PACKED;
+        }
+        ip = (ip << 8) | value;
+
+        int port = 0;
+        if (separator + 1 == address.length() || address.length() - separator > 6) {
+            return NOT_PACKED;
+        }
+        for (int i = separator + 1; i < address.length(); i++) {
+            char c = address.charAt(i);
+            if (c < '0' || c > '9') {
+                return NOT_PACKED;
+            }
+            port = port * 10 + (c - '0');
+        }
+        // Leading zeros would not survive a round trip, so such literals stay strings
+        if (port > 0xFFFF || !address.equals(unpack((ip << 16) | port))) {
+            return NOT_PACKED;
+        }
+        return (ip << 16) | port;
+    }
+
+    static String unpack(long packed) {
+        return ((packed >>> 40) & 0xFF) + "." + ((packed >>> 32) & 0xFF) + "."
+                + ((packed >>> 24) & 0xFF) + "." + ((packed >>> 16) & 0xFF) + ":" + (packed & 0xFFFF);
+    }
+
+    boolean isPacked() {
+        return packedAddress != NOT_PACKED;
+    }
+
+    long packedAddress() {
+        return packedAddress;
+    }
+
+    String address() {
+        return isPacked() ? unpack(packedAddress) : address;
+    }
+
+    boolean hasAddress(String other) {
+        return isPacked() ? packedAddress == pack(other) : address.equals(other);
+    }
+
+    int[] files() {
+        return files;
+    }
+
+    int fileCount() {
+        return files.length;
+    }
+
+    boolean hasFile(int file) {
+        return Arrays.binarySearch(files, file) >= 0;
+    }
+
+    /**
+     * Returns a peer that also shares {@code added}, which must be sorted and disjoint
+     * from the files already shared.
+     */
+    Peer withFiles(int[] added) {
+        int[] merged = new int[files.length + added.length];
+        int i = 0;
+        int j = 0;
+        int k = 0;
+        while (i < files.length && j < added.length) {
+            merged[k++] = files[i] < added[j] ? files[i++] : added[j++];
+        }
+        while (i < files.length) {
+            merged[k++] = files[i++];
+        }
+        while (j < added.length) {
+            merged[k++] = added[j++];
+        }
+        return new Peer(packedAddress, address, merged);
+    }
+
+    /**
+     * Returns a peer without {@code removed}, which must be sorted and shared by this peer.
+     */
+    Peer withoutFiles(int[] removed) {
+        int[] remaining = new int[files.length - removed.length];
+        int j = 0;
+        int k = 0;
+        for (int file : files) {
+            if (j < removed.length && removed[j] == file) {
+                j++;
+            } else {
+                remaining[k++] = file;
+            }
+        }
+        return new Peer(packedAddress, address, remaining);
+    }
+}
@@ -0,0 +1,204 @@
+package server;
+
+import java.util.Arrays;
+import java.util.function.IntFunction;
+import java.util.function.IntPredicate;
+
+/**
+ * Radix trie over names, compared without regard to case, for prefix searches. Names are
+ * identified by dense ids and the trie keeps no characters of its own: an edge label is a
+ * range of the name that created it, so a node costs six ints however long its label is.
+ * Children are kept in order of their first character, which makes results come out in order.
+ *
+ * <p>The trie only grows. Owners of the ids filter out the names they no longer want when
+ * collecting, and build a new trie once too many of them pile up.
+ */
+final class PrefixTrie {
+    private static final int INITIAL_CAPACITY = 64;
+    private static final int NONE = -1;
+    private static final int ROOT = 0;
+
+    private final IntFunction<String> names;
+
+    private int[] labelIds;
+    private int[] labelStarts;
+    private int[] labelLengths;
+    private int[] firstChildren;
+    private int[] nextSiblings;
+    // The last id added with a node's name, chained to earlier ids of names that differ only in case
+    private int[] terminals;
+    private int[] sameNames;
+    private int size;
+
+    PrefixTrie(IntFunction<String> names) {
+        this.names = names;
+        labelIds = new int[INITIAL_CAPACITY];
+        labelStarts = new int[INITIAL_CAPACITY];
+        labelLengths = new int[INITIAL_CAPACITY];
+        firstChildren = new int[INITIAL_CAPACITY];
+        nextSiblings = new int[INITIAL_CAPACITY];
+        terminals = new int[INITIAL_CAPACITY];
+        sameNames = new int[INITIAL_CAPACITY];
+        newNode(NONE, 0, 0);
+    }
+
+    static char fold(char c) {
+        return Character.toLowerCase(c);
+    }
+
+    private int newNode(int labelId, int labelStart, int labelLength) {
+        if (size == labelIds.length) {
+            int capacity = size * 2;
+            labelIds = Arrays.copyOf(labelIds, capacity);
+            labelStarts = Arrays.copyOf(labelStarts, capacity);
+            labelLengths = Arrays.copyOf(labelLengths, capacity);
+            firstChildren = Arrays.copyOf(firstChildren, capacity);
+            nextSiblings = Arrays.copyOf(nextSiblings, capacity);
+            terminals = Arrays.copyOf(terminals, capacity);
+        }
+        labelIds[size] = labelId;
+        labelStarts[size] = labelStart;
+        labelLengths[size] = labelLength;
+        firstChildren[size] = NONE;
+        nextSiblings[size] = NONE;
+        terminals[size] = NONE;
+        return size++;
+    }
+
+    private char labelChar(int node, int offset) {
+        return fold(names.apply(labelIds[node]).charAt(labelStarts[node] + offset));
+    }
+
+    private void addTerminal(int node, int id) {
+        if (id >= sameNames.length) {
+            sameNames = Arrays.copyOf(sameNames, Math.max(id + 1, sameNames.length * 2));
+        }
+        sameNames[id] = terminals[node];
+        terminals[node] = id;
+    }
+
+    // Cuts the node's label after length characters; the rest moves to a new only child
+    private void split(int node, int length) {
+        int tail = newNode(labelIds[node], labelStarts[node] + length, labelLengths[node] - length);
+        firstChildren[tail] = firstChildren[node];
+        terminals[tail] = terminals[node];
+        labelLengths[node] = length;
+        firstChildren[node] = tail;
+        terminals[node] = NONE;
+    }
+
+    /**
+     * Adds the name with the given id. Every id may be added only once.
+     */
+    void add(int id, String name) {
+        int node = ROOT;
+        int position = 0;
+        while (position < name.length()) {
+            char c = fold(name.charAt(position));
+            int previous = NONE;
+            int child = firstChildren[node];
+            while (child != NONE && labelChar(child, 0) < c) {
+                previous = child;
+                child = nextSiblings[child];
+            }
+
+            if (child == NONE || labelChar(child, 0) != c) {
+                int leaf = newNode(id, position, name.length() - position);
+                nextSiblings[leaf] = child;
+                if (previous == NONE) {
+                    firstChildren[node] = leaf;
+                } else {
+                    nextSiblings[previous] = leaf;
+                }
+                node = leaf;
+                position = name.length();
+                break;
+            }
+
+            int matched = 1;
+            while (matched < labelLengths[child] && position + matched < name.length()
+                    && labelChar(child, matched) == fold(name.charAt(position + matched))) {
+                matched++;
+            }
+            if (matched < labelLengths[child]) {
+                split(child, matched);
+            }
+            node = child;
+            position += matched;
+        }
+        addTerminal(node, id);
+    }
+
+    // The node whose subtree holds exactly the names starting with prefix, or NONE
+    private int find(String prefix) {
+        int node = ROOT;
+        int position = 0;
+        while (position < prefix.length()) {
+            char c = fold(prefix.charAt(position));
+            int child = firstChildren[node];
+            while (child != NONE && labelChar(child, 0) < c) {
+                child = nextSiblings[child];
+            }
+            if (child == NONE || labelChar(child, 0) != c) {
+                return NONE;
+            }
+
+            int length = Math.min(labelLengths[child], prefix.length() - position);
+            for (int i = 1; i < length; i++) {
+                if (labelChar(child, i) != fold(prefix.charAt(position + i))) {
+                    return NONE;
+                }
+            }
+            node = child;
+            position += length;
+        }
+        return node;
+    }
+
+    /**
+     * Returns up to {@code limit} ids of names that start with {@code prefix} and pass
+     * {@code accept}, in order of their names.
+     */
+    int[] collect(String prefix, IntPredicate accept, int limit) {
+        int start = find(prefix);
+        if (start == NONE || limit <= 0) {
+            return new int[0];
+        }
+
+        int[] found = new int[Math.min(limit, 64)];
+        int count = 0;
+        int[] stack = new int[16];
+        int depth = 0;
+        stack[depth++] = start;
+        while (depth > 0) {
+            int node = stack[--depth];
+            for (int id = terminals[node]; id != NONE; id = sameNames[id]) {
+                if (accept.test(id)) {
+                    if (count == found.length) {
+                        found = Arrays.copyOf(found, Math.min(limit, count * 2));
+                    }
+                    found[count++] = id;
+                    if (count == limit) {
+                        return found;
+                    }
+                }
+            }
+
+            if (depth + 2 > stack.length) {
+                stack = Arrays.copyOf(stack, stack.length * 2);
+            }
+            // The sibling waits below the child, so the whole subtree of the child comes first
+            if (node != start && nextSiblings[node] != NONE) {
+                stack[depth++] = nextSiblings[node];
+            }
+            if (firstChildren[node] != NONE) {
+                stack[depth++] = firstChildren[node];
+            }
+        }
+        return Arrays.copyOf(found, count);
+    }
+
+    int nodeCount() {
+        return size;
+    }
+}
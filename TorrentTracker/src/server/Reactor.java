@@ -0,0 +1,443 @@
+package server;
+
+import server.exceptions.ProtocolException;
+import server.limits.RateLimiter;
+import server.metrics.LatencyHistogram;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+class Reactor extends Thread {
+    private static final Logger LOGGER = Logger.getLogger(Server.class.getName());
+
+    private static final int WRITE_BUFFER_SIZE = 16 * 1024;
+    private static final int MAX_POOLED_WRITE_BUFFERS = 256;
+    // A subscriber with more than this still unwritten gets no new updates until it catches up
+    private static final long MAX_PENDING_PUSH_BYTES = 1 << 20;
+    // A connection with more than this still unwritten is not read from until it catches up
+    private static final long MAX_PENDING_REPLY_BYTES = 4 << 20;
+    // Commands run for one connection before the others get their turn
+    private static final int COMMANDS_PER_TURN = 32;
+
+    private final Selector selector;
+    private final BufferPool bufferPool;
+    private final CommandExecutor commandExecutor;
+    private final BinaryCommandExecutor binaryCommandExecutor;
+    private final Subscriptions subscriptions;
+    private final RateLimiter rateLimiter;
+    private final Queue<SocketChannel> pendingChannels;
+    private final Queue<Push> pendingPushes;
+    private final Set<SelectionKey> backloggedSubscribers;
+    // Connections with buffered commands left over, served after the ones the selector picked
+    private final Queue<SelectionKey> runnable;
+    private final Set<SelectionKey> throttledKeys;
+    private final CommandLine commandLine;
+
+    private final LatencyHistogram loopLatency;
+    private final LongAdder bytesIn;
+    private final LongAdder bytesOut;
+    private final LongAdder connectionsOpened;
+    private final LongAdder connectionsClosed;
+    private final LongAdder commandsThrottled;
+    private final LongAdder readsSuspended;
+    private final LongAdder connectionsFailed;
+
+    private record Push(Subscriptions.Subscriber subscriber, long version, byte[] bytes) {
+    }
+
+    Reactor(String name, CommandExecutor commandExecutor, BinaryCommandExecutor binaryCommandExecutor,
+            Subscriptions subscriptions, RateLimiter rateLimiter) throws IOException {
+        super(name);
+        this.commandExecutor = commandExecutor;
+        this.binaryCommandExecutor = binaryCommandExecutor;
+        this.subscriptions = subscriptions;
+        this.rateLimiter = rateLimiter;
+        selector = Selector.open();
+        bufferPool = new BufferPool(WRITE_BUFFER_SIZE, MAX_POOLED_WRITE_BUFFERS);
+        pendingChannels = new ConcurrentLinkedQueue<>();
+        pendingPushes = new ConcurrentLinkedQueue<>();
+        backloggedSubscribers = new HashSet<>();
+        runnable = new ArrayDeque<>();
+        throttledKeys = new LinkedHashSet<>();
+        commandLine = new CommandLine();
+
+        loopLatency = commandExecutor.metrics().histogram("selector_loop");
+        bytesIn = commandExecutor.metrics().counter("bytes_in");
+        bytesOut = commandExecutor.metrics().counter("bytes_out");
+        connectionsOpened = commandExecutor.metrics().counter("connections_opened");
+        connectionsClosed = commandExecutor.metrics().counter("connections_closed");
+        commandsThrottled = commandExecutor.metrics().counter("commands_throttled");
+        readsSuspended = commandExecutor.metrics().counter("reads_suspended");
+        connectionsFailed = commandExecutor.metrics().counter("connections_failed");
+    }
+
+    /**
+     * Hands an accepted channel over to this reactor. Safe to call from any thread;
+     * the channel is registered with the selector on the reactor's own thread.
+     */
+    void assign(SocketChannel channel) {
+        pendingChannels.add(channel);
+        selector.wakeup();
+    }
+
+    /**
+     * Hands a subscription update over to this reactor. Safe to call from any thread; the
+     * update is queued on the connection by the reactor's own thread.
+     */
+    void push(Subscriptions.Subscriber subscriber, long version, byte[] bytes) {
+        pendingPushes.add(new Push(subscriber, version, bytes));
+        selector.wakeup();
+    }
+
+    private void deliverPendingPushes() {
+        Push push;
+        while ((push = pendingPushes.poll()) != null) {
+            SelectionKey key = push.subscriber().key();
+            if (!key.isValid() || push.version() <= push.subscriber().version()) {
+                continue;
+            }
+
+            ClientSession session = (ClientSession) key.attachment();
+            if (session.pendingWriteBytes() > MAX_PENDING_PUSH_BYTES) {
+                // Skipped updates are folded into the next one once the backlog is written
+                backloggedSubscribers.add(key);
+                continue;
+            }
+            session.enqueue(push.bytes());
+            push.subscriber().advanceTo(push.version());
+            if ((key.interestOps() & SelectionKey.OP_WRITE) == 0) {
+                flushKey(key);
+            }
+        }
+    }
+
+    private void registerPendingChannels() {
+        SocketChannel channel;
+        while ((channel = pendingChannels.poll()) != null) {
+            try {
+                channel.configureBlocking(false);
+                ClientSession session = new ClientSession(bufferPool, rateLimiter.newConnectionBucket(System.nanoTime()));
+                channel.register(selector, SelectionKey.OP_READ, session);
+                connectionsOpened.increment();
+            } catch (IOException exception) {
+                LOGGER.log(Level.WARNING, "Registering client failed: " + exception.getMessage(), exception);
+                closeQuietly(channel);
+            }
+        }
+    }
+
+    private static void closeQuietly(SocketChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException exception) {
+            LOGGER.log(Level.WARNING, "Closing client failed: " + exception.getMessage(), exception);
+        }
+    }
+
+    private void endConnection(SelectionKey key) {
+        SocketChannel sc = (SocketChannel) key.channel();
+        ((ClientSession) key.attachment()).releaseBuffers();
+        subscriptions.unsubscribe(key);
+        backloggedSubscribers.remove(key);
+        throttledKeys.remove(key);
+        commandExecutor.disconnect(sc);
+        key.cancel();
+        connectionsClosed.increment();
+        closeQuietly(sc);
+    }
+
+    // A bug hit while serving one connection ends only that connection, not the whole reactor
+    private void failConnection(SelectionKey key, RuntimeException exception) {
+        LOGGER.log(Level.SEVERE, "Serving client failed: " + exception, exception);
+        connectionsFailed.increment();
+        if (!key.isValid()) {
+            closeQuietly((SocketChannel) key.channel());
+            return;
+        }
+        try {
+            endConnection(key);
+        } catch (RuntimeException closeException) {
+            LOGGER.log(Level.SEVERE, "Ending client connection failed: " + closeException, closeException);
+            key.cancel();
+            closeQuietly((SocketChannel) key.channel());
+        }
+    }
+
+    private void flushKey(SelectionKey key) {
+        SocketChannel sc = (SocketChannel) key.channel();
+        ClientSession session = (ClientSession) key.attachment();
+        long pending = session.pendingWriteBytes();
+        try {
+            boolean flushed = session.flushTo(sc);
+            bytesOut.add(pending - session.pendingWriteBytes());
+            if (flushed) {
+                key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+                if (backloggedSubscribers.remove(key)) {
+                    subscriptions.requestFlush();
+                }
+                if (session.isWaitingForWrites()) {
+                    session.waitForWrites(false);
+                    updateReadInterest(key, session);
+                    runnable.add(key);
+                }
+            } else {
+                key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+            }
+        } catch (IOException exception) {
+            LOGGER.log(Level.WARNING, "Writing to client failed: " + exception.getMessage(), exception);
+            endConnection(key);
+        } catch (RuntimeException exception) {
+            failConnection(key, exception);
+        }
+    }
+
+    private byte[] subscribe(SelectionKey key) {
+        long since = -1;
+        if (commandLine.tokenCount() > 1) {
+            try {
+                since = Long.parseLong(commandLine.token(1));
+            } catch (NumberFormatException e) {
+                LOGGER.log(Level.WARNING, "Parsing of the subscription version failed: " + e.getMessage(), e);
+            }
+        }
+        return subscriptions.subscribe(this, key, since);
+    }
+
+    // Returns true if the line was part of a bulk command, which replies once its last file line arrives
+    private boolean collectBulk(SocketChannel sc, ClientSession session, InetAddress ip) {
+        BulkCommand bulk = session.bulkCommand();
+        if (bulk == null) {
+            if (!BulkCommand.isBulk(CommandVerb.of(commandLine)) || (bulk = BulkCommand.parse(commandLine)) == null) {
+                return false;
+            }
+        } else {
+            bulk.add(commandLine);
+        }
+
+        if (bulk.isComplete()) {
+            session.collectBulk(null);
+            session.enqueue(commandExecutor.executeBulkEncoded(sc, bulk, ip));
+        } else {
+            session.collectBulk(bulk);
+        }
+        return true;
+    }
+
+    private void executeLine(SelectionKey key, SocketChannel sc, ClientSession session, InetAddress ip) {
+        session.nextLine(commandLine);
+        if (collectBulk(sc, session, ip)) {
+            return;
+        }
+        byte[] serverReply = CommandVerb.of(commandLine) == CommandVerb.SUBSCRIBE
+                ? subscribe(key)
+                : commandExecutor.executeEncoded(sc, commandLine, ip);
+        if (LOGGER.isLoggable(Level.FINE)) {
+            LOGGER.fine("Command: " + commandLine + " (" + serverReply.length + " reply bytes)");
+        }
+        session.enqueue(serverReply);
+
+        if (CommandVerb.of(commandLine) == CommandVerb.BINARY) {
+            session.switchToBinary();
+        }
+    }
+
+    private void executeFrame(SocketChannel sc, ClientSession session, InetAddress ip)
+            throws ProtocolException {
+        ByteBuffer frame = session.nextFrame();
+        binaryCommandExecutor.execute(sc, frame, ip, session);
+    }
+
+    private static void updateReadInterest(SelectionKey key, ClientSession session) {
+        int ops = key.interestOps();
+        key.interestOps(session.isReadSuspended() ? ops & ~SelectionKey.OP_READ : ops | SelectionKey.OP_READ);
+    }
+
+    // Returns whether the connection may run its next command now, suspending reads if not
+    private boolean admit(SelectionKey key, SocketChannel sc, ClientSession session) {
+        if (session.pendingWriteBytes() > MAX_PENDING_REPLY_BYTES) {
+            session.waitForWrites(true);
+            readsSuspended.increment();
+            updateReadInterest(key, session);
+            return false;
+        }
+        long now = System.nanoTime();
+        long wait = rateLimiter.acquire(session.bucket(), commandExecutor.userOf(sc), now);
+        if (wait > 0) {
+            session.throttleUntil(now + wait);
+            throttledKeys.add(key);
+            commandsThrottled.increment();
+            updateReadInterest(key, session);
+            return false;
+        }
+        return true;
+    }
+
+    // Runs the connection's buffered commands, at most one turn's worth of them
+    private void serve(SelectionKey key) {
+        SocketChannel sc = (SocketChannel) key.channel();
+        ClientSession session = (ClientSession) key.attachment();
+        if (session.isReadSuspended()) {
+            return;
+        }
+        InetAddress ip = sc.socket().getInetAddress();
+
+        boolean replied = false;
+        try {
+            int served = 0;
+            while (session.hasCompleteMessage()) {
+                // The file lines of a bulk command cost one command per BulkCommand.LINES_PER_CHARGE of them
+                BulkCommand bulk = session.bulkCommand();
+                if (bulk == null || bulk.chargesNextLine()) {
+                    if (served == COMMANDS_PER_TURN) {
+                        runnable.add(key);
+                        break;
+                    }
+                    if (!admit(key, sc, session)) {
+                        break;
+                    }
+                    served++;
+                }
+                if (session.isBinary()) {
+                    executeFrame(sc, session, ip);
+                } else {
+                    executeLine(key, sc, session, ip);
+                }
+                replied = true;
+            }
+        } catch (ProtocolException exception) {
+            LOGGER.log(Level.WARNING, "Malformed binary frame: " + exception.getMessage(), exception);
+            endConnection(key);
+            return;
+        } catch (RuntimeException exception) {
+            failConnection(key, exception);
+            return;
+        }
+
+        if (replied && (key.interestOps() & SelectionKey.OP_WRITE) == 0) {
+            flushKey(key);
+        }
+    }
+
+    private void communicateThroughKey(SelectionKey key) {
+        SocketChannel sc = (SocketChannel) key.channel();
+        ClientSession session = (ClientSession) key.attachment();
+        try {
+            int r = session.readFrom(sc);
+            if (r < 0) {
+                endConnection(key);
+                return;
+            }
+            bytesIn.add(r);
+        } catch (IOException exception) {
+            // Connection ended unexpectedly or sent an oversized command
+            LOGGER.log(Level.WARNING, "Reading from client failed: " + exception.getMessage(), exception);
+            endConnection(key);
+            return;
+        } catch (RuntimeException exception) {
+            failConnection(key, exception);
+            return;
+        }
+        serve(key);
+    }
+
+    // Lets connections whose wait is over run again; returns the nanoseconds until the next one's is
+    private long releaseThrottled(long now) {
+        long nextRelease = Long.MAX_VALUE;
+        Iterator<SelectionKey> keys = throttledKeys.iterator();
+        while (keys.hasNext()) {
+            SelectionKey key = keys.next();
+            ClientSession session = (ClientSession) key.attachment();
+            long remaining = session.throttledUntil() - now;
+            if (remaining > 0) {
+                nextRelease = Math.min(nextRelease, remaining);
+                continue;
+            }
+            keys.remove();
+            session.releaseThrottle();
+            updateReadInterest(key, session);
+            runnable.add(key);
+        }
+        return nextRelease;
+    }
+
+    private void select() throws IOException {
+        long nextRelease = releaseThrottled(System.nanoTime());
+        if (!runnable.isEmpty()) {
+            selector.selectNow();
+        } else if (nextRelease == Long.MAX_VALUE) {
+            selector.select();
+        } else {
+            selector.select(TimeUnit.NANOSECONDS.toMillis(nextRelease) + 1);
+        }
+    }
+
+    private void serveRunnable() {
+        // Only the ones queued before this pass, so a connection with a long pipeline waits a turn
+        for (int i = runnable.size(); i > 0; i--) {
+            SelectionKey key = runnable.poll();
+            if (key.isValid()) {
+                serve(key);
+            }
+        }
+    }
+
+    private void closeAll() {
+        for (SelectionKey key : selector.keys()) {
+            if (key.attachment() instanceof ClientSession) {
+                endConnection(key);
+            }
+        }
+        try {
+            selector.close();
+        } catch (IOException exception) {
+            LOGGER.log(Level.WARNING, "Closing selector failed: " + exception.getMessage(), exception);
+        }
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (!isInterrupted()) {
+                select();
+                long start = System.nanoTime();
+                registerPendingChannels();
+                deliverPendingPushes();
+
+                Set<SelectionKey> selectedKeys = selector.selectedKeys();
+                Iterator<SelectionKey> keyIterator = selectedKeys.iterator();
+
+                while (keyIterator.hasNext()) {
+                    SelectionKey key = keyIterator.next();
+                    keyIterator.remove();
+                    if (key.isValid() && key.isReadable()) {
+                        communicateThroughKey(key);
+                    }
+                    if (key.isValid() && key.isWritable()) {
+                        flushKey(key);
+                    }
+                }
+                serveRunnable();
+                loopLatency.record(System.nanoTime() - start);
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Reactor " + getName() + " failed: " + e.getMessage(), e);
+        } finally {
+            closeAll();
+        }
+    }
+}
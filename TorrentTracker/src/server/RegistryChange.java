@@ -0,0 +1,17 @@
+package server;
+
+import java.util.Set;
+
+/**
+ * One published registry edit. For a registration {@code files} holds only the files the
+ * edit added; for a disconnect it holds every file the user had. {@code joined} tells whether a
+ * registration added a user that was not registered before.
+ */
+public record RegistryChange(long version, Kind kind, String username, String address, Set<String> files,
+                             boolean joined) {
+    public enum Kind {
+        REGISTER,
+        UNREGISTER,
+        DISCONNECT
+    }
+}
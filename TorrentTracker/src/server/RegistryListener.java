@@ -0,0 +1,9 @@
+package server;
+
+/**
+ * Observes registry edits. Listeners are called on the writing thread, in version order,
+ * right after the new snapshot is published, so they must not block.
+ */
+public interface RegistryListener {
+    void onChange(RegistryChange change);
+}
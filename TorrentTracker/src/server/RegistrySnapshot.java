@@ -0,0 +1,95 @@
+package server;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.function.BiConsumer;
+
+/**
+ * Immutable view of the registry at one version. Readers keep using the snapshot they
+ * obtained while writers publish newer ones, so no read ever locks or copies the registry.
+ */
+public final class RegistrySnapshot {
+    static final RegistrySnapshot EMPTY =
+            new RegistrySnapshot(0, SegmentedMap.empty(), OwnerIndex.EMPTY, new PathTable().view());
+
+    private final long version;
+    private final SegmentedMap<String, Peer> peers;
+    private final OwnerIndex owners;
+    private final PathTable.View paths;
+
+    RegistrySnapshot(long version, SegmentedMap<String, Peer> peers, OwnerIndex owners, PathTable.View paths) {
+        this.version = version;
+        this.peers = peers;
+        this.owners = owners;
+        this.paths = paths;
+    }
+
+    public long version() {
+        return version;
+    }
+
+    SegmentedMap<String, Peer> peers() {
+        return peers;
+    }
+
+    OwnerIndex owners() {
+        return owners;
+    }
+
+    PathTable.View paths() {
+        return paths;
+    }
+
+    public int userCount() {
+        return peers.size();
+    }
+
+    public int fileCount() {
+        return owners.fileCount();
+    }
+
+    Set<String> filesOf(Peer peer) {
+        Set<String> files = new HashSet<>();
+        for (int file : peer.files()) {
+            files.add(paths.path(file));
+        }
+        return files;
+    }
+
+    /**
+     * Returns the user's registration decoded into strings, or null if there is no such user.
+     */
+    public UserData user(String username) {
+        Peer peer = peers.get(username);
+        return peer == null ? null : new UserData(peer.address(), filesOf(peer));
+    }
+
+    public String addressOf(String username) {
+        Peer peer = peers.get(username);
+        return peer == null ? null : peer.address();
+    }
+
+    public Set<String> ownersOf(String fileName) {
+        return owners.ownersOf(paths.find(fileName));
+    }
+
+    public void forEachUser(BiConsumer<String, UserData> action) {
+        peers.forEach((username, peer) -> action.accept(username, new UserData(peer.address(), filesOf(peer))));
+    }
+
+    public Set<String> addressEntries() {
+        Set<String> set = new HashSet<>();
+        peers.forEach((username, peer) -> set.add(username + " - " + peer.address()));
+        return set;
+    }
+
+    public Set<String> fileEntries() {
+        Set<String> set = new HashSet<>();
+        peers.forEach((username, peer) -> {
+            for (int file : peer.files()) {
+                set.add(username + " : " + paths.path(file));
+            }
+        });
+        return set;
+    }
+}
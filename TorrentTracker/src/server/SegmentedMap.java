@@ -0,0 +1,119 @@
+package server;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+/**
+ * Immutable hash map split into a fixed number of segments. An edit copies only the
+ * segments it touches, so publishing a new version costs O(size / SEGMENT_COUNT)
+ * per touched segment instead of a copy of the whole map.
+ */
+final class SegmentedMap<K, V> {
+    private static final int SEGMENT_BITS = 6;
+    private static final int SEGMENT_COUNT = 1 << SEGMENT_BITS;
+    private static final SegmentedMap<?, ?> EMPTY = new SegmentedMap<>(emptySegments(), 0);
+
+    private final Map<K, V>[] segments;
+    private final int size;
+
+    private SegmentedMap(Map<K, V>[] segments, int size) {
+        this.segments = segments;
+        this.size = size;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <K, V> Map<K, V>[] emptySegments() {
+        Map<K, V>[] segments = (Map<K, V>[]) new Map<?, ?>[SEGMENT_COUNT];
+        Arrays.fill(segments, Map.of());
+        return segments;
+    }
+
+    @SuppressWarnings("unchecked")
+    static <K, V> SegmentedMap<K, V> empty() {
+        return (SegmentedMap<K, V>) EMPTY;
+    }
+
+    // Takes the top bits of a multiplicative hash; the low bits are what HashMap buckets on,
+    // so selecting segments by them would leave most buckets inside a segment empty
+    private static int segmentOf(Object key) {
+        return (key.hashCode() * 0x9E3779B9) >>> (Integer.SIZE - SEGMENT_BITS);
+    }
+
+    V get(Object key) {
+        return segments[segmentOf(key)].get(key);
+    }
+
+    boolean containsKey(Object key) {
+        return segments[segmentOf(key)].containsKey(key);
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    void forEach(BiConsumer<? super K, ? super V> action) {
+        for (Map<K, V> segment : segments) {
+            segment.forEach(action);
+        }
+    }
+
+    Editor<K, V> edit() {
+        return new Editor<>(this);
+    }
+
+    static final class Editor<K, V> {
+        private final Map<K, V>[] segments;
+        private final boolean[] copied;
+        private int size;
+
+        private Editor(SegmentedMap<K, V> base) {
+            segments = base.segments.clone();
+            copied = new boolean[SEGMENT_COUNT];
+            size = base.size;
+        }
+
+        private Map<K, V> writableSegment(Object key) {
+            int index = segmentOf(key);
+            if (!copied[index]) {
+                segments[index] = new HashMap<>(segments[index]);
+                copied[index] = true;
+            }
+            return segments[index];
+        }
+
+        V get(Object key) {
+            return segments[segmentOf(key)].get(key);
+        }
+
+        V put(K key, V value) {
+            V previous = writableSegment(key).put(key, value);
+            if (previous == null) {
+                size++;
+            }
+            return previous;
+        }
+
+        V remove(K key) {
+            if (!segments[segmentOf(key)].containsKey(key)) {
+                return null;
+            }
+            V previous = writableSegment(key).remove(key);
+            size--;
+            return previous;
+        }
+
+        /**
+         * Returns the edited map. The editor must not be used afterwards, since the
+         * published map shares its segments.
+         */
+        SegmentedMap<K, V> publish() {
+            return new SegmentedMap<>(segments, size);
+        }
+    }
+}
@@ -1,42 +1,76 @@
 package server;
 
+import common.cluster.Shard;
+import common.logging.AsyncHandler;
+import server.limits.RateLimiter;
+import server.liveness.PeerLiveness;
+import server.metrics.TrackerMetrics;
+import server.persistence.Journal;
+import server.selection.PeerSelectionPolicy;
+
 import java.io.IOException;
-import java.net.InetAddress;
 import java.net.InetSocketAddress;
-import java.net.SocketException;
-import java.nio.ByteBuffer;
-import java.nio.channels.SelectionKey;
-import java.nio.channels.Selector;
+import java.nio.channels.ClosedByInterruptException;
 import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
-import java.nio.charset.StandardCharsets;
-import java.util.Iterator;
-import java.util.Set;
-import java.util.logging.FileHandler;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 public class Server {
     private static final Logger LOGGER = Logger.getLogger(Server.class.getName());
+    private static final int LOG_BUFFER_RECORDS = 8192;
 
     private final String serverHost;
     private final int port;
-    private static final int BUFFER_SIZE = 512;
+    private final int reactorCount;
 
+    private final TrackerMetrics metrics;
+    private final ServerData serverData;
     private final CommandExecutor commandExecutor;
+    private final BinaryCommandExecutor binaryCommandExecutor;
+    private final Subscriptions subscriptions;
+    private RateLimiter rateLimiter;
 
-    Server(String serverHost, int port) {
+    Server(String serverHost, int port, PeerSelectionPolicy peerSelectionPolicy, int reactorCount) {
+        if (reactorCount < 1) {
+            throw new IllegalArgumentException("The tracker needs at least one reactor thread.");
+        }
         this.port = port;
         this.serverHost = serverHost;
-
-        ServerData serverData = new ServerData();
-        commandExecutor = new CommandExecutor(serverData);
+        this.reactorCount = reactorCount;
+
+        metrics = new TrackerMetrics();
+        serverData = new ServerData();
+        commandExecutor = new CommandExecutor(serverData, peerSelectionPolicy, metrics);
+        binaryCommandExecutor = new BinaryCommandExecutor(commandExecutor, serverData);
+        subscriptions = new Subscriptions(commandExecutor);
+        serverData.addListener(subscriptions);
+        rateLimiter = RateLimiter.unlimited();
+        registerGauges();
         createLogHandler();
     }
 
+    private void registerGauges() {
+        LongAdder opened = metrics.counter("connections_opened");
+        LongAdder closed = metrics.counter("connections_closed");
+        metrics.gauge("connections_active", () -> opened.sum() - closed.sum());
+        metrics.gauge("registry_version", () -> serverData.snapshot().version());
+        metrics.gauge("registry_users", () -> serverData.snapshot().userCount());
+        metrics.gauge("registry_files", () -> serverData.snapshot().fileCount());
+        metrics.gauge("subscribers", subscriptions::size);
+    }
+
     private void createLogHandler() {
         try {
-            FileHandler handler = new FileHandler("serverLog.log");
+            AsyncHandler handler = new AsyncHandler(Path.of("serverLog.log"), LOG_BUFFER_RECORDS);
             handler.setLevel(Level.ALL);
             LOGGER.addHandler(handler);
             LOGGER.setUseParentHandlers(false);
@@ -46,92 +80,154 @@ public class Server {
         }
     }
 
-    private void acceptKey(SelectionKey key, Selector selector) throws IOException {
-        ServerSocketChannel sockChannel = (ServerSocketChannel) key.channel();
-        SocketChannel accept = sockChannel.accept();
+    /**
+     * Restores the registry saved in {@code directory} and journals every later change to it.
+     * Restored users keep their registrations for {@code graceSeconds}; any user whose client
+     * has not registered again by then is dropped.
+     */
+    void enablePersistence(Path directory, int snapshotEvery, long graceSeconds) throws IOException {
+        Journal journal = Journal.open(directory, serverData, snapshotEvery);
+        Runtime.getRuntime().addShutdownHook(new Thread(journal::close, "tracker-journal-shutdown"));
+
+        List<String> restoredUsers = new ArrayList<>();
+        serverData.snapshot().forEachUser((username, userData) -> restoredUsers.add(username));
+        if (restoredUsers.isEmpty()) {
+            return;
+        }
+
+        commandExecutor.awaitReturningUsers(restoredUsers);
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "tracker-restore-grace");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.schedule(() -> {
+            int released = commandExecutor.releaseUnclaimed(restoredUsers);
+            LOGGER.info("Released " + released + " of " + restoredUsers.size() + " restored users.");
+        }, graceSeconds, TimeUnit.SECONDS);
+        scheduler.shutdown();
+    }
+
+    /**
+     * Runs this tracker as one node of a cluster that splits the files between its nodes.
+     */
+    void ownShard(Shard shard) {
+        commandExecutor.ownShard(shard);
+        metrics.gauge("shard_index", shard::index);
+        metrics.gauge("shard_count", shard::count);
+        LOGGER.info("Serving shard " + shard + " of the cluster.");
+    }
 
-        System.out.println("Client connected.");
-        LOGGER.info("Client connected. Socket channel hashcode: " + accept.hashCode());
+    /**
+     * Drops users that have sent nothing for {@code timeout}, not even a heartbeat, instead
+     * of waiting for their connections to close.
+     */
+    void enableLiveness(Duration timeout) {
+        PeerLiveness liveness = new PeerLiveness(timeout, commandExecutor::expire);
+        commandExecutor.trackLiveness(liveness);
+        metrics.gauge("liveness_tracked", liveness::size);
+        liveness.start();
+    }
 
-        accept.configureBlocking(false);
-        accept.register(selector, SelectionKey.OP_READ);
+    /**
+     * Limits how many commands per second the tracker runs for each connection and for each
+     * user across its connections. A connection over either limit is not read from until its
+     * next command is due, so it cannot crowd out the others on its reactor.
+     */
+    void limitRates(RateLimiter rateLimiter) {
+        this.rateLimiter = rateLimiter;
     }
 
-    private void endConnection(SocketChannel sc) throws IOException {
-        commandExecutor.disconnect(sc);
-        sc.close();
+    /**
+     * Rewrites {@code file} with the {@code stats} report every {@code interval}.
+     */
+    void enableMetricsDump(Path file, Duration interval) {
+        metrics.startDumping(file, interval);
     }
 
-    private boolean communicateThroughKey(SelectionKey key, ByteBuffer buffer) throws IOException {
-        SocketChannel sc = (SocketChannel) key.channel();
-        buffer.clear();
-        try {
-            int r = sc.read(buffer);
-            if (r <= 0) {
-                endConnection(sc);
-                return false;
-            }
-        } catch (SocketException exception) {
-            // Connection ended unexpectedly
-            endConnection(sc);
-            return false;
+    private Reactor[] startReactors() throws IOException {
+        Reactor[] reactors = new Reactor[reactorCount];
+        for (int i = 0; i < reactorCount; i++) {
+            reactors[i] = new Reactor("tracker-reactor-" + i, commandExecutor, binaryCommandExecutor,
+                    subscriptions, rateLimiter);
+            reactors[i].start();
+        }
+        return reactors;
+    }
+
+    private static void stopReactors(Reactor[] reactors) {
+        for (Reactor reactor : reactors) {
+            reactor.interrupt();
         }
-        String command = new String(buffer.array(), 0, buffer.position(), StandardCharsets.UTF_8);
-        command = command.trim();
-        InetAddress ip = sc.socket().getInetAddress();
-
-        System.out.println("Client: " + command);
-        String serverReply = commandExecutor.execute(sc, command, ip).trim() + System.lineSeparator();
-        System.out.println("Server: " + serverReply);
-
-        buffer.clear();
-        buffer.put(serverReply.getBytes());
-        buffer.flip();
-        sc.write(buffer);
-        return true;
     }
 
     public void start() {
+        Reactor[] reactors = new Reactor[0];
         try (ServerSocketChannel serverSocketChannel = ServerSocketChannel.open()) {
             serverSocketChannel.bind(new InetSocketAddress(serverHost, port));
-            serverSocketChannel.configureBlocking(false);
+            reactors = startReactors();
 
-            Selector selector = Selector.open();
-            serverSocketChannel.register(selector, SelectionKey.OP_ACCEPT);
+            int nextReactor = 0;
+            while (!Thread.interrupted()) {
+                SocketChannel accept = serverSocketChannel.accept();
 
-            ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+                LOGGER.info("Client connected. Socket channel hashcode: " + accept.hashCode());
 
-            while (!Thread.interrupted()) {
-                int readyChannels = selector.select();
-                if (readyChannels == 0) {
-                    continue;
-                }
-
-                Set<SelectionKey> selectedKeys = selector.selectedKeys();
-                Iterator<SelectionKey> keyIterator = selectedKeys.iterator();
-
-                while (keyIterator.hasNext()) {
-                    SelectionKey key = keyIterator.next();
-                    if (key.isReadable()) {
-                        if (!communicateThroughKey(key, buffer)) {
-                            break;
-                        }
-                    } else if (key.isAcceptable()) {
-                        acceptKey(key, selector);
-                    }
-                    keyIterator.remove();
-                }
+                reactors[nextReactor].assign(accept);
+                nextReactor = (nextReactor + 1) % reactors.length;
             }
-
+        } catch (ClosedByInterruptException e) {
+            LOGGER.info("Server stopped.");
         } catch (IOException e) {
             LOGGER.log(Level.SEVERE, "Problem with the server socket: " + e.getMessage(), e);
             System.out.println("There is a problem with the server socket");
             e.printStackTrace();
+        } finally {
+            stopReactors(reactors);
         }
     }
 
     public static void main(String[] args) {
-        Server server = new Server("localhost", 5555);
+        PeerSelectionPolicy peerSelectionPolicy =
+                PeerSelectionPolicy.fromName(System.getProperty("tracker.peerPolicy", "least-handed-out"));
+        int reactorCount = Integer.getInteger("tracker.reactors", Runtime.getRuntime().availableProcessors());
+        Server server = new Server(System.getProperty("tracker.host", "localhost"),
+                Integer.getInteger("tracker.port", 5555), peerSelectionPolicy, reactorCount);
+
+        String shard = System.getProperty("tracker.shard");
+        if (shard != null) {
+            server.ownShard(Shard.parse(shard));
+        }
+
+        server.limitRates(new RateLimiter(
+                Double.parseDouble(System.getProperty("tracker.connectionRate", "200")),
+                Integer.getInteger("tracker.connectionBurst", 400),
+                Double.parseDouble(System.getProperty("tracker.userRate", "500")),
+                Integer.getInteger("tracker.userBurst", 1000)));
+
+        long peerTimeoutSeconds = Long.getLong("tracker.peerTimeoutSeconds", 90);
+        if (peerTimeoutSeconds > 0) {
+            server.enableLiveness(Duration.ofSeconds(peerTimeoutSeconds));
+        }
+
+        String metricsFile = System.getProperty("tracker.metricsFile");
+        if (metricsFile != null) {
+            server.enableMetricsDump(Path.of(metricsFile),
+                    Duration.ofSeconds(Long.getLong("tracker.metricsIntervalSeconds", 60)));
+        }
+
+        String dataDirectory = System.getProperty("tracker.dataDir");
+        if (dataDirectory != null) {
+            try {
+                server.enablePersistence(Path.of(dataDirectory),
+                        Integer.getInteger("tracker.snapshotEvery", 100_000),
+                        Long.getLong("tracker.restoreGraceSeconds", 300));
+            } catch (IOException e) {
+                LOGGER.log(Level.SEVERE, "Opening the tracker journal failed: " + e.getMessage(), e);
+                System.out.println("Could not open the tracker data directory " + dataDirectory);
+                return;
+            }
+        }
         server.start();
     }
 }
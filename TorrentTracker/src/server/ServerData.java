@@ -4,90 +4,230 @@ import server.exceptions.InvalidUserException;
 import server.exceptions.UserNotFoundException;
 
 import java.io.FileNotFoundException;
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 public class ServerData {
     private static final Logger LOGGER = Logger.getLogger(Server.class.getName());
 
-    private final Map<String, UserData> userDataMap;
+    private static final int MIN_COMPACTION_SIZE = 1 << 16;
+
+    private final Object writeLock;
+    private final List<RegistryListener> listeners;
+    private volatile RegistrySnapshot snapshot;
+
+    // Writer side of the path dictionary, guarded by writeLock; snapshots carry views of it
+    private PathTable paths;
+    private int compactionSize;
 
     ServerData() {
-        userDataMap = new HashMap<>();
+        writeLock = new Object();
+        listeners = new CopyOnWriteArrayList<>();
+        paths = new PathTable();
+        compactionSize = MIN_COMPACTION_SIZE;
+        snapshot = new RegistrySnapshot(0, SegmentedMap.empty(), OwnerIndex.EMPTY, paths.view());
+    }
+
+    public void addListener(RegistryListener listener) {
+        listeners.add(listener);
     }
 
-    public boolean checkIfUsernameExists(String username) {return userDataMap.containsKey(username); }
+    public RegistrySnapshot snapshot() {
+        return snapshot;
+    }
+
+    private static int[] sorted(int[] ids, int count) {
+        int[] sorted = Arrays.copyOf(ids, count);
+        Arrays.sort(sorted);
+        return sorted;
+    }
+
+    // Callers hold writeLock, so versions are published and announced strictly in order
+    private void publish(SegmentedMap.Editor<String, Peer> peers, OwnerIndex.Editor owners,
+                         RegistryChange.Kind kind, String username, String address, Set<String> files,
+                         boolean joined) {
+        long version = snapshot.version() + 1;
+        snapshot = new RegistrySnapshot(version, peers.publish(), owners.publish(), paths.view());
+
+        if (!listeners.isEmpty()) {
+            RegistryChange change = new RegistryChange(version, kind, username, address, Set.copyOf(files), joined);
+            for (RegistryListener listener : listeners) {
+                listener.onChange(change);
+            }
+        }
+
+        if (paths.size() > compactionSize) {
+            RegistrySnapshot current = snapshot;
+            snapshot = rebuild(current.version(), current::forEachUser);
+        }
+    }
+
+    /*
+     * Paths are never removed from the dictionary, so once it has doubled since the last
+     * rebuild it is rebuilt from the live registrations. The contents do not change, only
+     * the ids, so the rebuilt snapshot keeps the version.
+     */
+    private RegistrySnapshot rebuild(long version, Consumer<BiConsumer<String, UserData>> registrations) {
+        PathTable newPaths = new PathTable();
+        SegmentedMap.Editor<String, Peer> peers = SegmentedMap.<String, Peer>empty().edit();
+        OwnerIndex.Editor owners = OwnerIndex.EMPTY.edit();
+
+        registrations.accept((username, userData) -> {
+            int[] files = new int[userData.files().size()];
+            int count = 0;
+            for (String file : userData.files()) {
+                files[count] = newPaths.intern(file);
+                owners.addOwner(files[count++], username);
+            }
+            peers.put(username, Peer.of(userData.address()).withFiles(sorted(files, count)));
+        });
+
+        paths = newPaths;
+        compactionSize = Math.max(MIN_COMPACTION_SIZE, newPaths.size() * 2);
+        return new RegistrySnapshot(version, peers.publish(), owners.publish(), newPaths.view());
+    }
+
+    /**
+     * Replaces the registry with recovered state. Only meant to be called before the
+     * tracker starts serving, since it bypasses the listeners.
+     */
+    public void restore(long version, Map<String, UserData> restoredUsers) {
+        synchronized (writeLock) {
+            snapshot = rebuild(version, restoredUsers::forEach);
+        }
+    }
+
+    public boolean checkIfUsernameExists(String username) {
+        return snapshot.peers().containsKey(username);
+    }
 
     public void register(String username, UserData userData) throws InvalidUserException {
-        if (checkIfUsernameExists(username)) {
-            if (!userDataMap.get(username).address().equals(userData.address())) {
+        synchronized (writeLock) {
+            RegistrySnapshot current = snapshot;
+            Peer existing = current.peers().get(username);
+            if (existing != null && !existing.hasAddress(userData.address())) {
                 LOGGER.log(Level.SEVERE, "User " + username + " tried to register from another IP.");
                 throw new InvalidUserException(username + " has already registered from another address!");
             }
-            userDataMap.get(username).addFiles(userData.files());
-        } else {
-            userDataMap.put(username, userData);
+
+            int[] addedFiles = new int[userData.files().size()];
+            int count = 0;
+            Set<String> addedNames = new HashSet<>();
+            for (String file : userData.files()) {
+                int id = paths.intern(file);
+                if (existing == null || !existing.hasFile(id)) {
+                    addedFiles[count++] = id;
+                    addedNames.add(file);
+                }
+            }
+            if (existing != null && count == 0) {
+                return;
+            }
+
+            int[] added = sorted(addedFiles, count);
+            SegmentedMap.Editor<String, Peer> peers = current.peers().edit();
+            OwnerIndex.Editor owners = current.owners().edit();
+            peers.put(username, (existing == null ? Peer.of(userData.address()) : existing).withFiles(added));
+            for (int file : added) {
+                owners.addOwner(file, username);
+            }
+            publish(peers, owners, RegistryChange.Kind.REGISTER, username, userData.address(), addedNames,
+                    existing == null);
         }
     }
 
     public String getAddressOfFile(String fileName) throws FileNotFoundException {
-        String address = null;
-        for (Map.Entry<String, UserData> entry : userDataMap.entrySet()) {
-            for (String file : entry.getValue().files()) {
-                if (file.equals(fileName)) {
-                    address = userDataMap.get(entry.getKey()).address();
-                }
-            }
+        RegistrySnapshot current = snapshot;
+        Set<String> owners = current.ownersOf(fileName);
+        if (owners.isEmpty()) {
+            throw new FileNotFoundException("The specified file is not registered!");
         }
 
-        if(address == null) {
+        return current.addressOf(owners.iterator().next());
+    }
+
+    public List<String> getAddressesOfFile(String fileName) throws FileNotFoundException {
+        RegistrySnapshot current = snapshot;
+        Set<String> owners = current.ownersOf(fileName);
+        if (owners.isEmpty()) {
             throw new FileNotFoundException("The specified file is not registered!");
         }
 
-        return address;
+        List<String> addresses = new ArrayList<>(owners.size());
+        for (String owner : owners) {
+            addresses.add(current.addressOf(owner));
+        }
+        return addresses;
     }
 
     public void unregister(String username, Set<String> files) throws UserNotFoundException {
-        if (checkIfUsernameExists(username)) {
-            userDataMap.get(username).removeFiles(files);
-        } else {
-            LOGGER.log(Level.SEVERE, "Nonexistent user " + username + " tried to unregister.");
-            throw new UserNotFoundException(username + " is not registered!");
+        synchronized (writeLock) {
+            RegistrySnapshot current = snapshot;
+            Peer peer = current.peers().get(username);
+            if (peer == null) {
+                LOGGER.log(Level.SEVERE, "Nonexistent user " + username + " tried to unregister.");
+                throw new UserNotFoundException(username + " is not registered!");
+            }
+
+            int[] removedFiles = new int[files.size()];
+            int count = 0;
+            Set<String> removedNames = new HashSet<>();
+            for (String file : files) {
+                int id = current.paths().find(file);
+                if (id >= 0 && peer.hasFile(id)) {
+                    removedFiles[count++] = id;
+                    removedNames.add(file);
+                }
+            }
+            if (count == 0) {
+                return;
+            }
+
+            int[] removed = sorted(removedFiles, count);
+            SegmentedMap.Editor<String, Peer> peers = current.peers().edit();
+            OwnerIndex.Editor owners = current.owners().edit();
+            peers.put(username, peer.withoutFiles(removed));
+            for (int file : removed) {
+                owners.removeOwner(file, username);
+            }
+            publish(peers, owners, RegistryChange.Kind.UNREGISTER, username, peer.address(), removedNames, false);
         }
     }
 
     public void disconnect(String username) throws UserNotFoundException {
-        if (checkIfUsernameExists(username)) {
-            userDataMap.remove(username);
-        } else {
-            LOGGER.log(Level.SEVERE, "Nonexistent user " + username + " tried to disconnect.");
-            throw new UserNotFoundException(username + " is not registered!");
+        synchronized (writeLock) {
+            RegistrySnapshot current = snapshot;
+            Peer peer = current.peers().get(username);
+            if (peer == null) {
+                LOGGER.log(Level.SEVERE, "Nonexistent user " + username + " tried to disconnect.");
+                throw new UserNotFoundException(username + " is not registered!");
+            }
+
+            SegmentedMap.Editor<String, Peer> peers = current.peers().edit();
+            OwnerIndex.Editor owners = current.owners().edit();
+            peers.remove(username);
+            for (int file : peer.files()) {
+                owners.removeOwner(file, username);
+            }
+            Set<String> removedNames = listeners.isEmpty() ? Set.of() : current.filesOf(peer);
+            publish(peers, owners, RegistryChange.Kind.DISCONNECT, username, peer.address(), removedNames, false);
         }
     }
 
     public Set<String> listAddresses() {
-        Set<String> set = new HashSet<>();
-
-        for (Map.Entry<String, UserData> entry : userDataMap.entrySet()) {
-            set.add(entry.getKey()
-                    + " - "
-                    + entry.getValue().address());
-        }
-        return set;
+        return snapshot.addressEntries();
     }
 
     public Set<String> listFiles() {
-        Set<String> set = new HashSet<>();
-
-        for (Map.Entry<String, UserData> entry : userDataMap.entrySet()) {
-            for (String file : entry.getValue().files()) {
-                set.add(entry.getKey() + " : " + file);
-            }
-        }
-        return set;
+        return snapshot.fileEntries();
     }
 }
@@ -0,0 +1,120 @@
+package server;
+
+import java.nio.channels.SelectionKey;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Pushes address changes to connections that sent {@code subscribe <version>}. A registry
+ * change only schedules a flush, which runs a moment later on the "tracker-subscriptions"
+ * thread, so a burst of changes reaches subscribers as one coalesced list-addresses-since
+ * update. Subscribers at the same version, normally all of them, share one encoded update,
+ * and an idle registry costs nothing.
+ */
+final class Subscriptions implements RegistryListener {
+    private static final long BATCH_DELAY_MILLIS = 100;
+
+    private final CommandExecutor commandExecutor;
+    private final Map<SelectionKey, Subscriber> subscribers;
+    private final AtomicBoolean flushScheduled;
+    private final ScheduledExecutorService flusher;
+
+    static final class Subscriber {
+        private final Reactor reactor;
+        private final SelectionKey key;
+        // The version the client has been brought to; updates are deltas from here
+        private volatile long version;
+
+        private Subscriber(Reactor reactor, SelectionKey key, long version) {
+            this.reactor = reactor;
+            this.key = key;
+            this.version = version;
+        }
+
+        SelectionKey key() {
+            return key;
+        }
+
+        long version() {
+            return version;
+        }
+
+        void advanceTo(long version) {
+            this.version = version;
+        }
+    }
+
+    private record Update(long version, byte[] bytes) {
+    }
+
+    Subscriptions(CommandExecutor commandExecutor) {
+        this.commandExecutor = commandExecutor;
+        subscribers = new ConcurrentHashMap<>();
+        flushScheduled = new AtomicBoolean();
+        flusher = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "tracker-subscriptions");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Subscribes the connection of {@code key} and returns the first update, which brings a
+     * client at version {@code since} up to date. Called on the connection's reactor thread.
+     */
+    byte[] subscribe(Reactor reactor, SelectionKey key, long since) {
+        CommandExecutor.AddressReply reply = commandExecutor.addressReplySince(since);
+        subscribers.put(key, new Subscriber(reactor, key, reply.version()));
+        // Changes published while the reply was built may have been flushed before the put
+        requestFlush();
+        return CommandExecutor.encode(reply.text());
+    }
+
+    void unsubscribe(SelectionKey key) {
+        subscribers.remove(key);
+    }
+
+    int size() {
+        return subscribers.size();
+    }
+
+    void requestFlush() {
+        if (!subscribers.isEmpty() && flushScheduled.compareAndSet(false, true)) {
+            flusher.schedule(this::flush, BATCH_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @Override
+    public void onChange(RegistryChange change) {
+        requestFlush();
+    }
+
+    private void flush() {
+        flushScheduled.set(false);
+
+        Map<Long, Update> updates = new HashMap<>();
+        for (Subscriber subscriber : subscribers.values()) {
+            long version = subscriber.version;
+            Update update = updates.computeIfAbsent(version, since -> {
+                CommandExecutor.AddressReply reply = commandExecutor.addressReplySince(since);
+                return new Update(reply.version(), reply.empty() ? null : CommandExecutor.encode(reply.text()));
+            });
+
+            if (update.bytes() == null) {
+                // Nothing the client has to see, such as file changes only
+                subscriber.advanceTo(Math.max(version, update.version()));
+            } else if (update.version() > version) {
+                subscriber.reactor.push(subscriber, update.version(), update.bytes());
+            }
+        }
+    }
+
+    void close() {
+        flusher.shutdownNow();
+    }
+}
@@ -1,13 +1,22 @@
 package server;
 
+import java.util.HashSet;
 import java.util.Set;
 
 public record UserData(String address, Set<String> files) {
-    public void addFiles(Set<String> filesToAdd) {
-        files.addAll(filesToAdd);
+    public UserData {
+        files = Set.copyOf(files);
     }
 
-    public void removeFiles(Set<String> filesToRemove) {
-        files.removeAll(filesToRemove);
+    public UserData withFiles(Set<String> filesToAdd) {
+        Set<String> newFiles = new HashSet<>(files);
+        newFiles.addAll(filesToAdd);
+        return new UserData(address, newFiles);
+    }
+
+    public UserData withoutFiles(Set<String> filesToRemove) {
+        Set<String> newFiles = new HashSet<>(files);
+        newFiles.removeAll(filesToRemove);
+        return new UserData(address, newFiles);
     }
 }
@@ -0,0 +1,7 @@
+package server.exceptions;
+
+public class ProtocolException extends Exception {
+    public ProtocolException(String message) {
+        super(message);
+    }
+}
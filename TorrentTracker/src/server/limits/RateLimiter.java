@@ -0,0 +1,87 @@
+package server.limits;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Limits the commands the tracker runs for a connection and for a user across all of its
+ * connections, each with its own token bucket. Connections hold their bucket themselves; user
+ * buckets live here and are dropped once they have refilled, when the map has grown enough
+ * to be worth sweeping.
+ */
+public final class RateLimiter {
+    private static final int MIN_SWEEP_SIZE = 1024;
+
+    private final double connectionRate;
+    private final int connectionBurst;
+    private final double userRate;
+    private final int userBurst;
+    private final Map<String, TokenBucket> users;
+    private volatile int sweepAt;
+
+    /**
+     * Creates a limiter; a rate of zero or less turns that limit off.
+     */
+    public RateLimiter(double connectionRate, int connectionBurst, double userRate, int userBurst) {
+        this.connectionRate = connectionRate;
+        this.connectionBurst = connectionBurst;
+        this.userRate = userRate;
+        this.userBurst = userBurst;
+        users = new ConcurrentHashMap<>();
+        sweepAt = MIN_SWEEP_SIZE;
+    }
+
+    public static RateLimiter unlimited() {
+        return new RateLimiter(0, 0, 0, 0);
+    }
+
+    /**
+     * Returns a bucket for a new connection, or null if connections are not limited.
+     */
+    public TokenBucket newConnectionBucket(long now) {
+        return connectionRate > 0 ? new TokenBucket(connectionRate, connectionBurst, now) : null;
+    }
+
+    private TokenBucket userBucket(String username, long now) {
+        TokenBucket bucket = users.get(username);
+        if (bucket != null) {
+            return bucket;
+        }
+        if (users.size() >= sweepAt) {
+            users.values().removeIf(idle -> idle.isFull(now));
+            sweepAt = Math.max(MIN_SWEEP_SIZE, users.size() * 2);
+        }
+        return users.computeIfAbsent(username, key -> new TokenBucket(userRate, userBurst, now));
+    }
+
+    /**
+     * Takes a token for one command from the connection's bucket and, once the connection
+     * belongs to a user, from the user's. Returns 0 if the command may run, or how many
+     * nanoseconds to wait before asking again.
+     *
+     * @param connection the connection's bucket, or null if connections are not limited
+     * @param username   the connection's user, or null if it has not registered yet
+     */
+    public long acquire(TokenBucket connection, String username, long now) {
+        if (connection != null) {
+            long wait = connection.tryAcquire(now);
+            if (wait > 0) {
+                return wait;
+            }
+        }
+        if (username != null && userRate > 0) {
+            long wait = userBucket(username, now).tryAcquire(now);
+            if (wait > 0) {
+                if (connection != null) {
+                    connection.refund();
+                }
+                return wait;
+            }
+        }
+        return 0;
+    }
+
+    int trackedUsers() {
+        return users.size();
+    }
+}
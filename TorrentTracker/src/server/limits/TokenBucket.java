@@ -0,0 +1,56 @@
+package server.limits;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Token bucket kept as a single timestamp, the theoretical time at which the bucket would be
+ * empty again if nothing more were taken. Taking a token moves that time forward by one
+ * interval; the bucket refuses while it lies more than a full burst ahead of now. That makes
+ * a take one compare-and-set, safe from any thread, and an idle bucket costs nothing to refill.
+ */
+public final class TokenBucket {
+    private final long interval;
+    private final long tolerance;
+    private final AtomicLong emptyAt;
+
+    public TokenBucket(double tokensPerSecond, int burst, long now) {
+        if (tokensPerSecond <= 0 || burst < 1) {
+            throw new IllegalArgumentException("A token bucket needs a positive rate and burst.");
+        }
+        interval = Math.max(1, Math.round(1_000_000_000 / tokensPerSecond));
+        tolerance = interval * (burst - 1);
+        emptyAt = new AtomicLong(now);
+    }
+
+    /**
+     * Takes a token and returns 0, or returns how many nanoseconds from {@code now} it takes
+     * until one is available.
+     */
+    public long tryAcquire(long now) {
+        while (true) {
+            long current = emptyAt.get();
+            long start = Math.max(current, now);
+            long wait = start - now - tolerance;
+            if (wait > 0) {
+                return wait;
+            }
+            if (emptyAt.compareAndSet(current, start + interval)) {
+                return 0;
+            }
+        }
+    }
+
+    /**
+     * Gives back a token taken by {@link #tryAcquire(long)} that ended up unused.
+     */
+    public void refund() {
+        emptyAt.addAndGet(-interval);
+    }
+
+    /**
+     * Returns whether the bucket has refilled completely, so dropping it loses nothing.
+     */
+    boolean isFull(long now) {
+        return emptyAt.get() - now <= 0;
+    }
+}
@@ -0,0 +1,169 @@
+package server.liveness;
+
+import server.Server;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Expires peers that stop talking to the tracker. A peer is tracked once it registers, and any
+ * later heartbeat or command refreshes it with a single volatile write. A timer wheel owned by
+ * the "tracker-liveness" thread holds one deadline per peer; when a deadline comes due the peer
+ * is either rescheduled from the time it was last seen or, if that is a full timeout ago,
+ * handed to the expiry callback. A tick therefore only touches the peers whose deadline is on it.
+ */
+public final class PeerLiveness implements AutoCloseable {
+    private static final Logger LOGGER = Logger.getLogger(Server.class.getName());
+
+    private static final int TICKS_PER_TIMEOUT = 32;
+    private static final long MIN_TICK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final long tickNanos;
+    private final LongSupplier clock;
+    private final long start;
+    private final Consumer<String> onExpired;
+
+    private final Map<String, Entry> peers;
+    private final Queue<Entry> pending;
+    private final TimerWheel<Entry> wheel;
+    private ScheduledExecutorService ticker;
+
+    private static final class Entry {
+        private final String username;
+        private volatile long lastSeen;
+        private volatile boolean forgotten;
+
+        private Entry(String username, long lastSeen) {
+            this.username = username;
+            this.lastSeen = lastSeen;
+        }
+    }
+
+    public PeerLiveness(Duration timeout, Consumer<String> onExpired) {
+        this(timeout, onExpired, System::nanoTime);
+    }
+
+    PeerLiveness(Duration timeout, Consumer<String> onExpired, LongSupplier clock) {
+        if (timeout.isNegative() || timeout.isZero()) {
+            throw new IllegalArgumentException("The peer timeout must be positive.");
+        }
+        this.tickNanos = Math.max(timeout.toNanos() / TICKS_PER_TIMEOUT, MIN_TICK_NANOS);
+        this.clock = clock;
+        this.start = clock.getAsLong();
+        this.onExpired = onExpired;
+        peers = new ConcurrentHashMap<>();
+        pending = new ConcurrentLinkedQueue<>();
+        wheel = new TimerWheel<>(TICKS_PER_TIMEOUT + 1);
+    }
+
+    private long now() {
+        return (clock.getAsLong() - start) / tickNanos;
+    }
+
+    /**
+     * Starts watching {@code username}, or refreshes it if it is already watched.
+     */
+    public void track(String username) {
+        long now = now();
+        Entry entry = peers.get(username);
+        if (entry == null) {
+            Entry created = new Entry(username, now);
+            entry = peers.putIfAbsent(username, created);
+            if (entry == null) {
+                pending.add(created);
+                return;
+            }
+        }
+        entry.lastSeen = now;
+    }
+
+    /**
+     * Refreshes {@code username} if it is watched and returns whether it was.
+     */
+    public boolean touch(String username) {
+        Entry entry = peers.get(username);
+        if (entry == null) {
+            return false;
+        }
+        entry.lastSeen = now();
+        return true;
+    }
+
+    /**
+     * Stops watching {@code username}, for peers that left on their own.
+     */
+    public void forget(String username) {
+        Entry entry = peers.remove(username);
+        if (entry != null) {
+            entry.forgotten = true;
+        }
+    }
+
+    public int size() {
+        return peers.size();
+    }
+
+    private void due(Entry entry) {
+        if (entry.forgotten) {
+            return;
+        }
+        long deadline = entry.lastSeen + TICKS_PER_TIMEOUT;
+        if (deadline > wheel.tick()) {
+            wheel.schedule(entry, deadline);
+            return;
+        }
+        if (!peers.remove(entry.username, entry)) {
+            return;
+        }
+
+        try {
+            onExpired.accept(entry.username);
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.SEVERE, "Expiring peer " + entry.username + " failed: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Expires every peer that has been silent for the whole timeout. Called by the ticker
+     * thread; only one thread may call it at a time.
+     */
+    void tick() {
+        wheel.advanceTo(now(), this::due);
+        Entry entry;
+        while ((entry = pending.poll()) != null) {
+            if (!entry.forgotten) {
+                wheel.schedule(entry, entry.lastSeen + TICKS_PER_TIMEOUT);
+            }
+        }
+    }
+
+    public synchronized void start() {
+        if (ticker != null) {
+            return;
+        }
+        ticker = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "tracker-liveness");
+            thread.setDaemon(true);
+            return thread;
+        });
+        ticker.scheduleAtFixedRate(this::tick, tickNanos, tickNanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public synchronized void close() {
+        if (ticker != null) {
+            ticker.shutdownNow();
+            ticker = null;
+        }
+    }
+}
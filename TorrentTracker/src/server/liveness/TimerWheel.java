@@ -0,0 +1,72 @@
+package server.liveness;
+
+import java.util.function.Consumer;
+
+/**
+ * Hashed timer wheel owned by a single thread. Deadlines are whole ticks and never more than
+ * one lap ahead, so everything in a bucket is due when the wheel reaches it: a tick only
+ * visits the entries that expire on it, however many entries are scheduled.
+ */
+final class TimerWheel<T> {
+    private final Node<T>[] buckets;
+    private final int mask;
+    private long tick;
+
+    private static final class Node<T> {
+        private final T item;
+        private final Node<T> next;
+
+        private Node(T item, Node<T> next) {
+            this.item = item;
+            this.next = next;
+        }
+    }
+
+    /**
+     * Creates a wheel whose lap is at least {@code ticks} long.
+     */
+    @SuppressWarnings("unchecked")
+    TimerWheel(int ticks) {
+        int size = Integer.highestOneBit(Math.max(ticks, 2) - 1) << 1;
+        buckets = (Node<T>[]) new Node<?>[size];
+        mask = size - 1;
+    }
+
+    long tick() {
+        return tick;
+    }
+
+    int lap() {
+        return buckets.length;
+    }
+
+    /**
+     * Schedules {@code item} for {@code deadline}. Deadlines that already passed fire on the next
+     * tick, and deadlines more than a lap away fire early, one lap from now.
+     */
+    void schedule(T item, long deadline) {
+        long due = Math.min(Math.max(deadline, tick + 1), tick + buckets.length);
+        int bucket = (int) (due & mask);
+        buckets[bucket] = new Node<>(item, buckets[bucket]);
+    }
+
+    /**
+     * Moves the wheel forward to {@code target}, handing every entry that comes due to
+     * {@code expired}. The callback may schedule entries again.
+     */
+    void advanceTo(long target, Consumer<T> expired) {
+        // After a stall of more than a lap every bucket is due, so one lap covers them all
+        if (target - tick > buckets.length) {
+            tick = target - buckets.length;
+        }
+        while (tick < target) {
+            tick++;
+            int bucket = (int) (tick & mask);
+            Node<T> node = buckets[bucket];
+            buckets[bucket] = null;
+            for (; node != null; node = node.next) {
+                expired.accept(node.item);
+            }
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package server.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Log-linear histogram of nanosecond durations in the style of HdrHistogram: every power of
+ * two is split into 32 equal buckets, so any recorded value is reported within about 3% while
+ * the whole range up to 2^40 ns (about 18 minutes) fits in a fixed array of counters.
+ * Recording is a few atomic increments and safe from any thread.
+ */
+public final class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final long MAX_VALUE = (1L << 40) - 1;
+    private static final int BUCKETS = bucketOf(MAX_VALUE) + 1;
+
+    private final AtomicLongArray counts;
+    private final AtomicLong count;
+    private final AtomicLong sum;
+    private final AtomicLong max;
+
+    /**
+     * Totals of a histogram at one moment, with percentiles in nanoseconds.
+     */
+    public record Summary(long count, double mean, long p50, long p90, long p99, long p999, long max) {
+    }
+
+    public LatencyHistogram() {
+        counts = new AtomicLongArray(BUCKETS);
+        count = new AtomicLong();
+        sum = new AtomicLong();
+        max = new AtomicLong();
+    }
+
+    static int bucketOf(long value) {
+        if (value < 2 * SUB_BUCKETS) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return shift * SUB_BUCKETS + (int) (value >>> shift);
+    }
+
+    // The largest value that falls into the bucket
+    static long highestValueOf(int bucket) {
+        if (bucket < 2 * SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = (bucket >>> SUB_BUCKET_BITS) - 1;
+        long subBucket = bucket - (long) shift * SUB_BUCKETS;
+        return ((subBucket + 1) << shift) - 1;
+    }
+
+    public void record(long nanos) {
+        long value = Math.min(Math.max(nanos, 0), MAX_VALUE);
+        counts.incrementAndGet(bucketOf(value));
+        count.incrementAndGet();
+        sum.addAndGet(value);
+        max.accumulateAndGet(value, Math::max);
+    }
+
+    public long count() {
+        return count.get();
+    }
+
+    /**
+     * Summarizes the histogram. Recording may go on meanwhile, so the summary is consistent
+     * only to within the values recorded while it was taken.
+     */
+    public Summary summary() {
+        long[] snapshot = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0) {
+            return new Summary(0, 0, 0, 0, 0, 0, 0);
+        }
+
+        double[] quantiles = {0.5, 0.9, 0.99, 0.999};
+        long[] values = new long[quantiles.length];
+        long seen = 0;
+        int next = 0;
+        for (int i = 0; i < BUCKETS && next < quantiles.length; i++) {
+            seen += snapshot[i];
+            while (next < quantiles.length && seen >= Math.ceil(quantiles[next] * total)) {
+                values[next++] = highestValueOf(i);
+            }
+        }
+        long largest = max.get();
+        return new Summary(total, (double) sum.get() / count.get(), Math.min(values[0], largest),
+                Math.min(values[1], largest), Math.min(values[2], largest), Math.min(values[3], largest), largest);
+    }
+}
@@ -0,0 +1,111 @@
+package server.metrics;
+
+import server.Server;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Counters, gauges and latency histograms of one tracker. Hot paths look up their histogram
+ * or counter once and keep the reference; {@link #report()} renders everything as
+ * {@code name value} lines, sorted by name, for the {@code stats} command and the dump file.
+ */
+public final class TrackerMetrics {
+    private static final Logger LOGGER = Logger.getLogger(Server.class.getName());
+
+    private final long startNanos;
+    private final Map<String, LongAdder> counters;
+    private final Map<String, LongSupplier> gauges;
+    private final Map<String, LatencyHistogram> histograms;
+    private ScheduledExecutorService dumper;
+
+    public TrackerMetrics() {
+        startNanos = System.nanoTime();
+        counters = new ConcurrentSkipListMap<>();
+        gauges = new ConcurrentSkipListMap<>();
+        histograms = new ConcurrentSkipListMap<>();
+    }
+
+    public LongAdder counter(String name) {
+        return counters.computeIfAbsent(name, key -> new LongAdder());
+    }
+
+    public LatencyHistogram histogram(String name) {
+        return histograms.computeIfAbsent(name, key -> new LatencyHistogram());
+    }
+
+    /**
+     * Reports the value of {@code supplier} under {@code name}, such as a queue or registry size.
+     */
+    public void gauge(String name, LongSupplier supplier) {
+        gauges.put(name, supplier);
+    }
+
+    private static String micros(long nanos) {
+        return String.format(Locale.ROOT, "%.1f", nanos / 1000.0);
+    }
+
+    public List<String> report() {
+        List<String> lines = new ArrayList<>();
+        lines.add("uptime_seconds " + TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - startNanos));
+        counters.forEach((name, counter) -> lines.add(name + " " + counter.sum()));
+        gauges.forEach((name, gauge) -> lines.add(name + " " + gauge.getAsLong()));
+        histograms.forEach((name, histogram) -> {
+            LatencyHistogram.Summary summary = histogram.summary();
+            if (summary.count() > 0) {
+                lines.add(name + " count=" + summary.count()
+                        + " mean_us=" + micros(Math.round(summary.mean()))
+                        + " p50_us=" + micros(summary.p50())
+                        + " p90_us=" + micros(summary.p90())
+                        + " p99_us=" + micros(summary.p99())
+                        + " p999_us=" + micros(summary.p999())
+                        + " max_us=" + micros(summary.max()));
+            }
+        });
+        return lines;
+    }
+
+    private void dump(Path file) {
+        try {
+            Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+            Files.write(temporary, (String.join(System.lineSeparator(), report()) + System.lineSeparator())
+                    .getBytes(StandardCharsets.UTF_8));
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Writing metrics to " + file + " failed: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Rewrites {@code file} with the current report every {@code interval}. Readers always see a
+     * complete report, since each one is written next to the file and moved over it.
+     */
+    public synchronized void startDumping(Path file, Duration interval) {
+        if (dumper != null) {
+            dumper.shutdownNow();
+        }
+        dumper = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "tracker-metrics");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long millis = Math.max(interval.toMillis(), 1);
+        dumper.scheduleAtFixedRate(() -> dump(file), millis, millis, TimeUnit.MILLISECONDS);
+    }
+}
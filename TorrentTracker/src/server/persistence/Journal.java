@@ -0,0 +1,369 @@
+package server.persistence;
+
+import server.RegistryChange;
+import server.RegistryListener;
+import server.RegistrySnapshot;
+import server.Server;
+import server.ServerData;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log of registry changes with periodic snapshots.
+ *
+ * <p>Changes are encoded on the writing thread and queued; a single journal thread drains
+ * whatever has accumulated, appends it with one gathering write and makes the whole batch
+ * durable with one {@code force}. Under load many registrations therefore share an fsync,
+ * and a reply can go out slightly before its change is on disk.
+ *
+ * <p>Every {@code snapshotEvery} records the journal thread starts a new segment and hands
+ * the current (immutable) registry snapshot to a background thread, which writes it and
+ * then deletes the segments and snapshots it supersedes. On startup the newest snapshot is
+ * loaded and the remaining segments are replayed on top of it.
+ */
+public final class Journal implements RegistryListener, AutoCloseable {
+    private static final Logger LOGGER = Logger.getLogger(Server.class.getName());
+
+    private static final String SEGMENT_PREFIX = "journal-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String SNAPSHOT_PREFIX = "snapshot-";
+    private static final String SNAPSHOT_SUFFIX = ".dat";
+
+    private static final int RECORD_HEADER_SIZE = 8;
+    private static final int MAX_RECORD_SIZE = 64 << 20;
+    private static final int MAX_BATCH = 4096;
+    private static final byte[] CLOSE = new byte[0];
+
+    private final Path directory;
+    private final ServerData serverData;
+    private final int snapshotEvery;
+    private final BlockingQueue<byte[]> pending;
+    private final ExecutorService snapshotWriter;
+    private final Thread journalThread;
+
+    private FileChannel segment;
+    private long segmentFirstVersion;
+    private long recordsSinceSnapshot;
+    private volatile boolean snapshotInProgress;
+
+    private Journal(Path directory, ServerData serverData, int snapshotEvery) {
+        this.directory = directory;
+        this.serverData = serverData;
+        this.snapshotEvery = snapshotEvery;
+        pending = new LinkedBlockingQueue<>();
+        snapshotWriter = Executors.newSingleThreadExecutor(task -> {
+            Thread thread = new Thread(task, "tracker-snapshot");
+            thread.setDaemon(true);
+            return thread;
+        });
+        journalThread = new Thread(this::writeLoop, "tracker-journal");
+        journalThread.setDaemon(true);
+    }
+
+    /**
+     * Recovers the registry stored in {@code directory} into {@code serverData} and starts
+     * journaling every later change.
+     */
+    public static Journal open(Path directory, ServerData serverData, int snapshotEvery) throws IOException {
+        if (snapshotEvery < 1) {
+            throw new IllegalArgumentException("Snapshots need at least one record between them.");
+        }
+        Files.createDirectories(directory);
+
+        RecoveredState state = new RecoveredState();
+        long version = recover(directory, state);
+        serverData.restore(version, state.users());
+
+        Journal journal = new Journal(directory, serverData, snapshotEvery);
+        journal.openSegment(version + 1);
+        serverData.addListener(journal);
+        journal.journalThread.start();
+
+        LOGGER.info("Recovered registry version " + version + " with "
+                + serverData.snapshot().userCount() + " users from " + directory);
+        return journal;
+    }
+
+    private static Path segmentPath(Path directory, long firstVersion) {
+        return directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, firstVersion, SEGMENT_SUFFIX));
+    }
+
+    private static Path snapshotPath(Path directory, long version) {
+        return directory.resolve(String.format("%s%020d%s", SNAPSHOT_PREFIX, version, SNAPSHOT_SUFFIX));
+    }
+
+    // Names sort in version order because the numbers are zero padded
+    private static List<Path> list(Path directory, String prefix, String suffix) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> {
+                String name = file.getFileName().toString();
+                return name.startsWith(prefix) && name.endsWith(suffix);
+            }).sorted().toList();
+        }
+    }
+
+    private static long numberOf(Path file, String prefix, String suffix) {
+        String name = file.getFileName().toString();
+        return Long.parseLong(name.substring(prefix.length(), name.length() - suffix.length()));
+    }
+
+    private static long recover(Path directory, RecoveredState state) throws IOException {
+        long version = 0;
+        List<Path> snapshots = list(directory, SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX);
+        for (int i = snapshots.size() - 1; i >= 0; i--) {
+            try {
+                version = SnapshotFile.read(snapshots.get(i), state);
+                break;
+            } catch (IOException e) {
+                LOGGER.log(Level.SEVERE, "Skipping unreadable snapshot " + snapshots.get(i)
+                        + ": " + e.getMessage(), e);
+                state.clear();
+            }
+        }
+
+        List<Path> segments = list(directory, SEGMENT_PREFIX, SEGMENT_SUFFIX);
+        for (int i = 0; i < segments.size(); i++) {
+            long replayed = replay(segments.get(i), version, state, i == segments.size() - 1);
+            if (replayed < 0) {
+                break;
+            }
+            version = replayed;
+        }
+        return version;
+    }
+
+    /**
+     * Applies the records of one segment that are newer than {@code version} and returns
+     * the version reached, or -1 if the segment is damaged before its end. A torn tail in
+     * the last segment is expected after a crash and is cut off.
+     */
+    private static long replay(Path segment, long version, RecoveredState state, boolean last) throws IOException {
+        long validLength = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(segment)))) {
+            CRC32 checksum = new CRC32();
+            while (true) {
+                int length;
+                try {
+                    length = in.readInt();
+                } catch (EOFException e) {
+                    return version;
+                }
+                int expected = in.readInt();
+                if (length <= 0 || length > MAX_RECORD_SIZE) {
+                    throw new IOException("Invalid record length " + length);
+                }
+                byte[] payload = new byte[length];
+                in.readFully(payload);
+
+                checksum.reset();
+                checksum.update(payload);
+                if ((int) checksum.getValue() != expected) {
+                    throw new IOException("Bad record checksum");
+                }
+
+                long recordVersion = apply(payload, version, state);
+                version = Math.max(version, recordVersion);
+                validLength += RECORD_HEADER_SIZE + length;
+            }
+        } catch (IOException e) {
+            if (!last) {
+                LOGGER.log(Level.SEVERE, "Journal segment " + segment + " is damaged at byte " + validLength
+                        + ", later changes are lost: " + e.getMessage(), e);
+                return -1;
+            }
+            LOGGER.warning("Cutting torn journal tail of " + segment + " at byte " + validLength);
+            try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+                channel.truncate(validLength);
+            }
+            return version;
+        }
+    }
+
+    private static long apply(byte[] payload, long version, RecoveredState state) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        RegistryChange.Kind kind = RegistryChange.Kind.values()[in.readUnsignedByte()];
+        long recordVersion = in.readLong();
+        String username = Records.readString(in);
+        if (recordVersion <= version) {
+            return recordVersion;
+        }
+
+        switch (kind) {
+            case REGISTER -> state.register(username, Records.readString(in), Records.readStrings(in));
+            case UNREGISTER -> state.unregister(username, Records.readStrings(in));
+            case DISCONNECT -> state.disconnect(username);
+        }
+        return recordVersion;
+    }
+
+    private static byte[] encode(RegistryChange change) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(0);
+            out.writeInt(0);
+            out.writeByte(change.kind().ordinal());
+            out.writeLong(change.version());
+            Records.writeString(out, change.username());
+            switch (change.kind()) {
+                case REGISTER -> {
+                    Records.writeString(out, change.address());
+                    Records.writeStrings(out, change.files());
+                }
+                case UNREGISTER -> Records.writeStrings(out, change.files());
+                case DISCONNECT -> { }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        byte[] record = bytes.toByteArray();
+        CRC32 checksum = new CRC32();
+        checksum.update(record, RECORD_HEADER_SIZE, record.length - RECORD_HEADER_SIZE);
+        ByteBuffer.wrap(record).putInt(record.length - RECORD_HEADER_SIZE).putInt((int) checksum.getValue());
+        return record;
+    }
+
+    @Override
+    public void onChange(RegistryChange change) {
+        pending.add(encode(change));
+    }
+
+    private void openSegment(long firstVersion) throws IOException {
+        if (segment != null) {
+            segment.close();
+        }
+        segment = FileChannel.open(segmentPath(directory, firstVersion),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        segmentFirstVersion = firstVersion;
+    }
+
+    private void append(List<byte[]> batch) throws IOException {
+        ByteBuffer[] buffers = new ByteBuffer[batch.size()];
+        long remaining = 0;
+        for (int i = 0; i < buffers.length; i++) {
+            buffers[i] = ByteBuffer.wrap(batch.get(i));
+            remaining += buffers[i].remaining();
+        }
+        while (remaining > 0) {
+            remaining -= segment.write(buffers);
+        }
+        segment.force(false);
+    }
+
+    private void writeSnapshot(RegistrySnapshot snapshot, long keepSegmentsFrom) {
+        try {
+            SnapshotFile.write(snapshotPath(directory, snapshot.version()), snapshot);
+            for (Path file : list(directory, SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX)) {
+                if (numberOf(file, SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX) < snapshot.version()) {
+                    Files.deleteIfExists(file);
+                }
+            }
+            for (Path file : list(directory, SEGMENT_PREFIX, SEGMENT_SUFFIX)) {
+                if (numberOf(file, SEGMENT_PREFIX, SEGMENT_SUFFIX) < keepSegmentsFrom) {
+                    Files.deleteIfExists(file);
+                }
+            }
+            LOGGER.info("Wrote registry snapshot at version " + snapshot.version());
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Writing registry snapshot failed: " + e.getMessage(), e);
+        } finally {
+            snapshotInProgress = false;
+        }
+    }
+
+    /*
+     * Every record already appended was published before this snapshot was read, so the
+     * closed segments hold nothing newer than the snapshot and can go once it is written.
+     */
+    private void startSnapshot() throws IOException {
+        RegistrySnapshot snapshot = serverData.snapshot();
+        recordsSinceSnapshot = 0;
+        if (snapshot.version() + 1 == segmentFirstVersion) {
+            return;
+        }
+        openSegment(snapshot.version() + 1);
+        snapshotInProgress = true;
+        long keepSegmentsFrom = segmentFirstVersion;
+        snapshotWriter.execute(() -> writeSnapshot(snapshot, keepSegmentsFrom));
+    }
+
+    private void writeLoop() {
+        List<byte[]> batch = new ArrayList<>(MAX_BATCH);
+        boolean running = true;
+        while (running) {
+            try {
+                batch.add(pending.take());
+                pending.drainTo(batch, MAX_BATCH - 1);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                running = false;
+            }
+            if (batch.remove(CLOSE)) {
+                running = false;
+            }
+
+            try {
+                if (!batch.isEmpty()) {
+                    append(batch);
+                    recordsSinceSnapshot += batch.size();
+                }
+                if (running && recordsSinceSnapshot >= snapshotEvery && !snapshotInProgress) {
+                    startSnapshot();
+                }
+            } catch (IOException e) {
+                LOGGER.log(Level.SEVERE, "Appending to the journal failed: " + e.getMessage(), e);
+            }
+            batch.clear();
+        }
+    }
+
+    /**
+     * Flushes queued changes, writes a final snapshot and stops the journal threads.
+     */
+    @Override
+    public void close() {
+        pending.add(CLOSE);
+        try {
+            journalThread.join();
+            snapshotWriter.shutdown();
+            snapshotWriter.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        try {
+            if (recordsSinceSnapshot > 0) {
+                RegistrySnapshot snapshot = serverData.snapshot();
+                openSegment(snapshot.version() + 1);
+                snapshotInProgress = true;
+                writeSnapshot(snapshot, segmentFirstVersion);
+            }
+            segment.close();
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Closing the journal failed: " + e.getMessage(), e);
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package server.persistence;
+
+import server.UserData;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Mutable registry rebuilt from a snapshot and the journal before it is handed to
+ * {@link server.ServerData#restore}.
+ */
+final class RecoveredState {
+    private final Map<String, String> addresses = new HashMap<>();
+    private final Map<String, Set<String>> files = new HashMap<>();
+
+    void register(String username, String address, Set<String> addedFiles) {
+        addresses.put(username, address);
+        files.computeIfAbsent(username, u -> new HashSet<>()).addAll(addedFiles);
+    }
+
+    void unregister(String username, Set<String> removedFiles) {
+        Set<String> userFiles = files.get(username);
+        if (userFiles != null) {
+            userFiles.removeAll(removedFiles);
+        }
+    }
+
+    void disconnect(String username) {
+        addresses.remove(username);
+        files.remove(username);
+    }
+
+    void clear() {
+        addresses.clear();
+        files.clear();
+    }
+
+    Map<String, UserData> users() {
+        Map<String, UserData> users = new HashMap<>(addresses.size() * 2);
+        addresses.forEach((username, address) -> users.put(username, new UserData(address, files.get(username))));
+        return users;
+    }
+}
@@ -0,0 +1,89 @@
+package server.persistence;
+
+import server.RegistrySnapshot;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Full copy of the registry at one version: a header, every user with its address and
+ * files, and a CRC32 trailer. Files are written under a temporary name and renamed into
+ * place, so a reader only ever sees complete snapshots.
+ */
+final class SnapshotFile {
+    private static final int MAGIC = 0x54524B53;
+    private static final int FORMAT = 1;
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private SnapshotFile() {
+    }
+
+    static void write(Path file, RegistrySnapshot snapshot) throws IOException {
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        CRC32 checksum = new CRC32();
+
+        try (FileOutputStream fileOut = new FileOutputStream(temporary.toFile());
+             DataOutputStream out = new DataOutputStream(new CheckedOutputStream(
+                     new BufferedOutputStream(fileOut, BUFFER_SIZE), checksum))) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT);
+            out.writeLong(snapshot.version());
+            out.writeInt(snapshot.userCount());
+            try {
+                snapshot.forEachUser((username, userData) -> {
+                    try {
+                        Records.writeString(out, username);
+                        Records.writeString(out, userData.address());
+                        Records.writeStrings(out, userData.files());
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            out.writeLong(checksum.getValue());
+            out.flush();
+            fileOut.getFD().sync();
+        }
+
+        Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Loads a snapshot into the recovered state and returns its version.
+     */
+    static long read(Path file, RecoveredState state) throws IOException {
+        CRC32 checksum = new CRC32();
+        try (DataInputStream in = new DataInputStream(new CheckedInputStream(
+                new BufferedInputStream(Files.newInputStream(file), BUFFER_SIZE), checksum))) {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT) {
+                throw new IOException(file + " is not a tracker snapshot");
+            }
+            long version = in.readLong();
+            int userCount = in.readInt();
+            for (int i = 0; i < userCount; i++) {
+                String username = Records.readString(in);
+                String address = Records.readString(in);
+                state.register(username, address, Records.readStrings(in));
+            }
+
+            long expected = checksum.getValue();
+            if (in.readLong() != expected) {
+                throw new IOException(file + " has a bad checksum");
+            }
+            return version;
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package server.protocol;
+
+import server.exceptions.ProtocolException;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Wire format of the binary tracker protocol, negotiated with the text command {@code binary}.
+ * Every message is a frame: a varint length followed by that many payload bytes. Requests
+ * carry a varint request id, an opcode and the opcode's body; replies echo the request id,
+ * then a status byte and the body. Strings are a varint byte count plus UTF-8 bytes, and
+ * addresses are a family byte (4 or 6), the raw IP bytes and a two-byte port.
+ */
+public final class BinaryCodec {
+    public static final byte OP_TEXT = 1;
+    public static final byte OP_LIST_ADDRESSES = 2;
+    public static final byte OP_LIST_FILES = 3;
+    public static final byte OP_DOWNLOAD = 4;
+    public static final byte OP_REGISTER = 5;
+    public static final byte OP_UNREGISTER = 6;
+    public static final byte OP_CONNECT = 7;
+    public static final byte OP_HEARTBEAT = 8;
+    public static final byte OP_LIST_ADDRESSES_SINCE = 9;
+
+    public static final byte STATUS_OK = 0;
+    public static final byte STATUS_ERROR = 1;
+
+    public static final int NO_FRAME = -1;
+    private static final int MAX_VARINT_BYTES = 5;
+
+    private BinaryCodec() {
+    }
+
+    /**
+     * Returns the length of the frame starting at the buffer's position, with the position moved
+     * past the length prefix, or {@link #NO_FRAME} with the position untouched if the prefix
+     * has not fully arrived yet.
+     */
+    public static int readFrameLength(ByteBuffer buffer) throws ProtocolException {
+        int start = buffer.position();
+        int value = 0;
+        for (int i = 0; i < MAX_VARINT_BYTES; i++) {
+            if (!buffer.hasRemaining()) {
+                buffer.position(start);
+                return NO_FRAME;
+            }
+            byte b = buffer.get();
+            value |= (b & 0x7F) << (7 * i);
+            if (b >= 0) {
+                if (value < 0) {
+                    throw new ProtocolException("Negative frame length.");
+                }
+                return value;
+            }
+        }
+        throw new ProtocolException("Frame length is not a valid varint.");
+    }
+
+    public static int readVarInt(ByteBuffer buffer) throws ProtocolException {
+        int value = 0;
+        for (int i = 0; i < MAX_VARINT_BYTES; i++) {
+            if (!buffer.hasRemaining()) {
+                throw new ProtocolException("Truncated varint.");
+            }
+            byte b = buffer.get();
+            value |= (b & 0x7F) << (7 * i);
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new ProtocolException("Malformed varint.");
+    }
+
+    public static String readString(ByteBuffer buffer) throws ProtocolException {
+        int length = readVarInt(buffer);
+        if (length < 0 || length > buffer.remaining()) {
+            throw new ProtocolException("String length " + length + " exceeds the frame.");
+        }
+        String value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length,
+                StandardCharsets.UTF_8);
+        buffer.position(buffer.position() + length);
+        return value;
+    }
+
+    public static long readLong(ByteBuffer buffer) throws ProtocolException {
+        if (buffer.remaining() < 8) {
+            throw new ProtocolException("Truncated long.");
+        }
+        return buffer.getLong();
+    }
+
+    public static int readPort(ByteBuffer buffer) throws ProtocolException {
+        if (buffer.remaining() < 2) {
+            throw new ProtocolException("Truncated port.");
+        }
+        return buffer.getShort() & 0xFFFF;
+    }
+
+    public static int varIntSize(int value) {
+        int size = 1;
+        while ((value & ~0x7F) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+
+    /**
+     * Splits a registry address of the form {@code ip:port} into its raw IP bytes and port.
+     */
+    static byte[] ipBytesOf(String address) throws UnknownHostException {
+        int separator = address.lastIndexOf(':');
+        // Registry addresses always hold IP literals, so this never triggers a DNS lookup
+        return InetAddress.getByName(address.substring(0, separator)).getAddress();
+    }
+
+    static int portOf(String address) {
+        return Integer.parseInt(address.substring(address.lastIndexOf(':') + 1));
+    }
+}
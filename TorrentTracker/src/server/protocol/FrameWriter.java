@@ -0,0 +1,114 @@
+package server.protocol;
+
+import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Growable byte sink for building binary frames and frame bodies.
+ */
+public final class FrameWriter {
+    private byte[] bytes;
+    private int size;
+
+    public FrameWriter() {
+        this(64);
+    }
+
+    public FrameWriter(int initialCapacity) {
+        bytes = new byte[initialCapacity];
+    }
+
+    private void ensureCapacity(int additional) {
+        if (size + additional > bytes.length) {
+            bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + additional));
+        }
+    }
+
+    public FrameWriter writeByte(int value) {
+        ensureCapacity(1);
+        bytes[size++] = (byte) value;
+        return this;
+    }
+
+    public FrameWriter writeVarInt(int value) {
+        ensureCapacity(5);
+        while ((value & ~0x7F) != 0) {
+            bytes[size++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        bytes[size++] = (byte) value;
+        return this;
+    }
+
+    public FrameWriter writeLong(long value) {
+        ensureCapacity(8);
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            bytes[size++] = (byte) (value >>> shift);
+        }
+        return this;
+    }
+
+    public FrameWriter writePort(int port) {
+        ensureCapacity(2);
+        bytes[size++] = (byte) (port >>> 8);
+        bytes[size++] = (byte) port;
+        return this;
+    }
+
+    public FrameWriter writeBytes(byte[] data) {
+        ensureCapacity(data.length);
+        System.arraycopy(data, 0, bytes, size, data.length);
+        size += data.length;
+        return this;
+    }
+
+    public FrameWriter writeString(String value) {
+        byte[] encoded = value.getBytes(StandardCharsets.UTF_8);
+        writeVarInt(encoded.length);
+        return writeBytes(encoded);
+    }
+
+    /**
+     * Writes a registry address ({@code ip:port}) as family byte, raw IP bytes and port.
+     */
+    public FrameWriter writeAddress(String address) throws UnknownHostException {
+        byte[] ip = BinaryCodec.ipBytesOf(address);
+        writeByte(ip.length == 4 ? 4 : 6);
+        writeBytes(ip);
+        return writePort(BinaryCodec.portOf(address));
+    }
+
+    /**
+     * Writes an IPv4 address given as a 32-bit value in the same layout as {@link #writeAddress}.
+     */
+    public FrameWriter writeIpv4Address(int ip, int port) {
+        ensureCapacity(5);
+        bytes[size++] = 4;
+        bytes[size++] = (byte) (ip >>> 24);
+        bytes[size++] = (byte) (ip >>> 16);
+        bytes[size++] = (byte) (ip >>> 8);
+        bytes[size++] = (byte) ip;
+        return writePort(port);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public byte[] toByteArray() {
+        return Arrays.copyOf(bytes, size);
+    }
+
+    /**
+     * Returns the frame header for a reply whose body is {@code bodyLength} bytes long.
+     */
+    public static byte[] replyHeader(int requestId, byte status, int bodyLength) {
+        int payloadLength = BinaryCodec.varIntSize(requestId) + 1 + bodyLength;
+        return new FrameWriter(10)
+                .writeVarInt(payloadLength)
+                .writeVarInt(requestId)
+                .writeByte(status)
+                .toByteArray();
+    }
+}
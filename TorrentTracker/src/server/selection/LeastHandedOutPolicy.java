@@ -0,0 +1,45 @@
+package server.selection;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class LeastHandedOutPolicy implements PeerSelectionPolicy {
+    private static final int DEFAULT_DECAY_INTERVAL = 1024;
+
+    private final Map<String, Integer> handOuts = new HashMap<>();
+    private final int decayInterval;
+    private int handOutsSinceDecay;
+
+    public LeastHandedOutPolicy() {
+        this(DEFAULT_DECAY_INTERVAL);
+    }
+
+    public LeastHandedOutPolicy(int decayInterval) {
+        this.decayInterval = decayInterval;
+    }
+
+    // Halving every counter keeps the ranking biased towards recent hand-outs only
+    private void decay() {
+        handOuts.replaceAll((address, count) -> count / 2);
+        handOuts.values().removeIf(count -> count == 0);
+        handOutsSinceDecay = 0;
+    }
+
+    @Override
+    public synchronized List<String> rank(String fileName, List<String> addresses) {
+        List<String> ranked = new ArrayList<>(addresses);
+        ranked.sort(Comparator.<String>comparingInt(address -> handOuts.getOrDefault(address, 0))
+                .thenComparing(Comparator.naturalOrder()));
+
+        if (!ranked.isEmpty()) {
+            handOuts.merge(ranked.get(0), 1, Integer::sum);
+            if (++handOutsSinceDecay >= decayInterval) {
+                decay();
+            }
+        }
+        return ranked;
+    }
+}
@@ -0,0 +1,21 @@
+package server.selection;
+
+import java.util.List;
+
+public interface PeerSelectionPolicy {
+    /**
+     * Orders the seeders of a file, best candidate first. Implementations may record the
+     * hand-out so that following calls spread the load across the swarm. Called concurrently
+     * from every reactor thread.
+     */
+    List<String> rank(String fileName, List<String> addresses);
+
+    static PeerSelectionPolicy fromName(String name) {
+        return switch (name) {
+            case "round-robin" -> new RoundRobinPolicy();
+            case "random" -> new RandomPolicy();
+            case "least-handed-out" -> new LeastHandedOutPolicy();
+            default -> throw new IllegalArgumentException("Unknown peer selection policy: " + name);
+        };
+    }
+}
@@ -0,0 +1,25 @@
+package server.selection;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+public class RandomPolicy implements PeerSelectionPolicy {
+    private final Random random;
+
+    public RandomPolicy() {
+        this(new Random());
+    }
+
+    public RandomPolicy(Random random) {
+        this.random = random;
+    }
+
+    @Override
+    public List<String> rank(String fileName, List<String> addresses) {
+        List<String> ranked = new ArrayList<>(addresses);
+        Collections.shuffle(ranked, random);
+        return ranked;
+    }
+}
@@ -0,0 +1,31 @@
+package server.selection;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class RoundRobinPolicy implements PeerSelectionPolicy {
+    private static final int MAX_TRACKED_FILES = 65_536;
+
+    private final Map<String, Integer> fileTurns = new ConcurrentHashMap<>();
+
+    @Override
+    public List<String> rank(String fileName, List<String> addresses) {
+        List<String> ranked = new ArrayList<>(addresses);
+        if (ranked.size() < 2) {
+            return ranked;
+        }
+        ranked.sort(null);
+
+        if (fileTurns.size() >= MAX_TRACKED_FILES && !fileTurns.containsKey(fileName)) {
+            fileTurns.clear();
+        }
+        int turn = fileTurns.merge(fileName, 1, Integer::sum) - 1;
+        int offset = Math.floorMod(turn, ranked.size());
+
+        List<String> result = new ArrayList<>(ranked.subList(offset, ranked.size()));
+        result.addAll(ranked.subList(0, offset));
+        return result;
+    }
+}
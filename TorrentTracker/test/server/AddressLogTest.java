@@ -0,0 +1,104 @@
+package server;
+
+import org.junit.Before;
+import org.junit.Test;
+import server.exceptions.InvalidUserException;
+import server.exceptions.UserNotFoundException;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class AddressLogTest {
+    private ServerData serverData;
+    private AddressLog addressLog;
+
+    @Before
+    public void setUp() {
+        serverData = new ServerData();
+        addressLog = new AddressLog(4);
+        serverData.addListener(addressLog);
+    }
+
+    private void register(String username, String address, String file) throws InvalidUserException {
+        serverData.register(username, new UserData(address, Set.of(file)));
+    }
+
+    @Test
+    public void testFullResyncBeforeAnyChange() {
+        assertNull(addressLog.since(0));
+    }
+
+    @Test
+    public void testDeltaHoldsJoinsAndLeaves() throws Exception {
+        register("ivan", "10.0.0.1:1000", "/a");
+        long version = serverData.snapshot().version();
+        register("petar", "10.0.0.2:2000", "/b");
+        register("ivan", "10.0.0.1:1000", "/c");
+        serverData.unregister("petar", Set.of("/b"));
+        register("maria", "10.0.0.3:3000", "/d");
+        serverData.disconnect("maria");
+
+        AddressLog.Delta delta = addressLog.since(version);
+        Map<String, String> expected = new HashMap<>();
+        expected.put("petar", "10.0.0.2:2000");
+        expected.put("maria", null);
+        assertEquals(expected, delta.changes());
+        assertEquals(serverData.snapshot().version(), delta.version());
+    }
+
+    @Test
+    public void testUpToDateClientGetsEmptyDelta() throws InvalidUserException {
+        register("ivan", "10.0.0.1:1000", "/a");
+        long version = serverData.snapshot().version();
+
+        AddressLog.Delta delta = addressLog.since(version);
+        assertTrue(delta.changes().isEmpty());
+        assertEquals(version, delta.version());
+    }
+
+    @Test
+    public void testClientTooFarBehindGetsFullResync() throws InvalidUserException, UserNotFoundException {
+        register("ivan", "10.0.0.1:1000", "/a");
+        long version = serverData.snapshot().version();
+        for (int i = 0; i < 3; i++) {
+            register("user" + i, "10.0.1." + i + ":1000", "/f" + i);
+        }
+        assertEquals(3, addressLog.since(version).changes().size());
+
+        serverData.disconnect("user0");
+        serverData.disconnect("user1");
+        assertNull(addressLog.since(version));
+        assertEquals(Set.of("user0", "user1"), addressLog.since(version + 3).changes().keySet());
+    }
+
+    @Test
+    public void testRestoreForcesFullResync() throws InvalidUserException {
+        register("ivan", "10.0.0.1:1000", "/a");
+        serverData.restore(10, Map.of("petar", new UserData("10.0.0.2:2000", Set.of("/b"))));
+        register("maria", "10.0.0.3:3000", "/c");
+
+        assertNull(addressLog.since(1));
+        assertEquals(Map.of("maria", "10.0.0.3:3000"), addressLog.since(10).changes());
+    }
+
+    @Test
+    public void testListAddressesSinceCommand() throws InvalidUserException {
+        CommandExecutor commandExecutor = new CommandExecutor(serverData);
+        register("ivan", "10.0.0.1:1000", "/a");
+        String n = System.lineSeparator();
+
+        assertEquals("2" + n + "version 1 full" + n + "ivan - 10.0.0.1:1000" + n,
+                commandExecutor.execute(null, "list-addresses-since -1", null));
+
+        register("petar", "10.0.0.2:2000", "/b");
+        assertEquals("2" + n + "version 2 delta" + n + "+petar - 10.0.0.2:2000" + n,
+                commandExecutor.execute(null, "list-addresses-since 1", null));
+        assertEquals("1" + n + "version 2 delta" + n,
+                commandExecutor.execute(null, "list-addresses-since 2", null));
+    }
+}
@@ -0,0 +1,172 @@
+package server;
+
+import org.junit.Before;
+import org.junit.Test;
+import server.exceptions.InvalidUserException;
+import server.exceptions.ProtocolException;
+import server.protocol.BinaryCodec;
+import server.protocol.FrameWriter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+
+public class BinaryCommandExecutorTest {
+    private ServerData serverData;
+    private CommandExecutor commandExecutor;
+    private BinaryCommandExecutor binaryCommandExecutor;
+    private ClientSession session;
+    private SocketChannel sc;
+    private InetAddress ip;
+
+    @Before
+    public void setExecutors() throws IOException {
+        serverData = new ServerData();
+        commandExecutor = new CommandExecutor(serverData);
+        binaryCommandExecutor = new BinaryCommandExecutor(commandExecutor, serverData);
+        session = new ClientSession(new BufferPool(64, 4));
+        sc = mock(SocketChannel.class);
+        ip = InetAddress.getByName("127.0.0.1");
+    }
+
+    private ByteBuffer exchange(int requestId, byte opcode, FrameWriter body) throws IOException, ProtocolException {
+        FrameWriter request = new FrameWriter().writeVarInt(requestId).writeByte(opcode);
+        request.writeBytes(body.toByteArray());
+        binaryCommandExecutor.execute(sc, ByteBuffer.wrap(request.toByteArray()), ip, session);
+
+        ByteArrayOutputStream written = new ByteArrayOutputStream();
+        session.flushTo(new WritableByteChannel() {
+            @Override
+            public int write(ByteBuffer src) {
+                int length = src.remaining();
+                while (src.hasRemaining()) {
+                    written.write(src.get());
+                }
+                return length;
+            }
+
+            @Override
+            public boolean isOpen() {
+                return true;
+            }
+
+            @Override
+            public void close() {
+            }
+        });
+
+        ByteBuffer reply = ByteBuffer.wrap(written.toByteArray());
+        int frameLength = BinaryCodec.readFrameLength(reply);
+        assertEquals(reply.remaining(), frameLength);
+        assertEquals(requestId, BinaryCodec.readVarInt(reply));
+        return reply;
+    }
+
+    private void registerUsers() throws InvalidUserException {
+        Set<String> files = new HashSet<>();
+        for (int i = 0; i < 50; i++) {
+            files.add("/home/ivan/music/track" + i + ".mp3");
+        }
+        serverData.register("ivan1234", new UserData("127.0.0.1:1234", files));
+        serverData.register("petko1234", new UserData("127.0.0.2:4321", Set.of("/home/ivan/music/track7.mp3")));
+    }
+
+    @Test
+    public void testListAddresses() throws Exception {
+        registerUsers();
+        ByteBuffer reply = exchange(7, BinaryCodec.OP_LIST_ADDRESSES, new FrameWriter());
+
+        assertEquals(BinaryCodec.STATUS_OK, reply.get());
+        assertEquals(2, BinaryCodec.readVarInt(reply));
+        Set<String> users = new HashSet<>();
+        for (int i = 0; i < 2; i++) {
+            String username = BinaryCodec.readString(reply);
+            assertEquals(4, reply.get());
+            byte[] ip = new byte[4];
+            reply.get(ip);
+            users.add(username + " - " + InetAddress.getByAddress(ip).getHostAddress() + ":" + BinaryCodec.readPort(reply));
+        }
+        assertEquals(Set.of("ivan1234 - 127.0.0.1:1234", "petko1234 - 127.0.0.2:4321"), users);
+    }
+
+    @Test
+    public void testListFilesIsSmallerThanText() throws Exception {
+        registerUsers();
+        ByteBuffer reply = exchange(1, BinaryCodec.OP_LIST_FILES, new FrameWriter());
+        int textSize = commandExecutor.executeEncoded(sc, "list-files", ip).length;
+
+        assertEquals(BinaryCodec.STATUS_OK, reply.get());
+        assertEquals(50, BinaryCodec.readVarInt(reply));
+        assertTrue("Binary listing should be smaller than the text one", reply.limit() < textSize);
+    }
+
+    @Test
+    public void testDownloadReturnsEverySeeder() throws Exception {
+        registerUsers();
+        ByteBuffer reply = exchange(3, BinaryCodec.OP_DOWNLOAD,
+                new FrameWriter().writeString("/home/ivan/music/track7.mp3"));
+
+        assertEquals(BinaryCodec.STATUS_OK, reply.get());
+        assertEquals(2, BinaryCodec.readVarInt(reply));
+    }
+
+    @Test
+    public void testDownloadMissingFile() throws Exception {
+        ByteBuffer reply = exchange(3, BinaryCodec.OP_DOWNLOAD, new FrameWriter().writeString("/nothing"));
+
+        assertEquals(BinaryCodec.STATUS_ERROR, reply.get());
+        assertEquals("The specified file is not registered!", BinaryCodec.readString(reply));
+    }
+
+    @Test
+    public void testRegister() throws Exception {
+        FrameWriter body = new FrameWriter().writePort(1234).writeString("ivan1234")
+                .writeVarInt(1).writeString("/home/ivan/pictures/123 copy.jpg");
+        ByteBuffer reply = exchange(300, BinaryCodec.OP_REGISTER, body);
+
+        assertEquals(BinaryCodec.STATUS_OK, reply.get());
+        assertEquals("File(s) successfully registered!", BinaryCodec.readString(reply));
+        assertEquals("127.0.0.1:1234", serverData.getAddressOfFile("/home/ivan/pictures/123 copy.jpg"));
+    }
+
+    @Test
+    public void testRegisterSkipsBlankNames() throws Exception {
+        FrameWriter body = new FrameWriter().writePort(1234).writeString("ivan1234")
+                .writeVarInt(3).writeString("a.txt").writeString("").writeString("  ");
+        ByteBuffer reply = exchange(300, BinaryCodec.OP_REGISTER, body);
+
+        assertEquals(BinaryCodec.STATUS_OK, reply.get());
+        assertEquals(Set.of("ivan1234 : a.txt"), serverData.listFiles());
+    }
+
+    @Test
+    public void testTextFallback() throws Exception {
+        ByteBuffer reply = exchange(2, BinaryCodec.OP_TEXT, new FrameWriter().writeString("connect ivan1234"));
+
+        assertEquals(BinaryCodec.STATUS_OK, reply.get());
+        assertEquals(1, BinaryCodec.readVarInt(reply));
+        assertEquals("Successful", BinaryCodec.readString(reply));
+    }
+
+    @Test
+    public void testNoSubscriptionsOverBinary() throws Exception {
+        ByteBuffer reply = exchange(2, BinaryCodec.OP_TEXT, new FrameWriter().writeString("subscribe"));
+
+        assertEquals(BinaryCodec.STATUS_ERROR, reply.get());
+        assertEquals("Subscriptions are not available on binary connections.", BinaryCodec.readString(reply));
+    }
+
+    @Test (expected = ProtocolException.class)
+    public void testTruncatedFrame() throws Exception {
+        exchange(2, BinaryCodec.OP_CONNECT, new FrameWriter().writeVarInt(40));
+    }
+}
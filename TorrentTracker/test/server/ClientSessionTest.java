@@ -0,0 +1,134 @@
+package server;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ClientSessionTest {
+    private ClientSession session;
+    private final CommandLine line = new CommandLine();
+
+    @Before
+    public void setSession() {
+        session = new ClientSession(new BufferPool(16, 4));
+    }
+
+    private String nextLine() {
+        return session.nextLine(line) ? line.toString() : null;
+    }
+
+    private static ReadableByteChannel channelOf(String data) {
+        return Channels.newChannel(new ByteArrayInputStream(data.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    public void testPipelinedCommands() throws IOException {
+        session.readFrom(channelOf("list-files\r\nconnect ivan1234\nlist-addresses\n"));
+
+        // Testing that commands sent in one packet are split in order
+        assertEquals("list-files", nextLine());
+        assertEquals("connect ivan1234", nextLine());
+        assertEquals("list-addresses", nextLine());
+        assertNull(nextLine());
+    }
+
+    @Test
+    public void testCommandSplitAcrossReads() throws IOException {
+        session.readFrom(channelOf("register 1234 ivan1234 /home/"));
+        assertNull(nextLine());
+
+        session.readFrom(channelOf("ivan/pictures/123.jpg\nlist-"));
+        assertEquals("register 1234 ivan1234 /home/ivan/pictures/123.jpg", nextLine());
+        assertNull(nextLine());
+
+        session.readFrom(channelOf("files\n"));
+        assertEquals("list-files", nextLine());
+    }
+
+    @Test
+    public void testLongCommand() throws IOException {
+        String command = "register 1234 ivan1234 " + "/home/ivan/pictures/123.jpg ".repeat(200).trim();
+        ReadableByteChannel channel = channelOf(command + "\n");
+
+        // Testing that commands longer than the initial buffer are not truncated
+        while (session.readFrom(channel) >= 0) {
+            // Keep reading until the whole command is buffered
+        }
+        assertEquals(command, nextLine());
+        assertNull(nextLine());
+    }
+
+    // Accepts at most a few bytes per write, like a socket whose send buffer is nearly full
+    private static class SlowChannel implements WritableByteChannel {
+        private final ByteArrayOutputStream received = new ByteArrayOutputStream();
+        private int bytesPerWrite;
+
+        SlowChannel(int bytesPerWrite) {
+            this.bytesPerWrite = bytesPerWrite;
+        }
+
+        @Override
+        public int write(ByteBuffer src) {
+            int length = Math.min(bytesPerWrite, src.remaining());
+            for (int i = 0; i < length; i++) {
+                received.write(src.get());
+            }
+            return length;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    @Test
+    public void testLargeReplyIsWrittenWhole() throws IOException {
+        String reply = "3\nivan1234 : /home/ivan/pictures/123.jpg\npetko1234 : /home/petko/video.mp4\n"
+                + "kris1234 : D:\\music\\imperialMarch.mp3\n";
+        SlowChannel channel = new SlowChannel(0);
+        session.enqueue(reply.getBytes(StandardCharsets.UTF_8));
+
+        // Testing that nothing is dropped when the socket cannot take the reply yet
+        assertFalse(session.flushTo(channel));
+        assertTrue(session.hasPendingWrites());
+
+        channel.bytesPerWrite = 7;
+        while (!session.flushTo(channel)) {
+            assertTrue(session.pendingWriteBytes() > 0);
+        }
+        assertFalse(session.hasPendingWrites());
+        assertEquals(reply, channel.received.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testRepliesKeepTheirOrder() throws IOException {
+        SlowChannel channel = new SlowChannel(5);
+        session.enqueue("1\nSuccessful\n".getBytes(StandardCharsets.UTF_8));
+        assertFalse(session.flushTo(channel));
+        session.enqueue("1\nFile(s) successfully registered!\n".getBytes(StandardCharsets.UTF_8));
+
+        while (!session.flushTo(channel)) {
+            // Drain the queue a few bytes at a time
+        }
+        assertEquals("1\nSuccessful\n1\nFile(s) successfully registered!\n",
+                channel.received.toString(StandardCharsets.UTF_8));
+    }
+}
@@ -1,17 +1,23 @@
 package server;
 
+import common.cluster.Shard;
 import server.exceptions.InvalidUserException;
 import server.exceptions.UserNotFoundException;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.Mock;
 
+import java.io.FileNotFoundException;
 import java.net.InetAddress;
 import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.*;
 
 public class CommandExecutorTest {
@@ -218,8 +224,216 @@ public class CommandExecutorTest {
         assertEquals(expected, commandExecutor.execute(sc, "list-addresses", ip));
     }
 
+    @Test
+    public void download() throws FileNotFoundException {
+        when(serverData.getAddressesOfFile("/home/ivan/pictures/123.jpg"))
+                .thenReturn(List.of("127.0.0.2:1234", "127.0.0.1:1234"));
+
+        assertEquals(SINGLE_LINE_PREFIX + "download 127.0.0.1:1234 /home/ivan/pictures/123.jpg downloads",
+                commandExecutor.execute(sc, "download /home/ivan/pictures/123.jpg downloads", ip));
+    }
+
+    @Test
+    public void downloadFileNotFound() throws FileNotFoundException {
+        when(serverData.getAddressesOfFile("/home/ivan/pictures/123.jpg"))
+                .thenThrow(new FileNotFoundException("The specified file is not registered!"));
+
+        assertEquals(SINGLE_LINE_PREFIX + "The specified file is not registered!",
+                commandExecutor.execute(sc, "download /home/ivan/pictures/123.jpg", ip));
+    }
+
+    @Test
+    public void downloadAll() throws FileNotFoundException {
+        when(serverData.getAddressesOfFile("/home/ivan/pictures/123.jpg"))
+                .thenReturn(List.of("127.0.0.2:1234", "127.0.0.1:1234"));
+
+        String expected = "2" + System.lineSeparator()
+                + "download 127.0.0.1:1234 /home/ivan/pictures/123.jpg downloads"
+                + System.lineSeparator()
+                + "download 127.0.0.2:1234 /home/ivan/pictures/123.jpg downloads"
+                + System.lineSeparator();
+        assertEquals(expected,
+                commandExecutor.execute(sc, "download-all /home/ivan/pictures/123.jpg downloads", ip));
+    }
+
+    @Test
+    public void listFilesIsServedFromCacheUntilVersionChanges() {
+        String file1 = "ivan1234 : /home/ivan/pictures/123.jpg";
+        when(serverData.listFiles()).thenReturn(new HashSet<>(Set.of(file1)));
+        when(serverData.snapshot()).thenReturn(RegistrySnapshot.EMPTY);
+
+        String expected = "1" + System.lineSeparator() + file1 + System.lineSeparator();
+        byte[] first = commandExecutor.executeEncoded(sc, "list-files", ip);
+        byte[] second = commandExecutor.executeEncoded(sc, "list-files", ip);
+
+        assertEquals(expected, new String(first, StandardCharsets.UTF_8));
+        assertSame("Testing that an unchanged registry reuses the encoded reply", first, second);
+        verify(serverData, times(1)).listFiles();
+
+        when(serverData.snapshot())
+                .thenReturn(new RegistrySnapshot(1, SegmentedMap.empty(), OwnerIndex.EMPTY, new PathTable().view()));
+        commandExecutor.executeEncoded(sc, "list-files", ip);
+        verify(serverData, times(2)).listFiles();
+    }
+
+    @Test
+    public void listingCachesAreSeparate() {
+        when(serverData.listFiles()).thenReturn(new HashSet<>(Set.of("ivan1234 : /home/ivan/pictures/123.jpg")));
+        when(serverData.listAddresses()).thenReturn(new HashSet<>(Set.of("ivan1234 - 127.0.0.1:1234")));
+        when(serverData.snapshot()).thenReturn(RegistrySnapshot.EMPTY);
+
+        commandExecutor.executeEncoded(sc, "list-files", ip);
+        String addresses = new String(commandExecutor.executeEncoded(sc, "list-addresses", ip),
+                StandardCharsets.UTF_8);
+
+        assertEquals("1" + System.lineSeparator() + "ivan1234 - 127.0.0.1:1234" + System.lineSeparator(),
+                addresses);
+    }
+
+    @Test
+    public void heartbeat() {
+        when(ip.getHostAddress()).thenReturn("127.0.0.1");
+        when(serverData.checkIfUsernameExists("ivan1234")).thenReturn(true);
+        commandExecutor.execute(sc, "register 1234 ivan1234 /a", ip);
+
+        assertEquals(SINGLE_LINE_PREFIX + "Alive", commandExecutor.execute(sc, "heartbeat ivan1234", ip));
+    }
+
+    @Test
+    public void heartbeatNotRegistered() {
+        when(ip.getHostAddress()).thenReturn("127.0.0.1");
+        commandExecutor.execute(sc, "register 1234 ivan1234 /a", ip);
+        when(serverData.checkIfUsernameExists("ivan1234")).thenReturn(false);
+
+        assertEquals(SINGLE_LINE_PREFIX + "Not registered", commandExecutor.execute(sc, "heartbeat ivan1234", ip));
+    }
+
+    @Test
+    public void heartbeatForAUserOfAnotherConnection() throws UserNotFoundException {
+        when(serverData.checkIfUsernameExists("ivan1234")).thenReturn(true);
+
+        assertEquals(SINGLE_LINE_PREFIX + "Not registered", commandExecutor.execute(sc, "heartbeat ivan1234", ip));
+        // The heartbeat did not bind the user to this connection, so closing it leaves the user alone
+        commandExecutor.disconnect(sc);
+        verify(serverData, never()).disconnect(anyString());
+    }
+
+    @Test
+    public void heartbeatAnotherUserSameChannel() {
+        when(ip.getHostAddress()).thenReturn("127.0.0.1");
+        commandExecutor.execute(sc, "register 1234 ivan1234 /a", ip);
+
+        assertEquals(SINGLE_LINE_PREFIX + "This session is associated with another user.",
+                commandExecutor.execute(sc, "heartbeat petar", ip));
+    }
+
+    @Test
+    public void expireDisconnectsUser() throws UserNotFoundException {
+        commandExecutor.expire("ivan1234");
+        verify(serverData, times(1)).disconnect("ivan1234");
+    }
+
+    @Test
+    public void expireUnbindsTheConnection() throws UserNotFoundException {
+        when(ip.getHostAddress()).thenReturn("127.0.0.1");
+        commandExecutor.execute(sc, "register 1234 ivan1234 /a", ip);
+        commandExecutor.expire("ivan1234");
+
+        // The user registers again on another connection, then the old one closes
+        SocketChannel other = mock(SocketChannel.class);
+        commandExecutor.execute(other, "register 1234 ivan1234 /a", ip);
+        commandExecutor.disconnect(sc);
+        verify(serverData, times(1)).disconnect("ivan1234");
+        assertEquals("ivan1234", commandExecutor.userOf(other));
+    }
+
+    @Test
+    public void registerOnlyFilesOfOwnShard() throws InvalidUserException {
+        when(ip.getHostAddress()).thenReturn("127.0.0.1");
+        commandExecutor.ownShard(new Shard(0, 2));
+        String own = "/files/a";
+        String foreign = "/files/b";
+        for (int i = 0; Shard.ownerOf(own, 2) != 0 || Shard.ownerOf(foreign, 2) != 1; i++) {
+            own = "/files/a" + i;
+            foreign = "/files/b" + i;
+        }
+
+        assertEquals(SINGLE_LINE_PREFIX + foreign + " belongs to shard 1/2, not to this tracker's shard 0/2.",
+                commandExecutor.execute(sc, "register 1234 ivan1234 " + own + " " + foreign, ip));
+        verify(serverData, never()).register(anyString(), any());
+
+        assertEquals(SINGLE_LINE_PREFIX + "File(s) successfully registered!",
+                commandExecutor.execute(sc, "register 1234 ivan1234 " + own, ip));
+    }
+
+    @Test
+    public void statsFromLoopback() {
+        when(ip.isLoopbackAddress()).thenReturn(true);
+        commandExecutor.execute(sc, "connect ivan1234", ip);
+        commandExecutor.executeEncoded(sc, "connect ivan1234", ip);
+
+        String reply = commandExecutor.execute(sc, "stats", ip);
+        assertTrue(reply.contains("command_connect count=1 "));
+    }
+
+    @Test
+    public void statsFromElsewhere() {
+        when(ip.isLoopbackAddress()).thenReturn(false);
+
+        assertEquals(SINGLE_LINE_PREFIX + "Stats are only available on the tracker's host.",
+                commandExecutor.execute(sc, "stats", ip));
+    }
+
+    @Test
+    public void subscribeWithoutAConnection() {
+        assertEquals(SINGLE_LINE_PREFIX + "Subscriptions need a text connection that the tracker keeps open for updates.",
+                commandExecutor.execute(sc, "subscribe", ip));
+    }
+
     @Test
     public void unknownCommand() {
         assertEquals(SINGLE_LINE_PREFIX + "Unknown command!", commandExecutor.execute(sc, "gfssadger", ip));
     }
+
+    @Test
+    public void registerBulkKeepsSpacesInNames() throws InvalidUserException {
+        when(ip.getHostAddress()).thenReturn("127.0.0.1");
+
+        String command = "register-bulk 1234 ivan1234 4\n/music/my song.mp3\n/pictures/a b c.jpg\r\n"
+                + "/notes.txt\n  padded  name.txt ";
+        assertEquals(SINGLE_LINE_PREFIX + "File(s) successfully registered!",
+                commandExecutor.execute(sc, command, ip));
+        verify(serverData).register("ivan1234", new UserData("127.0.0.1:1234",
+                Set.of("/music/my song.mp3", "/pictures/a b c.jpg", "/notes.txt", "  padded  name.txt ")));
+    }
+
+    @Test
+    public void registerBulkWithMissingLines() throws InvalidUserException {
+        assertEquals(SINGLE_LINE_PREFIX + "Fewer file lines than the bulk command announced.",
+                commandExecutor.execute(sc, "register-bulk 1234 ivan1234 3\n/a\n/b", ip));
+        assertEquals(SINGLE_LINE_PREFIX + "A bulk command ends with the number of file lines that follow it.",
+                commandExecutor.execute(sc, "register-bulk 1234 ivan1234", ip));
+        verify(serverData, never()).register(anyString(), any());
+    }
+
+    @Test
+    public void registerBulkOverTheByteBudget() throws InvalidUserException {
+        String name = "/".repeat(1 << 20);
+        StringBuilder command = new StringBuilder("register-bulk 1234 ivan1234 6");
+        for (int i = 0; i < 6; i++) {
+            command.append('\n').append(name).append(i);
+        }
+
+        assertEquals(SINGLE_LINE_PREFIX + "A bulk command carries at most " + BulkCommand.MAX_BODY_BYTES
+                + " bytes of file names.", commandExecutor.execute(sc, command.toString(), ip));
+        verify(serverData, never()).register(anyString(), any());
+    }
+
+    @Test
+    public void unregisterBulk() throws UserNotFoundException {
+        String command = "unregister-bulk ivan1234 2\n/music/my song.mp3\n/notes.txt";
+        assertEquals(SINGLE_LINE_PREFIX + "File(s) successfully unregistered!",
+                commandExecutor.execute(sc, command, ip));
+        verify(serverData).unregister("ivan1234", Set.of("/music/my song.mp3", "/notes.txt"));
+    }
 }
@@ -0,0 +1,67 @@
+package server;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CommandLineTest {
+
+    @Test
+    public void testTokenizing() {
+        CommandLine line = CommandLine.of("  register 1234\tivan1234  /home/ivan/a.jpg /home/ivan/b.jpg\r");
+
+        assertEquals(5, line.tokenCount());
+        assertEquals(CommandVerb.REGISTER, CommandVerb.of(line));
+        assertEquals(1234, line.intToken(1));
+        assertEquals("ivan1234", line.token(2));
+        assertEquals(Set.of("/home/ivan/a.jpg", "/home/ivan/b.jpg"), line.tokensFrom(3));
+    }
+
+    @Test
+    public void testReuseAcrossLines() {
+        byte[] bytes = "download /home/ivan/a.jpg downloads\nlist-files\n".getBytes(StandardCharsets.UTF_8);
+        CommandLine line = new CommandLine();
+
+        line.parse(bytes, 0, 35);
+        assertEquals(CommandVerb.DOWNLOAD, CommandVerb.of(line));
+        assertEquals("/home/ivan/a.jpg downloads", line.textFrom(1));
+
+        // Testing that the same view is reset for the next line
+        line.parse(bytes, 36, bytes.length - 1);
+        assertEquals(1, line.tokenCount());
+        assertEquals(CommandVerb.LIST_FILES, CommandVerb.of(line));
+    }
+
+    @Test
+    public void testVerbMustMatchWholeToken() {
+        assertEquals(CommandVerb.DOWNLOAD_ALL, CommandVerb.of(CommandLine.of("download-all a.jpg")));
+        assertEquals(CommandVerb.UNKNOWN, CommandVerb.of(CommandLine.of("downloads a.jpg")));
+        assertEquals(CommandVerb.UNKNOWN, CommandVerb.of(CommandLine.of("")));
+    }
+
+    @Test
+    public void testRawTextKeepsOuterSpaces() {
+        assertEquals("  my  song.mp3 ", CommandLine.of("  my  song.mp3 ").rawText());
+        assertEquals(" a.jpg", CommandLine.of(" a.jpg\r").rawText());
+        assertEquals("", CommandLine.of("").rawText());
+    }
+
+    @Test (expected = NumberFormatException.class)
+    public void testIntTokenRejectsText() {
+        CommandLine.of("register ivan1234 /home/ivan/a.jpg").intToken(1);
+    }
+
+    @Test
+    public void testTokenEquals() {
+        CommandLine line = CommandLine.of("connect ivan1234");
+
+        assertTrue(line.tokenEquals(1, "ivan1234".getBytes(StandardCharsets.UTF_8)));
+        assertFalse(line.tokenEquals(1, "ivan".getBytes(StandardCharsets.UTF_8)));
+        assertFalse(line.tokenEquals(2, "ivan1234".getBytes(StandardCharsets.UTF_8)));
+    }
+}
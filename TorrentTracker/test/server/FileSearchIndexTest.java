@@ -0,0 +1,153 @@
+package server;
+
+import server.exceptions.InvalidUserException;
+import server.exceptions.UserNotFoundException;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.InetAddress;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+
+public class FileSearchIndexTest {
+    private ServerData serverData;
+    private FileSearchIndex index;
+
+    @Before
+    public void setUp() {
+        serverData = new ServerData();
+        index = new FileSearchIndex(serverData::snapshot);
+        serverData.addListener(index);
+    }
+
+    private void register(String username, String... files) throws InvalidUserException {
+        serverData.register(username, new UserData("127.0.0.1:1234", new HashSet<>(Arrays.asList(files))));
+    }
+
+    @Test
+    public void testPrefixIgnoresCaseAndKeepsOrder() throws InvalidUserException {
+        register("ivan", "/music/Song.mp3", "/music/solo.mp3", "/music/s", "/movies/cats.mp4");
+        register("maria", "/Music/sonata.flac");
+
+        assertEquals(List.of("/music/s", "/music/solo.mp3", "/Music/sonata.flac", "/music/Song.mp3"),
+                index.withPrefix("/MUSIC/s", 10));
+        assertEquals(List.of("/movies/cats.mp4"), index.withPrefix("/mo", 10));
+        assertEquals(List.of(), index.withPrefix("/musicals", 10));
+        assertEquals(5, index.withPrefix("", 10).size());
+        assertEquals(2, index.withPrefix("/music/so", 2).size());
+    }
+
+    @Test
+    public void testSubstringIgnoresCase() throws InvalidUserException {
+        register("ivan", "/music/Song.mp3", "/movies/cats.mp4", "/movies/dogs.MP4");
+
+        assertEquals(Set.of("/movies/cats.mp4", "/movies/dogs.MP4"), Set.copyOf(index.withSubstring(".mp4", 10)));
+        assertEquals(List.of("/music/Song.mp3"), index.withSubstring("SONG", 10));
+        assertEquals(List.of(), index.withSubstring("gsong", 10));
+        assertEquals(List.of(), index.withSubstring("zzz", 10));
+        // Every trigram of "ats.mp3" occurs somewhere, but never in one name
+        assertEquals(List.of(), index.withSubstring("ats.mp3", 10));
+    }
+
+    @Test
+    public void testNamesLeaveWithTheirLastOwner() throws InvalidUserException, UserNotFoundException {
+        register("ivan", "/shared/a.txt", "/shared/b.txt");
+        register("maria", "/shared/a.txt");
+
+        serverData.disconnect("ivan");
+        assertEquals(List.of("/shared/a.txt"), index.withSubstring(".txt", 10));
+
+        serverData.unregister("maria", Set.of("/shared/a.txt"));
+        assertEquals(List.of(), index.withPrefix("/shared", 10));
+
+        register("ivan", "/shared/b.txt");
+        assertEquals(List.of("/shared/b.txt"), index.withSubstring("b.txt", 10));
+    }
+
+    @Test
+    public void testBuildsFromRestoredRegistry() {
+        serverData.restore(7, Map.of("ivan", new UserData("127.0.0.1:1234", Set.of("/restored/file.bin"))));
+
+        assertEquals(List.of("/restored/file.bin"), index.withSubstring("file", 10));
+        assertEquals(List.of("/restored/file.bin"), index.withPrefix("/rest", 10));
+    }
+
+    @Test
+    public void testMatchesBruteForce() throws InvalidUserException, UserNotFoundException {
+        Random random = new Random(17);
+        String alphabet = "abAB/.";
+        Map<String, List<String>> owned = new TreeMap<>();
+        for (int user = 0; user < 20; user++) {
+            List<String> files = new ArrayList<>();
+            for (int i = 0; i < 30; i++) {
+                StringBuilder name = new StringBuilder();
+                for (int length = 1 + random.nextInt(8); length > 0; length--) {
+                    name.append(alphabet.charAt(random.nextInt(alphabet.length())));
+                }
+                files.add(name.toString());
+            }
+            register("user" + user, files.toArray(new String[0]));
+            owned.put("user" + user, files);
+        }
+        for (int user = 0; user < 20; user += 3) {
+            serverData.disconnect("user" + user);
+            owned.remove("user" + user);
+        }
+
+        for (int query = 0; query < 200; query++) {
+            StringBuilder pattern = new StringBuilder();
+            for (int length = 1 + random.nextInt(4); length > 0; length--) {
+                pattern.append(alphabet.charAt(random.nextInt(alphabet.length())));
+            }
+            String folded = pattern.toString().toLowerCase();
+
+            Set<String> expectedPrefix = new HashSet<>();
+            Set<String> expectedSubstring = new HashSet<>();
+            owned.values().forEach(files -> files.forEach(file -> {
+                if (file.toLowerCase().startsWith(folded)) {
+                    expectedPrefix.add(file);
+                }
+                if (file.toLowerCase().contains(folded)) {
+                    expectedSubstring.add(file);
+                }
+            }));
+
+            assertEquals(pattern.toString(), expectedPrefix, Set.copyOf(index.withPrefix(pattern.toString(), 10_000)));
+            if (pattern.length() >= FileSearchIndex.GRAM_LENGTH) {
+                assertEquals(pattern.toString(), expectedSubstring,
+                        Set.copyOf(index.withSubstring(pattern.toString(), 10_000)));
+            }
+        }
+    }
+
+    @Test
+    public void testSearchCommand() throws InvalidUserException {
+        CommandExecutor commandExecutor = new CommandExecutor(serverData);
+        register("ivan", "/movies/cats.mp4");
+        register("maria", "/movies/cats.mp4", "/movies/dogs.mp4");
+        SocketChannel channel = mock(SocketChannel.class);
+        InetAddress ip = mock(InetAddress.class);
+        String newLine = System.lineSeparator();
+
+        assertEquals("2" + newLine + "/movies/cats.mp4 : ivan, maria" + newLine + "/movies/dogs.mp4 : maria" + newLine,
+                commandExecutor.execute(channel, "search .MP4", ip));
+        assertEquals("1" + newLine + "/movies/cats.mp4 : ivan, maria" + newLine,
+                commandExecutor.execute(channel, "search /movies/c*", ip));
+        assertEquals("1" + newLine + "/movies/cats.mp4 : ivan, maria" + newLine,
+                commandExecutor.execute(channel, "search mp4 1", ip));
+        assertEquals("1" + newLine + "No files match birds.",
+                commandExecutor.execute(channel, "search birds", ip));
+        assertTrue(commandExecutor.execute(channel, "search ca", ip).contains("at least 3 characters"));
+    }
+}
@@ -0,0 +1,155 @@
+package server;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import server.exceptions.InvalidUserException;
+import server.exceptions.UserNotFoundException;
+import server.persistence.Journal;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+
+public class JournalTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private List<Path> filesStartingWith(Path directory, String prefix) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> file.getFileName().toString().startsWith(prefix)).sorted().toList();
+        }
+    }
+
+    private void waitForJournal(Path directory) throws Exception {
+        for (int i = 0; i < 200; i++) {
+            for (Path segment : filesStartingWith(directory, "journal-")) {
+                if (Files.size(segment) > 0) {
+                    return;
+                }
+            }
+            Thread.sleep(10);
+        }
+    }
+
+    @Test
+    public void testRestoreAfterClose() throws Exception {
+        Path directory = folder.getRoot().toPath();
+        ServerData serverData = new ServerData();
+        Journal journal = Journal.open(directory, serverData, 1000);
+        serverData.register("ivan1234", new UserData("127.0.0.1:1234", Set.of("a.txt", "b.txt", "c.txt")));
+        serverData.register("petko1234", new UserData("127.0.0.2:4321", Set.of("a.txt")));
+        serverData.register("gosho1234", new UserData("127.0.0.3:4321", Set.of("d.txt")));
+        serverData.unregister("ivan1234", Set.of("b.txt"));
+        serverData.disconnect("gosho1234");
+        long version = serverData.snapshot().version();
+        journal.close();
+
+        ServerData restored = new ServerData();
+        Journal.open(directory, restored, 1000).close();
+
+        assertEquals(version, restored.snapshot().version());
+        assertEquals(serverData.listFiles(), restored.listFiles());
+        assertEquals(serverData.listAddresses(), restored.listAddresses());
+        assertEquals(Set.of("ivan1234", "petko1234"), restored.snapshot().ownersOf("a.txt"));
+        assertFalse(restored.checkIfUsernameExists("gosho1234"));
+    }
+
+    @Test
+    public void testSnapshotsCompactTheJournal() throws Exception {
+        Path directory = folder.getRoot().toPath();
+        ServerData serverData = new ServerData();
+        Journal journal = Journal.open(directory, serverData, 10);
+        for (int i = 0; i < 500; i++) {
+            serverData.register("user" + (i % 20), new UserData("127.0.0." + (i % 20) + ":1234",
+                    Set.of("file" + i)));
+        }
+        journal.close();
+
+        assertEquals(1, filesStartingWith(directory, "snapshot-").size());
+        assertTrue(filesStartingWith(directory, "journal-").size() <= 2);
+
+        ServerData restored = new ServerData();
+        Journal.open(directory, restored, 10).close();
+        assertEquals(500, restored.snapshot().version());
+        assertEquals(serverData.listFiles(), restored.listFiles());
+    }
+
+    @Test
+    public void testRecoverFromTornJournalTail() throws Exception {
+        Path directory = folder.getRoot().toPath();
+        ServerData serverData = new ServerData();
+        Journal.open(directory, serverData, 1000);
+        serverData.register("ivan1234", new UserData("127.0.0.1:1234", Set.of("a.txt")));
+        waitForJournal(directory);
+
+        // Simulates a crash halfway through appending the next record
+        Path segment = filesStartingWith(directory, "journal-").get(0);
+        long intactLength = Files.size(segment);
+        Files.write(segment, new byte[] {0, 0, 0, 40, 1, 2, 3}, StandardOpenOption.APPEND);
+
+        ServerData restored = new ServerData();
+        Journal journal = Journal.open(directory, restored, 1000);
+        assertEquals(intactLength, Files.size(segment));
+        assertEquals(Set.of("ivan1234 : a.txt"), restored.listFiles());
+
+        restored.register("petko1234", new UserData("127.0.0.2:1234", Set.of("b.txt")));
+        journal.close();
+        ServerData restoredAgain = new ServerData();
+        Journal.open(directory, restoredAgain, 1000).close();
+        assertEquals(Set.of("ivan1234 : a.txt", "petko1234 : b.txt"), restoredAgain.listFiles());
+    }
+
+    @Test
+    public void testRestoredUserReconnectsAfterRestart() throws Exception {
+        Path directory = folder.getRoot().toPath();
+        ServerData serverData = new ServerData();
+        Journal journal = Journal.open(directory, serverData, 1000);
+        serverData.register("ivan1234", new UserData("127.0.0.1:1234", Set.of("a.txt")));
+        journal.close();
+
+        ServerData restored = new ServerData();
+        Journal.open(directory, restored, 1000).close();
+        CommandExecutor commandExecutor = new CommandExecutor(restored);
+        commandExecutor.awaitReturningUsers(List.of("ivan1234"));
+        InetAddress home = InetAddress.getByName("127.0.0.1");
+        SocketChannel sc = mock(SocketChannel.class);
+
+        assertEquals("1\nUnsuccessful", commandExecutor.execute(sc, "connect ivan1234",
+                InetAddress.getByName("127.0.0.2")).replace("\r", ""));
+        assertEquals("1\nSuccessful", commandExecutor.execute(sc, "connect ivan1234", home).replace("\r", ""));
+        commandExecutor.execute(sc, "register 1234 ivan1234 b.txt", home);
+
+        // Claimed now, so neither another client nor the end of the grace period takes it away
+        assertEquals("1\nUnsuccessful", commandExecutor.execute(mock(SocketChannel.class), "connect ivan1234", home)
+                .replace("\r", ""));
+        assertEquals(0, commandExecutor.releaseUnclaimed(List.of("ivan1234")));
+        assertEquals("127.0.0.1:1234", restored.snapshot().addressOf("ivan1234"));
+    }
+
+    @Test
+    public void testReleaseUnclaimedRestoredUsers() throws InvalidUserException, UserNotFoundException {
+        ServerData serverData = new ServerData();
+        CommandExecutor commandExecutor = new CommandExecutor(serverData);
+        serverData.register("ivan1234", new UserData("127.0.0.1:1234", Set.of("a.txt")));
+        serverData.register("petko1234", new UserData("127.0.0.2:1234", Set.of("b.txt")));
+
+        SocketChannel sc = mock(SocketChannel.class);
+        commandExecutor.unregister(sc, "ivan1234", Set.of());
+
+        assertEquals(1, commandExecutor.releaseUnclaimed(List.of("ivan1234", "petko1234")));
+        assertTrue(serverData.checkIfUsernameExists("ivan1234"));
+        assertFalse(serverData.checkIfUsernameExists("petko1234"));
+    }
+}
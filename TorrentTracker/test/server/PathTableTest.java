@@ -0,0 +1,86 @@
+package server;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PathTableTest {
+    @Test
+    public void testPathsRoundTrip() {
+        PathTable table = new PathTable();
+        String[] paths = {"/home/user/music/song.mp3", "C:\\Users\\user\\song.mp3", "song.mp3", "/home/user/",
+                "//double//slash", "/", "/home/user/\u00fcn\u00efc\u00f6d\u00e9.txt"};
+        int[] nodes = new int[paths.length];
+        for (int i = 0; i < paths.length; i++) {
+            nodes[i] = table.intern(paths[i]);
+        }
+
+        PathTable.View view = table.view();
+        for (int i = 0; i < paths.length; i++) {
+            assertEquals(paths[i], view.path(nodes[i]));
+            assertEquals(nodes[i], view.find(paths[i]));
+            assertEquals(nodes[i], table.intern(paths[i]));
+        }
+        assertEquals(-1, view.find("/home/user/music"));
+        assertEquals(-1, view.find("/home/other/song.mp3"));
+    }
+
+    @Test
+    public void testSharedDirectoriesAreStoredOnce() {
+        PathTable table = new PathTable();
+        table.intern("/home/user/music/a.mp3");
+        int before = table.size();
+        table.intern("/home/user/music/b.mp3");
+
+        assertEquals(before + 1, table.size());
+    }
+
+    @Test
+    public void testViewIgnoresLaterPaths() {
+        PathTable table = new PathTable();
+        int first = table.intern("/srv/first.iso");
+        PathTable.View view = table.view();
+        for (int i = 0; i < 1000; i++) {
+            table.intern("/srv/dir" + i + "/file" + i + ".iso");
+        }
+
+        assertEquals(first, view.find("/srv/first.iso"));
+        assertEquals(-1, view.find("/srv/dir5/file5.iso"));
+        assertNotEquals(-1, table.view().find("/srv/dir5/file5.iso"));
+    }
+
+    @Test
+    public void testPeerPacksIpv4Addresses() {
+        Peer peer = Peer.of("192.168.1.20:6881");
+
+        assertTrue(peer.isPacked());
+        assertEquals("192.168.1.20:6881", peer.address());
+        assertTrue(peer.hasAddress("192.168.1.20:6881"));
+        assertFalse(peer.hasAddress("192.168.1.20:6882"));
+    }
+
+    @Test
+    public void testPeerKeepsOtherAddressesAsStrings() {
+        for (String address : new String[] {"[::1]:6881", "localhost:6881", "10.0.0.01:80", "10.0.0.1:070000",
+                "10.0.0.256:80", "10.0.0:80", "10.0.0.1"}) {
+            Peer peer = Peer.of(address);
+
+            assertFalse(address, peer.isPacked());
+            assertEquals(address, peer.address());
+        }
+    }
+
+    @Test
+    public void testPeerFileEdits() {
+        Peer peer = Peer.of("10.0.0.1:80").withFiles(new int[] {2, 7}).withFiles(new int[] {1, 5, 9});
+
+        assertArrayEquals(new int[] {1, 2, 5, 7, 9}, peer.files());
+        assertArrayEquals(new int[] {1, 7}, peer.withoutFiles(new int[] {2, 5, 9}).files());
+        assertTrue(peer.hasFile(5));
+        assertFalse(peer.hasFile(6));
+    }
+}
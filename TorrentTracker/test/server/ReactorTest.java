@@ -0,0 +1,210 @@
+package server;
+
+import org.junit.After;
+import org.junit.Test;
+import server.limits.RateLimiter;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ReactorTest {
+    private CommandExecutor commandExecutor;
+    private Subscriptions subscriptions;
+    private Reactor reactor;
+    private ServerSocketChannel serverSocket;
+
+    private void start(ServerData serverData, RateLimiter rateLimiter) throws IOException {
+        start(serverData, new CommandExecutor(serverData), rateLimiter);
+    }
+
+    private void start(ServerData serverData, CommandExecutor commandExecutor, RateLimiter rateLimiter)
+            throws IOException {
+        this.commandExecutor = commandExecutor;
+        subscriptions = new Subscriptions(commandExecutor);
+        reactor = new Reactor("test-reactor", commandExecutor,
+                new BinaryCommandExecutor(commandExecutor, serverData), subscriptions, rateLimiter);
+        reactor.start();
+
+        serverSocket = ServerSocketChannel.open();
+        serverSocket.bind(new InetSocketAddress("localhost", 0));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        reactor.interrupt();
+        reactor.join();
+        subscriptions.close();
+        serverSocket.close();
+    }
+
+    private Socket connect() throws IOException {
+        Socket socket = new Socket("localhost", serverSocket.socket().getLocalPort());
+        socket.setSoTimeout(10_000);
+        reactor.assign(serverSocket.accept());
+        return socket;
+    }
+
+    private static BufferedReader readerOf(Socket socket) throws IOException {
+        return new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+    }
+
+    private static List<String> readMessage(BufferedReader reader) throws IOException {
+        int count = Integer.parseInt(reader.readLine());
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            lines.add(reader.readLine());
+        }
+        return lines;
+    }
+
+    private static void send(Socket socket, String line, int times) throws IOException {
+        OutputStream out = socket.getOutputStream();
+        out.write((line + "\n").repeat(times).getBytes(StandardCharsets.UTF_8));
+        out.flush();
+    }
+
+    @Test
+    public void testThrottledCommandsAreDelayedNotDropped() throws Exception {
+        start(new ServerData(), new RateLimiter(20, 2, 0, 0));
+
+        try (Socket socket = connect()) {
+            BufferedReader reader = readerOf(socket);
+            long start = System.nanoTime();
+            send(socket, "list-addresses", 6);
+            for (int i = 0; i < 6; i++) {
+                assertEquals(List.of("There are no addresses available!"), readMessage(reader));
+            }
+            // Two commands run at once, the other four one every 50 ms
+            assertTrue(System.nanoTime() - start >= 150_000_000L);
+        }
+        assertTrue(commandExecutor.metrics().counter("commands_throttled").sum() > 0);
+    }
+
+    @Test
+    public void testConnectionBehindOnRepliesDoesNotBlockOthers() throws Exception {
+        ServerData serverData = new ServerData();
+        Set<String> files = new HashSet<>();
+        for (int i = 0; i < 2_000; i++) {
+            files.add("/shared/file-" + i);
+        }
+        serverData.register("ivan", new UserData("10.0.0.1:1000", files));
+        start(serverData, RateLimiter.unlimited());
+
+        try (Socket flooding = connect(); Socket polite = connect()) {
+            // Tens of megabytes of replies that the flooding client does not read yet
+            int commands = 1_000;
+            send(flooding, "list-files", commands);
+            for (int i = 0; i < 200 && commandExecutor.metrics().counter("reads_suspended").sum() == 0; i++) {
+                Thread.sleep(10);
+            }
+            assertTrue(commandExecutor.metrics().counter("reads_suspended").sum() > 0);
+
+            send(polite, "list-addresses", 1);
+            assertEquals(List.of("ivan - 10.0.0.1:1000"), readMessage(readerOf(polite)));
+
+            BufferedReader reader = readerOf(flooding);
+            for (int i = 0; i < commands; i++) {
+                assertEquals(files.size(), readMessage(reader).size());
+            }
+        }
+    }
+
+    @Test
+    public void testBulkRegistrationIsOneCommand() throws Exception {
+        ServerData serverData = new ServerData();
+        start(serverData, RateLimiter.unlimited());
+
+        int count = 20_000;
+        StringBuilder command = new StringBuilder("register-bulk 4000 ivan " + count);
+        for (int i = 0; i < count; i++) {
+            command.append("\n/library/track ").append(i).append(".flac");
+        }
+
+        try (Socket socket = connect()) {
+            BufferedReader reader = readerOf(socket);
+            send(socket, command.toString(), 1);
+            assertEquals(List.of("File(s) successfully registered!"), readMessage(reader));
+            // Checked before the socket closes, since disconnecting unregisters the user
+            assertEquals(count, serverData.snapshot().fileCount());
+            assertEquals(1, serverData.snapshot().version());
+        }
+    }
+
+    @Test
+    public void testBulkFileLinesAreCharged() throws Exception {
+        ServerData serverData = new ServerData();
+        start(serverData, new RateLimiter(20, 2, 0, 0));
+
+        int count = 4 * BulkCommand.LINES_PER_CHARGE;
+        StringBuilder command = new StringBuilder("register-bulk 4000 ivan " + count);
+        for (int i = 0; i < count; i++) {
+            command.append("\n/library/track ").append(i).append(".flac");
+        }
+
+        try (Socket socket = connect()) {
+            BufferedReader reader = readerOf(socket);
+            send(socket, command.toString(), 1);
+            assertEquals(List.of("File(s) successfully registered!"), readMessage(reader));
+            // Checked before the socket closes, since disconnecting unregisters the user
+            assertEquals(count, serverData.snapshot().fileCount());
+        }
+        // The header and the first file lines spend both tokens, the rest has to wait for more
+        assertTrue(commandExecutor.metrics().counter("commands_throttled").sum() > 0);
+    }
+
+    @Test
+    public void testOversizedBulkIsRejectedWithoutABody() throws Exception {
+        start(new ServerData(), RateLimiter.unlimited());
+
+        try (Socket socket = connect()) {
+            BufferedReader reader = readerOf(socket);
+            send(socket, "register-bulk 4000 ivan 999999999\nlist-addresses", 1);
+            assertEquals(List.of("A bulk command carries at most " + BulkCommand.MAX_FILES + " files."),
+                    readMessage(reader));
+            assertEquals(List.of("There are no addresses available!"), readMessage(reader));
+
+            send(socket, "register-bulk port ivan 2\nlist-addresses", 1);
+            assertEquals(List.of("Could not retrieve port."), readMessage(reader));
+            assertEquals(List.of("There are no addresses available!"), readMessage(reader));
+        }
+    }
+
+    @Test
+    public void testFailingCommandEndsOnlyItsConnection() throws Exception {
+        ServerData serverData = new ServerData();
+        CommandExecutor failing = new CommandExecutor(serverData) {
+            @Override
+            byte[] executeEncoded(SocketChannel channel, CommandLine command, InetAddress ip) {
+                if (CommandVerb.of(command) == CommandVerb.LIST_FILES) {
+                    throw new IllegalStateException("broken handler");
+                }
+                return super.executeEncoded(channel, command, ip);
+            }
+        };
+        start(serverData, failing, RateLimiter.unlimited());
+
+        try (Socket broken = connect(); Socket other = connect()) {
+            send(broken, "list-files", 1);
+            assertEquals(-1, broken.getInputStream().read());
+
+            send(other, "list-addresses", 1);
+            assertEquals(List.of("There are no addresses available!"), readMessage(readerOf(other)));
+        }
+        assertEquals(1, commandExecutor.metrics().counter("connections_failed").sum());
+    }
+}
@@ -0,0 +1,91 @@
+package server;
+
+import java.lang.management.ManagementFactory;
+import java.lang.ref.Reference;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Measures how much heap the registry retains per registration. Run with a fixed heap,
+ * e.g. {@code java -Xms2g -Xmx2g server.RegistryMemoryBenchmark 20000 50}. The JMH
+ * benchmarks in TorrentBenchmarks fill their registries with the same generator.
+ */
+public class RegistryMemoryBenchmark {
+    private static final int SHARED_FILES = 5_000;
+
+    // Sums what each heap pool held right after the last collection, which leaves out the
+    // allocation buffers and filler objects that make plain "used" readings jump around
+    private static long usedHeap() throws InterruptedException {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(100);
+        }
+        long used = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP && pool.getCollectionUsage() != null) {
+                used += pool.getCollectionUsage().getUsed();
+            }
+        }
+        return used;
+    }
+
+    static String usernameOf(int user) {
+        return "user" + user;
+    }
+
+    // Every tenth file comes from a pool of popular files that many users share
+    static String fileOf(int user, int file) {
+        if (file % 10 == 0) {
+            return "/srv/shared/movies/movie" + ((user * 7 + file) % SHARED_FILES) + ".mkv";
+        }
+        return "/home/user" + user + "/music/album" + (file / 10) + "/track" + file + ".mp3";
+    }
+
+    static String addressOf(int user) {
+        return "10." + (user >> 16 & 255) + "." + (user >> 8 & 255) + "." + (user & 255) + ":" + (1024 + user % 60000);
+    }
+
+    // Mostly per-user music libraries plus a pool of popular files that many users share
+    static Map<String, UserData> registrations(int users, int filesPerUser) {
+        Map<String, UserData> registrations = new HashMap<>();
+        for (int u = 0; u < users; u++) {
+            Set<String> files = new HashSet<>();
+            for (int i = 0; i < filesPerUser; i++) {
+                files.add(fileOf(u, i));
+            }
+            registrations.put(usernameOf(u), new UserData(addressOf(u), files));
+        }
+        return registrations;
+    }
+
+    // Keeps the input out of main's frame, so nothing but the registry survives the call
+    static ServerData populate(int users, int filesPerUser) {
+        ServerData serverData = new ServerData();
+        serverData.restore(1, registrations(users, filesPerUser));
+        return serverData;
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        int users = args.length > 0 ? Integer.parseInt(args[0]) : 20_000;
+        int filesPerUser = args.length > 1 ? Integer.parseInt(args[1]) : 50;
+        long entries = (long) users * filesPerUser;
+
+        // Measured as the heap freed by dropping the registry, which is immune to whatever
+        // the JVM allocated for itself while the registry was being built
+        ServerData serverData = populate(users, filesPerUser);
+        int userCount = serverData.snapshot().userCount();
+        int fileCount = serverData.snapshot().fileCount();
+        long withRegistry = usedHeap();
+        Reference.reachabilityFence(serverData);
+        serverData = null;
+        long retained = withRegistry - usedHeap();
+
+        System.out.printf("users=%d entries=%d distinct files=%d%n", userCount, entries, fileCount);
+        System.out.printf("retained %.1f MiB, %.0f bytes per registration, %.1f bytes per file entry%n",
+                retained / (1024.0 * 1024.0), (double) retained / users, (double) retained / entries);
+    }
+}
@@ -5,10 +5,12 @@ import server.exceptions.UserNotFoundException;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.io.FileNotFoundException;
 import java.util.HashSet;
 import java.util.Set;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 public class ServerDataTest {
@@ -140,4 +142,63 @@ public class ServerDataTest {
         assertTrue(addresses.contains("petko1234 - 127.0.0.2:1234"));
         assertTrue(addresses.contains("kris1234 - 127.0.0.2:1234"));
     }
+
+    @Test
+    public void testGetAddressOfFile() throws InvalidUserException, FileNotFoundException {
+        serverData.register("ivan1234", new UserData("127.0.0.1:1234", files1));
+
+        assertEquals("127.0.0.1:1234", serverData.getAddressOfFile("/home/ivanP/pictures/123.png"));
+    }
+
+    @Test (expected = FileNotFoundException.class)
+    public void testGetAddressOfFileAfterUnregister()
+            throws InvalidUserException, UserNotFoundException, FileNotFoundException {
+        serverData.register("ivan1234", new UserData("127.0.0.1:1234", files1));
+        serverData.unregister("ivan1234", Set.of("/home/ivanP/pictures/123.png"));
+
+        // Testing that the index forgets files once their last owner unregisters them
+        serverData.getAddressOfFile("/home/ivanP/pictures/123.png");
+    }
+
+    @Test
+    public void testGetAddressOfFileAfterDisconnect()
+            throws InvalidUserException, UserNotFoundException, FileNotFoundException {
+        serverData.register("ivan1234", new UserData("127.0.0.1:1234", files1));
+        serverData.register("petko1234", new UserData("127.0.0.2:1234", files2));
+        serverData.disconnect("ivan1234");
+
+        // Testing that a shared file is still served by its remaining owner
+        assertEquals("127.0.0.2:1234",
+                serverData.getAddressOfFile("D:\\Games\\Battlefront\\scores\\ivan1234\\score.txt"));
+    }
+
+    @Test
+    public void testSnapshotIsNotAffectedByLaterWrites() throws InvalidUserException, UserNotFoundException {
+        serverData.register("ivan1234", new UserData("127.0.0.1:1234", files1));
+        RegistrySnapshot snapshot = serverData.snapshot();
+
+        serverData.register("petko1234", new UserData("127.0.0.2:1234", files2));
+        serverData.unregister("ivan1234", Set.of("/home/ivanP/pictures/123.png"));
+
+        // Testing that a reader keeps a consistent view while writers publish new versions
+        assertEquals(1, snapshot.userCount());
+        assertEquals(3, snapshot.fileEntries().size());
+        assertTrue(snapshot.fileEntries().contains("ivan1234 : /home/ivanP/pictures/123.png"));
+        assertFalse(serverData.listFiles().contains("ivan1234 : /home/ivanP/pictures/123.png"));
+    }
+
+    @Test
+    public void testVersionChangesOnlyOnMutation() throws InvalidUserException, UserNotFoundException {
+        long initialVersion = serverData.snapshot().version();
+        serverData.register("ivan1234", new UserData("127.0.0.1:1234", files1));
+        long registeredVersion = serverData.snapshot().version();
+
+        // Registering files that are already registered publishes nothing new
+        serverData.register("ivan1234", new UserData("127.0.0.1:1234", files1));
+        assertEquals(registeredVersion, serverData.snapshot().version());
+
+        serverData.disconnect("ivan1234");
+        assertTrue(initialVersion < registeredVersion);
+        assertTrue(registeredVersion < serverData.snapshot().version());
+    }
 }
@@ -0,0 +1,124 @@
+package server;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import server.limits.RateLimiter;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+
+public class SubscriptionsTest {
+    private ServerData serverData;
+    private Subscriptions subscriptions;
+    private Reactor reactor;
+    private ServerSocketChannel serverSocket;
+
+    @Before
+    public void setUp() throws IOException {
+        serverData = new ServerData();
+        CommandExecutor commandExecutor = new CommandExecutor(serverData);
+        subscriptions = new Subscriptions(commandExecutor);
+        serverData.addListener(subscriptions);
+        reactor = new Reactor("test-reactor", commandExecutor,
+                new BinaryCommandExecutor(commandExecutor, serverData), subscriptions,
+                RateLimiter.unlimited());
+        reactor.start();
+
+        serverSocket = ServerSocketChannel.open();
+        serverSocket.bind(new InetSocketAddress("localhost", 0));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        reactor.interrupt();
+        reactor.join();
+        subscriptions.close();
+        serverSocket.close();
+    }
+
+    private Socket connect() throws IOException {
+        Socket socket = new Socket("localhost", serverSocket.socket().getLocalPort());
+        socket.setSoTimeout(5_000);
+        reactor.assign(serverSocket.accept());
+        return socket;
+    }
+
+    private static List<String> readMessage(BufferedReader reader) throws IOException {
+        int count = Integer.parseInt(reader.readLine());
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            lines.add(reader.readLine());
+        }
+        return lines;
+    }
+
+    private static void send(Socket socket, String line) throws IOException {
+        OutputStream out = socket.getOutputStream();
+        out.write((line + "\n").getBytes(StandardCharsets.UTF_8));
+        out.flush();
+    }
+
+    private void waitForSubscribers(int count) throws InterruptedException {
+        for (int i = 0; i < 200 && subscriptions.size() != count; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(count, subscriptions.size());
+    }
+
+    @Test
+    public void testSubscriberReceivesCoalescedUpdates() throws Exception {
+        serverData.register("ivan", new UserData("10.0.0.1:1000", Set.of("/a")));
+
+        try (Socket socket = connect()) {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            send(socket, "subscribe -1");
+            assertEquals(List.of("version 1 full", "ivan - 10.0.0.1:1000"), readMessage(reader));
+
+            serverData.register("petar", new UserData("10.0.0.2:2000", Set.of("/b")));
+            serverData.register("ivan", new UserData("10.0.0.1:1000", Set.of("/c")));
+            serverData.disconnect("ivan");
+
+            List<String> update = readMessage(reader);
+            assertEquals("version 4 delta", update.get(0));
+            assertEquals(Set.of("+petar - 10.0.0.2:2000", "-ivan"), Set.copyOf(update.subList(1, update.size())));
+        }
+    }
+
+    @Test
+    public void testFileChangesAreNotPushed() throws Exception {
+        serverData.register("ivan", new UserData("10.0.0.1:1000", Set.of("/a")));
+
+        try (Socket socket = connect()) {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            send(socket, "subscribe 1");
+            assertEquals(List.of("version 1 delta"), readMessage(reader));
+
+            serverData.register("ivan", new UserData("10.0.0.1:1000", Set.of("/b")));
+            serverData.register("petar", new UserData("10.0.0.2:2000", Set.of("/c")));
+            assertEquals(List.of("version 3 delta", "+petar - 10.0.0.2:2000"), readMessage(reader));
+        }
+    }
+
+    @Test
+    public void testClosedConnectionUnsubscribes() throws Exception {
+        try (Socket socket = connect()) {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            send(socket, "subscribe -1");
+            readMessage(reader);
+            waitForSubscribers(1);
+        }
+        waitForSubscribers(0);
+    }
+}
@@ -0,0 +1,53 @@
+package server.limits;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class RateLimiterTest {
+    @Test
+    public void testUnlimited() {
+        RateLimiter limiter = RateLimiter.unlimited();
+        assertNull(limiter.newConnectionBucket(0));
+        for (int i = 0; i < 10_000; i++) {
+            assertEquals(0, limiter.acquire(null, "ivan", 0));
+        }
+        assertEquals(0, limiter.trackedUsers());
+    }
+
+    @Test
+    public void testUserLimitSpansConnections() {
+        RateLimiter limiter = new RateLimiter(100, 10, 1, 4);
+        TokenBucket first = limiter.newConnectionBucket(0);
+        TokenBucket second = limiter.newConnectionBucket(0);
+
+        assertEquals(0, limiter.acquire(first, "ivan", 0));
+        assertEquals(0, limiter.acquire(first, "ivan", 0));
+        assertEquals(0, limiter.acquire(second, "ivan", 0));
+        assertEquals(0, limiter.acquire(second, "ivan", 0));
+        assertTrue(limiter.acquire(second, "ivan", 0) > 0);
+        assertEquals(0, limiter.acquire(second, "petar", 0));
+    }
+
+    @Test
+    public void testRefusedUserKeepsConnectionTokens() {
+        RateLimiter limiter = new RateLimiter(1, 2, 1, 1);
+        TokenBucket connection = limiter.newConnectionBucket(0);
+
+        assertEquals(0, limiter.acquire(connection, "ivan", 0));
+        assertTrue(limiter.acquire(connection, "ivan", 0) > 0);
+        // The refused command gave its connection token back
+        assertEquals(0, limiter.acquire(connection, null, 0));
+    }
+
+    @Test
+    public void testConnectionLimitBeforeRegistering() {
+        RateLimiter limiter = new RateLimiter(1, 1, 1, 1);
+        TokenBucket connection = limiter.newConnectionBucket(0);
+        assertEquals(0, limiter.acquire(connection, null, 0));
+        assertTrue(limiter.acquire(connection, null, 0) > 0);
+        assertEquals(0, limiter.trackedUsers());
+    }
+}
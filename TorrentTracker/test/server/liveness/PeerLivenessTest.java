@@ -0,0 +1,112 @@
+package server.liveness;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PeerLivenessTest {
+    private static final Duration TIMEOUT = Duration.ofSeconds(32);
+
+    private long nanos;
+    private List<String> expired;
+    private PeerLiveness liveness;
+
+    @Before
+    public void setUp() {
+        nanos = 0;
+        expired = new ArrayList<>();
+        liveness = new PeerLiveness(TIMEOUT, expired::add, () -> nanos);
+    }
+
+    private void advance(long seconds) {
+        for (long i = 0; i < seconds; i++) {
+            nanos += TimeUnit.SECONDS.toNanos(1);
+            liveness.tick();
+        }
+    }
+
+    @Test
+    public void testSilentPeerExpiresAfterTimeout() {
+        liveness.track("ivan");
+        liveness.tick();
+
+        advance(31);
+        assertTrue(expired.isEmpty());
+        advance(2);
+        assertEquals(List.of("ivan"), expired);
+        assertEquals(0, liveness.size());
+    }
+
+    @Test
+    public void testTouchKeepsPeerAlive() {
+        liveness.track("ivan");
+        for (int i = 0; i < 10; i++) {
+            advance(20);
+            assertTrue(liveness.touch("ivan"));
+        }
+        assertTrue(expired.isEmpty());
+
+        advance(40);
+        assertEquals(List.of("ivan"), expired);
+        assertFalse(liveness.touch("ivan"));
+    }
+
+    @Test
+    public void testForgottenPeerNeverExpires() {
+        liveness.track("ivan");
+        liveness.tick();
+        liveness.forget("ivan");
+
+        advance(100);
+        assertTrue(expired.isEmpty());
+    }
+
+    @Test
+    public void testTrackAgainAfterForget() {
+        liveness.track("ivan");
+        liveness.tick();
+        liveness.forget("ivan");
+        advance(10);
+        liveness.track("ivan");
+
+        advance(31);
+        assertTrue(expired.isEmpty());
+        advance(2);
+        assertEquals(List.of("ivan"), expired);
+    }
+
+    @Test
+    public void testStalledTickerExpiresEveryone() {
+        for (int i = 0; i < 1000; i++) {
+            liveness.track("user" + i);
+        }
+        liveness.tick();
+
+        nanos += TimeUnit.HOURS.toNanos(1);
+        liveness.tick();
+        assertEquals(1000, expired.size());
+    }
+
+    @Test
+    public void testWheelOnlyVisitsDueEntries() {
+        TimerWheel<Integer> wheel = new TimerWheel<>(33);
+        List<Integer> due = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            wheel.schedule(i, 1 + i % 10);
+        }
+
+        wheel.advanceTo(1, due::add);
+        assertEquals(100, due.size());
+        wheel.advanceTo(10, due::add);
+        assertEquals(1000, due.size());
+        assertEquals(64, wheel.lap());
+    }
+}
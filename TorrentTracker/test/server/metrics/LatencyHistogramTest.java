@@ -0,0 +1,68 @@
+package server.metrics;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LatencyHistogramTest {
+    @Test
+    public void testBucketsCoverEveryValue() {
+        long previousHighest = -1;
+        for (int bucket = 0; bucket < LatencyHistogram.bucketOf((1L << 40) - 1); bucket++) {
+            long highest = LatencyHistogram.highestValueOf(bucket);
+            assertEquals(bucket, LatencyHistogram.bucketOf(previousHighest + 1));
+            assertEquals(bucket, LatencyHistogram.bucketOf(highest));
+            previousHighest = highest;
+        }
+    }
+
+    @Test
+    public void testPercentilesWithinPrecision() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long value = 1; value <= 100_000; value++) {
+            histogram.record(value * 1000);
+        }
+
+        LatencyHistogram.Summary summary = histogram.summary();
+        assertEquals(100_000, summary.count());
+        assertEquals(50_000_500.0, summary.mean(), 1.0);
+        assertWithin(50_000_000, summary.p50());
+        assertWithin(90_000_000, summary.p90());
+        assertWithin(99_000_000, summary.p99());
+        assertWithin(99_900_000, summary.p999());
+        assertEquals(100_000_000, summary.max());
+    }
+
+    private static void assertWithin(long expected, long actual) {
+        assertTrue(expected + " vs " + actual, Math.abs(actual - expected) <= expected * 0.04);
+    }
+
+    @Test
+    public void testOutOfRangeValuesAreClamped() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(-5);
+        histogram.record(Long.MAX_VALUE);
+
+        LatencyHistogram.Summary summary = histogram.summary();
+        assertEquals(2, summary.count());
+        assertEquals((1L << 40) - 1, summary.max());
+    }
+
+    @Test
+    public void testReportListsCountersGaugesAndHistograms() {
+        TrackerMetrics metrics = new TrackerMetrics();
+        metrics.counter("bytes_in").add(42);
+        metrics.gauge("registry_users", () -> 7);
+        metrics.histogram("command_register").record(1500);
+        metrics.histogram("command_unused");
+
+        List<String> report = metrics.report();
+        assertTrue(report.contains("bytes_in 42"));
+        assertTrue(report.contains("registry_users 7"));
+        assertTrue(report.stream().anyMatch(line -> line.startsWith("command_register count=1 ")));
+        assertTrue(report.stream().noneMatch(line -> line.startsWith("command_unused")));
+    }
+}
@@ -0,0 +1,56 @@
+package server.selection;
+
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+
+public class PeerSelectionPolicyTest {
+    private final List<String> addresses = List.of("127.0.0.3:1234", "127.0.0.1:1234", "127.0.0.2:1234");
+
+    @Test
+    public void testRoundRobinRotatesFirstPeer() {
+        PeerSelectionPolicy policy = new RoundRobinPolicy();
+
+        assertEquals("127.0.0.1:1234", policy.rank("song.mp3", addresses).get(0));
+        assertEquals("127.0.0.2:1234", policy.rank("song.mp3", addresses).get(0));
+        assertEquals("127.0.0.3:1234", policy.rank("song.mp3", addresses).get(0));
+        assertEquals("127.0.0.1:1234", policy.rank("song.mp3", addresses).get(0));
+    }
+
+    @Test
+    public void testRoundRobinKeepsEveryPeer() {
+        PeerSelectionPolicy policy = new RoundRobinPolicy();
+        policy.rank("song.mp3", addresses);
+
+        assertEquals(List.of("127.0.0.2:1234", "127.0.0.3:1234", "127.0.0.1:1234"),
+                policy.rank("song.mp3", addresses));
+    }
+
+    @Test
+    public void testLeastHandedOutPrefersIdlePeers() {
+        PeerSelectionPolicy policy = new LeastHandedOutPolicy();
+
+        assertEquals("127.0.0.1:1234", policy.rank("song.mp3", addresses).get(0));
+        // Hand-outs are counted per peer, not per file
+        assertEquals("127.0.0.2:1234", policy.rank("video.mp4", addresses).get(0));
+        assertEquals("127.0.0.3:1234", policy.rank("song.mp3", addresses).get(0));
+    }
+
+    @Test
+    public void testRandomKeepsEveryPeer() {
+        PeerSelectionPolicy policy = new RandomPolicy(new Random(42));
+
+        List<String> ranked = policy.rank("song.mp3", addresses);
+        assertEquals(addresses.size(), ranked.size());
+        assertEquals(Set.copyOf(addresses), Set.copyOf(ranked));
+    }
+
+    @Test (expected = IllegalArgumentException.class)
+    public void testUnknownPolicy() {
+        PeerSelectionPolicy.fromName("fastest");
+    }
+}